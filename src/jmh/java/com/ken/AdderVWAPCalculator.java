@@ -0,0 +1,23 @@
+package com.ken;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.DoubleAdder;
+
+/**
+ * The original adder-based calculator, kept as the baseline for {@link VWAPCalculatorContentionBenchmark}.
+ * Its two sums are updated and read independently, so a reader can see one without the other.
+ */
+class AdderVWAPCalculator {
+    private final DoubleAdder priceVolumeSum = new DoubleAdder();  // Sum of Price * Volume
+    private final AtomicLong volumeSum = new AtomicLong();       // Sum of Volume
+
+    public void addTrade(double price, long volume) {
+        priceVolumeSum.add(price * volume);
+        volumeSum.addAndGet(volume);
+    }
+
+    public double calculateVWAP() {
+        long volume = volumeSum.get();
+        return (volume == 0) ? 0.0 : priceVolumeSum.sum() / volume;
+    }
+}
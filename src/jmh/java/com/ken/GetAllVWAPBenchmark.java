@@ -0,0 +1,64 @@
+package com.ken;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Cost of {@link VWAPCalculatorApplication#getAllVWAP()} as the number of populated pairs and hours grows, when
+ * nothing changed since the last call and when one bucket did, against the uncached
+ * {@link VWAPCalculatorApplication#getAllBars()}.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class GetAllVWAPBenchmark {
+
+    @Param({"1", "5", "21"})
+    public int pairs;
+
+    @Param({"1", "8", "24"})
+    public int hours;
+
+    private VWAPCalculatorApplication application;
+
+    @Setup
+    public void setUp() {
+        application = new VWAPCalculatorApplication();
+        for (int pair = 0; pair < pairs; pair++) {
+            for (int hour = 0; hour < hours; hour++) {
+                application.vwapStore.addTrade(pair, hour * 3600, 1.1001, 100);
+            }
+        }
+    }
+
+    @Benchmark
+    public Map<String, Double> getAllVWAP() {
+        return application.getAllVWAP();
+    }
+
+    @Benchmark
+    public Map<String, Double> getAllVWAPAfterTrade() {
+        application.vwapStore.addTrade(0, 0, 1.1001, 100);
+        return application.getAllVWAP();
+    }
+
+    @Benchmark
+    public Bars getAllBars() {
+        return application.getAllBars();
+    }
+}
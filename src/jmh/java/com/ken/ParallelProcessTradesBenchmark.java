@@ -0,0 +1,49 @@
+package com.ken;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Time to ingest one large batch with the sequential loop and with the fork/join path. Run with
+ * {@code -Djava.util.concurrent.ForkJoinPool.common.parallelism=N} to chart scaling by core count.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(value = 1, jvmArgsAppend = "-Xmx8g")
+public class ParallelProcessTradesBenchmark {
+
+    @Param({"10000000"})
+    public int batchSize;
+
+    @Param({"sequential", "parallel"})
+    public String mode;
+
+    private String[][] trades;
+
+    @Setup
+    public void setUp() {
+        trades = TradeData.trades(batchSize, "EUR/USD", "USD/JPY", "GBP/USD", "AUD/USD", "USD/CHF");
+    }
+
+    @Benchmark
+    public VWAPCalculatorApplication processTrades() {
+        VWAPCalculatorApplication application = new VWAPCalculatorApplication();
+        application.setParallelThreshold("parallel".equals(mode) ? 1 : Integer.MAX_VALUE);
+        application.processTrades(trades);
+        return application;
+    }
+}
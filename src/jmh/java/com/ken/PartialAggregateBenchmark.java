@@ -0,0 +1,79 @@
+package com.ken;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Cost of exporting, encoding, decoding and merging the {@link PartialAggregate}s of four shards with every
+ * bucket of 21 pairs populated, as hourly and per-minute buckets.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class PartialAggregateBenchmark {
+
+    static final int SHARDS = 4;
+
+    @Param({"3600", "60"})
+    public int bucketSeconds;
+
+    private VWAPCalculatorApplication application;
+    private PartialAggregate[] partials;
+    private byte[] encoded;
+
+    @Setup
+    public void setUp() {
+        BucketPolicy policy = BucketPolicy.ofSeconds(bucketSeconds);
+        partials = new PartialAggregate[SHARDS];
+        for (int shard = 0; shard < SHARDS; shard++) {
+            VWAPCalculatorApplication shardApplication = new VWAPCalculatorApplication(policy);
+            for (int pair = 0; pair < 21; pair++) {
+                for (int slot = 0; slot < policy.slotsPerDay(); slot++) {
+                    shardApplication.vwapStore.addTrade(pair, slot * bucketSeconds, 1.1 + shard * 0.0001, 100);
+                }
+            }
+            partials[shard] = shardApplication.exportPartial();
+            application = shardApplication;
+        }
+        encoded = partials[0].toBytes();
+    }
+
+    @Benchmark
+    public PartialAggregate exportPartial() {
+        return application.exportPartial();
+    }
+
+    @Benchmark
+    public byte[] toBytes() {
+        return partials[0].toBytes();
+    }
+
+    @Benchmark
+    public PartialAggregate fromBytes() throws IOException {
+        return PartialAggregate.fromBytes(encoded);
+    }
+
+    @Benchmark
+    public PartialAggregate mergeShards() {
+        PartialAggregate merged = partials[0];
+        for (int shard = 1; shard < SHARDS; shard++) {
+            merged = merged.merge(partials[shard]);
+        }
+        return merged;
+    }
+}
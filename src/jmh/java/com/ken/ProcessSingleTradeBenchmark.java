@@ -0,0 +1,82 @@
+package com.ken;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.time.LocalTime;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Latency of one trade through {@code processSingleTrade}, split into its validation, parsing and accumulation
+ * stages so a change can be attributed to the stage it affects, plus the currency pair lookup from a String and from
+ * raw bytes against a plain map lookup.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ProcessSingleTradeBenchmark {
+
+    private final String[] trade = {"9:31 AM", "EUR/USD", "1.1001", "100"};
+    private final ByteBuffer pairBytes = ByteBuffer.wrap("EUR/USD".getBytes(StandardCharsets.US_ASCII));
+    private VWAPCalculatorApplication application;
+    private Map<String, Integer> pairMap;
+
+    @Setup
+    public void setUp() {
+        application = new VWAPCalculatorApplication();
+        pairMap = application.currencyPairs.ids();
+    }
+
+    @Benchmark
+    public void total() {
+        application.processSingleTrade(trade);
+    }
+
+    @Benchmark
+    public void validation() {
+        application.validateTradeParams(trade);
+    }
+
+    @Benchmark
+    public void parsing(Blackhole blackhole) {
+        blackhole.consume(LocalTime.parse(trade[0], BucketPolicy.HOURLY.tradeTimeFormatter()).toSecondOfDay());
+        blackhole.consume(application.currencyPairs.idOf(trade[1]));
+        blackhole.consume(Double.parseDouble(trade[2]));
+        blackhole.consume(Long.parseLong(trade[3]));
+    }
+
+    @Benchmark
+    public void accumulation() {
+        application.vwapStore.addTrade(0, 9 * 3600, 1.1001, 100);
+    }
+
+    @Benchmark
+    public int pairLookup() {
+        return application.currencyPairs.idOf(trade[1]);
+    }
+
+    @Benchmark
+    public int pairLookupFromBytes() {
+        return application.currencyPairs.idOf(pairBytes, 0, pairBytes.limit());
+    }
+
+    @Benchmark
+    public Integer pairLookupMap() {
+        return pairMap.get(trade[1]);
+    }
+}
@@ -0,0 +1,148 @@
+package com.ken;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.nio.ByteBuffer;
+import java.time.LocalTime;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Trade throughput of {@link VWAPCalculatorApplication#processTrades}, from one thread and from several threads
+ * sharing one application, plus a dirty feed where one trade in ten is rejected, with engine metrics off and on and
+ * with double and exact accumulation. The columnar input is the same batch already decoded into primitive columns,
+ * once through the kernel the JVM selects (SIMD when run with {@code --add-modules jdk.incubator.vector}) and once
+ * through the scalar kernel. Scores are trades per microsecond.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ProcessTradesBenchmark {
+
+    static final int BATCH_SIZE = 10_000;
+    private static final String[] PAIRS = {"EUR/USD", "USD/JPY", "GBP/USD", "AUD/USD", "USD/CHF"};
+
+    @Param({"false", "true"})
+    boolean metrics;
+
+    @Param({"DOUBLE", "EXACT"})
+    Accumulation accumulation;
+
+    private VWAPCalculatorApplication application;
+    private String[][] trades;
+    private ByteBuffer csv;
+    private String[][] dirtyTrades;
+    private ByteBuffer dirtyCsv;
+    private int[] secondsOfDay;
+    private short[] pairIds;
+    private double[] prices;
+    private long[] volumes;
+    private long[] dirtyVolumes;
+    private ColumnKernel scalarKernel;
+
+    @Setup
+    public void setUp() {
+        application = new VWAPCalculatorApplication(BucketPolicy.HOURLY, accumulation);
+        application.setMetricsEnabled(metrics);
+        trades = TradeData.trades(BATCH_SIZE, PAIRS);
+        csv = TradeData.csv(trades);
+        dirtyTrades = trades.clone();
+        for (int i = 0; i < dirtyTrades.length; i += 10) {
+            dirtyTrades[i] = new String[]{trades[i][0], trades[i][1], trades[i][2], "-" + trades[i][3]};
+        }
+        dirtyCsv = TradeData.csv(dirtyTrades);
+        secondsOfDay = new int[BATCH_SIZE];
+        pairIds = new short[BATCH_SIZE];
+        prices = new double[BATCH_SIZE];
+        volumes = new long[BATCH_SIZE];
+        for (int i = 0; i < BATCH_SIZE; i++) {
+            secondsOfDay[i] = LocalTime.parse(trades[i][0], BucketPolicy.HOURLY.tradeTimeFormatter()).toSecondOfDay();
+            pairIds[i] = application.pairId(trades[i][1]);
+            prices[i] = Double.parseDouble(trades[i][2]);
+            volumes[i] = Long.parseLong(trades[i][3]);
+        }
+        dirtyVolumes = volumes.clone();
+        for (int i = 0; i < dirtyVolumes.length; i += 10) {
+            dirtyVolumes[i] = -dirtyVolumes[i];
+        }
+        scalarKernel = new ScalarColumnKernel();
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(BATCH_SIZE)
+    public void stringArraySingleThreaded() {
+        application.processTrades(trades);
+    }
+
+    @Benchmark
+    @Threads(4)
+    @OperationsPerInvocation(BATCH_SIZE)
+    public void stringArrayMultiThreaded() {
+        application.processTrades(trades);
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(BATCH_SIZE)
+    public void byteBufferSingleThreaded() {
+        application.processTrades(csv.duplicate());
+    }
+
+    @Benchmark
+    @Threads(4)
+    @OperationsPerInvocation(BATCH_SIZE)
+    public void byteBufferMultiThreaded() {
+        application.processTrades(csv.duplicate());
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(BATCH_SIZE)
+    public void stringArrayDirtyFeed() {
+        application.processTrades(dirtyTrades);
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(BATCH_SIZE)
+    public void byteBufferDirtyFeed() {
+        application.processTrades(dirtyCsv.duplicate());
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(BATCH_SIZE)
+    public void columnarSingleThreaded() {
+        application.processTrades(secondsOfDay, pairIds, prices, volumes, BATCH_SIZE);
+    }
+
+    @Benchmark
+    @Threads(4)
+    @OperationsPerInvocation(BATCH_SIZE)
+    public void columnarMultiThreaded() {
+        application.processTrades(secondsOfDay, pairIds, prices, volumes, BATCH_SIZE);
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(BATCH_SIZE)
+    public void columnarScalarKernel() {
+        ColumnarIngest.aggregate(application.vwapStore, application.currencyPairs, scalarKernel, secondsOfDay,
+                pairIds, prices, volumes, BATCH_SIZE, null).addTo(application.vwapStore);
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(BATCH_SIZE)
+    public void columnarDirtyFeed() {
+        application.processTrades(secondsOfDay, pairIds, prices, dirtyVolumes, BATCH_SIZE);
+    }
+}
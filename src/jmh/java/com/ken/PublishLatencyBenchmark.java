@@ -0,0 +1,88 @@
+package com.ken;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Per-trade latency seen by producer threads, recording directly into the shared calculators versus publishing
+ * into a {@link TradePipeline}. Sample-time mode reports the p50, p99 and p99.9 of each call. With the blocking
+ * policy a full ring makes producers wait for the consumer, so the pipeline's tail also shows its backpressure.
+ */
+@BenchmarkMode(Mode.SampleTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Threads(4)
+@Fork(1)
+public class PublishLatencyBenchmark {
+
+    private static final String[] PAIRS = {"EUR/USD", "USD/JPY", "GBP/USD", "AUD/USD", "USD/CHF"};
+    private static final String[][] TRADES = TradeData.trades(4096, PAIRS);
+
+    @State(Scope.Benchmark)
+    public static class Direct {
+        VWAPCalculatorApplication application;
+
+        @Setup
+        public void setUp() {
+            application = new VWAPCalculatorApplication();
+        }
+    }
+
+    @State(Scope.Benchmark)
+    public static class Pipelined {
+        @Param({"1024", "65536"})
+        int capacity;
+
+        @Param({"64", "1024"})
+        int batchSize;
+
+        @Param({"BLOCK", "DROP"})
+        BackpressurePolicy backpressure;
+
+        TradePipeline pipeline;
+
+        @Setup(Level.Trial)
+        public void setUp() {
+            pipeline = new VWAPCalculatorApplication().startPipeline(capacity, batchSize, backpressure);
+        }
+
+        @TearDown(Level.Trial)
+        public void tearDown() {
+            pipeline.close();
+        }
+    }
+
+    @State(Scope.Thread)
+    public static class Cursor {
+        int next;
+
+        String[] nextTrade() {
+            return TRADES[next++ & (TRADES.length - 1)];
+        }
+    }
+
+    @Benchmark
+    public void direct(Direct state, Cursor cursor) {
+        state.application.processSingleTrade(cursor.nextTrade());
+    }
+
+    @Benchmark
+    public boolean pipelined(Pipelined state, Cursor cursor) {
+        return state.pipeline.publish(cursor.nextTrade());
+    }
+}
@@ -0,0 +1,40 @@
+package com.ken;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Locale;
+import java.util.Random;
+
+/**
+ * Deterministic trade batches shared by the benchmarks.
+ */
+final class TradeData {
+
+    private TradeData() {
+    }
+
+    static String[][] trades(int count, String... pairs) {
+        Random random = new Random(42);
+        String[][] trades = new String[count][];
+        for (int i = 0; i < count; i++) {
+            int hour = 1 + random.nextInt(12);
+            trades[i] = new String[]{
+                    String.format(Locale.ROOT, "%d:%02d %s", hour, random.nextInt(60),
+                            random.nextBoolean() ? "AM" : "PM"),
+                    pairs[random.nextInt(pairs.length)],
+                    String.format(Locale.ROOT, "%.4f", 1 + random.nextDouble()),
+                    Integer.toString(1 + random.nextInt(1_000))
+            };
+        }
+        return trades;
+    }
+
+    static ByteBuffer csv(String[][] trades) {
+        StringBuilder csv = new StringBuilder();
+        for (String[] trade : trades) {
+            csv.append(String.join(",", trade)).append('\n');
+        }
+        byte[] bytes = csv.toString().getBytes(StandardCharsets.UTF_8);
+        return ByteBuffer.allocateDirect(bytes.length).put(bytes).flip();
+    }
+}
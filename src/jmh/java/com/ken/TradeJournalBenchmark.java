@@ -0,0 +1,93 @@
+package com.ken;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Comparator;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+
+/**
+ * Trade journal throughput: appending into fresh segments and replaying a journal of one million trades. Scores
+ * are trades per microsecond.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class TradeJournalBenchmark {
+
+    static final int TRADES = 1_000_000;
+    private static final CurrencyPairRegistry PAIRS = new VWAPCalculatorApplication().currencyPairs;
+
+    private Path replayDirectory;
+    private Path appendDirectory;
+    private TradeJournal journal;
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        replayDirectory = Files.createTempDirectory("journal-replay");
+        try (TradeJournal replayJournal = new TradeJournal(replayDirectory, PAIRS,
+                TradeJournal.DEFAULT_SEGMENT_RECORDS, null)) {
+            for (int i = 0; i < TRADES; i++) {
+                replayJournal.append(i % 21, i % 86_400, 1.1 + (i % 100) * 0.0001, 100 + i % 1000);
+            }
+        }
+    }
+
+    @Setup(Level.Invocation)
+    public void openJournal() throws IOException {
+        appendDirectory = Files.createTempDirectory("journal-append");
+        journal = new TradeJournal(appendDirectory, PAIRS, TradeJournal.DEFAULT_SEGMENT_RECORDS, null);
+    }
+
+    @TearDown(Level.Invocation)
+    public void closeJournal() throws IOException {
+        journal.close();
+        delete(appendDirectory);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws IOException {
+        delete(replayDirectory);
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(TRADES)
+    public void append() {
+        for (int i = 0; i < TRADES; i++) {
+            journal.append(i % 21, i % 86_400, 1.1, 100);
+        }
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(TRADES)
+    public long replay(Blackhole blackhole) throws IOException {
+        return TradeJournal.replay(replayDirectory, PAIRS.ids(), (pairOrdinal, secondOfDay, price, volume) -> blackhole.consume(volume));
+    }
+
+    private static void delete(Path directory) throws IOException {
+        try (Stream<Path> files = Files.walk(directory)) {
+            for (Path file : files.sorted(Comparator.reverseOrder()).toList()) {
+                Files.delete(file);
+            }
+        }
+    }
+}
@@ -0,0 +1,142 @@
+package com.ken;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.SocketChannel;
+import java.nio.charset.StandardCharsets;
+import java.time.LocalTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * Load generator for {@link TradeServer}: opens a number of connections that each send the same pre-encoded trades
+ * as fast as the server takes them, with a VWAP query after every {@code queryInterval} trades.
+ * <p>
+ * Throughput counts a trade once the server has answered a query sent after it, so trades still buffered in
+ * sockets are not counted. Query latency is the round trip from writing the query to reading its reply, which
+ * includes the trades queued ahead of it on the same connection. Not a JMH benchmark: the work happens in another
+ * process, so it is run with {@code ./gradlew loadTest}.
+ */
+public final class TradeLoadGenerator {
+
+    private static final String[] PAIRS = {"EUR/USD", "USD/JPY", "GBP/USD", "AUD/USD", "USD/CHF"};
+
+    private final InetSocketAddress address;
+    private final boolean binary;
+    private final int rounds;
+    private final int tradesPerRound;
+    private final ByteBuffer trades;
+    private final ByteBuffer query;
+    private final LatencyHistogram latency = new LatencyHistogram();
+
+    private TradeLoadGenerator(InetSocketAddress address, boolean binary, int tradesPerConnection, int queryInterval) {
+        this.address = address;
+        this.binary = binary;
+        this.rounds = Math.max(1, tradesPerConnection / queryInterval);
+        this.tradesPerRound = queryInterval;
+        String[][] batch = TradeData.trades(queryInterval, PAIRS);
+        this.trades = binary ? binaryTrades(batch) : TradeData.csv(batch);
+        this.query = binary ? binaryQuery() : ByteBuffer.allocateDirect(17)
+                .put("?EUR/USD,9:00 AM\n".getBytes(StandardCharsets.US_ASCII)).flip();
+    }
+
+    /**
+     * @param args: host, default 127.0.0.1; port, default {@value TradeServer#DEFAULT_PORT}; connections, default 4;
+     *              trades per connection, default 1000000; protocol, text or binary, default text; and trades
+     *              between queries, default 1000
+     */
+    public static void main(String[] args) throws Exception {
+        String host = (args.length > 0) ? args[0] : "127.0.0.1";
+        int port = (args.length > 1) ? Integer.parseInt(args[1]) : TradeServer.DEFAULT_PORT;
+        int connections = (args.length > 2) ? Integer.parseInt(args[2]) : 4;
+        int tradesPerConnection = (args.length > 3) ? Integer.parseInt(args[3]) : 1_000_000;
+        boolean binary = (args.length > 4) && "binary".equals(args[4]);
+        int queryInterval = (args.length > 5) ? Integer.parseInt(args[5]) : 1_000;
+        TradeLoadGenerator generator = new TradeLoadGenerator(new InetSocketAddress(host, port), binary,
+                tradesPerConnection, queryInterval);
+
+        ExecutorService executor = Executors.newFixedThreadPool(connections);
+        try {
+            long start = System.nanoTime();
+            List<Future<Long>> results = new ArrayList<>();
+            for (int i = 0; i < connections; i++) {
+                results.add(executor.submit(generator::send));
+            }
+            long sent = 0;
+            for (Future<Long> result : results) {
+                sent += result.get();
+            }
+            long elapsed = System.nanoTime() - start;
+            LatencySnapshot queries = generator.latency.snapshot();
+            System.out.printf("%s, %d connections: %d trades in %.2f s, %.0f trades/s%n",
+                    binary ? "binary" : "text", connections, sent, elapsed / 1e9, sent * 1e9 / elapsed);
+            System.out.printf("query round trip over %d queries: p50 %.1f us, p99 %.1f us, p99.9 %.1f us, "
+                            + "max %.1f us%n", queries.count(), queries.p50Nanos() / 1e3, queries.p99Nanos() / 1e3,
+                    queries.p999Nanos() / 1e3, queries.maxNanos() / 1e3);
+        } finally {
+            executor.shutdown();
+        }
+    }
+
+    /**
+     * Sends every round of trades and its query over one connection.
+     *
+     * @return The number of trades the server has answered for.
+     */
+    private long send() throws IOException {
+        ByteBuffer trades = this.trades.duplicate();
+        ByteBuffer query = this.query.duplicate();
+        ByteBuffer reply = ByteBuffer.allocateDirect(TradeServer.BUFFER_BYTES);
+        try (SocketChannel channel = SocketChannel.open(address)) {
+            channel.socket().setTcpNoDelay(true);
+            if (binary) {
+                write(channel, ByteBuffer.wrap(TradeServer.BINARY_PREAMBLE));
+            }
+            for (int round = 0; round < rounds; round++) {
+                write(channel, trades.rewind());
+                long start = System.nanoTime();
+                write(channel, query.rewind());
+                readReply(channel, reply);
+                latency.record(System.nanoTime() - start);
+            }
+        }
+        return (long) rounds * tradesPerRound;
+    }
+
+    private void readReply(SocketChannel channel, ByteBuffer reply) throws IOException {
+        reply.clear();
+        while (binary ? reply.position() < TradeServer.MESSAGE_BYTES
+                : reply.position() == 0 || reply.get(reply.position() - 1) != '\n') {
+            if (channel.read(reply) < 0) {
+                throw new EOFException("Trade server closed the connection");
+            }
+        }
+    }
+
+    private static void write(SocketChannel channel, ByteBuffer buffer) throws IOException {
+        while (buffer.hasRemaining()) {
+            channel.write(buffer);
+        }
+    }
+
+    private static ByteBuffer binaryTrades(String[][] batch) {
+        ByteBuffer buffer = ByteBuffer.allocateDirect(batch.length * TradeServer.MESSAGE_BYTES);
+        for (String[] trade : batch) {
+            int secondOfDay = LocalTime.parse(trade[0], BucketPolicy.HOURLY.tradeTimeFormatter()).toSecondOfDay();
+            buffer.put(TradeServer.TRADE).put(trade[1].getBytes(StandardCharsets.US_ASCII)).putInt(secondOfDay)
+                    .putDouble(Double.parseDouble(trade[2])).putLong(Long.parseLong(trade[3]));
+        }
+        return buffer.flip();
+    }
+
+    private static ByteBuffer binaryQuery() {
+        return ByteBuffer.allocateDirect(TradeServer.MESSAGE_BYTES).put(TradeServer.QUERY)
+                .put("EUR/USD".getBytes(StandardCharsets.US_ASCII)).putInt(9 * 3600).putDouble(0.0).putLong(0)
+                .flip();
+    }
+}
@@ -0,0 +1,109 @@
+package com.ken;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Group;
+import org.openjdk.jmh.annotations.GroupThreads;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.CommandLineOptionException;
+import org.openjdk.jmh.runner.options.CommandLineOptions;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Compares {@link VWAPCalculator}, in double and exact accumulation, with the original {@link AdderVWAPCalculator}
+ * when many threads hit one bucket.
+ * <p>
+ * {@link #main} sweeps the writer thread count from 1 to 64; extra JMH command line options are passed through.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class VWAPCalculatorContentionBenchmark {
+
+    private static final int[] THREAD_COUNTS = {1, 2, 4, 8, 16, 32, 64};
+
+    @Param({"striped", "exact", "adder"})
+    public String implementation;
+
+    private Calculator calculator;
+
+    @Setup
+    public void setUp() {
+        if ("striped".equals(implementation) || "exact".equals(implementation)) {
+            VWAPCalculator striped = new VWAPCalculator(
+                    "exact".equals(implementation) ? Accumulation.EXACT : Accumulation.DOUBLE);
+            calculator = new Calculator() {
+                public void addTrade(double price, long volume) {
+                    striped.addTrade(price, volume);
+                }
+
+                public double calculateVWAP() {
+                    return striped.calculateVWAP();
+                }
+            };
+        } else {
+            AdderVWAPCalculator adder = new AdderVWAPCalculator();
+            calculator = new Calculator() {
+                public void addTrade(double price, long volume) {
+                    adder.addTrade(price, volume);
+                }
+
+                public double calculateVWAP() {
+                    return adder.calculateVWAP();
+                }
+            };
+        }
+    }
+
+    @Benchmark
+    public void addTrade() {
+        calculator.addTrade(1.1001, 100);
+    }
+
+    @Benchmark
+    @Group("readWhileWriting")
+    @GroupThreads(3)
+    public void writer() {
+        calculator.addTrade(1.1001, 100);
+    }
+
+    @Benchmark
+    @Group("readWhileWriting")
+    @GroupThreads(1)
+    public double reader() {
+        return calculator.calculateVWAP();
+    }
+
+    public static void main(String[] args) throws RunnerException, CommandLineOptionException {
+        CommandLineOptions commandLine = new CommandLineOptions(args);
+        for (int threads : THREAD_COUNTS) {
+            new Runner(new OptionsBuilder()
+                    .parent(commandLine)
+                    .include(VWAPCalculatorContentionBenchmark.class.getSimpleName() + ".addTrade")
+                    .threads(threads)
+                    .addProfiler("gc")
+                    .build()).run();
+        }
+    }
+
+    private interface Calculator {
+        void addTrade(double price, long volume);
+
+        double calculateVWAP();
+    }
+}
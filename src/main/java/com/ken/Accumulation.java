@@ -0,0 +1,27 @@
+package com.ken;
+
+/**
+ * How a bucket accumulates the price-volume sum its VWAP is derived from.
+ */
+public enum Accumulation {
+
+    /**
+     * Sum {@code price * volume} as a double. Rounding error grows with the number of trades, and concurrent
+     * writers can round in a different order from run to run.
+     */
+    DOUBLE,
+
+    /**
+     * Convert each price to a whole number of {@code 10^-8} units and sum {@code units * volume} exactly in
+     * 128 bits. Sums do not drift and are identical whatever order the trades are added in, so VWAPs are
+     * bit-identical across runs. Prices must round to at least one unit and be at most {@link FixedPoint#MAX_PRICE}.
+     */
+    EXACT;
+
+    /**
+     * Checks if a positive price can be accumulated in this mode.
+     */
+    boolean accepts(double price) {
+        return this == DOUBLE || (price <= FixedPoint.MAX_PRICE && FixedPoint.toUnits(price) > 0);
+    }
+}
@@ -0,0 +1,100 @@
+package com.ken;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Immutable archive of the closed buckets of one session.
+ * <p>
+ * A closed bucket needs no calculator cells any more, only its final VWAP and volume, so the archive keeps them in
+ * parallel primitive arrays at 22 bytes per bucket. Each close appends to a copy, which is cheap because buckets
+ * close rarely and in batches.
+ */
+final class ArchivedSession {
+
+    private final short[] pairOrdinals;
+    private final int[] slots;
+    private final double[] vwaps;
+    private final long[] volumes;
+
+    private ArchivedSession(short[] pairOrdinals, int[] slots, double[] vwaps, long[] volumes) {
+        this.pairOrdinals = pairOrdinals;
+        this.slots = slots;
+        this.vwaps = vwaps;
+        this.volumes = volumes;
+    }
+
+    int bucketCount() {
+        return slots.length;
+    }
+
+    /**
+     * Gets the VWAP of every archived bucket.
+     *
+     * @param keyFormatter: formats the result key of a bucket
+     * @return The VWAP values by bucket key.
+     */
+    Map<String, Double> vwaps(VWAPResultCache.KeyFormatter keyFormatter) {
+        Map<String, Double> result = new HashMap<>();
+        for (int i = 0; i < slots.length; i++) {
+            result.put(keyFormatter.format(pairOrdinals[i], slots[i]), vwaps[i]);
+        }
+        return Collections.unmodifiableMap(result);
+    }
+
+    /**
+     * Collects the buckets closed in one go.
+     */
+    static final class Builder {
+        private short[] pairOrdinals = new short[16];
+        private int[] slots = new int[16];
+        private double[] vwaps = new double[16];
+        private long[] volumes = new long[16];
+        private int size;
+
+        void add(int pairOrdinal, int slot, double vwap, long volume) {
+            if (size == slots.length) {
+                int capacity = size * 2;
+                pairOrdinals = Arrays.copyOf(pairOrdinals, capacity);
+                slots = Arrays.copyOf(slots, capacity);
+                vwaps = Arrays.copyOf(vwaps, capacity);
+                volumes = Arrays.copyOf(volumes, capacity);
+            }
+            pairOrdinals[size] = (short) pairOrdinal;
+            slots[size] = slot;
+            vwaps[size] = vwap;
+            volumes[size] = volume;
+            size++;
+        }
+
+        boolean isEmpty() {
+            return size == 0;
+        }
+
+        /**
+         * Builds an archive holding the buckets of an existing archive followed by the collected ones.
+         *
+         * @param archived: archive to extend, or null to start a new one
+         */
+        ArchivedSession appendTo(ArchivedSession archived) {
+            int existing = (archived == null) ? 0 : archived.bucketCount();
+            short[] newPairOrdinals = new short[existing + size];
+            int[] newSlots = new int[existing + size];
+            double[] newVwaps = new double[existing + size];
+            long[] newVolumes = new long[existing + size];
+            if (archived != null) {
+                System.arraycopy(archived.pairOrdinals, 0, newPairOrdinals, 0, existing);
+                System.arraycopy(archived.slots, 0, newSlots, 0, existing);
+                System.arraycopy(archived.vwaps, 0, newVwaps, 0, existing);
+                System.arraycopy(archived.volumes, 0, newVolumes, 0, existing);
+            }
+            System.arraycopy(pairOrdinals, 0, newPairOrdinals, existing, size);
+            System.arraycopy(slots, 0, newSlots, existing, size);
+            System.arraycopy(vwaps, 0, newVwaps, existing, size);
+            System.arraycopy(volumes, 0, newVolumes, existing, size);
+            return new ArchivedSession(newPairOrdinals, newSlots, newVwaps, newVolumes);
+        }
+    }
+}
@@ -0,0 +1,17 @@
+package com.ken;
+
+/**
+ * What a {@link TradePipeline} producer does when the ring buffer is full.
+ */
+public enum BackpressurePolicy {
+
+    /**
+     * Wait for the consumer to free a slot, spinning briefly and then parking.
+     */
+    BLOCK,
+
+    /**
+     * Discard the trade and count it as dropped.
+     */
+    DROP
+}
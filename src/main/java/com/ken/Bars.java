@@ -0,0 +1,163 @@
+package com.ken;
+
+import java.time.LocalTime;
+import java.util.Arrays;
+
+/**
+ * Bar statistics of every bucket with trades, in currency pair and time order, as returned by
+ * {@link VWAPCalculatorApplication#getAllBars()}.
+ * <p>
+ * The values are held in primitive columns and read by position, from 0 to {@link #size()} - 1, so a query does not
+ * allocate per bucket. Open and close are the prices of the earliest and latest trade, the first and last to arrive
+ * among trades sharing that time, or NaN if such trades were merged from threads or shards that nothing orders. The
+ * mean price is the plain average of the trade prices, every trade weighted equally. The time-weighted average price
+ * (TWAP) weights each price by the seconds it was in force, from its trade to the next one and from the close to the
+ * end of the bucket; it is exact for trades that arrive in time order, and approximate, as {@link #twap(int)}
+ * describes, for the rest.
+ */
+public final class Bars {
+
+    private final BucketPolicy policy;
+    private final String[] pairs;
+    private final short[] pairIndexes;
+    private final int[] slots;
+    private final double[] opens;
+    private final double[] highs;
+    private final double[] lows;
+    private final double[] closes;
+    private final double[] vwaps;
+    private final double[] meanPrices;
+    private final double[] twaps;
+    private final long[] volumes;
+    private final long[] tradeCounts;
+
+    /**
+     * Creates bars whose price statistics are filled in by {@link #set(int, BucketStats, boolean)}.
+     *
+     * @param policy:      width of the buckets
+     * @param pairs:       currency pair names, sorted
+     * @param pairIndexes: index into {@code pairs} of every bucket
+     * @param slots:       time slot of every bucket
+     * @param volumes:     volume of every bucket
+     * @param tradeCounts: number of trades of every bucket
+     */
+    Bars(BucketPolicy policy, String[] pairs, short[] pairIndexes, int[] slots, long[] volumes, long[] tradeCounts) {
+        this.policy = policy;
+        this.pairs = pairs;
+        this.pairIndexes = pairIndexes;
+        this.slots = slots;
+        this.volumes = volumes;
+        this.tradeCounts = tradeCounts;
+        this.opens = new double[slots.length];
+        this.highs = new double[slots.length];
+        this.lows = new double[slots.length];
+        this.closes = new double[slots.length];
+        this.vwaps = new double[slots.length];
+        this.meanPrices = new double[slots.length];
+        this.twaps = new double[slots.length];
+    }
+
+    void set(int i, BucketStats stats, boolean exact) {
+        opens[i] = stats.openPrice;
+        highs[i] = stats.high;
+        lows[i] = stats.low;
+        closes[i] = stats.closePrice;
+        vwaps[i] = stats.vwap(exact);
+        meanPrices[i] = stats.meanPrice(exact);
+        twaps[i] = stats.twap(exact, policy.endOf(slots[i]));
+    }
+
+    public BucketPolicy policy() {
+        return policy;
+    }
+
+    /**
+     * Gets the number of buckets.
+     */
+    public int size() {
+        return slots.length;
+    }
+
+    public String currencyPair(int i) {
+        return pairs[pairIndexes[i]];
+    }
+
+    public LocalTime bucketStart(int i) {
+        return policy.startOf(slots[i]);
+    }
+
+    public double open(int i) {
+        return opens[i];
+    }
+
+    public double high(int i) {
+        return highs[i];
+    }
+
+    public double low(int i) {
+        return lows[i];
+    }
+
+    public double close(int i) {
+        return closes[i];
+    }
+
+    public double vwap(int i) {
+        return vwaps[i];
+    }
+
+    public double meanPrice(int i) {
+        return meanPrices[i];
+    }
+
+    /**
+     * Gets the time-weighted average price of a bucket, from its first trade to the end of the bucket. A trade that
+     * arrives out of time order inside the span already covered carries no weight, and buckets merged from several
+     * threads or shards weight each source's time-weighted price by the time it covered.
+     */
+    public double twap(int i) {
+        return twaps[i];
+    }
+
+    public long volume(int i) {
+        return volumes[i];
+    }
+
+    public long tradeCount(int i) {
+        return tradeCounts[i];
+    }
+
+    /**
+     * Finds the bucket of a currency pair that a time falls in.
+     *
+     * @param currencyPair: currency pair, such as "EUR/USD"
+     * @param time:         any time within the bucket
+     * @return The position of the bucket, or -1 if it has no trades.
+     */
+    public int indexOf(String currencyPair, LocalTime time) {
+        int pairIndex = Arrays.binarySearch(pairs, currencyPair);
+        if (pairIndex < 0) {
+            return -1;
+        }
+        long key = (long) pairIndex * policy.slotsPerDay() + policy.slotOf(time.toSecondOfDay());
+        int low = 0;
+        int high = slots.length - 1;
+        while (low <= high) {
+            int middle = (low + high) >>> 1;
+            long middleKey = (long) pairIndexes[middle] * policy.slotsPerDay() + slots[middle];
+            if (middleKey < key) {
+                low = middle + 1;
+            } else if (middleKey > key) {
+                high = middle - 1;
+            } else {
+                return middle;
+            }
+        }
+        return -1;
+    }
+
+    @Override
+    public String toString() {
+        return "Bars[" + policy + ", " + slots.length + " buckets]";
+    }
+}
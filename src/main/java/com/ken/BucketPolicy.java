@@ -0,0 +1,101 @@
+package com.ken;
+
+import java.time.LocalTime;
+import java.time.format.DateTimeFormatter;
+import java.util.Locale;
+
+/**
+ * Width of the time buckets that trades are aggregated into, from one second up to a whole day.
+ * <p>
+ * A day is split into {@link #slotsPerDay()} equal slots, so a trade's bucket is its second of day divided by the
+ * width. Bucket keys are formatted as {@code h:mm a}, or {@code h:mm:ss a} for widths below a minute. Trade times are
+ * read as {@code h:mm a}; only policies finer than a minute, whose buckets need them, also accept seconds.
+ */
+public final class BucketPolicy {
+
+    static final int SECONDS_PER_DAY = 24 * 60 * 60;
+
+    public static final BucketPolicy SECOND = ofSeconds(1);
+    public static final BucketPolicy MINUTE = ofSeconds(60);
+    public static final BucketPolicy FIVE_MINUTES = ofSeconds(5 * 60);
+    public static final BucketPolicy HOURLY = ofSeconds(60 * 60);
+    public static final BucketPolicy DAILY = ofSeconds(SECONDS_PER_DAY);
+
+    private static final DateTimeFormatter MINUTE_FORMATTER = DateTimeFormatter.ofPattern("h:mm a", Locale.US);
+    private static final DateTimeFormatter SECOND_FORMATTER = DateTimeFormatter.ofPattern("h:mm:ss a", Locale.US);
+    private static final DateTimeFormatter TRADE_SECOND_FORMATTER = DateTimeFormatter.ofPattern("h:mm[:ss] a",
+            Locale.US);
+
+    private final int widthSeconds;
+
+    private BucketPolicy(int widthSeconds) {
+        this.widthSeconds = widthSeconds;
+    }
+
+    /**
+     * Creates a policy with buckets of the given width.
+     *
+     * @param widthSeconds: bucket width in seconds; must divide a day evenly
+     * @return The bucket policy.
+     */
+    public static BucketPolicy ofSeconds(int widthSeconds) {
+        if (widthSeconds < 1 || widthSeconds > SECONDS_PER_DAY || SECONDS_PER_DAY % widthSeconds != 0) {
+            throw new IllegalArgumentException("Invalid bucket width");
+        }
+        return new BucketPolicy(widthSeconds);
+    }
+
+    public int widthSeconds() {
+        return widthSeconds;
+    }
+
+    public int slotsPerDay() {
+        return SECONDS_PER_DAY / widthSeconds;
+    }
+
+    int slotOf(int secondOfDay) {
+        return secondOfDay / widthSeconds;
+    }
+
+    LocalTime startOf(int slot) {
+        return LocalTime.ofSecondOfDay((long) slot * widthSeconds);
+    }
+
+    int endOf(int slot) {
+        return (slot + 1) * widthSeconds;
+    }
+
+    /**
+     * Returns whether trade times may carry seconds, which only policies finer than a minute need.
+     */
+    boolean acceptsSeconds() {
+        return widthSeconds < 60;
+    }
+
+    /**
+     * Returns the format trade times are read in: {@code h:mm a}, or {@code h:mm[:ss] a} if the policy accepts
+     * seconds.
+     */
+    DateTimeFormatter tradeTimeFormatter() {
+        return acceptsSeconds() ? TRADE_SECOND_FORMATTER : MINUTE_FORMATTER;
+    }
+
+    String format(int slot) {
+        return startOf(slot).format(widthSeconds < 60 ? SECOND_FORMATTER : MINUTE_FORMATTER);
+    }
+
+    @Override
+    public boolean equals(Object other) {
+        return other instanceof BucketPolicy && ((BucketPolicy) other).widthSeconds == widthSeconds;
+    }
+
+    @Override
+    public int hashCode() {
+        return widthSeconds;
+    }
+
+    @Override
+    public String toString() {
+        return "BucketPolicy[" + widthSeconds + "s]";
+    }
+}
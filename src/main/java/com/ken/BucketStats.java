@@ -0,0 +1,188 @@
+package com.ken;
+
+/**
+ * Sums, trade count and bar statistics of one bucket, or of a group of trades being added to one.
+ * <p>
+ * Mutable scratch state owned by one thread: callers fill it to add pre-aggregated trades to a
+ * {@link VWAPCalculator}, and calculators fill it when read. Open and close are the prices of the trades with the
+ * earliest and latest time. Trades only carry a time of day, so several often share that time; a single writer then
+ * breaks the tie by arrival order, keeping the first trade as the open and the last as the close. Merges of trades
+ * that nothing orders against each other, such as the cells of a contended calculator or the partials of several
+ * shards, cannot do that: when they tie at different prices the open or close is undefined and reported as NaN.
+ * <p>
+ * The time-weighted sums hold each price times the seconds it was in force until the next trade, and
+ * {@link #twap(boolean, int)} closes them with the close price up to the end of the bucket. Trades added in order
+ * extend the span they cover from either end, crediting the gap to the price that was in force; a trade that arrives
+ * inside the span already covered gets no weight, since the price it interrupted is not kept. Unordered merges add
+ * the sums of their sources without crediting gaps, so their time-weighted price averages those of the sources by
+ * the time each covered. The price statistics only cover counted trades, so they are meaningless while
+ * {@link #tradeCount} is 0.
+ */
+final class BucketStats {
+
+    double priceVolumeSum;   // double accumulation
+    long priceVolumeHigh;    // exact accumulation
+    long priceVolumeLow;
+    long volumeSum;
+    long tradeCount;
+    double priceSum;         // double accumulation
+    long priceSumHigh;       // exact accumulation, in price units
+    long priceSumLow;
+    double high;
+    double low;
+    int openSecond;
+    double openPrice;
+    int closeSecond;
+    double closePrice;
+    double priceTimeSum;     // double accumulation
+    long priceTimeHigh;      // exact accumulation, in price units
+    long priceTimeLow;
+    long timeSum;
+
+    void clear() {
+        priceVolumeSum = 0.0;
+        priceVolumeHigh = 0;
+        priceVolumeLow = 0;
+        volumeSum = 0;
+        tradeCount = 0;
+        priceSum = 0.0;
+        priceSumHigh = 0;
+        priceSumLow = 0;
+        high = 0.0;
+        low = 0.0;
+        openSecond = 0;
+        openPrice = 0.0;
+        closeSecond = 0;
+        closePrice = 0.0;
+        priceTimeSum = 0.0;
+        priceTimeHigh = 0;
+        priceTimeLow = 0;
+        timeSum = 0;
+    }
+
+    BucketStats copy() {
+        BucketStats copy = new BucketStats();
+        copy.priceVolumeSum = priceVolumeSum;
+        copy.priceVolumeHigh = priceVolumeHigh;
+        copy.priceVolumeLow = priceVolumeLow;
+        copy.volumeSum = volumeSum;
+        copy.tradeCount = tradeCount;
+        copy.priceSum = priceSum;
+        copy.priceSumHigh = priceSumHigh;
+        copy.priceSumLow = priceSumLow;
+        copy.high = high;
+        copy.low = low;
+        copy.openSecond = openSecond;
+        copy.openPrice = openPrice;
+        copy.closeSecond = closeSecond;
+        copy.closePrice = closePrice;
+        copy.priceTimeSum = priceTimeSum;
+        copy.priceTimeHigh = priceTimeHigh;
+        copy.priceTimeLow = priceTimeLow;
+        copy.timeSum = timeSum;
+        return copy;
+    }
+
+    /**
+     * Gets the VWAP from the double or exact price-volume sum.
+     *
+     * @return The VWAP, or 0.0 if no volume has been traded.
+     */
+    double vwap(boolean exact) {
+        if (exact) {
+            return FixedPoint.vwap(priceVolumeHigh, priceVolumeLow, volumeSum);
+        }
+        return (volumeSum == 0) ? 0.0 : priceVolumeSum / volumeSum;
+    }
+
+    /**
+     * Gets the mean trade price from the double or exact price sum, every trade weighted equally.
+     *
+     * @return The mean price, or NaN if there are no counted trades.
+     */
+    double meanPrice(boolean exact) {
+        if (tradeCount == 0) {
+            return Double.NaN;
+        }
+        return exact ? FixedPoint.vwap(priceSumHigh, priceSumLow, tradeCount) : priceSum / tradeCount;
+    }
+
+    /**
+     * Gets the time-weighted average price from the double or exact time-weighted sums, with the close price in
+     * force from the close to the end of the bucket. Time before the open has no price and does not count. If the
+     * close is undefined, the time after it is left out.
+     *
+     * @param endSecond: end of the bucket, in seconds since midnight
+     * @return The time-weighted price, or NaN if there are no counted trades.
+     */
+    double twap(boolean exact, int endSecond) {
+        if (tradeCount == 0) {
+            return Double.NaN;
+        }
+        long tail = Double.isNaN(closePrice) ? 0 : endSecond - closeSecond;
+        if (timeSum + tail == 0) {
+            return Double.NaN;
+        }
+        if (exact) {
+            long units = FixedPoint.toUnits(closePrice);  // 0 for an undefined close, which has no tail
+            return FixedPoint.vwap(FixedPoint.addHigh(priceTimeHigh, priceTimeLow, Math.multiplyHigh(units, tail),
+                    units * tail), priceTimeLow + units * tail, timeSum + tail);
+        }
+        return (tail == 0) ? priceTimeSum / timeSum : (priceTimeSum + closePrice * tail) / (timeSum + tail);
+    }
+
+    /**
+     * Gets the seconds between a bar and trades added after it that the price in force is credited with: from the
+     * bar's close to the added open if the trades are later, or from the added close to the bar's open if they are
+     * earlier. Trades that overlap the bar's span, or an undefined price, are credited with nothing.
+     */
+    static int gapSeconds(int addedOpen, int addedClose, double addedClosePrice, int openSecond, int closeSecond,
+                          double closePrice) {
+        if (addedOpen >= closeSecond) {
+            return Double.isNaN(closePrice) ? 0 : addedOpen - closeSecond;
+        }
+        if (addedClose <= openSecond) {
+            return Double.isNaN(addedClosePrice) ? 0 : openSecond - addedClose;
+        }
+        return 0;
+    }
+
+    /**
+     * Gets the price in force during the gap {@link #gapSeconds} measures: the bar's close if the added trades are
+     * later, otherwise the added close.
+     */
+    static double gapPrice(int addedOpen, double addedClosePrice, int closeSecond, double closePrice) {
+        return (addedOpen >= closeSecond) ? closePrice : addedClosePrice;
+    }
+
+    /**
+     * Gets a bar's open price after adding trades that open at the given time and price. On a tie with the current
+     * open, trades that arrived later leave it alone, while unordered trades at a different price make it undefined,
+     * as NaN.
+     *
+     * @param ordered: whether the added trades arrived after the ones already in the bar
+     */
+    static double openPrice(int secondOfDay, double price, int openSecond, double openPrice, boolean ordered) {
+        if (secondOfDay != openSecond) {
+            return (secondOfDay < openSecond) ? price : openPrice;
+        }
+        return (ordered || price == openPrice) ? openPrice : Double.NaN;
+    }
+
+    /**
+     * Gets a bar's close price after adding trades that close at the given time and price. On a tie with the current
+     * close, trades that arrived later take it over, while unordered trades at a different price make it undefined,
+     * as NaN.
+     *
+     * @param ordered: whether the added trades arrived after the ones already in the bar
+     */
+    static double closePrice(int secondOfDay, double price, int closeSecond, double closePrice, boolean ordered) {
+        if (secondOfDay != closeSecond) {
+            return (secondOfDay > closeSecond) ? price : closePrice;
+        }
+        if (ordered) {
+            return price;
+        }
+        return (price == closePrice) ? closePrice : Double.NaN;
+    }
+}
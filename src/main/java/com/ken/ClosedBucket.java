@@ -0,0 +1,17 @@
+package com.ken;
+
+import java.time.LocalDate;
+import java.time.LocalTime;
+
+/**
+ * Final state of a bucket that has been closed, as handed to the handler set with
+ * {@link VWAPCalculatorApplication#setClosedBucketHandler(java.util.function.Consumer)}.
+ *
+ * @param session:      trading session the bucket belongs to
+ * @param currencyPair: currency pair of the bucket
+ * @param bucketStart:  start time of the bucket
+ * @param vwap:         final VWAP of the bucket
+ * @param volume:       total volume traded in the bucket
+ */
+public record ClosedBucket(LocalDate session, String currencyPair, LocalTime bucketStart, double vwap, long volume) {
+}
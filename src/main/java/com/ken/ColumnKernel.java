@@ -0,0 +1,57 @@
+package com.ken;
+
+/**
+ * Whole-column validation and multiplication used by {@link ColumnarIngest}.
+ * <p>
+ * Each method covers a range of a batch at once, so an implementation can process several trades per instruction.
+ * The checks only answer whether the whole range is valid; the caller re-checks trade by trade to find out which
+ * trades to reject.
+ */
+interface ColumnKernel {
+
+    /**
+     * Checks that every value in the range is at least 0 and less than the bound.
+     *
+     * @param values: column to check
+     * @param from:   first index, inclusive
+     * @param to:     last index, exclusive
+     * @param bound:  exclusive upper bound
+     * @return True if every value is in range.
+     */
+    boolean allInRange(int[] values, int from, int to, int bound);
+
+    /**
+     * Checks that every value in the range is at least 0 and less than the bound.
+     *
+     * @param values: column to check
+     * @param from:   first index, inclusive
+     * @param to:     last index, exclusive
+     * @param bound:  exclusive upper bound; at most {@link Short#MAX_VALUE} + 1
+     * @return True if every value is in range.
+     */
+    boolean allInRange(short[] values, int from, int to, int bound);
+
+    /**
+     * Writes {@code prices[i] * volumes[i]} to {@code products[i - from]} for every trade in the range, rounded
+     * exactly as the scalar {@code price * volume}, and checks that every price and volume is positive.
+     *
+     * @param prices:   price column
+     * @param volumes:  volume column
+     * @param from:     first index, inclusive
+     * @param to:       last index, exclusive
+     * @param products: receives the products; at least {@code to - from} long
+     * @return True if every price and volume is positive. Products of invalid trades are meaningless.
+     */
+    boolean multiply(double[] prices, long[] volumes, int from, int to, double[] products);
+
+    /**
+     * Writes {@code secondsOfDay[i] / widthSeconds} to {@code slots[i - from]} for every trade in the range.
+     *
+     * @param secondsOfDay: trade times; every value must be in range
+     * @param from:         first index, inclusive
+     * @param to:           last index, exclusive
+     * @param widthSeconds: bucket width; must divide a day evenly
+     * @param slots:        receives the slots; at least {@code to - from} long
+     */
+    void slots(int[] secondsOfDay, int from, int to, int widthSeconds, int[] slots);
+}
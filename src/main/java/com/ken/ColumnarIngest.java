@@ -0,0 +1,149 @@
+package com.ken;
+
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Aggregates a batch of trades held in parallel primitive columns into partial sums.
+ * <p>
+ * The batch is handled in chunks. For each chunk the {@link ColumnKernel} checks the time, pair, price and volume
+ * columns as a whole and computes every slot and {@code price * volume} product, after which the products are
+ * scatter-added into per-bucket sums and bars in a tight loop with no per-trade checks. A chunk that fails any
+ * check, or that may hit a closed bucket, is re-checked trade by trade so exactly the invalid trades are rejected.
+ * The sums go into a {@link ParallelIngest.Partial}, which is dense, indexed by bucket, when there are few enough
+ * buckets, such as 21 pairs of hourly buckets. Either way every bucket's sum is accumulated in trade order from
+ * products rounded as in the row paths, so the batch adds the same sums to the store as the parallel path would.
+ * <p>
+ * The kernel uses the Vector API when the {@code jdk.incubator.vector} module is in the boot layer
+ * ({@code --add-modules jdk.incubator.vector}) and falls back to a scalar kernel otherwise. In
+ * {@link Accumulation#EXACT} mode prices are converted to fixed point one by one, so only the checks are done
+ * per chunk.
+ */
+final class ColumnarIngest {
+
+    private static final Logger LOGGER = Logger.getLogger(ColumnarIngest.class.getName());
+    static final int CHUNK_SIZE = 1024;
+    static final ColumnKernel KERNEL = loadKernel();
+
+    private final VWAPStore store;
+    private final CurrencyPairRegistry currencyPairs;
+    private final ColumnKernel kernel;
+    private final TradeSink observer;
+    private final ParallelIngest.Partial partial;
+    private final boolean exact;
+    private final int pairCount;
+
+    private ColumnarIngest(VWAPStore store, CurrencyPairRegistry currencyPairs, ColumnKernel kernel,
+                           TradeSink observer) {
+        this.store = store;
+        this.currencyPairs = currencyPairs;
+        this.kernel = kernel;
+        this.observer = observer;
+        this.exact = store.accumulation() == Accumulation.EXACT;
+        this.pairCount = currencyPairs.size();
+        this.partial = new ParallelIngest.Partial(store.policy(), store.accumulation(), observer, pairCount);
+    }
+
+    /**
+     * Validates and aggregates the first {@code count} trades of the columns.
+     *
+     * @param store:         store the trades are for; supplies the bucket policy, accumulation and closed buckets
+     * @param currencyPairs: registry the pair ids belong to
+     * @param kernel:        column kernel
+     * @param secondsOfDay:  trade times in seconds since midnight
+     * @param pairIds:       currency pair ids
+     * @param prices:        trade prices
+     * @param volumes:       trade volumes
+     * @param count:         number of trades
+     * @param observer:      receives every accepted trade, or null
+     * @return The sums of the accepted trades and the indexes of the rejected ones.
+     */
+    static ParallelIngest.Partial aggregate(VWAPStore store, CurrencyPairRegistry currencyPairs, ColumnKernel kernel,
+                                            int[] secondsOfDay, short[] pairIds, double[] prices, long[] volumes,
+                                            int count, TradeSink observer) {
+        ColumnarIngest ingest = new ColumnarIngest(store, currencyPairs, kernel, observer);
+        ingest.aggregate(secondsOfDay, pairIds, prices, volumes, count);
+        return ingest.partial;
+    }
+
+    private void aggregate(int[] secondsOfDay, short[] pairIds, double[] prices, long[] volumes, int count) {
+        // retired pairs and closed buckets are rare, so their chunks take the checked path rather than every chunk
+        // checking for them
+        boolean checkEveryTrade = exact || store.closedSlots() > 0 || currencyPairs.hasRetired();
+        double[] products = new double[Math.min(count, CHUNK_SIZE)];
+        int[] slots = new int[products.length];
+        for (int from = 0; from < count; from += CHUNK_SIZE) {
+            int to = Math.min(count, from + CHUNK_SIZE);
+            boolean valid = kernel.allInRange(secondsOfDay, from, to, BucketPolicy.SECONDS_PER_DAY)
+                    & kernel.allInRange(pairIds, from, to, pairCount);
+            if (!exact) {
+                valid &= kernel.multiply(prices, volumes, from, to, products);
+            }
+            if (!valid || checkEveryTrade) {
+                aggregateChecked(secondsOfDay, pairIds, prices, volumes, from, to);
+                continue;
+            }
+            if (observer != null) {
+                for (int i = from; i < to; i++) {
+                    observer.accept(pairIds[i], secondsOfDay[i], prices[i], volumes[i]);
+                }
+            }
+            kernel.slots(secondsOfDay, from, to, store.policy().widthSeconds(), slots);
+            partial.addProducts(secondsOfDay, pairIds, prices, volumes, slots, products, from, to);
+        }
+    }
+
+    private void aggregateChecked(int[] secondsOfDay, short[] pairIds, double[] prices, long[] volumes, int from,
+                                  int to) {
+        for (int i = from; i < to; i++) {
+            RejectReason reason = check(store, currencyPairs, secondsOfDay[i], pairIds[i], prices[i], volumes[i]);
+            if (reason == null && pairIds[i] >= pairCount) {
+                reason = RejectReason.CURRENCY_PAIR;  // added after this batch started
+            }
+            if (reason != null) {
+                partial.reject(i, reason);
+                continue;
+            }
+            if (observer != null) {
+                observer.accept(pairIds[i], secondsOfDay[i], prices[i], volumes[i]);
+            }
+            partial.addTrade(pairIds[i], secondsOfDay[i], prices[i], volumes[i]);
+        }
+    }
+
+    /**
+     * Validates one trade in the order {@link VWAPCalculatorApplication#checkTrade(String[])} does.
+     *
+     * @return null if the trade is valid, otherwise the first check it fails.
+     */
+    static RejectReason check(VWAPStore store, CurrencyPairRegistry currencyPairs, int secondOfDay, int pairId,
+                              double price, long volume) {
+        if (secondOfDay < 0 || secondOfDay >= BucketPolicy.SECONDS_PER_DAY) {
+            return RejectReason.TIME;
+        }
+        if (!currencyPairs.isActive(pairId)) {
+            return RejectReason.CURRENCY_PAIR;
+        }
+        if (!(price > 0.0) || !store.accumulation().accepts(price)) {
+            return RejectReason.PRICE;
+        }
+        if (volume <= 0) {
+            return RejectReason.VOLUME;
+        }
+        if (store.isClosed(secondOfDay)) {
+            return RejectReason.CLOSED_BUCKET;
+        }
+        return null;
+    }
+
+    private static ColumnKernel loadKernel() {
+        if (ModuleLayer.boot().findModule("jdk.incubator.vector").isPresent()) {
+            try {
+                return new VectorColumnKernel();
+            } catch (LinkageError e) {
+                LOGGER.log(Level.WARNING, "Vector API unavailable, using scalar column kernel", e);
+            }
+        }
+        return new ScalarColumnKernel();
+    }
+}
@@ -0,0 +1,325 @@
+package com.ken;
+
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Currency pairs an application accepts, each with a compact id that indexes its buckets and counters.
+ * <p>
+ * Pairs are {@code AAA/BBB} codes, so a pair fits in a long as seven ASCII bytes. Lookups go through a perfect hash
+ * of those longs built by hash and displace: a first hash picks a group, the group's displacement picks the slot,
+ * and one compare of the packed key confirms the match, so a lookup never probes and can be done straight from the
+ * bytes of a record without building a String. The table is rebuilt copy-on-write whenever a pair is added or
+ * retired and published through a volatile field, so readers never lock. Ids are assigned in order and never
+ * reused: a retired pair keeps its id, and its existing buckets stay readable under its name, but its trades are
+ * rejected until it is added again.
+ */
+final class CurrencyPairRegistry {
+
+    static final int MAX_PAIRS = 1024;
+    static final int PAIR_LENGTH = 7;
+    private static final long GOLDEN_GAMMA = 0x9E3779B97F4A7C15L;
+    private static final int MAX_DISPLACEMENT = 1 << 16;
+
+    private final Map<String, Integer> ids = new HashMap<>();  // every id assigned, guarded by this
+    private volatile Table table = Table.build(new String[0], new boolean[0]);
+
+    CurrencyPairRegistry(String... currencyPairs) {
+        for (String currencyPair : currencyPairs) {
+            add(currencyPair);
+        }
+    }
+
+    /**
+     * Adds a pair, or reactivates a retired one under its old id.
+     *
+     * @param currencyPair: pair code, three upper-case letters, a slash and three upper-case letters
+     * @return The pair's id.
+     * @throws IllegalArgumentException if the code is malformed
+     * @throws IllegalStateException    if {@link #MAX_PAIRS} ids have been assigned
+     */
+    synchronized int add(String currencyPair) {
+        if (!isPairCode(currencyPair)) {
+            throw new IllegalArgumentException(VWAPCalculatorApplication.INVALID_CURRENCY_PAIR);
+        }
+        Table current = table;
+        Integer id = ids.get(currencyPair);
+        if (id != null && current.active[id]) {
+            return id;
+        }
+        String[] names = current.names;
+        boolean[] active = Arrays.copyOf(current.active, current.active.length);
+        if (id == null) {
+            if (names.length == MAX_PAIRS) {
+                throw new IllegalStateException("Currency pair registry is full");
+            }
+            id = names.length;
+            names = Arrays.copyOf(names, id + 1);
+            names[id] = currencyPair;
+            active = Arrays.copyOf(active, id + 1);
+            ids.put(currencyPair, id);
+        }
+        active[id] = true;
+        table = Table.build(names, active);
+        return id;
+    }
+
+    /**
+     * Stops accepting a pair's trades. Its id stays assigned to it.
+     *
+     * @return True if the pair was active.
+     */
+    synchronized boolean retire(String currencyPair) {
+        Integer id = ids.get(currencyPair);
+        Table current = table;
+        if (id == null || !current.active[id]) {
+            return false;
+        }
+        boolean[] active = current.active.clone();
+        active[id] = false;
+        table = Table.build(current.names, active);
+        return true;
+    }
+
+    /**
+     * @return The id of an active pair, or -1 if the pair is unknown or retired.
+     */
+    int idOf(String currencyPair) {
+        if (currencyPair == null || currencyPair.length() != PAIR_LENGTH) {
+            return -1;
+        }
+        long key = 0;
+        for (int i = 0; i < PAIR_LENGTH; i++) {
+            char c = currencyPair.charAt(i);
+            if (c > 0x7F) {
+                return -1;
+            }
+            key = key << 8 | c;
+        }
+        return table.find(key);
+    }
+
+    /**
+     * Looks a pair up from its ASCII code in a buffer.
+     *
+     * @param buffer: buffer holding the code
+     * @param start:  index of the first byte of the code
+     * @param end:    index after the last byte of the code
+     * @return The id of an active pair, or -1 if the bytes are not one.
+     */
+    int idOf(ByteBuffer buffer, int start, int end) {
+        if (end - start != PAIR_LENGTH) {
+            return -1;
+        }
+        long key = 0;
+        for (int i = start; i < end; i++) {
+            key = key << 8 | (buffer.get(i) & 0xFF);
+        }
+        return table.find(key);
+    }
+
+    /**
+     * @return The name of any assigned id, retired or not.
+     */
+    String nameOf(int id) {
+        return table.names[id];
+    }
+
+    /**
+     * @return True if the id belongs to an active pair.
+     */
+    boolean isActive(int id) {
+        boolean[] active = table.active;
+        return id >= 0 && id < active.length && active[id];
+    }
+
+    /**
+     * @return The number of ids assigned so far; every id is below it.
+     */
+    int size() {
+        return table.names.length;
+    }
+
+    /**
+     * @return True if any assigned id belongs to a retired pair.
+     */
+    boolean hasRetired() {
+        return table.retired > 0;
+    }
+
+    /**
+     * @return The names of every assigned id, indexed by id.
+     */
+    String[] names() {
+        return table.names;
+    }
+
+    /**
+     * @return The ids of every assigned pair, retired or not, by name.
+     */
+    synchronized Map<String, Integer> ids() {
+        return Map.copyOf(ids);
+    }
+
+    /**
+     * @return The active pairs in id order.
+     */
+    Set<String> activePairs() {
+        Table current = table;
+        Set<String> pairs = new LinkedHashSet<>();
+        for (int id = 0; id < current.names.length; id++) {
+            if (current.active[id]) {
+                pairs.add(current.names[id]);
+            }
+        }
+        return Collections.unmodifiableSet(pairs);
+    }
+
+    /**
+     * Checks if a string is a pair code, three upper-case letters, a slash and three upper-case letters.
+     */
+    static boolean isPairCode(String currencyPair) {
+        if (currencyPair == null || currencyPair.length() != PAIR_LENGTH || currencyPair.charAt(3) != '/') {
+            return false;
+        }
+        for (int i = 0; i < PAIR_LENGTH; i++) {
+            char c = currencyPair.charAt(i);
+            if (i != 3 && (c < 'A' || c > 'Z')) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static long mix(long x) {
+        x = (x ^ (x >>> 33)) * 0xFF51AFD7ED558CCDL;
+        x = (x ^ (x >>> 33)) * 0xC4CEB9FE1A85EC53L;
+        return x ^ (x >>> 33);
+    }
+
+    /**
+     * Immutable perfect hash of the active pairs. Slots hold packed keys and ids; a group's keys are placed by
+     * trying displacements until they all land in free slots, largest groups first. With at most half the slots
+     * used and about two keys per group a free placement is found within a few tries.
+     */
+    private static final class Table {
+        final String[] names;
+        final boolean[] active;
+        final int retired;
+        final long[] keys;
+        final int[] slotIds;
+        final int[] displacements;
+        final int slotMask;
+        final int groupMask;
+
+        private Table(String[] names, boolean[] active, int retired, int slotCount, int groupCount) {
+            this.names = names;
+            this.active = active;
+            this.retired = retired;
+            this.keys = new long[slotCount];
+            this.slotIds = new int[slotCount];
+            Arrays.fill(slotIds, -1);
+            this.displacements = new int[groupCount];
+            this.slotMask = slotCount - 1;
+            this.groupMask = groupCount - 1;
+        }
+
+        int find(long key) {
+            long hash = mix(key);
+            int slot = slot(hash, displacements[group(hash)]);
+            return (keys[slot] == key) ? slotIds[slot] : -1;
+        }
+
+        private int group(long hash) {
+            return (int) (hash >>> 40) & groupMask;
+        }
+
+        private int slot(long hash, int displacement) {
+            return (int) mix(hash + displacement * GOLDEN_GAMMA) & slotMask;
+        }
+
+        static Table build(String[] names, boolean[] active) {
+            int count = 0;
+            for (boolean isActive : active) {
+                count += isActive ? 1 : 0;
+            }
+            long[] keys = new long[count];
+            int[] ids = new int[count];
+            for (int id = 0, i = 0; id < names.length; id++) {
+                if (active[id]) {
+                    for (int c = 0; c < PAIR_LENGTH; c++) {
+                        keys[i] = keys[i] << 8 | names[id].charAt(c);
+                    }
+                    ids[i++] = id;
+                }
+            }
+            int slotCount = Math.max(8, Integer.highestOneBit(Math.max(1, count)) << 2);
+            while (true) {
+                Table table = new Table(names, active, names.length - count, slotCount, slotCount / 4);
+                if (table.place(keys, ids)) {
+                    return table;
+                }
+                slotCount <<= 1;
+            }
+        }
+
+        private boolean place(long[] keys, int[] ids) {
+            int[][] groups = new int[displacements.length][];
+            int[] groupSizes = new int[displacements.length];
+            for (int i = 0; i < keys.length; i++) {
+                int group = group(mix(keys[i]));
+                groups[group] = (groups[group] == null) ? new int[2] : groups[group];
+                if (groupSizes[group] == groups[group].length) {
+                    groups[group] = Arrays.copyOf(groups[group], groupSizes[group] * 2);
+                }
+                groups[group][groupSizes[group]++] = i;
+            }
+            Integer[] order = new Integer[groups.length];
+            for (int group = 0; group < order.length; group++) {
+                order[group] = group;
+            }
+            Arrays.sort(order, (a, b) -> groupSizes[b] - groupSizes[a]);
+            int[] placed = new int[keys.length];
+            for (int group : order) {
+                int size = groupSizes[group];
+                if (size == 0) {
+                    break;
+                }
+                if (!placeGroup(keys, ids, groups[group], size, group, placed)) {
+                    return false;
+                }
+            }
+            return true;
+        }
+
+        private boolean placeGroup(long[] keys, int[] ids, int[] members, int size, int group, int[] placed) {
+            for (int displacement = 0; displacement < MAX_DISPLACEMENT; displacement++) {
+                int taken = 0;
+                for (; taken < size; taken++) {
+                    int slot = slot(mix(keys[members[taken]]), displacement);
+                    if (slotIds[slot] != -1) {
+                        break;
+                    }
+                    slotIds[slot] = ids[members[taken]];
+                    placed[taken] = slot;
+                }
+                if (taken == size) {
+                    for (int i = 0; i < size; i++) {
+                        this.keys[placed[i]] = keys[members[i]];
+                    }
+                    displacements[group] = displacement;
+                    return true;
+                }
+                for (int i = 0; i < taken; i++) {
+                    slotIds[placed[i]] = -1;
+                }
+            }
+            return false;
+        }
+    }
+}
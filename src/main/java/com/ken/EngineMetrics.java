@@ -0,0 +1,81 @@
+package com.ken;
+
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Counters and latency histograms recorded while metrics are enabled.
+ * <p>
+ * Trade counters are {@link LongAdder}s indexed by pair ordinal, so recording a trade is two uncontended
+ * increments without allocation. Rates are derived when a snapshot is taken, by comparing the totals with those of
+ * the snapshot that started the current interval; an interval closes once it is at least a second long, so rates
+ * stay meaningful however often snapshots are taken. Only snapshots that advance the rates close an interval;
+ * the others report the rates of the last completed one.
+ */
+final class EngineMetrics {
+
+    private static final long NANOS_PER_SECOND = 1_000_000_000L;
+
+    private final CurrencyPairRegistry currencyPairs;
+    private final LongAdder acceptedTrades = new LongAdder();
+    private final LongAdder[] volumeByPair;
+    final LatencyHistogram processTradesLatency = new LatencyHistogram();
+    final LatencyHistogram getAllVWAPLatency = new LatencyHistogram();
+
+    private long intervalStartNanos = System.nanoTime();
+    private long intervalStartAccepted;
+    private long intervalStartRejected;
+    private double acceptedPerSecond;
+    private double rejectedPerSecond;
+
+    /**
+     * @param currencyPairs:  registry naming the currency pairs
+     * @param rejectedTrades: total of rejected trades when metrics are enabled
+     */
+    EngineMetrics(CurrencyPairRegistry currencyPairs, long rejectedTrades) {
+        this.currencyPairs = currencyPairs;
+        this.intervalStartRejected = rejectedTrades;
+        this.volumeByPair = new LongAdder[CurrencyPairRegistry.MAX_PAIRS];
+        for (int i = 0; i < volumeByPair.length; i++) {
+            volumeByPair[i] = new LongAdder();
+        }
+    }
+
+    void recordTrade(int pairOrdinal, long volume) {
+        acceptedTrades.increment();
+        volumeByPair[pairOrdinal].add(volume);
+    }
+
+    /**
+     * @param rejectedTrades: current total of rejected trades
+     * @param bucketCount:    current number of buckets
+     * @param memoryBytes:    current memory estimate
+     * @param advanceRates:   whether this snapshot may close the current rate interval
+     */
+    synchronized MetricsSnapshot snapshot(long rejectedTrades, int bucketCount, long memoryBytes,
+                                          boolean advanceRates) {
+        long now = System.nanoTime();
+        long accepted = acceptedTrades.sum();
+        long elapsed = now - intervalStartNanos;
+        if (advanceRates && elapsed >= NANOS_PER_SECOND) {
+            double seconds = (double) elapsed / NANOS_PER_SECOND;
+            acceptedPerSecond = (accepted - intervalStartAccepted) / seconds;
+            rejectedPerSecond = (rejectedTrades - intervalStartRejected) / seconds;
+            intervalStartNanos = now;
+            intervalStartAccepted = accepted;
+            intervalStartRejected = rejectedTrades;
+        }
+        Map<String, Long> volumes = new LinkedHashMap<>();
+        for (int i = 0; i < volumeByPair.length; i++) {
+            long volume = volumeByPair[i].sum();
+            if (volume > 0) {
+                volumes.put(currencyPairs.nameOf(i), volume);
+            }
+        }
+        return new MetricsSnapshot(true, accepted, rejectedTrades, acceptedPerSecond, rejectedPerSecond,
+                Collections.unmodifiableMap(volumes), processTradesLatency.snapshot(), getAllVWAPLatency.snapshot(),
+                bucketCount, memoryBytes);
+    }
+}
@@ -0,0 +1,85 @@
+package com.ken;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Running ingestion of several {@link TradeFeed}s, each on its own virtual thread.
+ * <p>
+ * Feeds share the application's store but nothing else, so a feed that throws or sends malformed trades only
+ * affects itself: invalid trades are rejected and counted as usual, and a feed whose source fails ends with
+ * {@link FeedResult.Status#FAILED} while the others carry on. The ingestion is structured: every feed thread is
+ * owned by it, {@link #awaitCompletion()} returns once they have all ended, and {@link #close()} cancels the feeds
+ * that are still running and waits for them, so no feed thread outlives it.
+ */
+public final class FeedIngestion implements AutoCloseable {
+
+    private static final Logger LOGGER = Logger.getLogger(FeedIngestion.class.getName());
+
+    private final List<TradeFeed> feeds;
+    private final ExecutorService executor;
+    private final List<Future<FeedResult>> results = new ArrayList<>();
+    private volatile boolean cancelled;
+
+    FeedIngestion(VWAPCalculatorApplication application, List<TradeFeed> feeds) {
+        this.feeds = feeds;
+        this.executor = Executors.newThreadPerTaskExecutor(Thread.ofVirtual().name("vwap-feed-", 0).factory());
+        for (TradeFeed feed : feeds) {
+            results.add(executor.submit(() -> run(application, feed)));
+        }
+        executor.shutdown();
+    }
+
+    /**
+     * Waits for every feed to end.
+     *
+     * @return The result of each feed, in the order the feeds were given.
+     * @throws InterruptedException if the calling thread is interrupted while waiting
+     */
+    public List<FeedResult> awaitCompletion() throws InterruptedException {
+        List<FeedResult> completed = new ArrayList<>(results.size());
+        for (Future<FeedResult> result : results) {
+            try {
+                completed.add(result.get());
+            } catch (ExecutionException e) {
+                throw new IllegalStateException("Feed task failed outside its feed", e.getCause());
+            }
+        }
+        return completed;
+    }
+
+    /**
+     * Cancels the feeds that are still running and waits for every feed thread to end. Blocked reads are
+     * unblocked by interrupting the feed thread and, for streams, by closing the stream.
+     */
+    @Override
+    public void close() {
+        cancelled = true;
+        executor.shutdownNow();
+        for (TradeFeed feed : feeds) {
+            feed.cancel();
+        }
+        executor.close();
+    }
+
+    private FeedResult run(VWAPCalculatorApplication application, TradeFeed feed) {
+        try {
+            feed.drain(application);
+            return new FeedResult(feed.name(), FeedResult.Status.COMPLETED, feed.records, null);
+        } catch (InterruptedException e) {
+            return new FeedResult(feed.name(), FeedResult.Status.CANCELLED, feed.records, null);
+        } catch (Exception e) {
+            if (cancelled) {
+                return new FeedResult(feed.name(), FeedResult.Status.CANCELLED, feed.records, null);
+            }
+            LOGGER.log(Level.SEVERE, "Feed " + feed.name() + " failed after " + feed.records + " records", e);
+            return new FeedResult(feed.name(), FeedResult.Status.FAILED, feed.records, e);
+        }
+    }
+}
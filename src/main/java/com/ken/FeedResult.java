@@ -0,0 +1,29 @@
+package com.ken;
+
+/**
+ * Outcome of one feed of a {@link FeedIngestion}.
+ *
+ * @param feed:    name of the feed
+ * @param status:  how the feed ended
+ * @param records: number of records read from the feed, valid or not
+ * @param failure: what stopped a failed feed, otherwise null
+ */
+public record FeedResult(String feed, Status status, long records, Throwable failure) {
+
+    public enum Status {
+        /**
+         * The feed was read to its end.
+         */
+        COMPLETED,
+
+        /**
+         * Reading the feed threw; the other feeds carried on.
+         */
+        FAILED,
+
+        /**
+         * The ingestion was closed before the feed ended.
+         */
+        CANCELLED
+    }
+}
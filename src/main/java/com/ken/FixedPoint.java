@@ -0,0 +1,57 @@
+package com.ken;
+
+/**
+ * Fixed-point arithmetic for {@link Accumulation#EXACT}.
+ * <p>
+ * Prices are held as whole multiples of {@code 10^-8}, which covers every FX price quoted to eight decimals or
+ * fewer. Rounding the parsed double to the nearest unit recovers the decimal exactly for prices below 2^53
+ * units. A price-volume sum is a signed 128-bit value kept as a high and a low long; the low half is unsigned.
+ */
+final class FixedPoint {
+
+    static final int DECIMALS = 8;
+    static final long SCALE = 100_000_000L;
+    static final double MAX_PRICE = (double) Long.MAX_VALUE / SCALE;
+
+    private static final double TWO_TO_64 = 0x1.0p64;
+
+    private FixedPoint() {
+    }
+
+    /**
+     * Converts a price to units of {@code 10^-8}.
+     *
+     * @param price: price no greater than {@link #MAX_PRICE}
+     * @return The nearest whole number of units.
+     */
+    static long toUnits(double price) {
+        return Math.round(price * SCALE);
+    }
+
+    /**
+     * Adds two 128-bit values and returns the high half of the sum. The low half is {@code low + otherLow}.
+     */
+    static long addHigh(long high, long low, long otherHigh, long otherLow) {
+        long carry = Long.compareUnsigned(low + otherLow, low) < 0 ? 1 : 0;
+        return high + otherHigh + carry;
+    }
+
+    /**
+     * Converts a 128-bit value to the nearest double, give or take an ulp.
+     */
+    static double toDouble(long high, long low) {
+        return high * TWO_TO_64 + (double) (low >>> 1) * 2.0 + (low & 1);
+    }
+
+    /**
+     * Derives a VWAP from an exact price-volume sum.
+     *
+     * @param high:   high half of the sum of {@code units * volume}
+     * @param low:    low half of the sum of {@code units * volume}
+     * @param volume: sum of volume
+     * @return The VWAP, or 0.0 if no volume has been traded.
+     */
+    static double vwap(long high, long low, long volume) {
+        return (volume == 0) ? 0.0 : toDouble(high, low) / ((double) volume * SCALE);
+    }
+}
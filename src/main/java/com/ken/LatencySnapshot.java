@@ -0,0 +1,13 @@
+package com.ken;
+
+/**
+ * Latency distribution of an operation. Percentiles are the upper bound of the histogram bucket they fall in.
+ *
+ * @param count:     number of recorded operations
+ * @param p50Nanos:  median latency in nanoseconds
+ * @param p99Nanos:  99th percentile latency in nanoseconds
+ * @param p999Nanos: 99.9th percentile latency in nanoseconds
+ * @param maxNanos:  highest latency in nanoseconds
+ */
+public record LatencySnapshot(long count, long p50Nanos, long p99Nanos, long p999Nanos, long maxNanos) {
+}
@@ -0,0 +1,24 @@
+package com.ken;
+
+import java.util.Map;
+
+/**
+ * Point-in-time view of the engine metrics. Trade counts, rates, volumes and latencies are zero while metrics are
+ * disabled; the bucket count and memory estimate are always filled in.
+ *
+ * @param enabled:                whether metrics are being recorded
+ * @param acceptedTrades:         trades accepted since metrics were enabled
+ * @param rejectedTrades:         trades rejected since the application was created
+ * @param acceptedTradesPerSecond: accepted trades per second, over the last completed interval of at least a second
+ * @param rejectedTradesPerSecond: rejected trades per second, over the same interval
+ * @param volumeByPair:           traded volume per currency pair, for pairs with trades
+ * @param processTradesLatency:   latency of {@code processTrades} calls
+ * @param getAllVWAPLatency:      latency of {@code getAllVWAP} calls
+ * @param bucketCount:            number of VWAP buckets with trades
+ * @param estimatedMemoryBytes:   estimated heap used by the buckets
+ */
+public record MetricsSnapshot(boolean enabled, long acceptedTrades, long rejectedTrades, double acceptedTradesPerSecond,
+                              double rejectedTradesPerSecond, Map<String, Long> volumeByPair,
+                              LatencySnapshot processTradesLatency, LatencySnapshot getAllVWAPLatency, int bucketCount,
+                              long estimatedMemoryBytes) {
+}
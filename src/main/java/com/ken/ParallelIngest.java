@@ -0,0 +1,484 @@
+package com.ken;
+
+import java.util.Arrays;
+import java.util.concurrent.RecursiveTask;
+
+/**
+ * Fork/join task that aggregates a slice of a trade batch into private partial sums.
+ * <p>
+ * Leaves validate and accumulate their trades into a private open-addressing table of per-bucket sums and bars, so
+ * workers never touch the shared calculators. The table only holds the buckets a slice actually hits, which keeps it
+ * small for fine bucket policies. Joining adds the tables together, and the caller merges the final partial into the
+ * store once per bucket. Workers never call the application's per-trade observer, such as the journal and the
+ * rolling windows, because leaves finish in no particular order: when the caller needs individual trades it passes
+ * {@link ObservedTrades}, the leaves record each decoded trade at its batch index, and the caller replays them in
+ * batch order after the join. Rejected trades are remembered by index and kept in batch order, so the caller can
+ * count and log them exactly as the sequential path would.
+ */
+@SuppressWarnings("serial") // fork/join tasks are never serialized
+final class ParallelIngest extends RecursiveTask<ParallelIngest.Partial> {
+
+    private static final TradeSink IGNORED = (pairOrdinal, secondOfDay, price, volume) -> { };
+
+    private final VWAPCalculatorApplication application;
+    private final String[][] trades;
+    private final int from;
+    private final int to;
+    private final int leafSize;
+    private final BucketPolicy policy;
+    private final ObservedTrades observed;
+
+    /**
+     * @param observed: columns the leaves record accepted trades into, or null if nothing observes them
+     */
+    ParallelIngest(VWAPCalculatorApplication application, String[][] trades, int from, int to, int leafSize,
+                   BucketPolicy policy, ObservedTrades observed) {
+        this.application = application;
+        this.trades = trades;
+        this.from = from;
+        this.to = to;
+        this.leafSize = leafSize;
+        this.policy = policy;
+        this.observed = observed;
+    }
+
+    @Override
+    protected Partial compute() {
+        if (to - from <= leafSize) {
+            ObservedTrades.Recorder recorder = (observed == null) ? null : observed.new Recorder();
+            Partial partial = new Partial(policy, application.vwapStore.accumulation(),
+                    (recorder == null) ? IGNORED : recorder);
+            for (int i = from; i < to; i++) {
+                if (recorder != null) {
+                    recorder.index = i;
+                }
+                RejectReason reason = application.processSingleTrade(trades[i], partial);
+                if (reason != null) {
+                    partial.reject(i, reason);
+                }
+            }
+            return partial;
+        }
+        int middle = (from + to) >>> 1;
+        ParallelIngest left = new ParallelIngest(application, trades, from, middle, leafSize, policy, observed);
+        ParallelIngest right = new ParallelIngest(application, trades, middle, to, leafSize, policy, observed);
+        right.fork();
+        Partial merged = left.compute();
+        merged.merge(right.join());
+        return merged;
+    }
+
+    /**
+     * Decoded trades of a batch, stored at their batch index by the leaves that accept them, so they can be handed
+     * to the per-trade observer in batch order once every leaf is done. Leaves write disjoint indexes, and joining
+     * the task makes their writes visible to the caller.
+     */
+    static final class ObservedTrades {
+        private final int[] pairOrdinals;
+        private final int[] secondsOfDay;
+        private final double[] prices;
+        private final long[] volumes;
+
+        ObservedTrades(int size) {
+            pairOrdinals = new int[size];
+            secondsOfDay = new int[size];
+            prices = new double[size];
+            volumes = new long[size];
+        }
+
+        /**
+         * Passes every trade of the batch that {@code partial} did not reject to {@code observer}, in batch order.
+         *
+         * @param partial:  joined result of the task the trades were recorded by
+         * @param observer: receives the accepted trades
+         */
+        void replay(Partial partial, TradeSink observer) {
+            int rejected = 0;
+            for (int i = 0; i < pairOrdinals.length; i++) {
+                if (rejected < partial.rejectedCount && partial.rejectedIndexes[rejected] == i) {
+                    rejected++;
+                } else {
+                    observer.accept(pairOrdinals[i], secondsOfDay[i], prices[i], volumes[i]);
+                }
+            }
+        }
+
+        /**
+         * Records the trades of one leaf at the index the leaf is processing.
+         */
+        final class Recorder implements TradeSink {
+            int index;
+
+            @Override
+            public void accept(int pairOrdinal, int secondOfDay, double price, long volume) {
+                pairOrdinals[index] = pairOrdinal;
+                secondsOfDay[index] = secondOfDay;
+                prices[index] = price;
+                volumes[index] = volume;
+            }
+        }
+    }
+
+    /**
+     * Partial price-volume, volume and time-weighted sums, trade counts and bars of one slice, keyed by
+     * {@code pairOrdinal * slotsPerDay + slot}, plus the trades it rejected. In {@link Accumulation#EXACT} mode the
+     * price-volume sums are 128-bit fixed point, so pre-aggregating does not round. A partial is an open-addressing
+     * table that only holds the buckets it hits, or, when built for a known number of pairs with few enough
+     * buckets, a dense table indexed by key.
+     */
+    static final class Partial implements TradeSink {
+        static final int DENSE_BUCKETS = 1 << 13;
+        private static final int EMPTY = -1;
+
+        private final BucketPolicy policy;
+        private final boolean exact;
+        private final boolean dense;
+        private final TradeSink observer;
+        private int[] keys;
+        private double[] priceVolumeSums;
+        private long[] priceVolumeHighs;
+        private long[] priceVolumeLows;
+        private long[] volumeSums;
+        private long[] tradeCounts;
+        private double[] priceSums;
+        private long[] priceSumHighs;
+        private long[] priceSumLows;
+        private double[] highs;
+        private double[] lows;
+        private int[] openSeconds;
+        private double[] openPrices;
+        private int[] closeSeconds;
+        private double[] closePrices;
+        private double[] priceTimeSums;
+        private long[] priceTimeHighs;
+        private long[] priceTimeLows;
+        private long[] timeSums;
+        private int size;
+        int[] rejectedIndexes = new int[0];
+        RejectReason[] rejectedReasons = new RejectReason[0];
+        int rejectedCount;
+
+        Partial(BucketPolicy policy, Accumulation accumulation, TradeSink observer) {
+            this(policy, accumulation, observer, 0);
+        }
+
+        /**
+         * Creates a partial for trades of the first {@code pairCount} pairs, dense if they have at most
+         * {@link #DENSE_BUCKETS} buckets.
+         *
+         * @param pairCount: number of pairs the trades may be for, or 0 if not known
+         */
+        Partial(BucketPolicy policy, Accumulation accumulation, TradeSink observer, int pairCount) {
+            this.policy = policy;
+            this.exact = accumulation == Accumulation.EXACT;
+            int buckets = pairCount * policy.slotsPerDay();
+            this.dense = pairCount > 0 && buckets <= DENSE_BUCKETS;
+            this.observer = observer;
+            allocate(dense ? buckets : 64);
+        }
+
+        @Override
+        public void accept(int pairOrdinal, int secondOfDay, double price, long volume) {
+            observer.accept(pairOrdinal, secondOfDay, price, volume);
+            addTrade(pairOrdinal, secondOfDay, price, volume);
+        }
+
+        /**
+         * Adds a trade to its bucket without passing it to the observer.
+         */
+        void addTrade(int pairOrdinal, int secondOfDay, double price, long volume) {
+            int key = pairOrdinal * policy.slotsPerDay() + policy.slotOf(secondOfDay);
+            if (exact) {
+                long units = FixedPoint.toUnits(price);
+                add(key, 0.0, Math.multiplyHigh(units, volume), units * volume, volume, 1, 0.0, 0, units, price,
+                        price, secondOfDay, price, secondOfDay, price, 0.0, 0, 0, 0);
+            } else {
+                add(key, price * volume, 0, 0, volume, 1, price, 0, 0, price, price, secondOfDay, price,
+                        secondOfDay, price, 0.0, 0, 0, 0);
+            }
+        }
+
+        /**
+         * Adds the trades {@code from} to {@code to} of the columns, whose slots and price * volume products the
+         * caller has already computed, without passing them to the observer. {@code slots} and {@code products}
+         * are indexed from {@code from}.
+         * Only for {@link Accumulation#DOUBLE} partials.
+         */
+        void addProducts(int[] secondsOfDay, short[] pairIds, double[] prices, long[] volumes, int[] slots,
+                         double[] products, int from, int to) {
+            int slotsPerDay = policy.slotsPerDay();
+            if (!dense) {
+                for (int i = from; i < to; i++) {
+                    add(pairIds[i] * slotsPerDay + slots[i - from], products[i - from], 0, 0, volumes[i], 1,
+                            prices[i], 0, 0, prices[i], prices[i], secondsOfDay[i], prices[i], secondsOfDay[i],
+                            prices[i], 0.0, 0, 0, 0);
+                }
+                return;
+            }
+            // the columns are read into locals so the scatter loop keeps them in registers; most trades fall
+            // inside the bar's time span, so open and close are rarely compared in full
+            int[] keys = this.keys;
+            double[] priceVolumeSums = this.priceVolumeSums;
+            long[] volumeSums = this.volumeSums;
+            long[] tradeCounts = this.tradeCounts;
+            double[] priceSums = this.priceSums;
+            double[] highs = this.highs;
+            double[] lows = this.lows;
+            int[] openSeconds = this.openSeconds;
+            int[] closeSeconds = this.closeSeconds;
+            for (int i = from; i < to; i++) {
+                int key = pairIds[i] * slotsPerDay + slots[i - from];
+                int second = secondsOfDay[i];
+                double price = prices[i];
+                if (keys[key] == EMPTY) {
+                    keys[key] = key;
+                    size++;
+                    highs[key] = price;
+                    lows[key] = price;
+                    openSeconds[key] = second;
+                    openPrices[key] = price;
+                    closeSeconds[key] = second;
+                    closePrices[key] = price;
+                } else {
+                    highs[key] = (price > highs[key]) ? price : highs[key];
+                    lows[key] = (price < lows[key]) ? price : lows[key];
+                    if (second < openSeconds[key] || second >= closeSeconds[key]) {
+                        replaceOpenOrClose(key, second, price);
+                    }
+                }
+                priceVolumeSums[key] += products[i - from];
+                volumeSums[key] += volumes[i];
+                tradeCounts[key]++;
+                priceSums[key] += price;
+            }
+        }
+
+        private void replaceOpenOrClose(int i, int secondOfDay, double price) {
+            creditGap(i, secondOfDay, secondOfDay, price);
+            openPrices[i] = BucketStats.openPrice(secondOfDay, price, openSeconds[i], openPrices[i], true);
+            openSeconds[i] = Math.min(secondOfDay, openSeconds[i]);
+            closePrices[i] = BucketStats.closePrice(secondOfDay, price, closeSeconds[i], closePrices[i], true);
+            closeSeconds[i] = Math.max(secondOfDay, closeSeconds[i]);
+        }
+
+        /**
+         * Adds the sums and bar of every bucket to the store, once per bucket.
+         */
+        void addTo(VWAPStore store) {
+            int slotsPerDay = policy.slotsPerDay();
+            BucketStats stats = new BucketStats();
+            for (int i = 0; i < keys.length; i++) {
+                if (keys[i] == EMPTY) {
+                    continue;
+                }
+                stats.priceVolumeSum = priceVolumeSums[i];
+                stats.priceVolumeHigh = priceVolumeHighs[i];
+                stats.priceVolumeLow = priceVolumeLows[i];
+                stats.volumeSum = volumeSums[i];
+                stats.tradeCount = tradeCounts[i];
+                stats.priceSum = priceSums[i];
+                stats.priceSumHigh = priceSumHighs[i];
+                stats.priceSumLow = priceSumLows[i];
+                stats.high = highs[i];
+                stats.low = lows[i];
+                stats.openSecond = openSeconds[i];
+                stats.openPrice = openPrices[i];
+                stats.closeSecond = closeSeconds[i];
+                stats.closePrice = closePrices[i];
+                stats.priceTimeSum = priceTimeSums[i];
+                stats.priceTimeHigh = priceTimeHighs[i];
+                stats.priceTimeLow = priceTimeLows[i];
+                stats.timeSum = timeSums[i];
+                store.addStats(keys[i] / slotsPerDay, keys[i] % slotsPerDay, stats, true);
+            }
+        }
+
+        /**
+         * Empties the table and the rejections so the partial can be reused.
+         */
+        void clear() {
+            Arrays.fill(keys, EMPTY);
+            Arrays.fill(priceVolumeSums, 0.0);
+            Arrays.fill(priceVolumeHighs, 0);
+            Arrays.fill(priceVolumeLows, 0);
+            Arrays.fill(volumeSums, 0);
+            Arrays.fill(tradeCounts, 0);
+            Arrays.fill(priceSums, 0.0);
+            Arrays.fill(priceSumHighs, 0);
+            Arrays.fill(priceSumLows, 0);
+            Arrays.fill(priceTimeSums, 0.0);
+            Arrays.fill(priceTimeHighs, 0);
+            Arrays.fill(priceTimeLows, 0);
+            Arrays.fill(timeSums, 0);
+            size = 0;
+            rejectedCount = 0;
+        }
+
+        void reject(int index, RejectReason reason) {
+            if (rejectedCount == rejectedIndexes.length) {
+                int capacity = Math.max(8, rejectedCount * 2);
+                rejectedIndexes = Arrays.copyOf(rejectedIndexes, capacity);
+                rejectedReasons = Arrays.copyOf(rejectedReasons, capacity);
+            }
+            rejectedIndexes[rejectedCount] = index;
+            rejectedReasons[rejectedCount] = reason;
+            rejectedCount++;
+        }
+
+        /**
+         * Adds the sums, bars and rejections of a slice that follows this one in the batch.
+         */
+        void merge(Partial next) {
+            for (int i = 0; i < next.keys.length; i++) {
+                if (next.keys[i] != EMPTY) {
+                    add(next.keys[i], next.priceVolumeSums[i], next.priceVolumeHighs[i], next.priceVolumeLows[i],
+                            next.volumeSums[i], next.tradeCounts[i], next.priceSums[i], next.priceSumHighs[i],
+                            next.priceSumLows[i], next.highs[i], next.lows[i], next.openSeconds[i],
+                            next.openPrices[i], next.closeSeconds[i], next.closePrices[i], next.priceTimeSums[i],
+                            next.priceTimeHighs[i], next.priceTimeLows[i], next.timeSums[i]);
+                }
+            }
+            for (int i = 0; i < next.rejectedCount; i++) {
+                reject(next.rejectedIndexes[i], next.rejectedReasons[i]);
+            }
+        }
+
+        private void add(int key, double priceVolume, long priceVolumeHigh, long priceVolumeLow, long volume,
+                         long trades, double priceSum, long priceSumHigh, long priceSumLow, double high, double low,
+                         int openSecond, double openPrice, int closeSecond, double closePrice, double priceTime,
+                         long priceTimeHigh, long priceTimeLow, long time) {
+            int i;
+            if (dense) {
+                i = key;
+            } else {
+                int mask = keys.length - 1;
+                int hash = key * 0x9E3779B9;
+                i = (hash ^ (hash >>> 16)) & mask;
+                while (keys[i] != key && keys[i] != EMPTY) {
+                    i = (i + 1) & mask;
+                }
+            }
+            if (keys[i] == EMPTY) {
+                if (!dense && size * 2 >= keys.length) {
+                    grow();
+                    add(key, priceVolume, priceVolumeHigh, priceVolumeLow, volume, trades, priceSum, priceSumHigh,
+                            priceSumLow, high, low, openSecond, openPrice, closeSecond, closePrice, priceTime,
+                            priceTimeHigh, priceTimeLow, time);
+                    return;
+                }
+                keys[i] = key;
+                size++;
+                highs[i] = high;
+                lows[i] = low;
+                openSeconds[i] = openSecond;
+                openPrices[i] = openPrice;
+                closeSeconds[i] = closeSecond;
+                closePrices[i] = closePrice;
+            } else {
+                if (high > highs[i]) {
+                    highs[i] = high;
+                }
+                if (low < lows[i]) {
+                    lows[i] = low;
+                }
+                creditGap(i, openSecond, closeSecond, closePrice);
+                openPrices[i] = BucketStats.openPrice(openSecond, openPrice, openSeconds[i], openPrices[i], true);
+                openSeconds[i] = Math.min(openSecond, openSeconds[i]);
+                closePrices[i] = BucketStats.closePrice(closeSecond, closePrice, closeSeconds[i], closePrices[i],
+                        true);
+                closeSeconds[i] = Math.max(closeSecond, closeSeconds[i]);
+            }
+            priceVolumeSums[i] += priceVolume;
+            priceVolumeHighs[i] = FixedPoint.addHigh(priceVolumeHighs[i], priceVolumeLows[i], priceVolumeHigh,
+                    priceVolumeLow);
+            priceVolumeLows[i] += priceVolumeLow;
+            volumeSums[i] += volume;
+            tradeCounts[i] += trades;
+            priceSums[i] += priceSum;
+            priceSumHighs[i] = FixedPoint.addHigh(priceSumHighs[i], priceSumLows[i], priceSumHigh, priceSumLow);
+            priceSumLows[i] += priceSumLow;
+            priceTimeSums[i] += priceTime;
+            priceTimeHighs[i] = FixedPoint.addHigh(priceTimeHighs[i], priceTimeLows[i], priceTimeHigh, priceTimeLow);
+            priceTimeLows[i] += priceTimeLow;
+            timeSums[i] += time;
+        }
+
+        /**
+         * Credits the price in force with the gap between a bucket's span and trades that follow it in the batch,
+         * before the bucket's open and close take them in.
+         */
+        private void creditGap(int i, int openSecond, int closeSecond, double closePrice) {
+            int gap = BucketStats.gapSeconds(openSecond, closeSecond, closePrice, openSeconds[i], closeSeconds[i],
+                    closePrices[i]);
+            if (gap == 0) {
+                return;
+            }
+            double gapPrice = BucketStats.gapPrice(openSecond, closePrice, closeSeconds[i], closePrices[i]);
+            if (exact) {
+                long units = FixedPoint.toUnits(gapPrice);
+                priceTimeHighs[i] = FixedPoint.addHigh(priceTimeHighs[i], priceTimeLows[i],
+                        Math.multiplyHigh(units, gap), units * gap);
+                priceTimeLows[i] += units * gap;
+            } else {
+                priceTimeSums[i] += gapPrice * gap;
+            }
+            timeSums[i] += gap;
+        }
+
+        private void grow() {
+            int[] oldKeys = keys;
+            double[] oldPriceVolumeSums = priceVolumeSums;
+            long[] oldPriceVolumeHighs = priceVolumeHighs;
+            long[] oldPriceVolumeLows = priceVolumeLows;
+            long[] oldVolumeSums = volumeSums;
+            long[] oldTradeCounts = tradeCounts;
+            double[] oldPriceSums = priceSums;
+            long[] oldPriceSumHighs = priceSumHighs;
+            long[] oldPriceSumLows = priceSumLows;
+            double[] oldHighs = highs;
+            double[] oldLows = lows;
+            int[] oldOpenSeconds = openSeconds;
+            double[] oldOpenPrices = openPrices;
+            int[] oldCloseSeconds = closeSeconds;
+            double[] oldClosePrices = closePrices;
+            double[] oldPriceTimeSums = priceTimeSums;
+            long[] oldPriceTimeHighs = priceTimeHighs;
+            long[] oldPriceTimeLows = priceTimeLows;
+            long[] oldTimeSums = timeSums;
+            allocate(oldKeys.length * 2);
+            for (int i = 0; i < oldKeys.length; i++) {
+                if (oldKeys[i] != EMPTY) {
+                    add(oldKeys[i], oldPriceVolumeSums[i], oldPriceVolumeHighs[i], oldPriceVolumeLows[i],
+                            oldVolumeSums[i], oldTradeCounts[i], oldPriceSums[i], oldPriceSumHighs[i],
+                            oldPriceSumLows[i], oldHighs[i], oldLows[i], oldOpenSeconds[i], oldOpenPrices[i],
+                            oldCloseSeconds[i], oldClosePrices[i], oldPriceTimeSums[i], oldPriceTimeHighs[i],
+                            oldPriceTimeLows[i], oldTimeSums[i]);
+                }
+            }
+        }
+
+        private void allocate(int capacity) {
+            keys = new int[capacity];
+            Arrays.fill(keys, EMPTY);
+            priceVolumeSums = new double[capacity];
+            priceVolumeHighs = new long[capacity];
+            priceVolumeLows = new long[capacity];
+            volumeSums = new long[capacity];
+            tradeCounts = new long[capacity];
+            priceSums = new double[capacity];
+            priceSumHighs = new long[capacity];
+            priceSumLows = new long[capacity];
+            highs = new double[capacity];
+            lows = new double[capacity];
+            openSeconds = new int[capacity];
+            openPrices = new double[capacity];
+            closeSeconds = new int[capacity];
+            closePrices = new double[capacity];
+            priceTimeSums = new double[capacity];
+            priceTimeHighs = new long[capacity];
+            priceTimeLows = new long[capacity];
+            timeSums = new long[capacity];
+            size = 0;
+        }
+    }
+}
@@ -0,0 +1,612 @@
+package com.ken;
+
+import java.io.IOException;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Objects;
+import java.util.zip.CRC32;
+
+/**
+ * Immutable, mergeable bucket sums of one shard: the price-volume sum, volume sum, trade count, bar and
+ * time-weighted sums of every bucket, by currency pair and slot.
+ * <p>
+ * Shards that each aggregate part of the trades export partials, and merging them gives the sums one node would have
+ * built from all the trades. Only the opens and closes that tie across shards, which become NaN, and the
+ * time-weighted sums, which do not credit the gaps between one shard's trades and another's, can differ. Merging
+ * adds matching buckets, combines their bars as {@link BucketStats} describes and returns a new partial. It is
+ * commutative and associative: exactly so for {@link Accumulation#EXACT} sums, which are integers, while
+ * {@link Accumulation#DOUBLE} sums are commutative but associative only up to the rounding of each addition. Pairs
+ * are kept by name, since shards may have added pairs in a different order, and buckets are kept sorted by pair name
+ * and slot, so a merge is a single pass over both partials and equal sums give equal partials.
+ * <p>
+ * Encoding, big-endian:
+ * <pre>
+ * int    magic "VWPA"
+ * byte   format version, 2
+ * byte   accumulation: 0 for double sums, 1 for exact sums
+ * int    bucket width in seconds
+ * short  number of currency pairs, then per pair its seven ASCII bytes, in name order
+ * int    number of buckets, then per bucket: short pair index, int slot, price-volume sum, long volume sum,
+ *        long trade count, price sum, double high, double low, int open second, double open price,
+ *        int close second, double close price, time-weighted price sum, long time sum, in pair and slot order
+ * int    CRC32 of everything before it
+ * </pre>
+ * The price-volume, price and time-weighted price sums are doubles for double sums, and the high and low longs of
+ * 128-bit fixed-point sums for exact sums.
+ */
+public final class PartialAggregate {
+
+    static final int MAGIC = 0x56575041;
+    static final byte FORMAT_VERSION = 2;
+    private static final int HEADER_BYTES = Integer.BYTES + 2 + Integer.BYTES + Short.BYTES + Integer.BYTES;
+    private static final int BAR_BYTES = 4 * Double.BYTES + 2 * Integer.BYTES;
+    private static final int ENTRY_BYTES = Short.BYTES + Integer.BYTES + 3 * Double.BYTES + 3 * Long.BYTES
+            + BAR_BYTES;
+    private static final int EXACT_ENTRY_BYTES = Short.BYTES + Integer.BYTES + 9 * Long.BYTES + BAR_BYTES;
+
+    private final BucketPolicy policy;
+    private final Accumulation accumulation;
+    private final String[] pairs;
+    private final short[] pairIndexes;
+    private final int[] slots;
+    private final double[] priceVolumeSums;
+    private final long[] priceVolumeHighs;
+    private final long[] priceVolumeLows;
+    private final long[] volumeSums;
+    private final long[] tradeCounts;
+    private final double[] priceSums;
+    private final long[] priceSumHighs;
+    private final long[] priceSumLows;
+    private final double[] highs;
+    private final double[] lows;
+    private final int[] openSeconds;
+    private final double[] openPrices;
+    private final int[] closeSeconds;
+    private final double[] closePrices;
+    private final double[] priceTimeSums;
+    private final long[] priceTimeHighs;
+    private final long[] priceTimeLows;
+    private final long[] timeSums;
+
+    private PartialAggregate(BucketPolicy policy, Accumulation accumulation, String[] pairs, int bucketCount) {
+        this.policy = policy;
+        this.accumulation = accumulation;
+        this.pairs = pairs;
+        this.pairIndexes = new short[bucketCount];
+        this.slots = new int[bucketCount];
+        this.priceVolumeSums = new double[bucketCount];
+        this.priceVolumeHighs = new long[bucketCount];
+        this.priceVolumeLows = new long[bucketCount];
+        this.volumeSums = new long[bucketCount];
+        this.tradeCounts = new long[bucketCount];
+        this.priceSums = new double[bucketCount];
+        this.priceSumHighs = new long[bucketCount];
+        this.priceSumLows = new long[bucketCount];
+        this.highs = new double[bucketCount];
+        this.lows = new double[bucketCount];
+        this.openSeconds = new int[bucketCount];
+        this.openPrices = new double[bucketCount];
+        this.closeSeconds = new int[bucketCount];
+        this.closePrices = new double[bucketCount];
+        this.priceTimeSums = new double[bucketCount];
+        this.priceTimeHighs = new long[bucketCount];
+        this.priceTimeLows = new long[bucketCount];
+        this.timeSums = new long[bucketCount];
+    }
+
+    /**
+     * Creates a partial without buckets, the identity of {@link #merge(PartialAggregate)}.
+     *
+     * @param policy:       width of the buckets
+     * @param accumulation: how the price-volume sums are accumulated
+     * @return The empty partial.
+     */
+    public static PartialAggregate empty(BucketPolicy policy, Accumulation accumulation) {
+        return new PartialAggregate(Objects.requireNonNull(policy), Objects.requireNonNull(accumulation),
+                new String[0], 0);
+    }
+
+    /**
+     * Reads every bucket of a store with trades, each consistently, while ingest carries on.
+     *
+     * @param store:         store to export
+     * @param currencyPairs: names of the currency pairs, indexed by ordinal
+     */
+    static PartialAggregate of(VWAPStore store, String[] currencyPairs) {
+        int slotsPerDay = store.slotsPerDay();
+        Collector buckets = new Collector();
+        store.forEachBucketStats(buckets::add);
+        String[] names = currencyPairs.clone();
+        Arrays.sort(names);
+        int[] ranks = new int[currencyPairs.length];
+        for (int pairOrdinal = 0; pairOrdinal < ranks.length; pairOrdinal++) {
+            ranks[pairOrdinal] = Arrays.binarySearch(names, currencyPairs[pairOrdinal]);
+        }
+
+        // sort the buckets by pair name and slot, carrying each bucket's position in the low half
+        long[] order = new long[buckets.size];
+        for (int i = 0; i < order.length; i++) {
+            order[i] = ((long) ranks[buckets.pairOrdinals[i]] * slotsPerDay + buckets.slots[i]) << 32 | i;
+        }
+        Arrays.sort(order);
+        boolean[] used = new boolean[names.length];
+        for (int i = 0; i < order.length; i++) {
+            used[ranks[buckets.pairOrdinals[(int) order[i]]]] = true;
+        }
+        int[] indexes = new int[names.length];
+        int pairCount = 0;
+        for (int rank = 0; rank < names.length; rank++) {
+            indexes[rank] = pairCount;
+            pairCount += used[rank] ? 1 : 0;
+        }
+        String[] pairs = new String[pairCount];
+        for (int rank = 0; rank < names.length; rank++) {
+            if (used[rank]) {
+                pairs[indexes[rank]] = names[rank];
+            }
+        }
+
+        PartialAggregate partial = new PartialAggregate(store.policy(), store.accumulation(), pairs, order.length);
+        for (int i = 0; i < order.length; i++) {
+            int bucket = (int) order[i];
+            partial.pairIndexes[i] = (short) indexes[ranks[buckets.pairOrdinals[bucket]]];
+            partial.slots[i] = buckets.slots[bucket];
+            partial.set(i, buckets.stats[bucket]);
+        }
+        return partial;
+    }
+
+    public BucketPolicy policy() {
+        return policy;
+    }
+
+    public Accumulation accumulation() {
+        return accumulation;
+    }
+
+    public int bucketCount() {
+        return slots.length;
+    }
+
+    /**
+     * Counts the trades in every bucket.
+     */
+    public long tradeCount() {
+        long count = 0;
+        for (long trades : tradeCounts) {
+            count += trades;
+        }
+        return count;
+    }
+
+    /**
+     * Adds the sums of another partial to these, bucket by bucket.
+     *
+     * @param other: partial with the same bucket width and accumulation
+     * @return A new partial; neither input changes.
+     * @throws IllegalArgumentException if the bucket widths or accumulations differ
+     */
+    public PartialAggregate merge(PartialAggregate other) {
+        if (!policy.equals(other.policy) || accumulation != other.accumulation) {
+            throw new IllegalArgumentException("Cannot merge " + other.policy + " " + other.accumulation
+                    + " partial into " + policy + " " + accumulation + " partial");
+        }
+        String[] mergedPairs = new String[pairs.length + other.pairs.length];
+        int[] indexes = new int[pairs.length];
+        int[] otherIndexes = new int[other.pairs.length];
+        int pairCount = 0;
+        for (int i = 0, j = 0; i < pairs.length || j < other.pairs.length; ) {
+            int order = (i == pairs.length) ? 1 : (j == other.pairs.length) ? -1 : pairs[i].compareTo(other.pairs[j]);
+            if (order <= 0) {
+                indexes[i] = pairCount;
+                mergedPairs[pairCount] = pairs[i++];
+            }
+            if (order >= 0) {
+                otherIndexes[j] = pairCount;
+                mergedPairs[pairCount] = other.pairs[j++];
+            }
+            pairCount++;
+        }
+
+        int slotsPerDay = policy.slotsPerDay();
+        int bucketCount = 0;
+        for (int i = 0, j = 0; i < slots.length || j < other.slots.length; bucketCount++) {
+            long key = (i == slots.length) ? Long.MAX_VALUE : (long) indexes[pairIndexes[i]] * slotsPerDay + slots[i];
+            long otherKey = (j == other.slots.length) ? Long.MAX_VALUE
+                    : (long) otherIndexes[other.pairIndexes[j]] * slotsPerDay + other.slots[j];
+            i += (key <= otherKey) ? 1 : 0;
+            j += (otherKey <= key) ? 1 : 0;
+        }
+        PartialAggregate merged = new PartialAggregate(policy, accumulation, Arrays.copyOf(mergedPairs, pairCount),
+                bucketCount);
+        for (int i = 0, j = 0, bucket = 0; bucket < bucketCount; bucket++) {
+            long key = (i == slots.length) ? Long.MAX_VALUE : (long) indexes[pairIndexes[i]] * slotsPerDay + slots[i];
+            long otherKey = (j == other.slots.length) ? Long.MAX_VALUE
+                    : (long) otherIndexes[other.pairIndexes[j]] * slotsPerDay + other.slots[j];
+            long first = Math.min(key, otherKey);
+            merged.pairIndexes[bucket] = (short) (first / slotsPerDay);
+            merged.slots[bucket] = (int) (first % slotsPerDay);
+            if (key == first) {
+                merged.add(bucket, this, i++);
+            }
+            if (otherKey == first) {
+                merged.add(bucket, other, j++);
+            }
+        }
+        return merged;
+    }
+
+    private void add(int bucket, PartialAggregate source, int i) {
+        priceVolumeSums[bucket] += source.priceVolumeSums[i];
+        priceVolumeHighs[bucket] = FixedPoint.addHigh(priceVolumeHighs[bucket], priceVolumeLows[bucket],
+                source.priceVolumeHighs[i], source.priceVolumeLows[i]);
+        priceVolumeLows[bucket] += source.priceVolumeLows[i];
+        volumeSums[bucket] += source.volumeSums[i];
+        boolean first = tradeCounts[bucket] == 0;
+        if (first || source.highs[i] > highs[bucket]) {
+            highs[bucket] = source.highs[i];
+        }
+        if (first || source.lows[i] < lows[bucket]) {
+            lows[bucket] = source.lows[i];
+        }
+        if (first) {
+            openSeconds[bucket] = source.openSeconds[i];
+            openPrices[bucket] = source.openPrices[i];
+            closeSeconds[bucket] = source.closeSeconds[i];
+            closePrices[bucket] = source.closePrices[i];
+        } else {
+            openPrices[bucket] = BucketStats.openPrice(source.openSeconds[i], source.openPrices[i],
+                    openSeconds[bucket], openPrices[bucket], false);
+            openSeconds[bucket] = Math.min(source.openSeconds[i], openSeconds[bucket]);
+            closePrices[bucket] = BucketStats.closePrice(source.closeSeconds[i], source.closePrices[i],
+                    closeSeconds[bucket], closePrices[bucket], false);
+            closeSeconds[bucket] = Math.max(source.closeSeconds[i], closeSeconds[bucket]);
+        }
+        tradeCounts[bucket] += source.tradeCounts[i];
+        priceSums[bucket] += source.priceSums[i];
+        priceSumHighs[bucket] = FixedPoint.addHigh(priceSumHighs[bucket], priceSumLows[bucket],
+                source.priceSumHighs[i], source.priceSumLows[i]);
+        priceSumLows[bucket] += source.priceSumLows[i];
+        priceTimeSums[bucket] += source.priceTimeSums[i];
+        priceTimeHighs[bucket] = FixedPoint.addHigh(priceTimeHighs[bucket], priceTimeLows[bucket],
+                source.priceTimeHighs[i], source.priceTimeLows[i]);
+        priceTimeLows[bucket] += source.priceTimeLows[i];
+        timeSums[bucket] += source.timeSums[i];
+    }
+
+    private void set(int bucket, BucketStats stats) {
+        priceVolumeSums[bucket] = stats.priceVolumeSum;
+        priceVolumeHighs[bucket] = stats.priceVolumeHigh;
+        priceVolumeLows[bucket] = stats.priceVolumeLow;
+        volumeSums[bucket] = stats.volumeSum;
+        tradeCounts[bucket] = stats.tradeCount;
+        priceSums[bucket] = stats.priceSum;
+        priceSumHighs[bucket] = stats.priceSumHigh;
+        priceSumLows[bucket] = stats.priceSumLow;
+        highs[bucket] = stats.high;
+        lows[bucket] = stats.low;
+        openSeconds[bucket] = stats.openSecond;
+        openPrices[bucket] = stats.openPrice;
+        closeSeconds[bucket] = stats.closeSecond;
+        closePrices[bucket] = stats.closePrice;
+        priceTimeSums[bucket] = stats.priceTimeSum;
+        priceTimeHighs[bucket] = stats.priceTimeHigh;
+        priceTimeLows[bucket] = stats.priceTimeLow;
+        timeSums[bucket] = stats.timeSum;
+    }
+
+    private void get(int bucket, BucketStats stats) {
+        stats.priceVolumeSum = priceVolumeSums[bucket];
+        stats.priceVolumeHigh = priceVolumeHighs[bucket];
+        stats.priceVolumeLow = priceVolumeLows[bucket];
+        stats.volumeSum = volumeSums[bucket];
+        stats.tradeCount = tradeCounts[bucket];
+        stats.priceSum = priceSums[bucket];
+        stats.priceSumHigh = priceSumHighs[bucket];
+        stats.priceSumLow = priceSumLows[bucket];
+        stats.high = highs[bucket];
+        stats.low = lows[bucket];
+        stats.openSecond = openSeconds[bucket];
+        stats.openPrice = openPrices[bucket];
+        stats.closeSecond = closeSeconds[bucket];
+        stats.closePrice = closePrices[bucket];
+        stats.priceTimeSum = priceTimeSums[bucket];
+        stats.priceTimeHigh = priceTimeHighs[bucket];
+        stats.priceTimeLow = priceTimeLows[bucket];
+        stats.timeSum = timeSums[bucket];
+    }
+
+    /**
+     * Adds the sums and bar of every bucket to a store, skipping buckets it has already closed.
+     *
+     * @param store:        store with the same bucket width and accumulation
+     * @param pairOrdinals: index of every known currency pair, by name
+     * @throws IllegalArgumentException if the store does not fit the partial; nothing is added then
+     */
+    void addTo(VWAPStore store, Map<String, Integer> pairOrdinals) {
+        if (!policy.equals(store.policy()) || accumulation != store.accumulation()) {
+            throw new IllegalArgumentException("Partial aggregate " + policy + " " + accumulation
+                    + " does not match " + store.policy() + " " + store.accumulation());
+        }
+        int[] ordinals = new int[pairs.length];
+        for (int i = 0; i < pairs.length; i++) {
+            Integer ordinal = pairOrdinals.get(pairs[i]);
+            if (ordinal == null) {
+                throw new IllegalArgumentException(VWAPCalculatorApplication.INVALID_CURRENCY_PAIR + ": " + pairs[i]);
+            }
+            ordinals[i] = ordinal;
+        }
+        int closedSlots = store.closedSlots();
+        BucketStats stats = new BucketStats();
+        for (int i = 0; i < slots.length; i++) {
+            if (slots[i] < closedSlots) {
+                continue;
+            }
+            get(i, stats);
+            store.addStats(ordinals[pairIndexes[i]], slots[i], stats, false);
+        }
+    }
+
+    /**
+     * Gets the VWAP of every bucket.
+     *
+     * @return The VWAP values, keyed like {@link VWAPCalculatorApplication#getAllVWAP()}. The map is unmodifiable.
+     */
+    public Map<String, Double> getAllVWAP() {
+        Map<String, Double> result = new HashMap<>();
+        for (int i = 0; i < slots.length; i++) {
+            double vwap;
+            if (accumulation == Accumulation.EXACT) {
+                vwap = FixedPoint.vwap(priceVolumeHighs[i], priceVolumeLows[i], volumeSums[i]);
+            } else {
+                vwap = (volumeSums[i] == 0) ? 0.0 : priceVolumeSums[i] / volumeSums[i];
+            }
+            result.put(bucketKey(i), vwap);
+        }
+        return Collections.unmodifiableMap(result);
+    }
+
+    /**
+     * Gets the number of trades in every bucket.
+     *
+     * @return The trade counts, keyed like {@link #getAllVWAP()}. The map is unmodifiable.
+     */
+    public Map<String, Long> getTradeCounts() {
+        Map<String, Long> result = new HashMap<>();
+        for (int i = 0; i < slots.length; i++) {
+            result.put(bucketKey(i), tradeCounts[i]);
+        }
+        return Collections.unmodifiableMap(result);
+    }
+
+    /**
+     * Gets the bar, VWAP and mean price of every bucket, in currency pair and time order.
+     */
+    public Bars getAllBars() {
+        boolean exact = accumulation == Accumulation.EXACT;
+        Bars bars = new Bars(policy, pairs, pairIndexes.clone(), slots.clone(), volumeSums.clone(),
+                tradeCounts.clone());
+        BucketStats stats = new BucketStats();
+        for (int i = 0; i < slots.length; i++) {
+            get(i, stats);
+            bars.set(i, stats, exact);
+        }
+        return bars;
+    }
+
+    private String bucketKey(int bucket) {
+        return pairs[pairIndexes[bucket]] + " " + policy.format(slots[bucket]);
+    }
+
+    /**
+     * Encodes the partial in the binary format described above.
+     */
+    public byte[] toBytes() {
+        boolean exact = accumulation == Accumulation.EXACT;
+        int size = HEADER_BYTES + pairs.length * CurrencyPairRegistry.PAIR_LENGTH
+                + slots.length * (exact ? EXACT_ENTRY_BYTES : ENTRY_BYTES) + Integer.BYTES;
+        ByteBuffer encoded = ByteBuffer.allocate(size);
+        encoded.putInt(MAGIC).put(FORMAT_VERSION).put((byte) (exact ? 1 : 0)).putInt(policy.widthSeconds())
+                .putShort((short) pairs.length);
+        for (String pair : pairs) {
+            encoded.put(pair.getBytes(StandardCharsets.US_ASCII));
+        }
+        encoded.putInt(slots.length);
+        for (int i = 0; i < slots.length; i++) {
+            encoded.putShort(pairIndexes[i]).putInt(slots[i]);
+            if (exact) {
+                encoded.putLong(priceVolumeHighs[i]).putLong(priceVolumeLows[i]);
+            } else {
+                encoded.putDouble(priceVolumeSums[i]);
+            }
+            encoded.putLong(volumeSums[i]).putLong(tradeCounts[i]);
+            if (exact) {
+                encoded.putLong(priceSumHighs[i]).putLong(priceSumLows[i]);
+            } else {
+                encoded.putDouble(priceSums[i]);
+            }
+            encoded.putDouble(highs[i]).putDouble(lows[i]).putInt(openSeconds[i]).putDouble(openPrices[i])
+                    .putInt(closeSeconds[i]).putDouble(closePrices[i]);
+            if (exact) {
+                encoded.putLong(priceTimeHighs[i]).putLong(priceTimeLows[i]);
+            } else {
+                encoded.putDouble(priceTimeSums[i]);
+            }
+            encoded.putLong(timeSums[i]);
+        }
+        CRC32 crc = new CRC32();
+        crc.update(encoded.array(), 0, encoded.position());
+        encoded.putInt((int) crc.getValue());
+        return encoded.array();
+    }
+
+    /**
+     * Decodes a partial encoded by {@link #toBytes()}.
+     *
+     * @param bytes: encoded partial
+     * @return The partial.
+     * @throws IOException if the bytes are not a partial aggregate or are corrupt
+     */
+    public static PartialAggregate fromBytes(byte[] bytes) throws IOException {
+        if (bytes.length < HEADER_BYTES + Integer.BYTES) {
+            throw new IOException("Invalid partial aggregate size: " + bytes.length);
+        }
+        ByteBuffer encoded = ByteBuffer.wrap(bytes, 0, bytes.length - Integer.BYTES);
+        if (encoded.getInt() != MAGIC) {
+            throw new IOException("Not a partial aggregate");
+        }
+        byte version = encoded.get();
+        if (version != FORMAT_VERSION) {
+            throw new IOException("Unsupported partial aggregate version: " + version);
+        }
+        CRC32 crc = new CRC32();
+        crc.update(bytes, 0, bytes.length - Integer.BYTES);
+        if ((int) crc.getValue() != ByteBuffer.wrap(bytes).getInt(bytes.length - Integer.BYTES)) {
+            throw new IOException("Partial aggregate checksum mismatch");
+        }
+        try {
+            byte mode = encoded.get();
+            if (mode != 0 && mode != 1) {
+                throw new IOException("Invalid partial aggregate accumulation: " + mode);
+            }
+            Accumulation accumulation = (mode == 1) ? Accumulation.EXACT : Accumulation.DOUBLE;
+            BucketPolicy policy;
+            try {
+                policy = BucketPolicy.ofSeconds(encoded.getInt());
+            } catch (IllegalArgumentException e) {
+                throw new IOException("Invalid partial aggregate bucket width", e);
+            }
+            int pairCount = encoded.getShort();
+            if (pairCount < 0 || pairCount > encoded.remaining() / CurrencyPairRegistry.PAIR_LENGTH) {
+                throw new IOException("Invalid partial aggregate pair count: " + pairCount);
+            }
+            String[] pairs = new String[pairCount];
+            for (int i = 0; i < pairs.length; i++) {
+                byte[] name = new byte[CurrencyPairRegistry.PAIR_LENGTH];
+                encoded.get(name);
+                pairs[i] = new String(name, StandardCharsets.US_ASCII);
+                if (!CurrencyPairRegistry.isPairCode(pairs[i]) || (i > 0 && pairs[i - 1].compareTo(pairs[i]) >= 0)) {
+                    throw new IOException("Invalid partial aggregate currency pairs");
+                }
+            }
+            int count = encoded.getInt();
+            int entryBytes = (accumulation == Accumulation.EXACT) ? EXACT_ENTRY_BYTES : ENTRY_BYTES;
+            if (count < 0 || encoded.remaining() != (long) count * entryBytes) {
+                throw new IOException("Partial aggregate bucket count does not match its size");
+            }
+            PartialAggregate partial = new PartialAggregate(policy, accumulation, pairs, count);
+            long previous = -1;
+            for (int i = 0; i < count; i++) {
+                short pairIndex = encoded.getShort();
+                int slot = encoded.getInt();
+                if (pairIndex < 0 || pairIndex >= pairs.length || slot < 0 || slot >= policy.slotsPerDay()) {
+                    throw new IOException("Invalid partial aggregate bucket: " + pairIndex + "/" + slot);
+                }
+                long key = (long) pairIndex * policy.slotsPerDay() + slot;
+                if (key <= previous) {
+                    throw new IOException("Partial aggregate buckets are out of order");
+                }
+                previous = key;
+                partial.pairIndexes[i] = pairIndex;
+                partial.slots[i] = slot;
+                if (accumulation == Accumulation.EXACT) {
+                    partial.priceVolumeHighs[i] = encoded.getLong();
+                    partial.priceVolumeLows[i] = encoded.getLong();
+                } else {
+                    partial.priceVolumeSums[i] = encoded.getDouble();
+                }
+                partial.volumeSums[i] = encoded.getLong();
+                partial.tradeCounts[i] = encoded.getLong();
+                if (partial.tradeCounts[i] <= 0) {
+                    throw new IOException("Partial aggregate contains an invalid trade count: "
+                            + partial.tradeCounts[i]);
+                }
+                if (accumulation == Accumulation.EXACT) {
+                    partial.priceSumHighs[i] = encoded.getLong();
+                    partial.priceSumLows[i] = encoded.getLong();
+                } else {
+                    partial.priceSums[i] = encoded.getDouble();
+                }
+                partial.highs[i] = encoded.getDouble();
+                partial.lows[i] = encoded.getDouble();
+                partial.openSeconds[i] = encoded.getInt();
+                partial.openPrices[i] = encoded.getDouble();
+                partial.closeSeconds[i] = encoded.getInt();
+                partial.closePrices[i] = encoded.getDouble();
+                if (accumulation == Accumulation.EXACT) {
+                    partial.priceTimeHighs[i] = encoded.getLong();
+                    partial.priceTimeLows[i] = encoded.getLong();
+                } else {
+                    partial.priceTimeSums[i] = encoded.getDouble();
+                }
+                partial.timeSums[i] = encoded.getLong();
+            }
+            return partial;
+        } catch (BufferUnderflowException e) {
+            throw new IOException("Partial aggregate is truncated", e);
+        }
+    }
+
+    @Override
+    public boolean equals(Object other) {
+        if (!(other instanceof PartialAggregate)) {
+            return false;
+        }
+        PartialAggregate partial = (PartialAggregate) other;
+        return policy.equals(partial.policy) && accumulation == partial.accumulation
+                && Arrays.equals(pairs, partial.pairs)
+                && Arrays.equals(pairIndexes, partial.pairIndexes) && Arrays.equals(slots, partial.slots)
+                && Arrays.equals(priceVolumeSums, partial.priceVolumeSums)
+                && Arrays.equals(priceVolumeHighs, partial.priceVolumeHighs)
+                && Arrays.equals(priceVolumeLows, partial.priceVolumeLows)
+                && Arrays.equals(volumeSums, partial.volumeSums) && Arrays.equals(tradeCounts, partial.tradeCounts)
+                && Arrays.equals(priceSums, partial.priceSums) && Arrays.equals(priceSumHighs, partial.priceSumHighs)
+                && Arrays.equals(priceSumLows, partial.priceSumLows) && Arrays.equals(highs, partial.highs)
+                && Arrays.equals(lows, partial.lows) && Arrays.equals(openSeconds, partial.openSeconds)
+                && Arrays.equals(openPrices, partial.openPrices) && Arrays.equals(closeSeconds, partial.closeSeconds)
+                && Arrays.equals(closePrices, partial.closePrices)
+                && Arrays.equals(priceTimeSums, partial.priceTimeSums)
+                && Arrays.equals(priceTimeHighs, partial.priceTimeHighs)
+                && Arrays.equals(priceTimeLows, partial.priceTimeLows) && Arrays.equals(timeSums, partial.timeSums);
+    }
+
+    @Override
+    public int hashCode() {
+        return Objects.hash(policy, accumulation, Arrays.hashCode(pairs), Arrays.hashCode(slots),
+                Arrays.hashCode(volumeSums), Arrays.hashCode(tradeCounts));
+    }
+
+    @Override
+    public String toString() {
+        return "PartialAggregate[" + policy + ", " + accumulation + ", " + pairs.length + " pairs, " + slots.length
+                + " buckets, " + tradeCount() + " trades]";
+    }
+
+    /**
+     * Growable columns of the buckets read from a store, in store order.
+     */
+    private static final class Collector {
+        int[] pairOrdinals = new int[64];
+        int[] slots = new int[64];
+        BucketStats[] stats = new BucketStats[64];
+        int size;
+
+        void add(int pairOrdinal, int slot, BucketStats bucket) {
+            if (size == slots.length) {
+                int capacity = size * 2;
+                pairOrdinals = Arrays.copyOf(pairOrdinals, capacity);
+                slots = Arrays.copyOf(slots, capacity);
+                stats = Arrays.copyOf(stats, capacity);
+            }
+            pairOrdinals[size] = pairOrdinal;
+            slots[size] = slot;
+            stats[size] = bucket.copy();
+            size++;
+        }
+    }
+}
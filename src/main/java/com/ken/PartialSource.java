@@ -0,0 +1,61 @@
+package com.ken;
+
+import java.io.DataInputStream;
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.time.Duration;
+
+/**
+ * A shard a {@link ShardCoordinator} pulls {@link PartialAggregate}s from.
+ */
+@FunctionalInterface
+public interface PartialSource {
+
+    /**
+     * Pulls the shard's current partial. May block; the coordinator calls it on a virtual thread.
+     *
+     * @return The partial.
+     * @throws IOException if the shard cannot be reached or sends a corrupt partial
+     */
+    PartialAggregate pull() throws IOException;
+
+    /**
+     * Creates a source for an application in the same process.
+     *
+     * @param application: shard application
+     * @return The source.
+     */
+    static PartialSource of(VWAPCalculatorApplication application) {
+        return application::exportPartial;
+    }
+
+    /**
+     * Creates a source for a shard served by a {@link ShardServer}. Each pull opens a connection and reads one
+     * length-prefixed partial.
+     *
+     * @param address: address of the shard server
+     * @param timeout: limit for connecting and for each read
+     * @return The source.
+     */
+    static PartialSource remote(InetSocketAddress address, Duration timeout) {
+        int timeoutMillis = (int) Math.min(Integer.MAX_VALUE, timeout.toMillis());
+        if (timeoutMillis <= 0) {
+            throw new IllegalArgumentException("Invalid shard timeout");
+        }
+        return () -> {
+            try (Socket socket = new Socket()) {
+                socket.connect(address, timeoutMillis);
+                socket.setSoTimeout(timeoutMillis);
+                DataInputStream in = new DataInputStream(socket.getInputStream());
+                int length = in.readInt();
+                if (length < 0 || length > ShardServer.MAX_PARTIAL_BYTES) {
+                    throw new IOException("Invalid partial aggregate length from " + address + ": " + length);
+                }
+                byte[] encoded = new byte[length];
+                in.readFully(encoded);
+                return PartialAggregate.fromBytes(encoded);
+            }
+        };
+    }
+}
@@ -0,0 +1,24 @@
+package com.ken;
+
+/**
+ * Why a trade was rejected. Each reason carries the warning message logged for it.
+ */
+public enum RejectReason {
+
+    STREAM_FORMAT(VWAPCalculatorApplication.INVALID_TRADE_STREAM_FORMAT),
+    TIME(VWAPCalculatorApplication.INVALID_TRADE_TIME),
+    CURRENCY_PAIR(VWAPCalculatorApplication.INVALID_CURRENCY_PAIR),
+    PRICE(VWAPCalculatorApplication.INVALID_TRADE_PRICE),
+    VOLUME(VWAPCalculatorApplication.INVALID_TRADE_VOLUME),
+    CLOSED_BUCKET(VWAPCalculatorApplication.CLOSED_BUCKET);
+
+    private final String message;
+
+    RejectReason(String message) {
+        this.message = message;
+    }
+
+    public String message() {
+        return message;
+    }
+}
@@ -0,0 +1,125 @@
+package com.ken;
+
+import java.util.Collections;
+import java.util.EnumMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Counts rejected trades per reason and per currency pair, and limits how many of them are logged.
+ * <p>
+ * Counters are {@link LongAdder}s, so threads rejecting trades at the same time do not contend. Logging is capped
+ * at a number of warnings per second; past the cap a trade is only counted, and the number skipped is logged once
+ * when the next second starts. Each logged warning keeps the exact format of an unlimited log.
+ */
+final class RejectionCounters {
+
+    static final int DEFAULT_LOG_LIMIT = 100;
+    private static final long NANOS_PER_SECOND = 1_000_000_000L;
+    private static final RejectReason[] REASONS = RejectReason.values();
+
+    private final Logger logger;
+    private final CurrencyPairRegistry currencyPairs;
+    private final LongAdder[] byReason = new LongAdder[REASONS.length];
+    private final LongAdder[] byPair;
+    private final LongAdder suppressed = new LongAdder();
+    private volatile int logLimit = DEFAULT_LOG_LIMIT;
+    private volatile long logWindow = Long.MIN_VALUE;
+    private volatile int loggedInWindow;
+
+    RejectionCounters(Logger logger, CurrencyPairRegistry currencyPairs) {
+        this.logger = logger;
+        this.currencyPairs = currencyPairs;
+        this.byPair = new LongAdder[CurrencyPairRegistry.MAX_PAIRS];
+        for (int i = 0; i < byReason.length; i++) {
+            byReason[i] = new LongAdder();
+        }
+        for (int i = 0; i < byPair.length; i++) {
+            byPair[i] = new LongAdder();
+        }
+    }
+
+    /**
+     * @param warningsPerSecond: maximum warnings logged per second; 0 logs none and {@link Integer#MAX_VALUE} logs
+     *                           all
+     */
+    void setLogLimit(int warningsPerSecond) {
+        logLimit = warningsPerSecond;
+    }
+
+    /**
+     * Counts a rejected trade and decides whether it should be logged.
+     *
+     * @param reason:      why the trade was rejected
+     * @param pairOrdinal: index of the trade's currency pair, or -1 if it has none
+     * @return True if the caller should log the trade.
+     */
+    boolean record(RejectReason reason, int pairOrdinal) {
+        byReason[reason.ordinal()].increment();
+        if (pairOrdinal >= 0) {
+            byPair[pairOrdinal].increment();
+        }
+        return logger.isLoggable(Level.WARNING) && tryAcquireLog();
+    }
+
+    long total() {
+        long total = 0;
+        for (LongAdder count : byReason) {
+            total += count.sum();
+        }
+        return total;
+    }
+
+    RejectionStats snapshot() {
+        Map<RejectReason, Long> reasons = new EnumMap<>(RejectReason.class);
+        for (RejectReason reason : REASONS) {
+            reasons.put(reason, byReason[reason.ordinal()].sum());
+        }
+        Map<String, Long> pairs = new LinkedHashMap<>();
+        for (int i = 0; i < byPair.length; i++) {
+            long count = byPair[i].sum();
+            if (count > 0) {
+                pairs.put(currencyPairs.nameOf(i), count);
+            }
+        }
+        return new RejectionStats(Collections.unmodifiableMap(reasons), Collections.unmodifiableMap(pairs));
+    }
+
+    /**
+     * Takes one of the current second's log permits. The window bookkeeping is deliberately loose: racing threads
+     * can let a few extra warnings through around a second boundary, but the common over-limit case is a pair of
+     * volatile reads and an uncontended adder increment.
+     */
+    private boolean tryAcquireLog() {
+        int limit = logLimit;
+        if (limit == Integer.MAX_VALUE) {
+            return true;
+        }
+        long window = System.nanoTime() / NANOS_PER_SECOND;
+        if (window != logWindow) {
+            synchronized (this) {
+                if (window != logWindow) {
+                    logWindow = window;
+                    loggedInWindow = 0;
+                    long skipped = suppressed.sumThenReset();
+                    if (skipped > 0) {
+                        logger.log(Level.WARNING, "Suppressed {0} invalid trade warnings", skipped);
+                    }
+                }
+            }
+        }
+        if (loggedInWindow < limit) {
+            synchronized (this) {
+                if (loggedInWindow < limit) {
+                    loggedInWindow++;
+                    return true;
+                }
+            }
+        }
+        suppressed.increment();
+        return false;
+    }
+}
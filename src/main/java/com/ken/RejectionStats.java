@@ -0,0 +1,24 @@
+package com.ken;
+
+import java.util.Map;
+
+/**
+ * Snapshot of the trades rejected so far.
+ *
+ * @param byReason: number of rejected trades per reason, for every reason
+ * @param byPair:   number of rejected trades per currency pair, for pairs with rejections; trades whose pair is
+ *                  missing or unknown are only counted by reason
+ */
+public record RejectionStats(Map<RejectReason, Long> byReason, Map<String, Long> byPair) {
+
+    /**
+     * Gets the total number of rejected trades.
+     */
+    public long total() {
+        long total = 0;
+        for (long count : byReason.values()) {
+            total += count;
+        }
+        return total;
+    }
+}
@@ -0,0 +1,207 @@
+package com.ken;
+
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.util.Arrays;
+
+/**
+ * VWAP over a sliding window of the most recent trades, such as the last 15 minutes.
+ * <p>
+ * The window is split into fixed-width slots held in a circular buffer. Each slot keeps the price-volume and
+ * volume sums of its trades, and the window keeps running totals. When time moves forward the slots that fall
+ * out of the window are subtracted from the totals and cleared, so updates and queries do a constant amount of
+ * work per slot passed and never allocate. Trades older than the window are ignored. Subtracting slots leaves rounding
+ * residue in the running price-volume total, so it is cleared when the window empties and recomputed from the slots
+ * each time the window has slid its whole length.
+ * <p>
+ * Writers, which add trades or slide the window, take turns through a sequence number (a seqlock): an odd sequence
+ * means a writer is inside. Each writer publishes the window totals before it leaves, and queries read them without
+ * locking and retry if a writer was inside, so they never block the trade path.
+ * <p>
+ * Times are seconds of day, placed on a continuous clock relative to the latest trade. A trade no more than the
+ * maximum lateness behind the latest one, counting back across midnight, is a late trade: it is added if its slot
+ * is still in the window, and never moves the window. Any other trade is ahead of the latest one, so the clock
+ * moving back by more than the maximum lateness is the next day and the window carries on across midnight.
+ */
+final class RollingVWAPCalculator {
+
+    static final int DEFAULT_MAX_LATENESS_SECONDS = BucketPolicy.SECONDS_PER_DAY / 2;
+
+    private static final VarHandle SEQUENCE;
+    private static final VarHandle PUBLISHED_PRICE_VOLUME_SUM;
+    private static final VarHandle PUBLISHED_VOLUME_SUM;
+
+    static {
+        try {
+            MethodHandles.Lookup lookup = MethodHandles.lookup();
+            SEQUENCE = lookup.findVarHandle(RollingVWAPCalculator.class, "sequence", long.class);
+            PUBLISHED_PRICE_VOLUME_SUM = lookup.findVarHandle(RollingVWAPCalculator.class, "publishedPriceVolumeSum",
+                    double.class);
+            PUBLISHED_VOLUME_SUM = lookup.findVarHandle(RollingVWAPCalculator.class, "publishedVolumeSum",
+                    long.class);
+        } catch (ReflectiveOperationException e) {
+            throw new ExceptionInInitializerError(e);
+        }
+    }
+
+    private final int slotSeconds;
+    private final int maxLatenessSeconds;
+    private final double[] priceVolumeSums;
+    private final long[] volumeSums;
+    private final long[] slotNumbers;
+    private long latestTime = Long.MIN_VALUE;
+    private long latestSlot = Long.MIN_VALUE;
+    private double windowPriceVolumeSum;
+    private long windowVolumeSum;
+    private long slotsSinceRecompute;
+    // written only by writers inside the seqlock; the published totals are what queries read
+    private long sequence;
+    private double publishedPriceVolumeSum;
+    private long publishedVolumeSum;
+
+    /**
+     * @param windowSeconds: length of the window; a multiple of the slot width
+     * @param slotSeconds:   resolution the window slides at
+     */
+    RollingVWAPCalculator(int windowSeconds, int slotSeconds) {
+        this(windowSeconds, slotSeconds, DEFAULT_MAX_LATENESS_SECONDS);
+    }
+
+    /**
+     * @param windowSeconds:      length of the window; a multiple of the slot width
+     * @param slotSeconds:        resolution the window slides at
+     * @param maxLatenessSeconds: how far behind the latest trade a trade is still late rather than the next day;
+     *                            less than a day
+     */
+    RollingVWAPCalculator(int windowSeconds, int slotSeconds, int maxLatenessSeconds) {
+        this.slotSeconds = slotSeconds;
+        this.maxLatenessSeconds = maxLatenessSeconds;
+        int slots = windowSeconds / slotSeconds;
+        this.priceVolumeSums = new double[slots];
+        this.volumeSums = new long[slots];
+        this.slotNumbers = new long[slots];
+        Arrays.fill(slotNumbers, Long.MIN_VALUE);
+    }
+
+    /**
+     * Adds a trade and slides the window forward to its time if it is the latest one.
+     */
+    void addTrade(int secondOfDay, double price, long volume) {
+        long entered = beginWrite();
+        long slot = advanceTo(secondOfDay);
+        if (slot > latestSlot - slotNumbers.length) {
+            int index = (int) Math.floorMod(slot, (long) slotNumbers.length);
+            double priceVolume = price * volume;
+            priceVolumeSums[index] += priceVolume;
+            volumeSums[index] += volume;
+            slotNumbers[index] = slot;
+            windowPriceVolumeSum += priceVolume;
+            windowVolumeSum += volume;
+        }
+        endWrite(entered);
+    }
+
+    /**
+     * Calculates the VWAP of the window ending at the latest trade.
+     *
+     * @return The VWAP, or 0.0 if the window has no volume.
+     */
+    double calculateVWAP() {
+        for (int idle = 0; ; idle = TradeRingBuffer.backOff(idle)) {
+            long observed = (long) SEQUENCE.getAcquire(this);
+            if ((observed & 1) != 0) {
+                continue;
+            }
+            double priceVolumeSum = (double) PUBLISHED_PRICE_VOLUME_SUM.getAcquire(this);
+            long volumeSum = (long) PUBLISHED_VOLUME_SUM.getAcquire(this);
+            if ((long) SEQUENCE.getAcquire(this) == observed) {
+                return (volumeSum == 0) ? 0.0 : priceVolumeSum / volumeSum;
+            }
+        }
+    }
+
+    /**
+     * Slides the window forward to the given time and calculates its VWAP.
+     *
+     * @return The VWAP, or 0.0 if the window has no volume.
+     */
+    double calculateVWAP(int secondOfDay) {
+        long entered = beginWrite();
+        advanceTo(secondOfDay);
+        double vwap = (windowVolumeSum == 0) ? 0.0 : windowPriceVolumeSum / windowVolumeSum;
+        endWrite(entered);
+        return vwap;
+    }
+
+    /**
+     * Waits for the writers ahead, then makes the sequence odd.
+     *
+     * @return The even sequence this writer entered at, to pass to {@link #endWrite(long)}.
+     */
+    private long beginWrite() {
+        for (int idle = 0; ; idle = TradeRingBuffer.backOff(idle)) {
+            long entered = (long) SEQUENCE.getOpaque(this);
+            if ((entered & 1) == 0 && SEQUENCE.compareAndSet(this, entered, entered + 1)) {
+                return entered;
+            }
+        }
+    }
+
+    /**
+     * Publishes the window totals for queries and lets the next writer in.
+     */
+    private void endWrite(long entered) {
+        PUBLISHED_PRICE_VOLUME_SUM.setRelease(this, windowPriceVolumeSum);
+        PUBLISHED_VOLUME_SUM.setRelease(this, windowVolumeSum);
+        SEQUENCE.setRelease(this, entered + 2);
+    }
+
+    /**
+     * Places a second of day on the continuous clock and slides the window forward to it if it is the latest time.
+     *
+     * @return The slot of the time.
+     */
+    private long advanceTo(int secondOfDay) {
+        long time = secondOfDay;
+        if (latestTime != Long.MIN_VALUE) {
+            long ahead = Math.floorMod(secondOfDay - latestTime, (long) BucketPolicy.SECONDS_PER_DAY);
+            long behind = (ahead == 0) ? 0 : BucketPolicy.SECONDS_PER_DAY - ahead;
+            time = (behind <= maxLatenessSeconds) ? latestTime - behind : latestTime + ahead;
+        }
+        long slot = Math.floorDiv(time, slotSeconds);
+        if (time > latestTime) {
+            latestTime = time;
+            advanceToSlot(slot);
+        }
+        return slot;
+    }
+
+    private void advanceToSlot(long slot) {
+        if (slot <= latestSlot) {
+            return;
+        }
+        long steps = (latestSlot == Long.MIN_VALUE) ? 0 : Math.min(slot - latestSlot, slotNumbers.length);
+        for (long expired = slot - steps + 1; expired <= slot; expired++) {
+            int index = (int) Math.floorMod(expired, (long) slotNumbers.length);
+            if (slotNumbers[index] != Long.MIN_VALUE) {
+                windowPriceVolumeSum -= priceVolumeSums[index];
+                windowVolumeSum -= volumeSums[index];
+                priceVolumeSums[index] = 0.0;
+                volumeSums[index] = 0;
+                slotNumbers[index] = Long.MIN_VALUE;
+            }
+        }
+        slotsSinceRecompute += steps;
+        if (windowVolumeSum == 0) {
+            windowPriceVolumeSum = 0.0;  // drop rounding residue whenever the window empties
+            slotsSinceRecompute = 0;
+        } else if (slotsSinceRecompute >= slotNumbers.length) {
+            windowPriceVolumeSum = 0.0;  // and resum the slots once per window length, which keeps updates O(1)
+            for (double priceVolumeSum : priceVolumeSums) {
+                windowPriceVolumeSum += priceVolumeSum;
+            }
+            slotsSinceRecompute = 0;
+        }
+        latestSlot = slot;
+    }
+}
@@ -0,0 +1,42 @@
+package com.ken;
+
+/**
+ * {@link ColumnKernel} that handles one trade at a time, for JVMs without the Vector API.
+ */
+final class ScalarColumnKernel implements ColumnKernel {
+
+    @Override
+    public boolean allInRange(int[] values, int from, int to, int bound) {
+        boolean valid = true;
+        for (int i = from; i < to; i++) {
+            valid &= Integer.compareUnsigned(values[i], bound) < 0;
+        }
+        return valid;
+    }
+
+    @Override
+    public boolean allInRange(short[] values, int from, int to, int bound) {
+        boolean valid = true;
+        for (int i = from; i < to; i++) {
+            valid &= values[i] >= 0 && values[i] < bound;
+        }
+        return valid;
+    }
+
+    @Override
+    public boolean multiply(double[] prices, long[] volumes, int from, int to, double[] products) {
+        boolean valid = true;
+        for (int i = from; i < to; i++) {
+            valid &= prices[i] > 0.0 && volumes[i] > 0;
+            products[i - from] = prices[i] * volumes[i];
+        }
+        return valid;
+    }
+
+    @Override
+    public void slots(int[] secondsOfDay, int from, int to, int widthSeconds, int[] slots) {
+        for (int i = from; i < to; i++) {
+            slots[i - from] = secondsOfDay[i] / widthSeconds;
+        }
+    }
+}
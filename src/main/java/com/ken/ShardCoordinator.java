@@ -0,0 +1,100 @@
+package com.ken;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Global VWAP view over shards that each aggregate part of the trades.
+ * <p>
+ * Every query pulls a {@link PartialAggregate} from all shards at once, one virtual thread per shard, and merges
+ * them in shard order, so double sums are added in the same order on every query. A shard that cannot be pulled,
+ * or whose partial does not fit the coordinator's bucket width and accumulation, is logged and represented by its
+ * last good partial, so the view goes stale for that shard instead of losing its buckets; a shard that has never
+ * answered contributes nothing.
+ */
+public final class ShardCoordinator {
+
+    private static final Logger LOGGER = Logger.getLogger(ShardCoordinator.class.getName());
+
+    private final BucketPolicy policy;
+    private final Accumulation accumulation;
+    private final List<PartialSource> shards;
+    private final PartialAggregate[] lastPulled;
+
+    /**
+     * Creates a coordinator over the given shards.
+     *
+     * @param policy:       bucket width every shard uses
+     * @param accumulation: accumulation every shard uses
+     * @param shards:       shards to pull from
+     */
+    public ShardCoordinator(BucketPolicy policy, Accumulation accumulation, List<PartialSource> shards) {
+        if (shards.isEmpty()) {
+            throw new IllegalArgumentException("No shards");
+        }
+        this.policy = policy;
+        this.accumulation = accumulation;
+        this.shards = List.copyOf(shards);
+        this.lastPulled = new PartialAggregate[shards.size()];
+    }
+
+    /**
+     * Pulls a partial from every shard and merges them.
+     *
+     * @return The merged partial of all shards.
+     */
+    public synchronized PartialAggregate pull() {
+        List<Future<PartialAggregate>> pulls = new ArrayList<>(shards.size());
+        try (ExecutorService executor = Executors.newThreadPerTaskExecutor(
+                Thread.ofVirtual().name("vwap-shard-pull-", 0).factory())) {
+            for (PartialSource shard : shards) {
+                pulls.add(executor.submit(shard::pull));
+            }
+        }
+        PartialAggregate merged = PartialAggregate.empty(policy, accumulation);
+        for (int shard = 0; shard < lastPulled.length; shard++) {
+            try {
+                PartialAggregate partial = pulls.get(shard).get();
+                if (!partial.policy().equals(policy) || partial.accumulation() != accumulation) {
+                    throw new IllegalArgumentException("Shard partial is " + partial.policy() + " "
+                            + partial.accumulation() + ", expected " + policy + " " + accumulation);
+                }
+                lastPulled[shard] = partial;
+            } catch (ExecutionException | IllegalArgumentException e) {
+                LOGGER.log(Level.WARNING, "Failed to pull shard " + shard + ", using its last partial",
+                        (e instanceof ExecutionException) ? e.getCause() : e);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            if (lastPulled[shard] != null) {
+                merged = merged.merge(lastPulled[shard]);
+            }
+        }
+        return merged;
+    }
+
+    /**
+     * Gets the VWAP of every bucket across all shards.
+     *
+     * @return The VWAP values, keyed like {@link VWAPCalculatorApplication#getAllVWAP()}. The map is unmodifiable.
+     */
+    public Map<String, Double> getAllVWAP() {
+        return pull().getAllVWAP();
+    }
+
+    /**
+     * Gets the bars of every bucket across all shards.
+     *
+     * @return The bars, in currency pair and time order.
+     */
+    public Bars getAllBars() {
+        return pull().getAllBars();
+    }
+}
@@ -0,0 +1,84 @@
+package com.ken;
+
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Serves an application's {@link PartialAggregate} to {@link ShardCoordinator}s over TCP.
+ * <p>
+ * The protocol is a single response: every accepted connection is sent the current partial as a big-endian int
+ * length followed by {@link PartialAggregate#toBytes()}, and is then closed. Connections are accepted and
+ * answered on virtual threads, so a slow coordinator only holds up its own connection.
+ */
+public final class ShardServer implements AutoCloseable {
+
+    private static final Logger LOGGER = Logger.getLogger(ShardServer.class.getName());
+    static final int MAX_PARTIAL_BYTES = 1 << 30;
+
+    private final VWAPCalculatorApplication application;
+    private final ServerSocket serverSocket;
+    private final Thread acceptor;
+
+    ShardServer(VWAPCalculatorApplication application, InetSocketAddress address) throws IOException {
+        this.application = application;
+        this.serverSocket = new ServerSocket();
+        try {
+            serverSocket.bind(address);
+        } catch (IOException e) {
+            serverSocket.close();
+            throw e;
+        }
+        this.acceptor = Thread.ofVirtual().name("vwap-shard-server").start(this::accept);
+    }
+
+    /**
+     * Gets the address the server listens on, with the actual port if it was started on port 0.
+     */
+    public InetSocketAddress getAddress() {
+        return (InetSocketAddress) serverSocket.getLocalSocketAddress();
+    }
+
+    /**
+     * Stops accepting connections. Partials already being sent are allowed to finish.
+     */
+    @Override
+    public void close() throws IOException {
+        serverSocket.close();
+        try {
+            acceptor.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private void accept() {
+        while (!serverSocket.isClosed()) {
+            try {
+                Socket socket = serverSocket.accept();
+                Thread.ofVirtual().name("vwap-shard-connection").start(() -> send(socket));
+            } catch (IOException e) {
+                if (!serverSocket.isClosed()) {
+                    LOGGER.log(Level.WARNING, "Failed to accept shard connection", e);
+                }
+            }
+        }
+    }
+
+    private void send(Socket socket) {
+        try (socket; OutputStream out = socket.getOutputStream()) {
+            byte[] encoded = application.exportPartial().toBytes();
+            DataOutputStream data = new DataOutputStream(out);
+            data.writeInt(encoded.length);
+            data.write(encoded);
+            data.flush();
+        } catch (IOException | RuntimeException e) {
+            LOGGER.log(Level.WARNING, "Failed to send partial aggregate to " + socket.getRemoteSocketAddress(), e);
+        }
+    }
+}
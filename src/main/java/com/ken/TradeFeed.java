@@ -0,0 +1,134 @@
+package com.ken;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.Iterator;
+
+/**
+ * A blocking source of trades, such as one liquidity provider's connection, for
+ * {@link VWAPCalculatorApplication#ingestFeeds(java.util.Collection)}.
+ * <p>
+ * A feed is read on its own thread until it is exhausted. Reads may block for as long as the source needs; the
+ * thread is virtual, so a blocked feed holds no platform thread.
+ */
+public abstract class TradeFeed {
+
+    private final String name;
+    long records;
+
+    private TradeFeed(String name) {
+        this.name = name;
+    }
+
+    /**
+     * Creates a feed of trades in the {@code String[]} format of {@link VWAPCalculatorApplication#processTrades(String[][])}.
+     *
+     * @param name:   name of the feed, used in results and log messages
+     * @param trades: trades; {@code hasNext} and {@code next} may block
+     * @return The feed.
+     */
+    public static TradeFeed of(String name, Iterator<String[]> trades) {
+        return new IteratorFeed(name, trades);
+    }
+
+    /**
+     * Creates a feed of CSV trade records in the format of {@link VWAPCalculatorApplication#processTrades(ByteBuffer)}.
+     * The stream is read in chunks, parsed without allocating per trade, and closed when the feed ends or is
+     * cancelled.
+     *
+     * @param name: name of the feed, used in results and log messages
+     * @param csv:  stream of CSV records, one per line; reads may block
+     * @return The feed.
+     */
+    public static TradeFeed of(String name, InputStream csv) {
+        return new CsvFeed(name, csv);
+    }
+
+    public String name() {
+        return name;
+    }
+
+    /**
+     * Reads the feed until it ends, processing its trades into the application and counting them in
+     * {@link #records}.
+     */
+    abstract void drain(VWAPCalculatorApplication application) throws IOException, InterruptedException;
+
+    /**
+     * Unblocks a pending read so the feed can stop. Called from another thread.
+     */
+    void cancel() {
+    }
+
+    private static final class IteratorFeed extends TradeFeed {
+        private final Iterator<String[]> trades;
+
+        IteratorFeed(String name, Iterator<String[]> trades) {
+            super(name);
+            this.trades = trades;
+        }
+
+        @Override
+        void drain(VWAPCalculatorApplication application) throws InterruptedException {
+            while (trades.hasNext()) {
+                if (Thread.interrupted()) {
+                    throw new InterruptedException();
+                }
+                application.processFeedTrade(trades.next());
+                records++;
+            }
+        }
+    }
+
+    private static final class CsvFeed extends TradeFeed {
+        private static final int CHUNK_SIZE = 64 * 1024;
+        private static final int MAX_RECORD_SIZE = 1024 * 1024;
+
+        private final InputStream csv;
+
+        CsvFeed(String name, InputStream csv) {
+            super(name);
+            this.csv = csv;
+        }
+
+        @Override
+        void drain(VWAPCalculatorApplication application) throws IOException, InterruptedException {
+            try (InputStream in = csv) {
+                byte[] chunk = new byte[CHUNK_SIZE];
+                int filled = 0;
+                for (int read; (read = in.read(chunk, filled, chunk.length - filled)) >= 0; ) {
+                    if (Thread.interrupted()) {
+                        throw new InterruptedException();
+                    }
+                    filled += read;
+                    int end = filled;
+                    while (end > 0 && chunk[end - 1] != '\n') {
+                        end--;
+                    }
+                    if (end == 0 && filled == chunk.length) {
+                        if (chunk.length >= MAX_RECORD_SIZE) {
+                            throw new IOException("Trade record longer than " + MAX_RECORD_SIZE + " bytes");
+                        }
+                        chunk = Arrays.copyOf(chunk, chunk.length * 2);
+                        continue;
+                    }
+                    records += application.processFeedRecords(ByteBuffer.wrap(chunk, 0, end));
+                    System.arraycopy(chunk, end, chunk, 0, filled - end);
+                    filled -= end;
+                }
+                records += application.processFeedRecords(ByteBuffer.wrap(chunk, 0, filled));
+            }
+        }
+
+        @Override
+        void cancel() {
+            try {
+                csv.close();
+            } catch (IOException e) {
+                // the feed is being abandoned, so a failure to close it has nothing left to affect
+            }
+        }
+    }
+}
@@ -0,0 +1,510 @@
+package com.ken;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.Duration;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import java.util.stream.Stream;
+
+/**
+ * Append-only journal of accepted trades in memory-mapped segment files.
+ * <p>
+ * Every record is 24 bytes, big-endian:
+ * <pre>
+ * int    currency pair index + 1; 0 marks a record that was never completed
+ * int    second of day
+ * double price
+ * long   volume
+ * </pre>
+ * Trades only carry a time of day, so the journal also records the session lifecycle in marker records with a
+ * negative first field: {@value #SESSION} starts a session, with its date as an epoch day in the volume field, and
+ * {@value #CLOSE} closes the buckets ending at or before the second of day in the second field. Replay hands
+ * markers to a {@link MarkerSink} in order with the trades, so a reader can roll sessions and close buckets where
+ * the writer did.
+ * Segments are named {@code trades-<index>.journal} and hold a fixed number of record slots; the first slot is a
+ * header with a magic number, the format version and the number of record slots. The record slots are followed by
+ * a table of the pair names, eight bytes for each of the {@value CurrencyPairRegistry#MAX_PAIRS} possible indexes,
+ * the ASCII code padded with zeros and all zeros for an unused index. Indexes are only meaningful to the writer's
+ * registry, so every segment names the pairs its records use: the table is written when a segment is created and
+ * when it becomes current, and {@link #definePair(int)} adds pairs registered later. Appending claims the next slot
+ * with one atomic increment, writes the last three fields and then release-stores the first, so any number of
+ * threads append without locking and a reader never sees a half-written record. The operating system writes the
+ * mapped pages back on its own; {@link #sync()} forces them to disk, and a sync interval does that on a background
+ * thread, so durability is committed in groups rather than per trade.
+ * <p>
+ * Once appends reach the middle of a segment, the next one is created and mapped on the background thread, so the
+ * append that crosses into it only swaps the mapping in under the lock. If that fails, the crossing append maps the
+ * segment itself and reports the error. A prepared segment that no append reached is deleted on close.
+ * <p>
+ * Opening an existing directory continues after its last completed record, stepping back over empty segments left
+ * prepared by a writer that crashed; if the last segment's table gives an index another name than this writer's
+ * registry, appending starts a new segment instead. Replay maps each segment read-only, translates its pair names
+ * to the reader's indexes, and walks its records in place, skipping slots that a crashed writer claimed but never
+ * completed.
+ */
+final class TradeJournal implements AutoCloseable {
+
+    static final int RECORD_BYTES = 24;
+    static final int DEFAULT_SEGMENT_RECORDS = 1 << 21;
+    private static final int MAGIC = 0x5657414A;
+    static final int SESSION = -1;
+    static final int CLOSE = -2;
+    private static final int FORMAT_VERSION = 3;
+    private static final int TABLE_ENTRY_BYTES = 8;
+    private static final int TABLE_BYTES = CurrencyPairRegistry.MAX_PAIRS * TABLE_ENTRY_BYTES;
+    private static final VarHandle INT = MethodHandles.byteBufferViewVarHandle(int[].class, ByteOrder.BIG_ENDIAN);
+    private static final Logger LOGGER = Logger.getLogger(TradeJournal.class.getName());
+
+    private final Path directory;
+    private final CurrencyPairRegistry currencyPairs;
+    private final int segmentRecords;
+    private final int recordsPerSegment;
+    private final AtomicLong nextRecord;
+    private final ScheduledExecutorService background;
+    private volatile Segment current;
+    private volatile Segment previous;
+    private long preparedIndex = -1;  // guarded by this
+    private CompletableFuture<Segment> prepared;  // guarded by this
+
+    /**
+     * Opens a journal directory for appending, creating it if needed.
+     *
+     * @param directory:      directory of the segment files
+     * @param currencyPairs:  registry naming the pair indexes of appended trades
+     * @param segmentRecords: record slots per new segment, including the header slot; an existing journal keeps
+     *                        the size of its segments
+     * @param syncInterval:   time between background syncs, or null to leave write-back to the operating system
+     */
+    TradeJournal(Path directory, CurrencyPairRegistry currencyPairs, int segmentRecords, Duration syncInterval)
+            throws IOException {
+        this.directory = Files.createDirectories(directory);
+        this.currencyPairs = currencyPairs;
+        List<Path> segments = segments(directory);
+        long next = 0;
+        if (segments.isEmpty()) {
+            this.segmentRecords = segmentRecords;
+        } else {
+            Path last = segments.get(segments.size() - 1);
+            int existingRecords;
+            try (FileChannel channel = FileChannel.open(last, StandardOpenOption.READ)) {
+                existingRecords = checkHeader(channel.map(FileChannel.MapMode.READ_ONLY, 0, RECORD_BYTES), last);
+            }
+            this.segmentRecords = existingRecords;
+            for (int i = segments.size() - 1; i >= 0; i--) {
+                long index = segmentIndex(segments.get(i));
+                Segment segment = map(index);
+                int end = existingRecords - 1;
+                while (end > 0 && segment.buffer.getInt(end * RECORD_BYTES) == 0) {
+                    end--;
+                }
+                next = index * (existingRecords - 1) + end;
+                current = segment;
+                if (end > 0 && !namesMatch(segment)) {
+                    next = (index + 1) * (existingRecords - 1);
+                    current = null;
+                    break;
+                }
+                if (end > 0 || i == 0 || segmentIndex(segments.get(i - 1)) != index - 1) {
+                    writeNames(segment);
+                    break;
+                }
+            }
+        }
+        this.recordsPerSegment = this.segmentRecords - 1;
+        this.nextRecord = new AtomicLong(next);
+        this.background = Executors.newSingleThreadScheduledExecutor(task -> {
+            Thread thread = new Thread(task, "vwap-journal");
+            thread.setDaemon(true);
+            return thread;
+        });
+        if (syncInterval != null) {
+            long nanos = syncInterval.toNanos();
+            background.scheduleWithFixedDelay(this::syncQuietly, nanos, nanos, TimeUnit.NANOSECONDS);
+        }
+    }
+
+    /**
+     * Appends one trade.
+     *
+     * @throws UncheckedIOException if a new segment file cannot be created
+     */
+    void append(int pairOrdinal, int secondOfDay, double price, long volume) {
+        write(pairOrdinal + 1, secondOfDay, price, volume);
+    }
+
+    /**
+     * Appends a marker for the start of a session.
+     *
+     * @throws UncheckedIOException if a new segment file cannot be created
+     */
+    void appendSession(LocalDate session) {
+        write(SESSION, 0, 0.0, session.toEpochDay());
+    }
+
+    /**
+     * Appends a marker for closing the buckets that end at or before a time.
+     *
+     * @throws UncheckedIOException if a new segment file cannot be created
+     */
+    void appendClose(int secondOfDay) {
+        write(CLOSE, secondOfDay, 0.0, 0);
+    }
+
+    private void write(int tag, int secondOfDay, double price, long volume) {
+        long record = nextRecord.getAndIncrement();
+        Segment segment = current;
+        long index = record / recordsPerSegment;
+        if (segment == null || segment.index != index) {
+            segment = segment(index);
+        }
+        int slot = (int) (record % recordsPerSegment);
+        int offset = (slot + 1) * RECORD_BYTES;
+        ByteBuffer buffer = segment.buffer;
+        buffer.putInt(offset + 4, secondOfDay);
+        buffer.putDouble(offset + 8, price);
+        buffer.putLong(offset + 16, volume);
+        INT.setRelease(buffer, offset, tag);
+        if (slot == recordsPerSegment / 2) {
+            prepare(index + 1);
+        }
+    }
+
+    /**
+     * Names a pair registered after the current segment was created in the segments trades are appended to.
+     */
+    synchronized void definePair(int pairOrdinal) {
+        String name = currencyPairs.nameOf(pairOrdinal);
+        for (Segment segment : new Segment[]{previous, current}) {
+            if (segment != null) {
+                writeName(segment.buffer, segmentRecords * RECORD_BYTES + pairOrdinal * TABLE_ENTRY_BYTES, name);
+            }
+        }
+    }
+
+    /**
+     * Forces every appended record of the current and previous segment to disk.
+     */
+    void sync() {
+        Segment older = previous;
+        Segment latest = current;
+        if (older != null) {
+            older.buffer.force();
+        }
+        if (latest != null) {
+            latest.buffer.force();
+        }
+    }
+
+    @Override
+    public void close() {
+        background.shutdown();
+        sync();
+        deleteUnusedSegment();
+    }
+
+    /**
+     * Hands every completed trade in a journal directory to the sink, in append order, with its pair index
+     * translated to the reader's, and skips the session markers.
+     *
+     * @param pairOrdinals: index of every known currency pair, by name
+     * @return The number of trades replayed.
+     * @throws IOException if a segment cannot be read, is not a journal segment or has a trade of an unknown pair
+     */
+    static long replay(Path directory, Map<String, Integer> pairOrdinals, TradeSink sink) throws IOException {
+        return replay(directory, pairOrdinals, sink, null);
+    }
+
+    /**
+     * Hands every completed record in a journal directory to the sink or the marker sink, in append order, with
+     * trade pair indexes translated to the reader's. Every segment is checked before the first record is handed
+     * over, so a journal with an unknown pair or record replays nothing.
+     *
+     * @param pairOrdinals: index of every known currency pair, by name
+     * @param markers:      receives the session markers, or null to skip them
+     * @return The number of trades replayed.
+     * @throws IOException if a segment cannot be read, is not a journal segment or has a trade of an unknown pair
+     */
+    static long replay(Path directory, Map<String, Integer> pairOrdinals, TradeSink sink, MarkerSink markers)
+            throws IOException {
+        List<MappedByteBuffer> buffers = new ArrayList<>();
+        List<int[]> ordinals = new ArrayList<>();
+        for (Path file : segments(directory)) {
+            try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+                MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+                int records = checkHeader(buffer, file);
+                if (records < 1 || channel.size() < (long) records * RECORD_BYTES + TABLE_BYTES) {
+                    throw new IOException("Truncated journal segment: " + file);
+                }
+                int[] pairs = new int[CurrencyPairRegistry.MAX_PAIRS];
+                Arrays.fill(pairs, -1);
+                for (int pair = 0; pair < pairs.length; pair++) {
+                    String name = readName(buffer, records * RECORD_BYTES + pair * TABLE_ENTRY_BYTES);
+                    Integer ordinal = (name == null) ? null : pairOrdinals.get(name);
+                    pairs[pair] = (ordinal == null) ? -1 : ordinal;
+                }
+                for (int offset = RECORD_BYTES; offset < records * RECORD_BYTES; offset += RECORD_BYTES) {
+                    int tag = buffer.getInt(offset);
+                    if (tag > 0 && (tag > pairs.length || pairs[tag - 1] < 0)) {
+                        throw new IOException("Journal contains an unknown currency pair: " + file);
+                    }
+                    if (tag < 0 && tag != SESSION && tag != CLOSE) {
+                        throw new IOException("Journal contains an unknown record type " + tag + ": " + file);
+                    }
+                    long epochDay = buffer.getLong(offset + 16);
+                    if (tag == SESSION
+                            && (epochDay < LocalDate.MIN.toEpochDay() || epochDay > LocalDate.MAX.toEpochDay())) {
+                        throw new IOException("Journal contains an invalid session: " + file);
+                    }
+                }
+                buffers.add(buffer);
+                ordinals.add(pairs);
+            }
+        }
+        long replayed = 0;
+        for (int i = 0; i < buffers.size(); i++) {
+            MappedByteBuffer buffer = buffers.get(i);
+            int[] pairs = ordinals.get(i);
+            int records = buffer.getInt(8);
+            for (int offset = RECORD_BYTES; offset < records * RECORD_BYTES; offset += RECORD_BYTES) {
+                int tag = buffer.getInt(offset);
+                if (tag > 0) {
+                    sink.accept(pairs[tag - 1], buffer.getInt(offset + 4), buffer.getDouble(offset + 8),
+                            buffer.getLong(offset + 16));
+                    replayed++;
+                } else if (tag == SESSION && markers != null) {
+                    markers.session(LocalDate.ofEpochDay(buffer.getLong(offset + 16)));
+                } else if (tag == CLOSE && markers != null) {
+                    markers.closeBefore(buffer.getInt(offset + 4));
+                }
+            }
+        }
+        return replayed;
+    }
+
+    private synchronized Segment segment(long index) {
+        Segment segment = current;
+        if (segment != null && segment.index == index) {
+            return segment;
+        }
+        Segment older = previous;
+        if (older != null && older.index == index) {
+            return older;
+        }
+        try {
+            Segment created = takePrepared(index);
+            if (created == null) {
+                created = map(index);
+            }
+            // pairs registered while the segment was being prepared are named now, before any of its records
+            writeNames(created);
+            if (segment == null || index > segment.index) {
+                previous = segment;
+                current = created;
+            }
+            return created;
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    /**
+     * Starts creating and mapping a segment on the background thread, unless it is already under way.
+     */
+    private synchronized void prepare(long index) {
+        if (index <= preparedIndex || (current != null && index <= current.index) || background.isShutdown()) {
+            return;
+        }
+        preparedIndex = index;
+        prepared = CompletableFuture.supplyAsync(() -> {
+            try {
+                return map(index);
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }, background);
+    }
+
+    /**
+     * @return The prepared segment with the index, waiting for it if it is still being mapped, or null if it was
+     * not prepared or preparing it failed.
+     */
+    private synchronized Segment takePrepared(long index) {
+        if (prepared == null || preparedIndex != index) {
+            return null;
+        }
+        CompletableFuture<Segment> segment = prepared;
+        prepared = null;
+        try {
+            return segment.join();
+        } catch (CompletionException e) {
+            LOGGER.log(Level.WARNING, "Failed to prepare journal segment " + index + " in " + directory, e);
+            return null;
+        }
+    }
+
+    private synchronized void deleteUnusedSegment() {
+        if (prepared == null) {
+            return;
+        }
+        try {
+            Segment segment = prepared.join();
+            if (nextRecord.get() <= segment.index * recordsPerSegment) {
+                Files.deleteIfExists(segmentFile(segment.index));
+            }
+        } catch (CompletionException | IOException e) {
+            LOGGER.log(Level.FINE, "Failed to remove unused journal segment in " + directory, e);
+        } finally {
+            prepared = null;
+        }
+    }
+
+    private Path segmentFile(long index) {
+        return directory.resolve(String.format("trades-%016d.journal", index));
+    }
+
+    private Segment map(long index) throws IOException {
+        Path file = segmentFile(index);
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.READ,
+                StandardOpenOption.WRITE)) {
+            boolean fresh = channel.size() == 0;
+            long size = fresh ? (long) segmentRecords * RECORD_BYTES + TABLE_BYTES : channel.size();
+            MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_WRITE, 0, size);
+            Segment segment = new Segment(index, buffer);
+            if (fresh) {
+                buffer.putInt(0, MAGIC).putInt(4, FORMAT_VERSION).putInt(8, segmentRecords);
+                writeNames(segment);
+            } else if (checkHeader(buffer, file) != segmentRecords || size < (long) segmentRecords * RECORD_BYTES
+                    + TABLE_BYTES) {
+                throw new IOException("Journal segment has a different size: " + file);
+            }
+            return segment;
+        }
+    }
+
+    /**
+     * Writes the name of every pair in the registry to a segment's table, and clears the rest of it.
+     */
+    private void writeNames(Segment segment) {
+        String[] names = currencyPairs.names();
+        int table = segmentRecords * RECORD_BYTES;
+        for (int pair = 0; pair < CurrencyPairRegistry.MAX_PAIRS; pair++) {
+            writeName(segment.buffer, table + pair * TABLE_ENTRY_BYTES, (pair < names.length) ? names[pair] : null);
+        }
+    }
+
+    /**
+     * @return Whether every pair named in a segment's table has the same index in the registry.
+     */
+    private boolean namesMatch(Segment segment) {
+        String[] names = currencyPairs.names();
+        int table = segmentRecords * RECORD_BYTES;
+        for (int pair = 0; pair < CurrencyPairRegistry.MAX_PAIRS; pair++) {
+            String name = readName(segment.buffer, table + pair * TABLE_ENTRY_BYTES);
+            if (name != null && (pair >= names.length || !name.equals(names[pair]))) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static void writeName(ByteBuffer buffer, int offset, String name) {
+        for (int i = 0; i < TABLE_ENTRY_BYTES; i++) {
+            buffer.put(offset + i, (name != null && i < name.length()) ? (byte) name.charAt(i) : 0);
+        }
+    }
+
+    private static String readName(ByteBuffer buffer, int offset) {
+        int length = 0;
+        while (length < TABLE_ENTRY_BYTES && buffer.get(offset + length) != 0) {
+            length++;
+        }
+        if (length == 0) {
+            return null;
+        }
+        byte[] name = new byte[length];
+        buffer.get(offset, name);
+        return new String(name, StandardCharsets.US_ASCII);
+    }
+
+    private static int checkHeader(ByteBuffer buffer, Path file) throws IOException {
+        if (buffer.capacity() < RECORD_BYTES || buffer.getInt(0) != MAGIC) {
+            throw new IOException("Not a trade journal segment: " + file);
+        }
+        if (buffer.getInt(4) != FORMAT_VERSION) {
+            throw new IOException("Unsupported journal version: " + buffer.getInt(4));
+        }
+        return buffer.getInt(8);
+    }
+
+    private static List<Path> segments(Path directory) throws IOException {
+        if (!Files.isDirectory(directory)) {
+            return List.of();
+        }
+        try (Stream<Path> files = Files.list(directory)) {
+            return files.filter(file -> file.getFileName().toString().matches("trades-\\d{16}\\.journal"))
+                    .sorted()
+                    .toList();
+        }
+    }
+
+    private static long segmentIndex(Path file) {
+        String name = file.getFileName().toString();
+        return Long.parseLong(name.substring("trades-".length(), name.length() - ".journal".length()));
+    }
+
+    private void syncQuietly() {
+        try {
+            sync();
+        } catch (RuntimeException e) {
+            LOGGER.log(Level.SEVERE, "Failed to sync trade journal in " + directory, e);
+        }
+    }
+
+    /**
+     * Receives the session markers of a replayed journal.
+     */
+    interface MarkerSink {
+
+        /**
+         * Called where the writer started a session.
+         */
+        void session(LocalDate session);
+
+        /**
+         * Called where the writer closed the buckets that end at or before a second of day.
+         */
+        void closeBefore(int secondOfDay);
+    }
+
+    private static final class Segment {
+        final long index;
+        final MappedByteBuffer buffer;
+
+        Segment(long index, MappedByteBuffer buffer) {
+            this.index = index;
+            this.buffer = buffer;
+        }
+    }
+}
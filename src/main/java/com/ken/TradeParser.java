@@ -0,0 +1,314 @@
+package com.ken;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Single-pass parser for CSV trade records held in a {@link ByteBuffer}.
+ * <p>
+ * A record looks like {@code 9:31 AM,EUR/USD,1.1000,100}. The parser validates and decodes all four fields
+ * straight from the buffer without creating Strings, so accepted trades cost no allocation. It accepts exactly
+ * what {@link java.time.LocalTime#parse}, {@link Double#parseDouble} and {@link Long#parseLong} accept and reports
+ * the first failing check; unusual number spellings (exponents, surrounding whitespace, very long digit runs) are
+ * handed to those methods so the outcome never differs. Fields that cannot hold a positive number are rejected
+ * before that, so typical junk costs no exception.
+ * <p>
+ * {@code String[]} trades are copied field by field into a scratch buffer and go through the same scanner.
+ * <p>
+ * Instances hold the fields of the last parsed trade and are therefore not thread-safe.
+ */
+final class TradeParser {
+
+    private static final double[] POWERS_OF_TEN = {
+            1e0, 1e1, 1e2, 1e3, 1e4, 1e5, 1e6, 1e7, 1e8, 1e9, 1e10,
+            1e11, 1e12, 1e13, 1e14, 1e15, 1e16, 1e17, 1e18, 1e19, 1e20, 1e21, 1e22
+    };
+    private static final int MAX_EXACT_DIGITS = 15;  // every integer below 10^15 is an exact double
+    private static final int MAX_HOUR_DIGITS = 19;   // widest number DateTimeFormatter reads for "h"
+
+    private final CurrencyPairRegistry currencyPairs;
+    private final boolean acceptsSeconds;
+    private final Accumulation accumulation;
+
+    private final int[] fieldEnds = new int[4];
+    private ByteBuffer scratch = ByteBuffer.allocate(64);
+
+    int secondOfDay;
+    int pairOrdinal;
+    double price;
+    long volume;
+
+    TradeParser(CurrencyPairRegistry currencyPairs, BucketPolicy policy, Accumulation accumulation) {
+        this.currencyPairs = currencyPairs;
+        this.acceptsSeconds = policy.acceptsSeconds();
+        this.accumulation = accumulation;
+    }
+
+    /**
+     * Parses one record. On success the trade fields are left in this parser.
+     *
+     * @param buffer: buffer holding the record; its position and limit are not changed
+     * @param start:  index of the first byte of the record
+     * @param end:    index just past the last byte of the record, excluding the line terminator
+     * @return null if the trade is valid, otherwise the first check it fails. On failure {@link #pairOrdinal} is
+     * the record's currency pair if it is a known one, or -1.
+     */
+    RejectReason parse(ByteBuffer buffer, int start, int end) {
+        int firstComma = indexOf(buffer, start, end);
+        int secondComma = indexOf(buffer, firstComma + 1, end);
+        int thirdComma = indexOf(buffer, secondComma + 1, end);
+        boolean validCurrency = parseCurrency(buffer, firstComma + 1, secondComma);
+        if (thirdComma == end || indexOf(buffer, thirdComma + 1, end) != end) {
+            return RejectReason.STREAM_FORMAT;
+        }
+        return parseFields(buffer, start, firstComma, validCurrency, secondComma + 1, thirdComma, thirdComma + 1,
+                end);
+    }
+
+    /**
+     * Checks the fields of a split record in the order time, currency pair, price, volume; the currency pair has
+     * already been looked up.
+     */
+    private RejectReason parseFields(ByteBuffer buffer, int timeStart, int timeEnd, boolean validCurrency,
+                                     int priceStart, int priceEnd, int volumeStart, int volumeEnd) {
+        if (!parseTime(buffer, timeStart, timeEnd)) {
+            return RejectReason.TIME;
+        }
+        if (!validCurrency) {
+            return RejectReason.CURRENCY_PAIR;
+        }
+        if (!parsePrice(buffer, priceStart, priceEnd) || !accumulation.accepts(price)) {
+            return RejectReason.PRICE;
+        }
+        if (!parseVolume(buffer, volumeStart, volumeEnd)) {
+            return RejectReason.VOLUME;
+        }
+        return null;
+    }
+
+    /**
+     * Parses a trade given as separate fields. On success the trade fields are left in this parser.
+     *
+     * @param trade: trade in this format: [Timestamp, Currency-pair, Price, Volume]
+     * @return null if the trade is valid, otherwise the first check it fails. On failure {@link #pairOrdinal} is
+     * the trade's currency pair if it is a known one, or -1.
+     */
+    RejectReason parse(String[] trade) {
+        pairOrdinal = -1;
+        if (trade.length != 4) {
+            return RejectReason.STREAM_FORMAT;
+        }
+        int maxBytes = 0;
+        for (String field : trade) {
+            maxBytes += (field == null) ? 0 : field.length() * 3;
+        }
+        if (scratch.capacity() < maxBytes) {
+            scratch = ByteBuffer.allocate(maxBytes);
+        }
+        int end = 0;
+        for (int field = 0; field < 4; field++) {
+            end = copy(trade[field], end);
+            fieldEnds[field] = end;
+        }
+        boolean validCurrency = parseCurrency(scratch, fieldEnds[0], fieldEnds[1]);
+        return parseFields(scratch, 0, fieldEnds[0], validCurrency, fieldEnds[1], fieldEnds[2], fieldEnds[2],
+                fieldEnds[3]);
+    }
+
+    /**
+     * Appends a field to the scratch buffer: ASCII as is, anything else as UTF-8, so the slow paths decode the
+     * original text.
+     *
+     * @return The index after the field.
+     */
+    private int copy(String field, int at) {
+        int length = (field == null) ? 0 : field.length();
+        for (int i = 0; i < length; i++) {
+            char c = field.charAt(i);
+            if (c > 0x7F) {
+                byte[] bytes = field.getBytes(StandardCharsets.UTF_8);
+                scratch.put(at, bytes);
+                return at + bytes.length;
+            }
+            scratch.put(at + i, (byte) c);
+        }
+        return at + length;
+    }
+
+    /**
+     * Splits a record into its fields the same way a caller of {@code processTrades(String[][])} would see them.
+     * Only used on the rejection path.
+     */
+    static String[] fields(ByteBuffer buffer, int start, int end) {
+        byte[] bytes = new byte[end - start];
+        buffer.get(start, bytes);
+        return new String(bytes, StandardCharsets.UTF_8).split(",", -1);
+    }
+
+    private static int indexOf(ByteBuffer buffer, int from, int end) {
+        for (int i = from; i < end; i++) {
+            if (buffer.get(i) == ',') {
+                return i;
+            }
+        }
+        return end;
+    }
+
+    /**
+     * Mirrors {@code LocalTime.parse(time, policy.tradeTimeFormatter())}, that is {@code h:mm a}, or
+     * {@code h:mm[:ss] a} for policies finer than a minute, with the default smart resolver, which also lets a clock
+     * hour of 0 through.
+     */
+    private boolean parseTime(ByteBuffer buffer, int start, int end) {
+        int i = start;
+        int hour = 0;
+        while (i < end && i - start < MAX_HOUR_DIGITS && isDigit(buffer.get(i))) {
+            hour = Math.min(hour * 10 + (buffer.get(i) - '0'), 100);
+            i++;
+        }
+        if (i == start || hour > 12 || end - i < 6 || buffer.get(i) != ':') {
+            return false;
+        }
+        int minute = parseSexagesimal(buffer, i + 1);
+        int second = 0;
+        i += 3;
+        if (acceptsSeconds && end - i == 6 && buffer.get(i) == ':') {
+            second = parseSexagesimal(buffer, i + 1);
+            i += 3;
+        }
+        if (minute < 0 || second < 0 || end - i != 3 || buffer.get(i) != ' ' || buffer.get(i + 2) != 'M') {
+            return false;
+        }
+        byte meridiem = buffer.get(i + 1);
+        if (meridiem != 'A' && meridiem != 'P') {
+            return false;
+        }
+        int hourOfDay = hour % 12 + (meridiem == 'P' ? 12 : 0);
+        secondOfDay = hourOfDay * 3600 + minute * 60 + second;
+        return true;
+    }
+
+    /**
+     * Reads a two-digit minute or second.
+     *
+     * @return The value, or -1 if the two bytes are not 00 to 59.
+     */
+    private static int parseSexagesimal(ByteBuffer buffer, int index) {
+        byte tens = buffer.get(index);
+        byte units = buffer.get(index + 1);
+        if (tens < '0' || tens > '5' || !isDigit(units)) {
+            return -1;
+        }
+        return (tens - '0') * 10 + (units - '0');
+    }
+
+    private boolean parseCurrency(ByteBuffer buffer, int start, int end) {
+        pairOrdinal = currencyPairs.idOf(buffer, start, end);
+        return pairOrdinal >= 0;
+    }
+
+    /**
+     * Decodes plain {@code digits[.digits]} prices directly; the division of two exactly representable doubles
+     * is correctly rounded, which gives the same result as {@link Double#parseDouble}.
+     */
+    private boolean parsePrice(ByteBuffer buffer, int start, int end) {
+        long mantissa = 0;
+        int significantDigits = 0;
+        int fractionDigits = 0;
+        boolean seenDigit = false;
+        boolean seenPoint = false;
+        for (int i = start; i < end; i++) {
+            byte b = buffer.get(i);
+            if (isDigit(b)) {
+                seenDigit = true;
+                if (mantissa != 0 || b != '0') {
+                    significantDigits++;
+                }
+                mantissa = mantissa * 10 + (b - '0');
+                if (seenPoint) {
+                    fractionDigits++;
+                }
+            } else if (b == '.' && !seenPoint) {
+                seenPoint = true;
+            } else {
+                return parsePriceSlow(buffer, start, end);
+            }
+            if (significantDigits > MAX_EXACT_DIGITS || fractionDigits >= POWERS_OF_TEN.length) {
+                return parsePriceSlow(buffer, start, end);
+            }
+        }
+        if (!seenDigit) {
+            return parsePriceSlow(buffer, start, end);
+        }
+        price = mantissa / POWERS_OF_TEN[fractionDigits];
+        return price > 0.0;
+    }
+
+    private boolean parsePriceSlow(ByteBuffer buffer, int start, int end) {
+        if (!mayBePositive(buffer, start, end)) {
+            return false;
+        }
+        try {
+            price = Double.parseDouble(decode(buffer, start, end));
+            return price > 0.0;
+        } catch (NumberFormatException e) {
+            return false;
+        }
+    }
+
+    /**
+     * Reads plain {@code [+]digits} volumes directly. Any other ASCII makes {@link Long#parseLong} fail or read a
+     * value that is not positive, so only non-ASCII digits and very long digit runs are handed to it.
+     */
+    private boolean parseVolume(ByteBuffer buffer, int start, int end) {
+        int i = (start < end && buffer.get(start) == '+') ? start + 1 : start;
+        if (i == end) {
+            return false;
+        }
+        if (end - i > 18) {
+            return parseVolumeSlow(buffer, start, end);
+        }
+        long value = 0;
+        for (; i < end; i++) {
+            byte b = buffer.get(i);
+            if (!isDigit(b)) {
+                return b < 0 && parseVolumeSlow(buffer, start, end);
+            }
+            value = value * 10 + (b - '0');
+        }
+        volume = value;
+        return volume > 0;
+    }
+
+    private boolean parseVolumeSlow(ByteBuffer buffer, int start, int end) {
+        try {
+            volume = Long.parseLong(decode(buffer, start, end));
+            return volume > 0;
+        } catch (NumberFormatException e) {
+            return false;
+        }
+    }
+
+    /**
+     * Checks if {@link Double#parseDouble} could read a positive value: that takes a digit or {@code Infinity}.
+     */
+    private static boolean mayBePositive(ByteBuffer buffer, int start, int end) {
+        for (int i = start; i < end; i++) {
+            byte b = buffer.get(i);
+            if (isDigit(b) || b == 'I') {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static String decode(ByteBuffer buffer, int start, int end) {
+        byte[] bytes = new byte[end - start];
+        buffer.get(start, bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    private static boolean isDigit(byte b) {
+        return b >= '0' && b <= '9';
+    }
+}
@@ -0,0 +1,201 @@
+package com.ken;
+
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.BooleanSupplier;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Ingest stage that decouples producers from aggregation.
+ * <p>
+ * Producers validate and parse trades on their own threads and publish them into a bounded {@link TradeRingBuffer}.
+ * A single consumer thread drains the ring in batches, sums each batch per bucket and applies every bucket's sums
+ * to the store once, so the shared calculators only ever see one writer. When the ring is full the
+ * {@link BackpressurePolicy} decides whether producers wait or drop the trade. Trades are applied asynchronously;
+ * call {@link #flush()} before querying to make sure everything published so far is included.
+ * <p>
+ * If applying trades fails, for example because the journal cannot be written, the consumer stops and the pipeline
+ * fails: publishing, flushing and producers waiting on a full ring throw an {@link IllegalStateException} with the
+ * cause, rather than waiting for a consumer that is gone.
+ */
+public final class TradePipeline implements AutoCloseable {
+
+    private static final Logger LOGGER = Logger.getLogger(TradePipeline.class.getName());
+
+    private final VWAPCalculatorApplication application;
+    private final TradeRingBuffer ring;
+    private final int batchSize;
+    private final BackpressurePolicy backpressure;
+    private final BooleanSupplier keepWaiting;
+    private final LongAdder droppedCount = new LongAdder();
+    private final Thread consumer;
+    private volatile Throwable failure;
+
+    TradePipeline(VWAPCalculatorApplication application, int capacity, int batchSize, BackpressurePolicy backpressure) {
+        this.application = application;
+        this.ring = new TradeRingBuffer(capacity);
+        this.batchSize = batchSize;
+        this.backpressure = backpressure;
+        this.keepWaiting = (backpressure == BackpressurePolicy.BLOCK) ? this::checkOpen : () -> false;
+        this.consumer = new Thread(this::consume, "vwap-pipeline");
+        this.consumer.setDaemon(true);
+        this.consumer.start();
+    }
+
+    /**
+     * Validates a trade and publishes it to the consumer. Invalid trades are counted, logged and skipped, as in
+     * {@link VWAPCalculatorApplication#processTrades(String[][])}.
+     *
+     * @param trade: trade in this format: [Timestamp, Currency-pair, Price, Volume]
+     * @return True if the trade was published, false if it was invalid or dropped because the ring was full.
+     * @throws IllegalStateException if the pipeline is closed or has failed.
+     */
+    public boolean publish(String[] trade) {
+        checkOpen();
+        TradeParser parser = application.stringParser.get();
+        RejectReason reason = application.checkTrade(trade, parser);
+        if (reason != null) {
+            application.rejectTrade(trade, reason);
+            return false;
+        }
+        return offer(parser.pairOrdinal, parser.secondOfDay, parser.price, parser.volume);
+    }
+
+    /**
+     * Validates an already decoded trade and publishes it to the consumer, so feed handlers that decode their own
+     * format skip text parsing altogether. Invalid trades are counted, logged and skipped, as in
+     * {@link VWAPCalculatorApplication#processTrades(int[], short[], double[], long[], int)}.
+     *
+     * @param secondOfDay: trade time in seconds since midnight
+     * @param pairId:      currency pair, as returned by {@link VWAPCalculatorApplication#pairId(String)}
+     * @param price:       trade price
+     * @param volume:      trade volume
+     * @return True if the trade was published, false if it was invalid or dropped because the ring was full.
+     * @throws IllegalStateException if the pipeline is closed or has failed.
+     */
+    public boolean publish(int secondOfDay, short pairId, double price, long volume) {
+        checkOpen();
+        if (!application.checkDecodedTrade(secondOfDay, pairId, price, volume)) {
+            return false;
+        }
+        return offer(pairId, secondOfDay, price, volume);
+    }
+
+    private boolean offer(int pairOrdinal, int secondOfDay, double price, long volume) {
+        if (!ring.offer(pairOrdinal, secondOfDay, price, volume, keepWaiting)) {
+            checkOpen();
+            droppedCount.increment();
+            return false;
+        }
+        return true;
+    }
+
+    /**
+     * Waits until every trade published before this call has been applied.
+     *
+     * @throws IllegalStateException if the pipeline is closed or fails before the trades are applied.
+     */
+    public void flush() {
+        long target = ring.claimedCount();
+        for (int idle = 0; ring.consumedCount() < target; ) {
+            if (!consumer.isAlive()) {
+                checkNotFailed();
+                throw new IllegalStateException("Pipeline is closed");
+            }
+            idle = TradeRingBuffer.backOff(idle);
+        }
+    }
+
+    /**
+     * Gets the number of trades dropped because the ring was full.
+     */
+    public long droppedCount() {
+        return droppedCount.sum();
+    }
+
+    public int capacity() {
+        return ring.capacity();
+    }
+
+    public int batchSize() {
+        return batchSize;
+    }
+
+    public BackpressurePolicy backpressure() {
+        return backpressure;
+    }
+
+    /**
+     * Stops accepting trades, applies everything already published and stops the consumer thread. Producers should
+     * be stopped first; a producer blocked on a full ring, or publishing after the close, gets an
+     * {@link IllegalStateException}. A trade whose publish returned true is always applied.
+     */
+    @Override
+    public void close() {
+        ring.close();
+        boolean interrupted = false;
+        while (consumer.isAlive()) {
+            try {
+                consumer.join();
+            } catch (InterruptedException e) {
+                interrupted = true;
+            }
+        }
+        if (interrupted) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * Gets the error that stopped the consumer.
+     *
+     * @return The error, or null if the pipeline has not failed.
+     */
+    public Throwable failure() {
+        return failure;
+    }
+
+    private boolean checkOpen() {
+        checkNotFailed();
+        if (ring.isClosed()) {
+            throw new IllegalStateException("Pipeline is closed");
+        }
+        return true;
+    }
+
+    private void checkNotFailed() {
+        Throwable failed = failure;
+        if (failed != null) {
+            throw new IllegalStateException("Pipeline failed", failed);
+        }
+    }
+
+    /**
+     * Applies published trades until the pipeline is closed and drained. The per-trade observer, such as the
+     * journal, runs while a batch is drained, before its slots are freed, so a failure there cannot be retried
+     * without applying part of the batch twice; it stops the consumer and fails the pipeline instead.
+     */
+    private void consume() {
+        ParallelIngest.Partial batch = new ParallelIngest.Partial(application.vwapStore.policy(),
+                application.vwapStore.accumulation(), application.tradeObserver);
+        int idle = 0;
+        try {
+            while (true) {
+                boolean stopping = ring.isClosed();
+                int drained = ring.drain(batch, batchSize);
+                if (drained > 0) {
+                    batch.addTo(application.vwapStore);
+                    batch.clear();
+                    idle = 0;
+                } else if (stopping && ring.consumedCount() == ring.claimedCount()) {
+                    return;
+                } else {
+                    idle = TradeRingBuffer.backOff(idle);
+                }
+            }
+        } catch (RuntimeException | Error e) {
+            failure = e;
+            LOGGER.log(Level.SEVERE, "Trade pipeline failed, no more trades are applied", e);
+        }
+    }
+}
@@ -0,0 +1,192 @@
+package com.ken;
+
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.util.Arrays;
+import java.util.concurrent.locks.LockSupport;
+import java.util.function.BooleanSupplier;
+
+/**
+ * Bounded multi-producer, single-consumer ring of parsed trades.
+ * <p>
+ * Trades are stored in preallocated parallel arrays, so publishing never allocates. A producer claims the next
+ * sequence with a CAS on the claim cursor once the consumer has freed that slot, writes the fields and then
+ * release-stores the sequence into the slot's published marker. The consumer reads markers in order, so a slot is
+ * only applied after every field of it is visible, and it release-stores its own cursor to hand slots back. Both
+ * cursors are padded onto their own cache lines.
+ * <p>
+ * Closing sets a flag in the claim cursor with the same CAS, so a claim either lands before the close, and is
+ * counted in {@link #claimedCount()} for the consumer to wait for, or fails. Once the consumer has drained up to
+ * the claimed count of a closed ring, no trade can still arrive.
+ */
+final class TradeRingBuffer {
+
+    private static final VarHandle PUBLISHED = MethodHandles.arrayElementVarHandle(long[].class);
+    private static final int SPIN_LIMIT = 100;
+    private static final int YIELD_LIMIT = 200;
+    private static final long PARK_NANOS = 50_000;
+    private static final long CLOSED = Long.MIN_VALUE;
+
+    private final int mask;
+    private final int[] pairOrdinals;
+    private final int[] secondsOfDay;
+    private final double[] prices;
+    private final long[] volumes;
+    private final long[] published;
+    private final Sequence claimed = new Sequence();
+    private final Sequence consumed = new Sequence();
+
+    /**
+     * @param capacity: number of slots; a power of two
+     */
+    TradeRingBuffer(int capacity) {
+        this.mask = capacity - 1;
+        this.pairOrdinals = new int[capacity];
+        this.secondsOfDay = new int[capacity];
+        this.prices = new double[capacity];
+        this.volumes = new long[capacity];
+        this.published = new long[capacity];
+        Arrays.fill(published, -1);
+    }
+
+    int capacity() {
+        return mask + 1;
+    }
+
+    /**
+     * Publishes a trade, waiting for a free slot while {@code keepWaiting} holds.
+     *
+     * @return True if the trade was published, false if the ring is closed, or there was no free slot and
+     * {@code keepWaiting} said to give up.
+     */
+    boolean offer(int pairOrdinal, int secondOfDay, double price, long volume, BooleanSupplier keepWaiting) {
+        long sequence;
+        for (int idle = 0; ; ) {
+            sequence = claimed.getVolatile();
+            if ((sequence & CLOSED) != 0) {
+                return false;
+            }
+            if (sequence - capacity() >= consumed.getAcquire()) {
+                if (!keepWaiting.getAsBoolean()) {
+                    return false;
+                }
+                idle = backOff(idle);
+            } else if (claimed.compareAndSet(sequence, sequence + 1)) {
+                break;
+            }
+        }
+        int index = (int) sequence & mask;
+        pairOrdinals[index] = pairOrdinal;
+        secondsOfDay[index] = secondOfDay;
+        prices[index] = price;
+        volumes[index] = volume;
+        PUBLISHED.setRelease(published, index, sequence);
+        return true;
+    }
+
+    /**
+     * Hands up to {@code limit} published trades to the sink in sequence order and frees their slots. Only the
+     * consumer thread may call this.
+     *
+     * @return The number of trades drained.
+     */
+    int drain(TradeSink sink, int limit) {
+        long first = consumed.getPlain();
+        long next = first;
+        while (next - first < limit && (long) PUBLISHED.getAcquire(published, (int) next & mask) == next) {
+            int index = (int) next & mask;
+            sink.accept(pairOrdinals[index], secondsOfDay[index], prices[index], volumes[index]);
+            next++;
+        }
+        if (next != first) {
+            consumed.setRelease(next);
+        }
+        return (int) (next - first);
+    }
+
+    /**
+     * Stops further claims. Trades claimed before are still published and drained.
+     */
+    void close() {
+        long sequence;
+        do {
+            sequence = claimed.getVolatile();
+        } while ((sequence & CLOSED) == 0 && !claimed.compareAndSet(sequence, sequence | CLOSED));
+    }
+
+    boolean isClosed() {
+        return (claimed.getVolatile() & CLOSED) != 0;
+    }
+
+    /**
+     * Gets the number of trades claimed so far, including any still being written.
+     */
+    long claimedCount() {
+        return claimed.getVolatile() & ~CLOSED;
+    }
+
+    /**
+     * Gets the number of trades the consumer has drained so far.
+     */
+    long consumedCount() {
+        return consumed.getAcquire();
+    }
+
+    /**
+     * Waits a little longer each time it is called in a row: spins, then yields, then parks.
+     *
+     * @param idle: number of consecutive calls so far
+     * @return The next value of {@code idle}.
+     */
+    static int backOff(int idle) {
+        if (idle < SPIN_LIMIT) {
+            Thread.onSpinWait();
+        } else if (idle < YIELD_LIMIT) {
+            Thread.yield();
+        } else {
+            LockSupport.parkNanos(PARK_NANOS);
+            return idle;
+        }
+        return idle + 1;
+    }
+
+    /**
+     * Cursor padded onto its own cache line.
+     */
+    @SuppressWarnings("unused")
+    private static final class Sequence {
+        private static final VarHandle VALUE;
+
+        static {
+            try {
+                VALUE = MethodHandles.lookup().findVarHandle(Sequence.class, "value", long.class);
+            } catch (ReflectiveOperationException e) {
+                throw new ExceptionInInitializerError(e);
+            }
+        }
+
+        private long p0, p1, p2, p3, p4, p5, p6;
+        private long value;
+        private long q0, q1, q2, q3, q4, q5, q6;
+
+        long getPlain() {
+            return value;
+        }
+
+        long getVolatile() {
+            return (long) VALUE.getVolatile(this);
+        }
+
+        long getAcquire() {
+            return (long) VALUE.getAcquire(this);
+        }
+
+        void setRelease(long newValue) {
+            VALUE.setRelease(this, newValue);
+        }
+
+        boolean compareAndSet(long expected, long newValue) {
+            return VALUE.compareAndSet(this, expected, newValue);
+        }
+    }
+}
@@ -0,0 +1,411 @@
+package com.ken;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.nio.charset.StandardCharsets;
+import java.time.LocalTime;
+import java.time.format.DateTimeParseException;
+import java.util.ArrayDeque;
+import java.util.Iterator;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Non-blocking TCP server that feeds trades from many client connections into an application and answers VWAP
+ * queries on the same connections.
+ * <p>
+ * One thread runs a {@link Selector} loop over every connection. Each connection reads into a direct buffer taken
+ * from a pool, and trades are parsed straight from that buffer into the buckets, so an accepted trade costs no
+ * allocation. A connection's messages are handled in order, so the reply to a query covers every trade the same
+ * connection sent before it. The first bytes of a connection choose its protocol:
+ * <ul>
+ * <li>Text: lines ending in {@code \n}. A trade is a CSV record as accepted by
+ * {@link VWAPCalculatorApplication#processTrades(ByteBuffer)}, such as {@code 9:31 AM,EUR/USD,1.1000,100}. A
+ * query is {@code ?EUR/USD,9:31 AM} and is answered with the bucket the time falls in, its VWAP and its volume,
+ * such as {@code EUR/USD 9:00 AM,1.1,100}. An invalid query is answered with {@code !} and the reason.</li>
+ * <li>Binary: after the four bytes {@code VWPB}, fixed {@value #MESSAGE_BYTES}-byte big-endian messages: byte type,
+ * the pair's seven ASCII bytes, int second of day, double price and long volume. Type {@code T} is a trade and
+ * {@code Q} a query, whose price and volume are ignored. A query is answered with type {@code R}, the pair, the
+ * first second of the bucket, its VWAP and its volume, or a first second of -1 if the pair or time is invalid.</li>
+ * </ul>
+ * Invalid trades are skipped, counted and logged as in {@link VWAPCalculatorApplication#processTrades(String[][])}.
+ * Queries read the live buckets, so a bucket without trades, or one already closed, has a VWAP and volume of 0. A
+ * text line longer than {@value #BUFFER_BYTES} bytes or an unknown binary message type closes the connection. While
+ * a client does not read its replies the server stops reading from it, so its output cannot grow without bound.
+ */
+public final class TradeServer implements AutoCloseable {
+
+    private static final Logger LOGGER = Logger.getLogger(TradeServer.class.getName());
+    static final int DEFAULT_PORT = 7878;
+    static final int BUFFER_BYTES = 1 << 15;
+    static final int MAX_POOLED_BUFFERS = 256;
+    static final int MESSAGE_BYTES = 28;
+    static final byte[] BINARY_PREAMBLE = {'V', 'W', 'P', 'B'};
+    static final byte TRADE = 'T';
+    static final byte QUERY = 'Q';
+    static final byte REPLY = 'R';
+    private static final int MAX_REPLY_BYTES = 128;
+    private static final int UNKNOWN = 0;
+    private static final int TEXT = 1;
+    private static final int BINARY = 2;
+
+    private final VWAPCalculatorApplication application;
+    private final boolean exact;
+    private final TradeParser parser;
+    private final BucketStats stats = new BucketStats();
+    private final ArrayDeque<ByteBuffer> bufferPool = new ArrayDeque<>();
+    private final Selector selector;
+    private final ServerSocketChannel serverChannel;
+    private final Thread loop;
+    private volatile boolean closed;
+
+    TradeServer(VWAPCalculatorApplication application, InetSocketAddress address) throws IOException {
+        this.application = application;
+        this.exact = application.vwapStore.accumulation() == Accumulation.EXACT;
+        this.parser = new TradeParser(application.currencyPairs, application.vwapStore.policy(),
+                application.vwapStore.accumulation());
+        this.selector = Selector.open();
+        this.serverChannel = ServerSocketChannel.open();
+        try {
+            serverChannel.bind(address);
+            serverChannel.configureBlocking(false);
+            serverChannel.register(selector, SelectionKey.OP_ACCEPT);
+        } catch (IOException e) {
+            serverChannel.close();
+            selector.close();
+            throw e;
+        }
+        this.loop = Thread.ofPlatform().name("vwap-trade-server").start(this::run);
+    }
+
+    /**
+     * Runs a standalone server on all interfaces until the process is stopped.
+     *
+     * @param args: port, default {@value #DEFAULT_PORT}, and bucket width in seconds, default 3600
+     */
+    public static void main(String[] args) throws IOException, InterruptedException {
+        int port = (args.length > 0) ? Integer.parseInt(args[0]) : DEFAULT_PORT;
+        BucketPolicy policy = (args.length > 1)
+                ? BucketPolicy.ofSeconds(Integer.parseInt(args[1])) : BucketPolicy.HOURLY;
+        TradeServer server = new VWAPCalculatorApplication(policy).serveTrades(new InetSocketAddress(port));
+        LOGGER.log(Level.INFO, "Serving trades on {0}", server.getAddress());
+        server.loop.join();
+    }
+
+    /**
+     * Gets the address the server listens on, with the actual port if it was started on port 0.
+     */
+    public InetSocketAddress getAddress() {
+        return (InetSocketAddress) serverChannel.socket().getLocalSocketAddress();
+    }
+
+    /**
+     * Stops the server and closes every connection. Messages already read are processed first; replies not yet
+     * sent are dropped.
+     */
+    @Override
+    public void close() {
+        closed = true;
+        selector.wakeup();
+        try {
+            loop.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private void run() {
+        try {
+            while (!closed) {
+                selector.select();
+                Iterator<SelectionKey> selected = selector.selectedKeys().iterator();
+                while (selected.hasNext()) {
+                    SelectionKey key = selected.next();
+                    selected.remove();
+                    if (key.isValid() && key.isAcceptable()) {
+                        accept();
+                    } else if (key.isValid()) {
+                        ((Connection) key.attachment()).handle(key);
+                    }
+                }
+            }
+        } catch (IOException e) {
+            LOGGER.log(Level.SEVERE, "Trade server failed", e);
+        } finally {
+            for (SelectionKey key : selector.keys()) {
+                if (key.attachment() instanceof Connection) {
+                    ((Connection) key.attachment()).close();
+                }
+            }
+            try {
+                serverChannel.close();
+                selector.close();
+            } catch (IOException e) {
+                LOGGER.log(Level.WARNING, "Failed to close trade server", e);
+            }
+        }
+    }
+
+    private void accept() throws IOException {
+        SocketChannel channel;
+        while ((channel = serverChannel.accept()) != null) {
+            try {
+                channel.configureBlocking(false);
+                channel.socket().setTcpNoDelay(true);
+                Connection connection = new Connection(channel, acquire());
+                connection.key = channel.register(selector, SelectionKey.OP_READ, connection);
+            } catch (IOException e) {
+                LOGGER.log(Level.WARNING, "Failed to accept trade connection", e);
+                channel.close();
+            }
+        }
+    }
+
+    private ByteBuffer acquire() {
+        ByteBuffer buffer = bufferPool.poll();
+        return (buffer != null) ? buffer : ByteBuffer.allocateDirect(BUFFER_BYTES);
+    }
+
+    private void release(ByteBuffer buffer) {
+        buffer.clear();
+        if (bufferPool.size() < MAX_POOLED_BUFFERS) {
+            bufferPool.push(buffer);
+        }
+    }
+
+    /**
+     * One client connection, only touched by the selector thread. The input buffer is kept in fill mode between
+     * events; the output buffer is only held while replies are waiting to be sent.
+     */
+    private final class Connection {
+        private final SocketChannel channel;
+        private SelectionKey key;
+        private ByteBuffer in;
+        private ByteBuffer out;
+        private int protocol = UNKNOWN;
+        private boolean endOfStream;
+
+        Connection(SocketChannel channel, ByteBuffer in) {
+            this.channel = channel;
+            this.in = in;
+        }
+
+        void handle(SelectionKey selected) {
+            try {
+                if (selected.isWritable() && !flush()) {
+                    return;
+                }
+                if (selected.isReadable() && channel.read(in) < 0) {
+                    endOfStream = true;
+                }
+                boolean blocked = !process();
+                if (!blocked && !flush()) {
+                    blocked = true;
+                }
+                if (blocked) {
+                    key.interestOps(SelectionKey.OP_WRITE);
+                } else if (endOfStream) {
+                    close();
+                } else {
+                    key.interestOps(SelectionKey.OP_READ);
+                }
+            } catch (IOException | RuntimeException e) {
+                LOGGER.log(Level.FINE, "Closing trade connection " + channel.socket().getRemoteSocketAddress(), e);
+                close();
+            }
+        }
+
+        /**
+         * Handles every complete message in the input buffer.
+         *
+         * @return False if the output buffer filled up before all messages were handled.
+         * @throws IOException if the connection sent something it cannot recover from
+         */
+        private boolean process() throws IOException {
+            in.flip();
+            try {
+                if (protocol == UNKNOWN && !detectProtocol()) {
+                    return true;
+                }
+                return (protocol == TEXT) ? processLines() : processMessages();
+            } finally {
+                in.compact();
+            }
+        }
+
+        private boolean detectProtocol() {
+            int length = Math.min(in.remaining(), BINARY_PREAMBLE.length);
+            for (int i = 0; i < length; i++) {
+                if (in.get(in.position() + i) != BINARY_PREAMBLE[i]) {
+                    protocol = TEXT;
+                    return true;
+                }
+            }
+            if (length < BINARY_PREAMBLE.length) {
+                return false;
+            }
+            in.position(in.position() + BINARY_PREAMBLE.length);
+            protocol = BINARY;
+            return true;
+        }
+
+        private boolean processLines() throws IOException {
+            int limit = in.limit();
+            int lineStart = in.position();
+            for (int lineEnd = lineStart; lineEnd < limit || (endOfStream && lineStart < limit); lineEnd++) {
+                if (lineEnd < limit && in.get(lineEnd) != '\n') {
+                    continue;
+                }
+                // a last line without a terminator counts once the client has finished sending
+                int recordEnd = (lineEnd > lineStart && in.get(lineEnd - 1) == '\r') ? lineEnd - 1 : lineEnd;
+                if (recordEnd > lineStart && in.get(lineStart) == '?') {
+                    if (!hasReplyRoom()) {
+                        in.position(lineStart);
+                        return false;
+                    }
+                    answerTextQuery(lineStart + 1, recordEnd);
+                } else if (recordEnd > lineStart) {
+                    application.processRecord(parser, in, lineStart, recordEnd);
+                }
+                lineStart = lineEnd + 1;
+            }
+            in.position(Math.min(lineStart, limit));
+            if (in.position() == 0 && limit == in.capacity()) {
+                throw new IOException("Trade line longer than " + BUFFER_BYTES + " bytes");
+            }
+            return true;
+        }
+
+        private void answerTextQuery(int start, int end) {
+            int comma = start;
+            while (comma < end && in.get(comma) != ',') {
+                comma++;
+            }
+            if (comma == end) {
+                reply("!" + VWAPCalculatorApplication.INVALID_TRADE_STREAM_FORMAT + "\n");
+                return;
+            }
+            int pairOrdinal = application.currencyPairs.idOf(in, start, comma);
+            if (pairOrdinal < 0) {
+                reply("!" + VWAPCalculatorApplication.INVALID_CURRENCY_PAIR + "\n");
+                return;
+            }
+            byte[] time = new byte[end - comma - 1];
+            in.get(comma + 1, time);
+            int secondOfDay;
+            try {
+                secondOfDay = LocalTime.parse(new String(time, StandardCharsets.US_ASCII),
+                        application.vwapStore.policy().tradeTimeFormatter()).toSecondOfDay();
+            } catch (DateTimeParseException e) {
+                reply("!" + VWAPCalculatorApplication.INVALID_TRADE_TIME + "\n");
+                return;
+            }
+            int slot = readBucket(pairOrdinal, secondOfDay);
+            reply(application.currencyPairs.nameOf(pairOrdinal) + " " + application.vwapStore.policy().format(slot)
+                    + "," + stats.vwap(exact) + "," + stats.volumeSum + "\n");
+        }
+
+        private boolean processMessages() throws IOException {
+            while (in.remaining() >= MESSAGE_BYTES) {
+                int at = in.position();
+                byte type = in.get(at);
+                int pairOrdinal = application.currencyPairs.idOf(in, at + 1, at + 1 + CurrencyPairRegistry.PAIR_LENGTH);
+                int secondOfDay = in.getInt(at + 8);
+                if (type == TRADE) {
+                    application.processDecodedTrade(secondOfDay, pairOrdinal, in.getDouble(at + 12),
+                            in.getLong(at + 20));
+                } else if (type == QUERY) {
+                    if (!hasReplyRoom()) {
+                        return false;
+                    }
+                    answerBinaryQuery(at, pairOrdinal, secondOfDay);
+                } else {
+                    throw new IOException("Unknown trade message type: " + type);
+                }
+                in.position(at + MESSAGE_BYTES);
+            }
+            return true;
+        }
+
+        private void answerBinaryQuery(int at, int pairOrdinal, int secondOfDay) {
+            out.put(REPLY).put(out.position(), in, at + 1, CurrencyPairRegistry.PAIR_LENGTH);
+            out.position(out.position() + CurrencyPairRegistry.PAIR_LENGTH);
+            if (pairOrdinal < 0 || secondOfDay < 0 || secondOfDay >= BucketPolicy.SECONDS_PER_DAY) {
+                out.putInt(-1).putDouble(0.0).putLong(0);
+                return;
+            }
+            int slot = readBucket(pairOrdinal, secondOfDay);
+            out.putInt(slot * application.vwapStore.policy().widthSeconds()).putDouble(stats.vwap(exact))
+                    .putLong(stats.volumeSum);
+        }
+
+        /**
+         * Reads the live bucket a trade time falls in into {@link #stats}.
+         *
+         * @return The bucket's slot.
+         */
+        private int readBucket(int pairOrdinal, int secondOfDay) {
+            int slot = application.vwapStore.policy().slotOf(secondOfDay);
+            VWAPCalculator calculator = application.vwapStore.get(pairOrdinal, slot);
+            if (calculator == null) {
+                stats.clear();
+            } else {
+                calculator.readBucket(stats);
+            }
+            return slot;
+        }
+
+        private boolean hasReplyRoom() {
+            if (out == null) {
+                out = acquire();
+            }
+            return out.remaining() >= MAX_REPLY_BYTES;
+        }
+
+        private void reply(String text) {
+            out.put(text.getBytes(StandardCharsets.US_ASCII));
+        }
+
+        /**
+         * Writes pending replies and returns the output buffer to the pool once they are all sent.
+         *
+         * @return True if nothing is left to send.
+         */
+        private boolean flush() throws IOException {
+            if (out == null) {
+                return true;
+            }
+            out.flip();
+            channel.write(out);
+            if (out.hasRemaining()) {
+                out.compact();
+                return false;
+            }
+            release(out);
+            out = null;
+            return true;
+        }
+
+        void close() {
+            key.cancel();
+            try {
+                channel.close();
+            } catch (IOException e) {
+                LOGGER.log(Level.FINE, "Failed to close trade connection", e);
+            }
+            if (in != null) {
+                release(in);
+                in = null;
+            }
+            if (out != null) {
+                release(out);
+                out = null;
+            }
+        }
+    }
+}
@@ -0,0 +1,18 @@
+package com.ken;
+
+/**
+ * Receives validated, decoded trades.
+ */
+@FunctionalInterface
+interface TradeSink {
+
+    /**
+     * Accepts one trade.
+     *
+     * @param pairOrdinal: index of the currency pair
+     * @param secondOfDay: time of the trade in seconds since midnight
+     * @param price:       trade price
+     * @param volume:      trade volume
+     */
+    void accept(int pairOrdinal, int secondOfDay, double price, long volume);
+}
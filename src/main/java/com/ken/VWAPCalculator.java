@@ -0,0 +1,653 @@
+package com.ken;
+
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+
+/**
+ * Accumulates the price-volume and volume sums, the trade count and the bar statistics (open, high, low, close,
+ * price sum and time-weighted sums) of one bucket and derives its VWAP.
+ * <p>
+ * Everything a trade changes is written together under a per-cell sequence number (a seqlock), so a reader never
+ * sees a price-volume sum that includes a trade whose volume it does not, and vice versa. Claiming the cell is the
+ * only atomic operation of a write, so the high, low, open and close are plain compares inside it rather than CAS
+ * loops of their own. Writers start on a single cell; once they collide the calculator inflates to a table of
+ * padded cells, in the same way {@link java.util.concurrent.atomic.LongAdder} does, so throughput keeps scaling
+ * with writer threads. Readers combine all cells, each read consistently.
+ * <p>
+ * In {@link Accumulation#EXACT} mode each cell also keeps the price-volume sum as a 128-bit fixed-point value, so
+ * the total is exact and the same whichever cells the trades landed in.
+ */
+class VWAPCalculator {
+
+    private static final int MAX_CELLS = ceilingPowerOfTwo(Runtime.getRuntime().availableProcessors());
+    private static final int CALCULATOR_BYTES = 24;           // header and two compressed references
+    private static final int CELL_BYTES = 16 + 28 * 8 + 2 * 4;  // header, sums, bar, sequence and padding
+    private static final int ARRAY_HEADER_BYTES = 16;
+    // cell index hash of each thread, kept after a rehash so threads that collided stay apart, as LongAdder's probe
+    private static final ThreadLocal<int[]> PROBE = ThreadLocal.withInitial(() -> new int[]{initialProbe()});
+
+    private final boolean exact;
+    private final Cell base = new Cell();
+    private volatile Cell[] cells;
+
+    VWAPCalculator() {
+        this(Accumulation.DOUBLE);
+    }
+
+    VWAPCalculator(Accumulation accumulation) {
+        this.exact = accumulation == Accumulation.EXACT;
+    }
+
+    /**
+     * Adds a trade without a time to the sums. All such trades share one time, so the bar's open and close are the
+     * first and last trade added, or undefined if writers contended for the calculator.
+     *
+     * @param price:  trade price
+     * @param volume: trade volume
+     */
+    public void addTrade(double price, long volume) {
+        addTrade(0, price, volume);
+    }
+
+    /**
+     * Adds a trade to the sums and the bar.
+     *
+     * @param secondOfDay: time of the trade in seconds since midnight, which orders the open and close ahead of
+     *                     arrival order
+     * @param price:       trade price
+     * @param volume:      trade volume
+     */
+    public void addTrade(int secondOfDay, double price, long volume) {
+        if (exact) {
+            long units = FixedPoint.toUnits(price);
+            add(0.0, Math.multiplyHigh(units, volume), units * volume, volume, 1, 0.0, 0, units, price, price,
+                    secondOfDay, price, secondOfDay, price, 0.0, 0, 0, 0, true);
+        } else {
+            add(price * volume, 0, 0, volume, 1, price, 0, 0, price, price, secondOfDay, price, secondOfDay, price,
+                    0.0, 0, 0, 0, true);
+        }
+    }
+
+    /**
+     * Adds the sums and bar of several trades at once, as if each had been added on its own. The price-volume,
+     * price and time-weighted sums are taken from the double or the exact fields, depending on the calculator's
+     * accumulation, and
+     * the price statistics are ignored if the trade count is 0.
+     *
+     * @param stats:   sums, trade count and bar of the trades
+     * @param ordered: whether the trades arrived after the ones already added, which breaks open and close ties
+     */
+    void addStats(BucketStats stats, boolean ordered) {
+        add(stats.priceVolumeSum, stats.priceVolumeHigh, stats.priceVolumeLow, stats.volumeSum, stats.tradeCount,
+                stats.priceSum, stats.priceSumHigh, stats.priceSumLow, stats.high, stats.low, stats.openSecond,
+                stats.openPrice, stats.closeSecond, stats.closePrice, stats.priceTimeSum, stats.priceTimeHigh,
+                stats.priceTimeLow, stats.timeSum, ordered);
+    }
+
+    boolean isExact() {
+        return exact;
+    }
+
+    private void add(double priceVolume, long priceVolumeHigh, long priceVolumeLow, long volume, long trades,
+                     double priceSum, long priceSumHigh, long priceSumLow, double high, double low, int openSecond,
+                     double openPrice, int closeSecond, double closePrice, double priceTime, long priceTimeHigh,
+                     long priceTimeLow, long time, boolean ordered) {
+        Cell[] table = cells;
+        if (table == null) {
+            if (base.tryAdd(exact, priceVolume, priceVolumeHigh, priceVolumeLow, volume, trades, priceSum,
+                    priceSumHigh, priceSumLow, high, low, openSecond, openPrice, closeSecond, closePrice, priceTime,
+                    priceTimeHigh, priceTimeLow, time, ordered)) {
+                return;
+            }
+            table = inflate(null);
+        }
+        int[] threadProbe = PROBE.get();
+        int probe = threadProbe[0];
+        for (int attempt = 0; ; attempt++) {
+            if (table[probe & (table.length - 1)].tryAdd(exact, priceVolume, priceVolumeHigh, priceVolumeLow, volume,
+                    trades, priceSum, priceSumHigh, priceSumLow, high, low, openSecond, openPrice, closeSecond,
+                    closePrice, priceTime, priceTimeHigh, priceTimeLow, time, ordered)) {
+                threadProbe[0] = probe;
+                return;
+            }
+            probe = nextProbe(probe);
+            if (attempt == table.length) {
+                table = inflate(table);
+                attempt = 0;
+            }
+        }
+    }
+
+    /**
+     * Calculates the VWAP from a consistent view of both sums.
+     *
+     * @return The VWAP, or 0.0 if no volume has been traded.
+     */
+    public double calculateVWAP() {
+        if (exact) {
+            return readExactSums(FixedPoint::vwap);
+        }
+        double priceVolumeSum = 0.0;
+        long volumeSum = 0;
+        Cell[] table = cells;
+        int cellCount = (table == null) ? 0 : table.length;
+        for (int i = -1; i < cellCount; i++) {
+            Cell cell = (i < 0) ? base : table[i];
+            long sequence;
+            double priceVolume;
+            long volume;
+            do {
+                sequence = cell.readBegin();
+                priceVolume = cell.priceVolumeSum();
+                volume = cell.volumeSum();
+            } while (!cell.readValidate(sequence));
+            priceVolumeSum += priceVolume;
+            volumeSum += volume;
+        }
+        return (volumeSum == 0) ? 0.0 : priceVolumeSum / volumeSum;
+    }
+
+    /**
+     * Reads both sums from a consistent view, as {@link #calculateVWAP()} does, and hands them to the consumer.
+     * An exact price-volume sum is handed over converted to a double.
+     */
+    void readSums(SumsConsumer consumer) {
+        if (exact) {
+            readExactSums((high, low, volume) -> {
+                consumer.accept(FixedPoint.toDouble(high, low) / FixedPoint.SCALE, volume);
+                return 0.0;
+            });
+            return;
+        }
+        double priceVolumeSum = 0.0;
+        long volumeSum = 0;
+        Cell[] table = cells;
+        int cellCount = (table == null) ? 0 : table.length;
+        for (int i = -1; i < cellCount; i++) {
+            Cell cell = (i < 0) ? base : table[i];
+            long sequence;
+            double priceVolume;
+            long volume;
+            do {
+                sequence = cell.readBegin();
+                priceVolume = cell.priceVolumeSum();
+                volume = cell.volumeSum();
+            } while (!cell.readValidate(sequence));
+            priceVolumeSum += priceVolume;
+            volumeSum += volume;
+        }
+        consumer.accept(priceVolumeSum, volumeSum);
+    }
+
+    /**
+     * Reads the VWAP and the volume sum from one consistent view of the sums and hands them to the consumer.
+     */
+    void readVWAP(VWAPConsumer consumer) {
+        if (exact) {
+            readExactSums((priceVolumeHigh, priceVolumeLow, volumeSum) -> {
+                consumer.accept(FixedPoint.vwap(priceVolumeHigh, priceVolumeLow, volumeSum), volumeSum);
+                return 0.0;
+            });
+        } else {
+            readSums((priceVolumeSum, volumeSum) ->
+                    consumer.accept((volumeSum == 0) ? 0.0 : priceVolumeSum / volumeSum, volumeSum));
+        }
+    }
+
+    /**
+     * Reads the exact sums from a consistent view and hands them to the function.
+     *
+     * @return The function's result.
+     */
+    double readExactSums(ExactSumsFunction function) {
+        long priceVolumeHigh = 0;
+        long priceVolumeLow = 0;
+        long volumeSum = 0;
+        Cell[] table = cells;
+        int cellCount = (table == null) ? 0 : table.length;
+        for (int i = -1; i < cellCount; i++) {
+            Cell cell = (i < 0) ? base : table[i];
+            long sequence;
+            long high;
+            long low;
+            long volume;
+            do {
+                sequence = cell.readBegin();
+                high = cell.priceVolumeHigh();
+                low = cell.priceVolumeLow();
+                volume = cell.volumeSum();
+            } while (!cell.readValidate(sequence));
+            priceVolumeHigh = FixedPoint.addHigh(priceVolumeHigh, priceVolumeLow, high, low);
+            priceVolumeLow += low;
+            volumeSum += volume;
+        }
+        return function.apply(priceVolumeHigh, priceVolumeLow, volumeSum);
+    }
+
+    /**
+     * Reads the sums, trade count and bar from a consistent view of each cell and combines them into the stats.
+     * Both forms of the price-volume and price sums are filled in; the ones the calculator does not accumulate are
+     * zero.
+     */
+    void readBucket(BucketStats stats) {
+        stats.clear();
+        Cell[] table = cells;
+        int cellCount = (table == null) ? 0 : table.length;
+        for (int i = -1; i < cellCount; i++) {
+            Cell cell = (i < 0) ? base : table[i];
+            long sequence;
+            double priceVolume;
+            long high;
+            long low;
+            long volume;
+            long trades;
+            double priceSum;
+            long priceSumHigh;
+            long priceSumLow;
+            double highPrice;
+            double lowPrice;
+            int openSecond;
+            double openPrice;
+            int closeSecond;
+            double closePrice;
+            double priceTime;
+            long priceTimeHigh;
+            long priceTimeLow;
+            long time;
+            do {
+                sequence = cell.readBegin();
+                priceVolume = cell.priceVolumeSum();
+                high = cell.priceVolumeHigh();
+                low = cell.priceVolumeLow();
+                volume = cell.volumeSum();
+                trades = cell.tradeCount();
+                priceSum = cell.priceSum();
+                priceSumHigh = cell.priceSumHigh();
+                priceSumLow = cell.priceSumLow();
+                highPrice = cell.high();
+                lowPrice = cell.low();
+                openSecond = cell.openSecond();
+                openPrice = cell.openPrice();
+                closeSecond = cell.closeSecond();
+                closePrice = cell.closePrice();
+                priceTime = cell.priceTimeSum();
+                priceTimeHigh = cell.priceTimeHigh();
+                priceTimeLow = cell.priceTimeLow();
+                time = cell.timeSum();
+            } while (!cell.readValidate(sequence));
+            stats.priceVolumeSum += priceVolume;
+            stats.priceVolumeHigh = FixedPoint.addHigh(stats.priceVolumeHigh, stats.priceVolumeLow, high, low);
+            stats.priceVolumeLow += low;
+            stats.volumeSum += volume;
+            if (trades == 0) {
+                continue;
+            }
+            if (stats.tradeCount == 0 || highPrice > stats.high) {
+                stats.high = highPrice;
+            }
+            if (stats.tradeCount == 0 || lowPrice < stats.low) {
+                stats.low = lowPrice;
+            }
+            if (stats.tradeCount == 0) {
+                stats.openSecond = openSecond;
+                stats.openPrice = openPrice;
+                stats.closeSecond = closeSecond;
+                stats.closePrice = closePrice;
+            } else {
+                stats.openPrice = BucketStats.openPrice(openSecond, openPrice, stats.openSecond, stats.openPrice,
+                        false);
+                stats.openSecond = Math.min(openSecond, stats.openSecond);
+                stats.closePrice = BucketStats.closePrice(closeSecond, closePrice, stats.closeSecond,
+                        stats.closePrice, false);
+                stats.closeSecond = Math.max(closeSecond, stats.closeSecond);
+            }
+            stats.tradeCount += trades;
+            stats.priceSum += priceSum;
+            stats.priceSumHigh = FixedPoint.addHigh(stats.priceSumHigh, stats.priceSumLow, priceSumHigh, priceSumLow);
+            stats.priceSumLow += priceSumLow;
+            stats.priceTimeSum += priceTime;
+            stats.priceTimeHigh = FixedPoint.addHigh(stats.priceTimeHigh, stats.priceTimeLow, priceTimeHigh,
+                    priceTimeLow);
+            stats.priceTimeLow += priceTimeLow;
+            stats.timeSum += time;
+        }
+    }
+
+    /**
+     * Gets a counter that grows with every trade added, so callers can tell whether the VWAP may have changed
+     * without recomputing it. Reading it costs writers nothing.
+     *
+     * @return The modification count of this calculator.
+     */
+    public long version() {
+        long version = base.sequence();
+        Cell[] table = cells;
+        if (table != null) {
+            for (Cell cell : table) {
+                version += cell.sequence();
+            }
+        }
+        return version;
+    }
+
+    /**
+     * Estimates the heap used by this calculator and its cells, assuming compressed references.
+     */
+    long estimatedBytes() {
+        Cell[] table = cells;
+        long bytes = CALCULATOR_BYTES + CELL_BYTES;
+        if (table != null) {
+            bytes += ARRAY_HEADER_BYTES + 4L * table.length + (long) CELL_BYTES * table.length;
+        }
+        return bytes;
+    }
+
+    private synchronized Cell[] inflate(Cell[] seen) {
+        Cell[] table = cells;
+        if (table != seen) {
+            return table;
+        }
+        int size = (table == null) ? 2 : table.length * 2;
+        if (table != null && table.length >= MAX_CELLS) {
+            return table;
+        }
+        Cell[] grown = new Cell[size];
+        for (int i = 0; i < size; i++) {
+            grown[i] = (table != null && i < table.length) ? table[i] : new Cell();
+        }
+        cells = grown;
+        return grown;
+    }
+
+    private static int initialProbe() {
+        long id = Thread.currentThread().threadId();
+        int h = (int) (id ^ (id >>> 32)) * 0x9E3779B9;
+        return h ^ (h >>> 16);
+    }
+
+    private static int nextProbe(int probe) {
+        probe ^= probe << 13;
+        probe ^= probe >>> 17;
+        return probe ^ (probe << 5);
+    }
+
+    private static int ceilingPowerOfTwo(int value) {
+        return Math.max(2, Integer.highestOneBit(Math.max(1, value - 1)) << 1);
+    }
+
+    /**
+     * Receives the sums read by {@link #readSums(SumsConsumer)}.
+     */
+    @FunctionalInterface
+    interface SumsConsumer {
+        void accept(double priceVolumeSum, long volumeSum);
+    }
+
+    /**
+     * Receives the VWAP and volume read by {@link #readVWAP(VWAPConsumer)}.
+     */
+    @FunctionalInterface
+    interface VWAPConsumer {
+        void accept(double vwap, long volumeSum);
+    }
+
+    /**
+     * Receives the sums read by {@link #readExactSums(ExactSumsFunction)}.
+     */
+    @FunctionalInterface
+    interface ExactSumsFunction {
+        double apply(long priceVolumeHigh, long priceVolumeLow, long volumeSum);
+    }
+
+    /**
+     * One seqlock-guarded set of sums, trade count and bar. An odd sequence means a writer is inside; the padding keeps neighbouring
+     * cells off each other's cache lines.
+     */
+    @SuppressWarnings("unused")
+    private static final class Cell {
+        private static final VarHandle SEQUENCE;
+        private static final VarHandle PRICE_VOLUME_SUM;
+        private static final VarHandle VOLUME_SUM;
+        private static final VarHandle PRICE_VOLUME_HIGH;
+        private static final VarHandle PRICE_VOLUME_LOW;
+        private static final VarHandle TRADE_COUNT;
+        private static final VarHandle PRICE_SUM;
+        private static final VarHandle PRICE_SUM_HIGH;
+        private static final VarHandle PRICE_SUM_LOW;
+        private static final VarHandle HIGH;
+        private static final VarHandle LOW;
+        private static final VarHandle OPEN_SECOND;
+        private static final VarHandle OPEN_PRICE;
+        private static final VarHandle CLOSE_SECOND;
+        private static final VarHandle CLOSE_PRICE;
+        private static final VarHandle PRICE_TIME_SUM;
+        private static final VarHandle PRICE_TIME_HIGH;
+        private static final VarHandle PRICE_TIME_LOW;
+        private static final VarHandle TIME_SUM;
+
+        static {
+            try {
+                MethodHandles.Lookup lookup = MethodHandles.lookup();
+                SEQUENCE = lookup.findVarHandle(Cell.class, "sequence", long.class);
+                PRICE_VOLUME_SUM = lookup.findVarHandle(Cell.class, "priceVolumeSum", double.class);
+                VOLUME_SUM = lookup.findVarHandle(Cell.class, "volumeSum", long.class);
+                PRICE_VOLUME_HIGH = lookup.findVarHandle(Cell.class, "priceVolumeHigh", long.class);
+                PRICE_VOLUME_LOW = lookup.findVarHandle(Cell.class, "priceVolumeLow", long.class);
+                TRADE_COUNT = lookup.findVarHandle(Cell.class, "tradeCount", long.class);
+                PRICE_SUM = lookup.findVarHandle(Cell.class, "priceSum", double.class);
+                PRICE_SUM_HIGH = lookup.findVarHandle(Cell.class, "priceSumHigh", long.class);
+                PRICE_SUM_LOW = lookup.findVarHandle(Cell.class, "priceSumLow", long.class);
+                HIGH = lookup.findVarHandle(Cell.class, "high", double.class);
+                LOW = lookup.findVarHandle(Cell.class, "low", double.class);
+                OPEN_SECOND = lookup.findVarHandle(Cell.class, "openSecond", int.class);
+                OPEN_PRICE = lookup.findVarHandle(Cell.class, "openPrice", double.class);
+                CLOSE_SECOND = lookup.findVarHandle(Cell.class, "closeSecond", int.class);
+                CLOSE_PRICE = lookup.findVarHandle(Cell.class, "closePrice", double.class);
+                PRICE_TIME_SUM = lookup.findVarHandle(Cell.class, "priceTimeSum", double.class);
+                PRICE_TIME_HIGH = lookup.findVarHandle(Cell.class, "priceTimeHigh", long.class);
+                PRICE_TIME_LOW = lookup.findVarHandle(Cell.class, "priceTimeLow", long.class);
+                TIME_SUM = lookup.findVarHandle(Cell.class, "timeSum", long.class);
+            } catch (ReflectiveOperationException e) {
+                throw new ExceptionInInitializerError(e);
+            }
+        }
+
+        private long p0, p1, p2, p3, p4, p5, p6;
+        private long sequence;
+        private double priceVolumeSum;
+        private long volumeSum;
+        private long priceVolumeHigh;
+        private long priceVolumeLow;
+        private long tradeCount;
+        private double priceSum;
+        private long priceSumHigh;
+        private long priceSumLow;
+        private double high;
+        private double low;
+        private int openSecond;
+        private double openPrice;
+        private int closeSecond;
+        private double closePrice;
+        private double priceTimeSum;
+        private long priceTimeHigh;
+        private long priceTimeLow;
+        private long timeSum;
+        private long q0, q1, q2, q3;
+
+        /**
+         * Adds the sums, trade count and bar unless another writer holds the cell. Exact calculators add the
+         * 128-bit price-volume, price and time-weighted sums, the others the double ones. The bar is left alone if no
+         * trades are counted. Ordered trades break ties with its open and close by arrival, and credit the price in
+         * force with the gap between its span and theirs.
+         *
+         * @return True if the sums were added, false if the cell was busy.
+         */
+        boolean tryAdd(boolean exact, double priceVolume, long priceVolumeHigh, long priceVolumeLow, long volume,
+                       long trades, double priceSum, long priceSumHigh, long priceSumLow, double highPrice,
+                       double lowPrice, int openSecond, double openPrice, int closeSecond, double closePrice,
+                       double priceTime, long priceTimeHigh, long priceTimeLow, long time, boolean ordered) {
+            long sequence = (long) SEQUENCE.getOpaque(this);
+            if ((sequence & 1) != 0 || !SEQUENCE.compareAndSet(this, sequence, sequence + 1)) {
+                return false;
+            }
+            if (exact) {
+                long low = (long) PRICE_VOLUME_LOW.getOpaque(this);
+                PRICE_VOLUME_HIGH.setRelease(this, FixedPoint.addHigh((long) PRICE_VOLUME_HIGH.getOpaque(this), low,
+                        priceVolumeHigh, priceVolumeLow));
+                PRICE_VOLUME_LOW.setRelease(this, low + priceVolumeLow);
+            } else {
+                PRICE_VOLUME_SUM.setRelease(this, (double) PRICE_VOLUME_SUM.getOpaque(this) + priceVolume);
+            }
+            VOLUME_SUM.setRelease(this, (long) VOLUME_SUM.getOpaque(this) + volume);
+            if (trades != 0) {
+                long counted = (long) TRADE_COUNT.getOpaque(this);
+                if (counted == 0 || highPrice > (double) HIGH.getOpaque(this)) {
+                    HIGH.setRelease(this, highPrice);
+                }
+                if (counted == 0 || lowPrice < (double) LOW.getOpaque(this)) {
+                    LOW.setRelease(this, lowPrice);
+                }
+                if (counted == 0) {
+                    OPEN_SECOND.setRelease(this, openSecond);
+                    OPEN_PRICE.setRelease(this, openPrice);
+                    CLOSE_SECOND.setRelease(this, closeSecond);
+                    CLOSE_PRICE.setRelease(this, closePrice);
+                } else {
+                    int currentOpen = (int) OPEN_SECOND.getOpaque(this);
+                    int currentClose = (int) CLOSE_SECOND.getOpaque(this);
+                    double currentClosePrice = (double) CLOSE_PRICE.getOpaque(this);
+                    int gap = ordered ? BucketStats.gapSeconds(openSecond, closeSecond, closePrice, currentOpen,
+                            currentClose, currentClosePrice) : 0;
+                    if (gap != 0) {
+                        double gapPrice = BucketStats.gapPrice(openSecond, closePrice, currentClose,
+                                currentClosePrice);
+                        if (exact) {
+                            long units = FixedPoint.toUnits(gapPrice);
+                            priceTimeHigh = FixedPoint.addHigh(priceTimeHigh, priceTimeLow,
+                                    Math.multiplyHigh(units, gap), units * gap);
+                            priceTimeLow += units * gap;
+                        } else {
+                            priceTime += gapPrice * gap;
+                        }
+                        time += gap;
+                    }
+                    OPEN_PRICE.setRelease(this, BucketStats.openPrice(openSecond, openPrice, currentOpen,
+                            (double) OPEN_PRICE.getOpaque(this), ordered));
+                    OPEN_SECOND.setRelease(this, Math.min(openSecond, currentOpen));
+                    CLOSE_PRICE.setRelease(this, BucketStats.closePrice(closeSecond, closePrice, currentClose,
+                            currentClosePrice, ordered));
+                    CLOSE_SECOND.setRelease(this, Math.max(closeSecond, currentClose));
+                }
+                if (exact) {
+                    long sumLow = (long) PRICE_SUM_LOW.getOpaque(this);
+                    PRICE_SUM_HIGH.setRelease(this, FixedPoint.addHigh((long) PRICE_SUM_HIGH.getOpaque(this), sumLow,
+                            priceSumHigh, priceSumLow));
+                    PRICE_SUM_LOW.setRelease(this, sumLow + priceSumLow);
+                    long timeLow = (long) PRICE_TIME_LOW.getOpaque(this);
+                    PRICE_TIME_HIGH.setRelease(this, FixedPoint.addHigh((long) PRICE_TIME_HIGH.getOpaque(this),
+                            timeLow, priceTimeHigh, priceTimeLow));
+                    PRICE_TIME_LOW.setRelease(this, timeLow + priceTimeLow);
+                } else {
+                    PRICE_SUM.setRelease(this, (double) PRICE_SUM.getOpaque(this) + priceSum);
+                    PRICE_TIME_SUM.setRelease(this, (double) PRICE_TIME_SUM.getOpaque(this) + priceTime);
+                }
+                TIME_SUM.setRelease(this, (long) TIME_SUM.getOpaque(this) + time);
+                TRADE_COUNT.setRelease(this, counted + trades);
+            }
+            SEQUENCE.setRelease(this, sequence + 2);
+            return true;
+        }
+
+        long readBegin() {
+            long sequence;
+            for (int spins = 0; ((sequence = (long) SEQUENCE.getAcquire(this)) & 1) != 0; spins++) {
+                if (spins < 64) {
+                    Thread.onSpinWait();
+                } else {
+                    Thread.yield();
+                }
+            }
+            return sequence;
+        }
+
+        long sequence() {
+            return (long) SEQUENCE.getAcquire(this);
+        }
+
+        boolean readValidate(long sequence) {
+            return (long) SEQUENCE.getAcquire(this) == sequence;
+        }
+
+        double priceVolumeSum() {
+            return (double) PRICE_VOLUME_SUM.getAcquire(this);
+        }
+
+        long volumeSum() {
+            return (long) VOLUME_SUM.getAcquire(this);
+        }
+
+        long priceVolumeHigh() {
+            return (long) PRICE_VOLUME_HIGH.getAcquire(this);
+        }
+
+        long priceVolumeLow() {
+            return (long) PRICE_VOLUME_LOW.getAcquire(this);
+        }
+
+        long tradeCount() {
+            return (long) TRADE_COUNT.getAcquire(this);
+        }
+
+        double priceSum() {
+            return (double) PRICE_SUM.getAcquire(this);
+        }
+
+        long priceSumHigh() {
+            return (long) PRICE_SUM_HIGH.getAcquire(this);
+        }
+
+        long priceSumLow() {
+            return (long) PRICE_SUM_LOW.getAcquire(this);
+        }
+
+        double high() {
+            return (double) HIGH.getAcquire(this);
+        }
+
+        double low() {
+            return (double) LOW.getAcquire(this);
+        }
+
+        int openSecond() {
+            return (int) OPEN_SECOND.getAcquire(this);
+        }
+
+        double openPrice() {
+            return (double) OPEN_PRICE.getAcquire(this);
+        }
+
+        int closeSecond() {
+            return (int) CLOSE_SECOND.getAcquire(this);
+        }
+
+        double closePrice() {
+            return (double) CLOSE_PRICE.getAcquire(this);
+        }
+
+        double priceTimeSum() {
+            return (double) PRICE_TIME_SUM.getAcquire(this);
+        }
+
+        long priceTimeHigh() {
+            return (long) PRICE_TIME_HIGH.getAcquire(this);
+        }
+
+        long priceTimeLow() {
+            return (long) PRICE_TIME_LOW.getAcquire(this);
+        }
+
+        long timeSum() {
+            return (long) TIME_SUM.getAcquire(this);
+        }
+    }
+}
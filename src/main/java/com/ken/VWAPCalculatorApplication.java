@@ -1,170 +1,1219 @@
 package com.ken;
 
 
+import javax.management.JMException;
+import javax.management.ObjectName;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.lang.management.ManagementFactory;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.Duration;
+import java.time.LocalDate;
 import java.time.LocalTime;
-import java.time.format.DateTimeFormatter;
-import java.time.format.DateTimeParseException;
-import java.util.HashMap;
-import java.util.Locale;
+import java.util.Collection;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
 import java.util.Map;
 import java.util.Set;
-import java.util.concurrent.ConcurrentHashMap;
-import java.util.concurrent.atomic.AtomicLong;
-import java.util.concurrent.atomic.DoubleAdder;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
-class VWAPCalculator {
-    private final DoubleAdder priceVolumeSum = new DoubleAdder();  // Sum of Price * Volume
-    private final AtomicLong volumeSum = new AtomicLong();       // Sum of Volume
-
-    public void addTrade(double price, long volume) {
-        priceVolumeSum.add(price * volume);
-        volumeSum.addAndGet(volume);
-    }
-
-    public double calculateVWAP() {
-        long volume = volumeSum.get();
-        return (volume == 0) ? 0.0 : priceVolumeSum.sum() / volume;
-    }
-}
-
 public class VWAPCalculatorApplication {
 
     private static final Logger LOGGER = Logger.getLogger(VWAPCalculatorApplication.class.getName());
-    private static final DateTimeFormatter TIME_FORMATTER = DateTimeFormatter.ofPattern("h:mm a", Locale.US);
-    private final ConcurrentHashMap<String, ConcurrentHashMap<LocalTime, VWAPCalculator>> vwapDataMap = new ConcurrentHashMap<>();
-    private static final Set<String> VALID_CURRENCIES = Set.of(
+    private static final String[] DEFAULT_CURRENCY_PAIRS = {
             "EUR/USD", "USD/JPY", "GBP/USD", "USD/CHF", "AUD/USD", "USD/CAD",
             "NZD/USD", "EUR/GBP", "EUR/JPY", "GBP/JPY", "AUD/JPY", "EUR/AUD",
             "CHF/JPY", "GBP/CHF", "USD/TRY", "USD/ZAR", "USD/SGD", "USD/MXN",
             "USD/PLN", "EUR/TRY", "EUR/HUF"
-    );
+    };
+    private static final int MAX_MAPPING_SIZE = 1 << 30;
+    private static final int DEFAULT_PARALLEL_THRESHOLD = 1 << 16;
+    private static final int MAX_PIPELINE_CAPACITY = 1 << 30;
+    private static final int DEFAULT_ARCHIVE_RETENTION = 2;
+    final CurrencyPairRegistry currencyPairs = new CurrencyPairRegistry(DEFAULT_CURRENCY_PAIRS);
+    final VWAPStore vwapStore;
+    private final VWAPResultCache vwapResultCache;
+    private volatile int parallelThreshold = DEFAULT_PARALLEL_THRESHOLD;
+    private volatile RollingVWAPCalculator[] rollingWindows = new RollingVWAPCalculator[CurrencyPairRegistry.MAX_PAIRS];
+    // non-null entries of rollingWindows, so batches can tell whether any window needs trades without a scan
+    private volatile int rollingWindowCount;
+    private final TradeSink tradeRecorder = this::recordTrade;
+    final TradeSink tradeObserver = this::observeTrade;
+    // String[] trades come in on caller, worker, feed and producer threads, each with its own parser
+    final ThreadLocal<TradeParser> stringParser;
+    private final RejectionCounters rejectionCounters = new RejectionCounters(LOGGER, currencyPairs);
+    private volatile EngineMetrics metrics;
+    private volatile TradeJournal journal;
+    private final Object snapshotLock = new Object();
+    private ScheduledExecutorService checkpointer;
+    private final Object lifecycleLock = new Object();
+    private LocalDate session = LocalDate.now();
+    private volatile Consumer<ClosedBucket> closedBucketHandler;
+    private int archiveRetention = DEFAULT_ARCHIVE_RETENTION;
+    private final Map<LocalDate, ArchivedSession> archive = new LinkedHashMap<>();
+
+    static final String INVALID_TRADE_STREAM_FORMAT = "Invalid trade stream format";
+    static final String INVALID_TRADE_TIME = "Invalid trade time format";
+    static final String INVALID_CURRENCY_PAIR = "Invalid currency pair";
+    static final String INVALID_TRADE_PRICE = "Invalid trade price";
+    static final String INVALID_TRADE_VOLUME = "Invalid trade volume";
+    static final String CLOSED_BUCKET = "Trade bucket already closed";
+
+    /**
+     * Creates an application that aggregates trades into hourly buckets.
+     */
+    public VWAPCalculatorApplication() {
+        this(BucketPolicy.HOURLY);
+    }
+
+    /**
+     * Creates an application that aggregates trades into buckets of the given width.
+     *
+     * @param bucketPolicy: width of the VWAP buckets
+     */
+    public VWAPCalculatorApplication(BucketPolicy bucketPolicy) {
+        this(bucketPolicy, Accumulation.DOUBLE);
+    }
+
+    /**
+     * Creates an application that aggregates trades into buckets of the given width, summing price * volume in the
+     * given mode. {@link Accumulation#EXACT} gives drift-free VWAPs that are bit-identical however trades are
+     * interleaved across threads, and rejects prices that do not fit its fixed-point range.
+     *
+     * @param bucketPolicy: width of the VWAP buckets
+     * @param accumulation: how price-volume sums are accumulated
+     */
+    public VWAPCalculatorApplication(BucketPolicy bucketPolicy, Accumulation accumulation) {
+        this.vwapStore = new VWAPStore(CurrencyPairRegistry.MAX_PAIRS, bucketPolicy, accumulation);
+        this.vwapResultCache = new VWAPResultCache(vwapStore, this::formatBucketKey);
+        this.stringParser = ThreadLocal.withInitial(() -> new TradeParser(currencyPairs, bucketPolicy, accumulation));
+    }
 
     /**
      * Processes the incoming trades and calculates VWAP for each unique currency pair.
      *
-     * @param trades: data stream in this format: [Timestamp, Currency-pair, Price, Volume]
+     * @param trades: data stream in this format: [Timestamp, Currency-pair, Price, Volume]; the timestamp is
+     *                "h:mm a" or, for sub-minute buckets, "h:mm:ss a"
      */
     public void processTrades(String[][] trades) {
+        EngineMetrics engineMetrics = metrics;
+        long start = (engineMetrics == null) ? 0 : System.nanoTime();
+        if (trades.length >= parallelThreshold) {
+            processTradesInParallel(trades);
+        } else {
+            processTradesSequentially(trades);
+        }
+        if (engineMetrics != null) {
+            engineMetrics.processTradesLatency.record(System.nanoTime() - start);
+        }
+    }
+
+    private void processTradesSequentially(String[][] trades) {
         for (String[] trade : trades) {
-            try {
-                processSingleTrade(trade);
-            } catch (IllegalArgumentException e) {
-                LOGGER.log(Level.WARNING, "Skipping invalid trade: {0} - {1}", new Object[]{String.join(", ", trade), e.getMessage()});
+            processFeedTrade(trade);
+        }
+    }
+
+    /**
+     * Sets the batch size from which {@link #processTrades(String[][])} splits a batch across the common
+     * {@link ForkJoinPool}. Workers aggregate into private partial sums that are merged into the shared buckets
+     * at the end, and invalid trades are logged in batch order, so results and warnings match the sequential
+     * path.
+     *
+     * @param threshold: minimum batch size processed in parallel; {@link Integer#MAX_VALUE} disables it
+     */
+    public void setParallelThreshold(int threshold) {
+        if (threshold < 1) {
+            throw new IllegalArgumentException("Invalid parallel threshold");
+        }
+        parallelThreshold = threshold;
+    }
+
+    private void processTradesInParallel(String[][] trades) {
+        int leafSize = Math.max(1, trades.length / (ForkJoinPool.getCommonPoolParallelism() * 4));
+        ParallelIngest.ObservedTrades observed = observesTrades() ? new ParallelIngest.ObservedTrades(trades.length)
+                : null;
+        ParallelIngest.Partial partial = ForkJoinPool.commonPool().invoke(
+                new ParallelIngest(this, trades, 0, trades.length, leafSize, vwapStore.policy(), observed));
+
+        if (observed != null) {
+            observed.replay(partial, tradeObserver);
+        }
+        partial.addTo(vwapStore);
+        for (int i = 0; i < partial.rejectedCount; i++) {
+            rejectTrade(trades[partial.rejectedIndexes[i]], partial.rejectedReasons[i]);
+        }
+    }
+
+    /**
+     * Processes CSV trade records, one per line, in the format {@code 9:31 AM,EUR/USD,1.1000,100}.
+     * <p>
+     * Each record is validated and decoded in a single pass straight from the buffer, so accepted trades are
+     * aggregated without allocating. Fields are separated by a bare comma, lines by {@code \n} or {@code \r\n},
+     * and blank lines are ignored. Invalid records are skipped with the same warning as
+     * {@link #processTrades(String[][])}. The buffer is consumed from its position to its limit.
+     *
+     * @param trades: buffer of CSV trade records
+     */
+    public void processTrades(ByteBuffer trades) {
+        EngineMetrics engineMetrics = metrics;
+        long start = (engineMetrics == null) ? 0 : System.nanoTime();
+        processRecords(trades);
+        if (engineMetrics != null) {
+            engineMetrics.processTradesLatency.record(System.nanoTime() - start);
+        }
+    }
+
+    private int processRecords(ByteBuffer trades) {
+        TradeParser parser = new TradeParser(currencyPairs, vwapStore.policy(), vwapStore.accumulation());
+        int limit = trades.limit();
+        int lineStart = trades.position();
+        int records = 0;
+        while (lineStart < limit) {
+            int lineEnd = lineStart;
+            while (lineEnd < limit && trades.get(lineEnd) != '\n') {
+                lineEnd++;
+            }
+            int recordEnd = (lineEnd > lineStart && trades.get(lineEnd - 1) == '\r') ? lineEnd - 1 : lineEnd;
+            if (recordEnd > lineStart) {
+                records++;
+                processRecord(parser, trades, lineStart, recordEnd);
+            }
+            lineStart = lineEnd + 1;
+        }
+        trades.position(limit);
+        return records;
+    }
+
+    /**
+     * Processes one CSV trade record, without its line terminator, counting and logging it if it is invalid.
+     */
+    void processRecord(TradeParser parser, ByteBuffer trades, int start, int end) {
+        RejectReason reason = parser.parse(trades, start, end);
+        if (reason == null && vwapStore.isClosed(parser.secondOfDay)) {
+            reason = RejectReason.CLOSED_BUCKET;
+        }
+        if (reason == null) {
+            recordTrade(parser.pairOrdinal, parser.secondOfDay, parser.price, parser.volume);
+        } else if (rejectionCounters.record(reason, parser.pairOrdinal)) {
+            logInvalidTrade(TradeParser.fields(trades, start, end), reason.message());
+        }
+    }
+
+    /**
+     * Processes one decoded trade, such as a binary message, counting and logging it if it is invalid. Checks run
+     * in the order {@link #processTrades(int[], short[], double[], long[], int)} runs them.
+     *
+     * @param pairOrdinal: id of the currency pair, or -1 if the pair is unknown
+     */
+    void processDecodedTrade(int secondOfDay, int pairOrdinal, double price, long volume) {
+        if (checkDecodedTrade(secondOfDay, pairOrdinal, price, volume)) {
+            recordTrade(pairOrdinal, secondOfDay, price, volume);
+        }
+    }
+
+    /**
+     * Validates one decoded trade as {@link #processDecodedTrade(int, int, double, long)} does, counting and logging
+     * it if it is invalid.
+     *
+     * @return True if the trade is valid.
+     */
+    boolean checkDecodedTrade(int secondOfDay, int pairOrdinal, double price, long volume) {
+        RejectReason reason = ColumnarIngest.check(vwapStore, currencyPairs, secondOfDay, pairOrdinal, price, volume);
+        if (reason != null) {
+            rejectTrade(columnFields(secondOfDay, (short) pairOrdinal, price, volume), reason);
+        }
+        return reason == null;
+    }
+
+    /**
+     * Processes a batch of trades held in parallel columns, for callers that already have decoded trades, such as
+     * a binary feed handler. Trade {@code i} is {@code (secondsOfDay[i], pairIds[i], prices[i], volumes[i])}.
+     * <p>
+     * Whole chunks of the columns are validated and multiplied at once, with SIMD instructions when the JVM runs
+     * with {@code --add-modules jdk.incubator.vector} and one trade at a time otherwise, and the products are
+     * summed per bucket before being added to the shared buckets once per bucket. Invalid trades are skipped,
+     * counted and logged as in {@link #processTrades(String[][])}, and results match that path for the same trades.
+     *
+     * @param secondsOfDay: trade times in seconds since midnight
+     * @param pairIds:      currency pairs, as returned by {@link #pairId(String)}
+     * @param prices:       trade prices
+     * @param volumes:      trade volumes
+     * @param count:        number of trades, from index 0; at most the length of every column
+     */
+    public void processTrades(int[] secondsOfDay, short[] pairIds, double[] prices, long[] volumes, int count) {
+        if (count < 0 || count > secondsOfDay.length || count > pairIds.length || count > prices.length
+                || count > volumes.length) {
+            throw new IllegalArgumentException("Invalid trade count");
+        }
+        EngineMetrics engineMetrics = metrics;
+        long start = (engineMetrics == null) ? 0 : System.nanoTime();
+        ParallelIngest.Partial partial = ColumnarIngest.aggregate(vwapStore, currencyPairs, ColumnarIngest.KERNEL, secondsOfDay,
+                pairIds, prices, volumes, count, observesTrades() ? tradeObserver : null);
+
+        partial.addTo(vwapStore);
+        for (int i = 0; i < partial.rejectedCount; i++) {
+            int index = partial.rejectedIndexes[i];
+            rejectTrade(columnFields(secondsOfDay[index], pairIds[index], prices[index], volumes[index]),
+                    partial.rejectedReasons[i]);
+        }
+        if (engineMetrics != null) {
+            engineMetrics.processTradesLatency.record(System.nanoTime() - start);
+        }
+    }
+
+    /**
+     * Gets the id of a currency pair for {@link #processTrades(int[], short[], double[], long[], int)}. Ids are
+     * assigned in the order pairs are added, starting with the built-in pairs, and never change.
+     *
+     * @param currencyPair: active currency pair, e.g. "EUR/USD"
+     * @return The pair's id.
+     */
+    public short pairId(String currencyPair) {
+        int pairOrdinal = currencyPairs.idOf(currencyPair);
+        if (pairOrdinal < 0) {
+            throw new IllegalArgumentException(INVALID_CURRENCY_PAIR);
+        }
+        return (short) pairOrdinal;
+    }
+
+    /**
+     * Starts accepting trades for a currency pair without a restart. Lookups stay collision-free: every change
+     * rebuilds a perfect hash of the active pairs, which readers pick up without locking. Up to
+     * {@value CurrencyPairRegistry#MAX_PAIRS} pairs can be added over the life of the application, counting the
+     * built-in ones and retired ones.
+     *
+     * @param currencyPair: pair code, three upper-case letters, a slash and three upper-case letters, e.g. "NOK/SEK"
+     * @return The pair's id; a retired pair gets its old id back.
+     * @throws IllegalStateException if no more pairs can be added
+     */
+    public synchronized short addCurrencyPair(String currencyPair) {
+        int pairOrdinal = currencyPairs.add(currencyPair);
+        TradeJournal tradeJournal = journal;
+        if (tradeJournal != null) {
+            tradeJournal.definePair(pairOrdinal);
+        }
+        return (short) pairOrdinal;
+    }
+
+    /**
+     * Stops accepting trades for a currency pair; later trades are rejected as invalid currency pairs. Its buckets
+     * stay until they are closed, and its rolling window is removed.
+     *
+     * @param currencyPair: currency pair, e.g. "EUR/USD"
+     */
+    public synchronized void retireCurrencyPair(String currencyPair) {
+        removeRollingWindow(currencyPair);
+        currencyPairs.retire(currencyPair);
+    }
+
+    /**
+     * Gets the currency pairs whose trades are accepted, in id order.
+     *
+     * @return An unmodifiable set of the active pairs.
+     */
+    public Set<String> getCurrencyPairs() {
+        return currencyPairs.activePairs();
+    }
+
+    /**
+     * Formats a columnar trade like a {@code String[]} trade, for rejection warnings.
+     */
+    private String[] columnFields(int secondOfDay, short pairId, double price, long volume) {
+        String time = (secondOfDay >= 0 && secondOfDay < BucketPolicy.SECONDS_PER_DAY)
+                ? LocalTime.ofSecondOfDay(secondOfDay).format(vwapStore.policy().tradeTimeFormatter())
+                : Integer.toString(secondOfDay);
+        String currencyPair = (pairId >= 0 && pairId < currencyPairs.size())
+                ? currencyPairs.nameOf(pairId) : Short.toString(pairId);
+        return new String[]{time, currencyPair, Double.toString(price), Long.toString(volume)};
+    }
+
+    /**
+     * Starts reading each feed on its own virtual thread, aggregating every feed's trades into this application.
+     * Feeds are isolated from each other: invalid trades are skipped and counted as in
+     * {@link #processTrades(String[][])}, and a feed whose source throws ends on its own while the rest continue.
+     * Hundreds of blocking feeds need no thread pool sizing, because a feed blocked on a read holds no platform
+     * thread.
+     *
+     * @param feeds: feeds to read; each feed can only be ingested once
+     * @return The running ingestion; close it to cancel the feeds that are still running.
+     */
+    public FeedIngestion ingestFeeds(Collection<TradeFeed> feeds) {
+        return new FeedIngestion(this, List.copyOf(feeds));
+    }
+
+    /**
+     * Processes one trade, counting and logging it if it is invalid.
+     */
+    void processFeedTrade(String[] trade) {
+        RejectReason reason = processSingleTrade(trade, tradeRecorder);
+        if (reason != null) {
+            rejectTrade(trade, reason);
+        }
+    }
+
+    int processFeedRecords(ByteBuffer records) {
+        return processRecords(records);
+    }
+
+    /**
+     * Processes a file of CSV trade records in the format accepted by {@link #processTrades(ByteBuffer)}.
+     * <p>
+     * The file is memory-mapped in windows of up to 1 GiB that end on a line boundary, and each window is parsed
+     * in place. Heap use does not depend on the file size, and files larger than 2 GB are read through several
+     * mappings.
+     *
+     * @param file: path of the trade file
+     * @throws IOException if the file cannot be read, or a single record is longer than a mapping window
+     */
+    public void processTradeFile(Path file) throws IOException {
+        processTradeFile(file, MAX_MAPPING_SIZE);
+    }
+
+    void processTradeFile(Path file, int mappingSize) throws IOException {
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            long size = channel.size();
+            long position = 0;
+            while (position < size) {
+                long length = Math.min(mappingSize, size - position);
+                MappedByteBuffer window = channel.map(FileChannel.MapMode.READ_ONLY, position, length);
+                int end = (int) length;
+                if (position + length < size) {
+                    end = lastLineEnd(window, end);
+                    if (end == 0) {
+                        throw new IOException("Trade record at offset " + position + " is longer than " + mappingSize + " bytes");
+                    }
+                }
+                processTrades(window.limit(end));
+                position += end;
+            }
+        }
+    }
+
+    private static int lastLineEnd(ByteBuffer window, int length) {
+        for (int i = length - 1; i >= 0; i--) {
+            if (window.get(i) == '\n') {
+                return i + 1;
             }
         }
+        return 0;
     }
 
-    private void processSingleTrade(String[] trade) {
-        validateTradeParams(trade);
-        LocalTime tradeTime = LocalTime.parse(trade[0], TIME_FORMATTER).withMinute(0);
-        String currencyPair = trade[1];
-        double price = Double.parseDouble(trade[2]);
-        long volume = Long.parseLong(trade[3]);
+    void processSingleTrade(String[] trade) {
+        RejectReason reason = processSingleTrade(trade, tradeRecorder);
+        if (reason != null) {
+            throw new IllegalArgumentException(reason.message());
+        }
+    }
 
-        vwapDataMap
-                .computeIfAbsent(currencyPair, k -> new ConcurrentHashMap<>())
-                .computeIfAbsent(tradeTime, k -> new VWAPCalculator())
-                .addTrade(price, volume);
+    /**
+     * Validates a trade and hands it to the sink, without throwing for invalid trades.
+     *
+     * @return null if the trade was accepted, otherwise why it was rejected.
+     */
+    RejectReason processSingleTrade(String[] trade, TradeSink sink) {
+        TradeParser parser = stringParser.get();
+        RejectReason reason = checkTrade(trade, parser);
+        if (reason == null) {
+            sink.accept(parser.pairOrdinal, parser.secondOfDay, parser.price, parser.volume);
+        }
+        return reason;
+    }
+
+    /**
+     * Journals an accepted trade, adds it to its bucket and hands it to the per-trade views.
+     */
+    private void recordTrade(int pairOrdinal, int secondOfDay, double price, long volume) {
+        TradeJournal tradeJournal = journal;
+        if (tradeJournal != null) {
+            tradeJournal.append(pairOrdinal, secondOfDay, price, volume);
+        }
+        vwapStore.addTrade(pairOrdinal, secondOfDay, price, volume);
+        updateViews(pairOrdinal, secondOfDay, price, volume);
+    }
+
+    /**
+     * Returns whether anything needs individual trades rather than bucket sums: the journal, the metrics or a
+     * rolling window.
+     */
+    private boolean observesTrades() {
+        return metrics != null || journal != null || rollingWindowCount > 0;
+    }
+
+    /**
+     * Journals a trade and updates everything that needs individual trades rather than bucket sums. Called in
+     * batch order for every trade the batch paths aggregate into partial sums, before they reach the store.
+     */
+    private void observeTrade(int pairOrdinal, int secondOfDay, double price, long volume) {
+        TradeJournal tradeJournal = journal;
+        if (tradeJournal != null) {
+            tradeJournal.append(pairOrdinal, secondOfDay, price, volume);
+        }
+        updateViews(pairOrdinal, secondOfDay, price, volume);
+    }
+
+    /**
+     * Adds a replayed trade without journaling it again.
+     */
+    private void replayTrade(int pairOrdinal, int secondOfDay, double price, long volume) {
+        if (pairOrdinal < 0 || pairOrdinal >= currencyPairs.size()) {
+            throw new IllegalArgumentException(INVALID_CURRENCY_PAIR);
+        }
+        if (vwapStore.isClosed(secondOfDay)) {
+            return;
+        }
+        vwapStore.addTrade(pairOrdinal, secondOfDay, price, volume);
+        updateViews(pairOrdinal, secondOfDay, price, volume);
+    }
+
+    private void updateViews(int pairOrdinal, int secondOfDay, double price, long volume) {
+        RollingVWAPCalculator rollingWindow = rollingWindows[pairOrdinal];
+        if (rollingWindow != null) {
+            rollingWindow.addTrade(secondOfDay, price, volume);
+        }
+        EngineMetrics engineMetrics = metrics;
+        if (engineMetrics != null) {
+            engineMetrics.recordTrade(pairOrdinal, volume);
+        }
+    }
+
+    /**
+     * Counts a rejected trade and logs it unless the log limit has been reached.
+     */
+    void rejectTrade(String[] trade, RejectReason reason) {
+        int pairOrdinal = (trade.length > 1) ? currencyPairs.idOf(trade[1]) : -1;
+        if (rejectionCounters.record(reason, pairOrdinal)) {
+            logInvalidTrade(trade, reason.message());
+        }
+    }
+
+    private static void logInvalidTrade(String[] trade, String reason) {
+        LOGGER.log(Level.WARNING, "Skipping invalid trade: {0} - {1}", new Object[]{String.join(", ", trade), reason});
     }
 
     /**
      * Gets the calculated VWAP for all currency pairs in the dataset.
+     * <p>
+     * Results are cached: only buckets that received trades since the previous call are recomputed, and if none
+     * did the previous map is returned again. The map is unmodifiable.
      *
      * @return A map containing the currency pair and VWAP value for each time interval.
      */
     public Map<String, Double> getAllVWAP() {
-        Map<String, Double> vwapResults = new HashMap<>();
+        EngineMetrics engineMetrics = metrics;
+        if (engineMetrics == null) {
+            return vwapResultCache.getAll();
+        }
+        long start = System.nanoTime();
+        Map<String, Double> results = vwapResultCache.getAll();
+        engineMetrics.getAllVWAPLatency.record(System.nanoTime() - start);
+        return results;
+    }
 
-        vwapDataMap.forEach((currencyPair, vwapDataForCurrencyPair) ->
-                vwapDataForCurrencyPair.forEach((time, vwapCalculator) ->
-                        vwapResults.put(currencyPair + " " + time.format(TIME_FORMATTER), vwapCalculator.calculateVWAP())
-                )
-        );
+    /**
+     * Gets the open, high, low, close, VWAP, mean price, volume and trade count of every bucket with trades. The
+     * bars are kept in the same pass over each trade as the VWAP, so this reads each bucket consistently, like
+     * {@link #exportPartial()}, while ingest carries on.
+     *
+     * @return The bars, in currency pair and time order.
+     */
+    public Bars getAllBars() {
+        return exportPartial().getAllBars();
+    }
 
-        return vwapResults;
+    /**
+     * Gets the VWAP values that changed after the given version, so pollers can fetch deltas instead of the full
+     * result. Start with version 0 to get every bucket, then pass the version of each result to the next call.
+     * Buckets dropped by closing them or rolling the session are reported as removed keys.
+     *
+     * @param version: version returned by a previous call, or 0
+     * @return The changed VWAP values and removed keys, keyed like {@link #getAllVWAP()}, and the version they bring
+     * the caller to.
+     */
+    public VWAPChanges getChangedVWAPSince(long version) {
+        return vwapResultCache.getChangedSince(version);
     }
 
     /**
-     * Validates the parameters of a trade.
+     * Starts pushing per-bucket VWAP updates to {@link java.util.concurrent.Flow} subscribers instead of having them
+     * poll. Changed buckets are collected once per coalescing interval on a background thread, so ingest never
+     * blocks on subscribers, and each subscriber gets at most one pending update per bucket, always the latest.
      *
-     * @param trade A trade represented as an array of strings.
+     * @param coalescingInterval: how often changes are published; several changes to a bucket within one interval
+     *                            are published once
+     * @return The publisher. Close it to stop publishing and complete its subscribers.
      */
-    private void validateTradeParams(String[] trade) {
-        if (trade.length != 4) {
-            throw new IllegalArgumentException("Invalid trade stream format");
+    public VWAPPublisher publishUpdates(Duration coalescingInterval) {
+        if (coalescingInterval.isNegative() || coalescingInterval.isZero()) {
+            throw new IllegalArgumentException("Invalid coalescing interval");
         }
+        return new VWAPPublisher(vwapStore, currencyPairs, coalescingInterval);
+    }
 
-        String time = trade[0];
-        String currency = trade[1];
-        String price = trade[2];
-        String volume = trade[3];
+    /**
+     * Gets the trading session the live buckets belong to. Trades only carry a time of day, so the session is
+     * today's date when the application is created and moves on with {@link #rollSession(LocalDate)}. A fresh
+     * application takes over the session of a snapshot it loads or a journal it replays.
+     */
+    public LocalDate getSession() {
+        synchronized (lifecycleLock) {
+            return session;
+        }
+    }
 
-        if (!isValidTime(time)) {
-            throw new IllegalArgumentException("Invalid trade time format");
+    /**
+     * Closes every bucket of the current session that ends at or before the given time. Each closed bucket is
+     * handed to the closed-bucket handler, kept in the archive of the session if retention allows, and removed
+     * from the live buckets, so {@link #getAllVWAP()} and memory only cover open buckets. Later trades for a
+     * closed bucket are rejected as {@link RejectReason#CLOSED_BUCKET}. Close buckets once their trades have
+     * stopped arriving: a trade being processed while its bucket closes is lost.
+     *
+     * @param time: time up to which buckets are closed
+     */
+    public void closeBucketsBefore(LocalTime time) {
+        synchronized (lifecycleLock) {
+            closeSlots(vwapStore.policy().slotOf(time.toSecondOfDay()));
+            TradeJournal tradeJournal = journal;
+            if (tradeJournal != null) {
+                tradeJournal.appendClose(time.toSecondOfDay());
+            }
         }
-        if (!isValidCurrency(currency)) {
-            throw new IllegalArgumentException("Invalid currency pair");
+    }
+
+    /**
+     * Closes every bucket of the current session, as {@link #closeBucketsBefore(LocalTime)} does, and starts a new
+     * session with no buckets. Archived sessions beyond the retention are dropped.
+     *
+     * @param nextSession: date of the new session; must be after the current one
+     */
+    public void rollSession(LocalDate nextSession) {
+        synchronized (lifecycleLock) {
+            if (!nextSession.isAfter(session)) {
+                throw new IllegalArgumentException("Invalid session");
+            }
+            roll(nextSession);
+            TradeJournal tradeJournal = journal;
+            if (tradeJournal != null) {
+                tradeJournal.appendSession(nextSession);
+            }
         }
-        if (!isValidPrice(price)) {
-            throw new IllegalArgumentException("Invalid trade price");
+    }
+
+    private void roll(LocalDate nextSession) {
+        synchronized (lifecycleLock) {
+            closeSlots(vwapStore.slotsPerDay());
+            session = nextSession;
+            vwapStore.reopen();
+            trimArchive();
         }
-        if (!isValidVolume(volume)) {
-            throw new IllegalArgumentException("Invalid trade volume");
+    }
+
+    /**
+     * Checks if the application has neither buckets nor closed ones, so it can take over the session of a journal
+     * or snapshot.
+     */
+    private boolean isFresh() {
+        synchronized (lifecycleLock) {
+            return vwapStore.bucketCount() == 0 && vwapStore.closedSlots() == 0 && archive.isEmpty();
         }
     }
 
     /**
-     * Checks if the trade time is valid.
+     * Sets a handler that receives every bucket as it is closed, on the thread closing it.
      *
-     * @param time The trade time as a string.
-     * @return True if the time is valid, false otherwise.
+     * @param handler: closed-bucket handler, or null for none
      */
-    private boolean isValidTime(String time) {
+    public void setClosedBucketHandler(Consumer<ClosedBucket> handler) {
+        closedBucketHandler = handler;
+    }
+
+    /**
+     * Sets how many sessions of closed buckets are kept in the archive, counting the current one. The default is
+     * 2, the current session and the previous one. With 0, closed buckets are only handed to the handler.
+     *
+     * @param sessions: number of sessions to keep
+     */
+    public void setArchiveRetention(int sessions) {
+        if (sessions < 0) {
+            throw new IllegalArgumentException("Invalid archive retention");
+        }
+        synchronized (lifecycleLock) {
+            archiveRetention = sessions;
+            trimArchive();
+        }
+    }
+
+    /**
+     * Gets the VWAP of every archived closed bucket of a session.
+     *
+     * @param session: session date
+     * @return The VWAP values keyed like {@link #getAllVWAP()}, or an empty map if the session is not archived.
+     */
+    public Map<String, Double> getArchivedVWAP(LocalDate session) {
+        ArchivedSession archived;
+        synchronized (lifecycleLock) {
+            archived = archive.get(session);
+        }
+        return (archived == null) ? Map.of() : archived.vwaps(this::formatBucketKey);
+    }
+
+    private void closeSlots(int endSlot) {
+        synchronized (lifecycleLock) {
+            Consumer<ClosedBucket> handler = closedBucketHandler;
+            ArchivedSession.Builder closed = new ArchivedSession.Builder();
+            vwapStore.closeSlots(endSlot, (pairOrdinal, slot, calculator) -> calculator.readVWAP((vwap, volume) -> {
+                closed.add(pairOrdinal, slot, vwap, volume);
+                if (handler != null) {
+                    handleClosedBucket(handler, new ClosedBucket(session, currencyPairs.nameOf(pairOrdinal),
+                            vwapStore.policy().startOf(slot), vwap, volume));
+                }
+            }));
+            if (archiveRetention > 0 && !closed.isEmpty()) {
+                ArchivedSession archived = archive.get(session);
+                archive.put(session, closed.appendTo(archived));
+            }
+            trimArchive();
+        }
+    }
+
+    private static void handleClosedBucket(Consumer<ClosedBucket> handler, ClosedBucket bucket) {
         try {
-            LocalTime.parse(time, TIME_FORMATTER);
-            return true;
-        } catch (DateTimeParseException e) {
-            return false;
+            handler.accept(bucket);
+        } catch (RuntimeException e) {
+            LOGGER.log(Level.SEVERE, "Closed bucket handler failed for " + bucket, e);
+        }
+    }
+
+    /**
+     * Drops the oldest archived sessions beyond the retention, which counts the current session whether or not it
+     * has closed buckets yet. Sessions are archived in order, so the map's insertion order is session order.
+     */
+    private void trimArchive() {
+        if (archiveRetention == 0) {
+            archive.clear();
+            return;
+        }
+        int previousSessions = archive.size() - (archive.containsKey(session) ? 1 : 0);
+        Iterator<LocalDate> sessions = archive.keySet().iterator();
+        for (int excess = previousSessions - (archiveRetention - 1); excess > 0; excess--) {
+            sessions.next();
+            sessions.remove();
         }
     }
 
     /**
-     * Checks if the currency pair is valid.
+     * Writes the sums, trade count and bar of every bucket to a compact binary snapshot file. Ingest does not
+     * stop: each bucket is read consistently, and trades processed during the write may or may not be included.
+     * The session date and closed buckets are captured with the sums, so rolling the session or closing buckets
+     * waits while the buckets are read, but not for the file to be written and forced to disk. The file is replaced
+     * atomically, so an existing snapshot stays intact if the write fails.
      *
-     * @param currency The currency pair as a string.
-     * @return True if the currency pair is valid, false otherwise.
+     * @param file: snapshot file
+     * @throws IOException if the snapshot cannot be written
      */
-    private boolean isValidCurrency(String currency) {
-        return VALID_CURRENCIES.contains(currency);
+    public void writeSnapshot(Path file) throws IOException {
+        synchronized (snapshotLock) {
+            ByteBuffer snapshot;
+            synchronized (lifecycleLock) {
+                snapshot = VWAPSnapshot.encode(vwapStore, currencyPairs.names(), session);
+            }
+            VWAPSnapshot.write(snapshot, file);
+        }
     }
 
     /**
-     * Checks if the trade volume is valid.
+     * Restores bucket sums, trade counts and bars from a snapshot written by {@link #writeSnapshot(Path)}, replacing
+     * the live buckets, so loading the same snapshot twice gives the same state. Meant for startup: a trade
+     * processed while the snapshot loads may be lost. A fresh application also takes over the snapshot's session
+     * and closes the buckets it had closed; an application with buckets only loads a snapshot of its own session,
+     * and keeps the buckets it has already closed. The header, bucket width, accumulation, session and checksum are
+     * verified and the whole file is decoded before anything is replaced, so a corrupt snapshot changes nothing.
      *
-     * @param volume The trade volume as a string.
-     * @return True if the volume is valid, false otherwise.
+     * @param file: snapshot file
+     * @throws IOException if the file cannot be read, is corrupt, or was written with another bucket width,
+     *                     accumulation or session
      */
-    private boolean isValidVolume(String volume) {
-        try {
-            return Long.parseLong(volume) > 0;
-        } catch (NumberFormatException e) {
-            return false;
+    public void loadSnapshot(Path file) throws IOException {
+        synchronized (lifecycleLock) {
+            boolean fresh = isFresh();
+            VWAPSnapshot.Session restored = VWAPSnapshot.read(file, vwapStore, currencyPairs.ids(),
+                    fresh ? null : session);
+            session = restored.date();
+            if (restored.closedSlots() > vwapStore.closedSlots()) {
+                closeSlots(restored.closedSlots());
+            }
         }
     }
 
     /**
-     * Checks if the trade price is valid.
+     * Exports the price-volume sum, volume sum, trade count and bar of every bucket as a partial aggregate that can
+     * be merged with those of other shards. Ingest does not stop: each bucket is read consistently, and trades
+     * processed during the export may or may not be included.
      *
-     * @param price The trade price as a string.
-     * @return True if the price is valid, false otherwise.
+     * @return The partial aggregate of this application's buckets.
      */
-    private boolean isValidPrice(String price) {
+    public PartialAggregate exportPartial() {
+        return PartialAggregate.of(vwapStore, currencyPairs.names());
+    }
+
+    /**
+     * Adds the bucket sums of a partial aggregate, such as one exported by another shard, to this application's
+     * buckets. Buckets that are already closed are skipped, and rolling windows and metrics, which need individual
+     * trades, are not updated.
+     *
+     * @param partial: partial with this application's bucket width and accumulation, for known currency pairs
+     * @throws IllegalArgumentException if the partial does not fit this application; nothing is added then
+     */
+    public void importPartial(PartialAggregate partial) {
+        partial.addTo(vwapStore, currencyPairs.ids());
+    }
+
+    /**
+     * Serves this application's partial aggregate to {@link ShardCoordinator}s over TCP, for
+     * {@link PartialSource#remote(InetSocketAddress, Duration)}.
+     *
+     * @param address: address to listen on; port 0 picks a free port
+     * @return The server. Close it to stop serving.
+     * @throws IOException if the address cannot be bound
+     */
+    public ShardServer servePartials(InetSocketAddress address) throws IOException {
+        return new ShardServer(this, address);
+    }
+
+    /**
+     * Accepts trades and VWAP queries from any number of TCP clients, so feed handlers can run outside this JVM.
+     * The protocols are described in {@link TradeServer}.
+     *
+     * @param address: address to listen on; port 0 picks a free port
+     * @return The server. Close it to stop serving and drop its connections.
+     * @throws IOException if the address cannot be bound
+     */
+    public TradeServer serveTrades(InetSocketAddress address) throws IOException {
+        return new TradeServer(this, address);
+    }
+
+    /**
+     * Writes a snapshot to the file at a fixed interval on a background thread, replacing any earlier schedule.
+     * Failed writes are logged and retried at the next interval.
+     *
+     * @param file:     snapshot file
+     * @param interval: time between snapshots
+     */
+    public synchronized void startCheckpointing(Path file, Duration interval) {
+        if (interval.isNegative() || interval.isZero()) {
+            throw new IllegalArgumentException("Invalid checkpoint interval");
+        }
+        stopCheckpointing();
+        checkpointer = Executors.newSingleThreadScheduledExecutor(task -> {
+            Thread thread = new Thread(task, "vwap-checkpoint");
+            thread.setDaemon(true);
+            return thread;
+        });
+        long nanos = interval.toNanos();
+        checkpointer.scheduleWithFixedDelay(() -> checkpoint(file), nanos, nanos, TimeUnit.NANOSECONDS);
+    }
+
+    /**
+     * Stops periodic snapshots. A snapshot being written is allowed to finish.
+     */
+    public synchronized void stopCheckpointing() {
+        if (checkpointer != null) {
+            checkpointer.shutdown();
+            checkpointer = null;
+        }
+    }
+
+    private void checkpoint(Path file) {
         try {
-            return Double.parseDouble(price) > 0.0;
-        } catch (NumberFormatException e) {
-            return false;
+            writeSnapshot(file);
+        } catch (IOException | RuntimeException e) {
+            LOGGER.log(Level.SEVERE, "Failed to write VWAP snapshot to " + file, e);
+        }
+    }
+
+    /**
+     * Starts journaling every accepted trade to memory-mapped segment files in the directory, before it is
+     * aggregated. Appending costs an atomic increment and four stores into the mapped segment, with no locking or
+     * allocation. If the directory already holds a journal, new trades are appended after its last one. The journal
+     * also records the current session, and every later session roll and bucket close, so a replay knows which day
+     * its trades belong to.
+     *
+     * @param directory:    journal directory; created if needed
+     * @param syncInterval: how often a background thread forces journaled trades to disk, or null to leave that
+     *                      to the operating system
+     * @throws IOException if the journal cannot be opened
+     */
+    public void enableJournal(Path directory, Duration syncInterval) throws IOException {
+        enableJournal(directory, syncInterval, TradeJournal.DEFAULT_SEGMENT_RECORDS);
+    }
+
+    synchronized void enableJournal(Path directory, Duration syncInterval, int segmentRecords) throws IOException {
+        if (syncInterval != null && (syncInterval.isNegative() || syncInterval.isZero())) {
+            throw new IllegalArgumentException("Invalid journal sync interval");
+        }
+        if (segmentRecords < 2 || segmentRecords > Integer.MAX_VALUE / TradeJournal.RECORD_BYTES) {
+            throw new IllegalArgumentException("Invalid journal segment size");
+        }
+        disableJournal();
+        TradeJournal opened = new TradeJournal(directory, currencyPairs, segmentRecords, syncInterval);
+        synchronized (lifecycleLock) {
+            try {
+                opened.appendSession(session);
+                int closedSlots = vwapStore.closedSlots();
+                if (closedSlots > 0) {
+                    opened.appendClose(vwapStore.policy().startOf(closedSlots).toSecondOfDay());
+                }
+            } catch (UncheckedIOException e) {
+                opened.close();
+                throw e.getCause();
+            }
+            journal = opened;
+        }
+    }
+
+    /**
+     * Stops journaling and forces the journaled trades to disk.
+     */
+    public synchronized void disableJournal() {
+        TradeJournal tradeJournal = journal;
+        if (tradeJournal != null) {
+            journal = null;
+            tradeJournal.close();
+        }
+    }
+
+    /**
+     * Forces journaled trades to disk now, for callers that want each batch durable before acknowledging it.
+     */
+    public void syncJournal() {
+        TradeJournal tradeJournal = journal;
+        if (tradeJournal != null) {
+            tradeJournal.sync();
+        }
+    }
+
+    /**
+     * Replays a trade journal into this application, in the order the trades were journaled. Replayed trades are
+     * not journaled again. The journal's session markers are followed: a fresh application takes over the
+     * journal's first session, later sessions are rolled over to, and closed buckets are closed again, so a fresh
+     * application rebuilds the state, session and archive the journal was written from. An application that already
+     * has buckets skips the trades of sessions before its own. One with another bucket policy or rolling windows can
+     * be used to backtest against the recorded feed. Pairs are matched by the
+     * names the journal stores, so ids may differ from the writer's, but every journaled pair must be known here.
+     *
+     * @param directory: journal directory
+     * @return The number of trades replayed.
+     * @throws IOException if a segment cannot be read or is not a journal segment, or if the journal has a trade of
+     *                     a currency pair this application does not know, in which case nothing is replayed
+     */
+    public long replayJournal(Path directory) throws IOException {
+        SessionReplay replay = new SessionReplay(isFresh());
+        return TradeJournal.replay(directory, currencyPairs.ids(), replay, replay);
+    }
+
+    /**
+     * Turns engine metrics on or off. While on, every accepted trade updates two striped counters and every
+     * {@code processTrades} and {@code getAllVWAP} call records its latency, none of which allocates. While off
+     * the only cost is a check of one field. Turning metrics on starts the counters from zero.
+     *
+     * @param enabled: whether to record metrics
+     */
+    public synchronized void setMetricsEnabled(boolean enabled) {
+        if (!enabled) {
+            metrics = null;
+        } else if (metrics == null) {
+            metrics = new EngineMetrics(currencyPairs, rejectionCounters.total());
+        }
+    }
+
+    public boolean isMetricsEnabled() {
+        return metrics != null;
+    }
+
+    /**
+     * Gets the current engine metrics. The bucket count and memory estimate are computed on each call by walking
+     * the buckets; the other values are zero while metrics are disabled.
+     *
+     * @return A snapshot of the metrics.
+     */
+    public MetricsSnapshot getMetrics() {
+        return metrics(true);
+    }
+
+    /**
+     * @param advanceRates: whether the snapshot may close the current rate interval, which only explicit
+     *                      {@link #getMetrics()} calls do
+     */
+    MetricsSnapshot metrics(boolean advanceRates) {
+        EngineMetrics engineMetrics = metrics;
+        long rejected = rejectionCounters.total();
+        int bucketCount = vwapStore.bucketCount();
+        long memoryBytes = vwapStore.estimatedBytes();
+        if (engineMetrics == null) {
+            LatencySnapshot none = new LatencySnapshot(0, 0, 0, 0, 0);
+            return new MetricsSnapshot(false, 0, rejected, 0.0, 0.0, Map.of(), none, none, bucketCount, memoryBytes);
+        }
+        return engineMetrics.snapshot(rejected, bucketCount, memoryBytes, advanceRates);
+    }
+
+    /**
+     * Registers the metrics of this application with the platform MBean server as
+     * {@code com.ken:type=VWAPMetrics,name=<name>}. Registering does not enable metrics. The MBean reads the
+     * metrics at most once a second and derives its rates from its own reads, so JMX clients do not move the
+     * rate interval of {@link #getMetrics()}.
+     *
+     * @param name: name that tells this application apart from others in the same JVM
+     * @return The name the MBean was registered under.
+     * @throws JMException if the name is taken or the MBean cannot be registered
+     */
+    public ObjectName registerMetricsMBean(String name) throws JMException {
+        ObjectName objectName = new ObjectName("com.ken:type=VWAPMetrics,name=" + ObjectName.quote(name));
+        VWAPMetrics mbean = new VWAPMetrics(this, VWAPMetrics.DEFAULT_REFRESH_NANOS);
+        ManagementFactory.getPlatformMBeanServer().registerMBean(mbean, objectName);
+        return objectName;
+    }
+
+    /**
+     * Gets the number of trades rejected so far, per reason and per currency pair.
+     *
+     * @return A snapshot of the rejection counters.
+     */
+    public RejectionStats getRejectionStats() {
+        return rejectionCounters.snapshot();
+    }
+
+    /**
+     * Limits how many invalid trades are logged per second; the rest are only counted, and the number skipped is
+     * logged when the next second starts. The default is 100.
+     *
+     * @param warningsPerSecond: maximum warnings per second; 0 logs none and {@link Integer#MAX_VALUE} logs every
+     *                           invalid trade
+     */
+    public void setRejectionLogLimit(int warningsPerSecond) {
+        if (warningsPerSecond < 0) {
+            throw new IllegalArgumentException("Invalid rejection log limit");
+        }
+        rejectionCounters.setLogLimit(warningsPerSecond);
+    }
+
+    /**
+     * Starts a pipeline that producers publish trades into instead of calling {@link #processTrades(String[][])}.
+     * Trades are parsed on the producer threads and applied by a single consumer thread in batches, so producers
+     * never contend on the calculators. Close the pipeline to stop its consumer.
+     *
+     * @param capacity:     number of trades the ring buffer holds; rounded up to a power of two
+     * @param batchSize:    maximum number of trades the consumer applies at once
+     * @param backpressure: what producers do when the ring buffer is full
+     * @return The running pipeline.
+     */
+    public TradePipeline startPipeline(int capacity, int batchSize, BackpressurePolicy backpressure) {
+        if (capacity < 1 || capacity > MAX_PIPELINE_CAPACITY) {
+            throw new IllegalArgumentException("Invalid pipeline capacity");
+        }
+        if (batchSize < 1) {
+            throw new IllegalArgumentException("Invalid batch size");
+        }
+        int ringCapacity = (capacity == 1) ? 1 : Integer.highestOneBit(capacity - 1) << 1;
+        return new TradePipeline(this, ringCapacity, batchSize, backpressure);
+    }
+
+    /**
+     * Tracks a rolling-window VWAP for a currency pair, with the window sliding at one sixtieth of its length or
+     * one second, whichever is longer.
+     *
+     * @param currencyPair: currency pair to track, e.g. "EUR/USD"
+     * @param window:       length of the window, e.g. 15 minutes
+     */
+    public void setRollingWindow(String currencyPair, Duration window) {
+        setRollingWindow(currencyPair, window, Duration.ofSeconds(Math.max(1, window.getSeconds() / 60)));
+    }
+
+    /**
+     * Tracks a rolling-window VWAP for a currency pair. Updates and queries take constant time and do not allocate,
+     * because the window keeps running sums and subtracts each slot as it expires. Only trades processed after
+     * this call are included; calling it again replaces the pair's window.
+     *
+     * @param currencyPair: currency pair to track, e.g. "EUR/USD"
+     * @param window:       length of the window, e.g. 15 minutes
+     * @param resolution:   step the window slides in; must divide the window evenly
+     */
+    public void setRollingWindow(String currencyPair, Duration window, Duration resolution) {
+        setRollingWindow(currencyPair, window, resolution,
+                Duration.ofSeconds(RollingVWAPCalculator.DEFAULT_MAX_LATENESS_SECONDS));
+    }
+
+    /**
+     * Tracks a rolling-window VWAP for a currency pair, choosing how late a trade can arrive. Trades only carry a
+     * time of day, so a trade behind the pair's latest one, counting back across midnight, is late if it is no more
+     * than {@code maxLateness} behind, and otherwise starts the next day. Late trades never move the window, and
+     * are included only if they are still inside it.
+     *
+     * @param currencyPair: currency pair to track, e.g. "EUR/USD"
+     * @param window:       length of the window, e.g. 15 minutes
+     * @param resolution:   step the window slides in; must divide the window evenly
+     * @param maxLateness:  how far behind the latest trade a trade is still late; less than a day, 12 hours by default
+     */
+    public synchronized void setRollingWindow(String currencyPair, Duration window, Duration resolution,
+                                              Duration maxLateness) {
+        int pairOrdinal = currencyPairs.idOf(currencyPair);
+        if (pairOrdinal < 0) {
+            throw new IllegalArgumentException(INVALID_CURRENCY_PAIR);
+        }
+        long windowSeconds = window.getSeconds();
+        long resolutionSeconds = resolution.getSeconds();
+        if (resolutionSeconds < 1 || windowSeconds < resolutionSeconds || windowSeconds > BucketPolicy.SECONDS_PER_DAY
+                || windowSeconds % resolutionSeconds != 0) {
+            throw new IllegalArgumentException("Invalid rolling window");
+        }
+        if (maxLateness.isNegative() || maxLateness.getSeconds() >= BucketPolicy.SECONDS_PER_DAY) {
+            throw new IllegalArgumentException("Invalid maximum lateness");
+        }
+        RollingVWAPCalculator[] updated = rollingWindows.clone();
+        boolean added = updated[pairOrdinal] == null;
+        updated[pairOrdinal] = new RollingVWAPCalculator((int) windowSeconds, (int) resolutionSeconds,
+                (int) maxLateness.getSeconds());
+        rollingWindows = updated;
+        if (added) {
+            rollingWindowCount++;
+        }
+    }
+
+    /**
+     * Stops tracking the rolling-window VWAP of a currency pair.
+     *
+     * @param currencyPair: currency pair, e.g. "EUR/USD"
+     */
+    public synchronized void removeRollingWindow(String currencyPair) {
+        int pairOrdinal = currencyPairs.idOf(currencyPair);
+        if (pairOrdinal >= 0 && rollingWindows[pairOrdinal] != null) {
+            RollingVWAPCalculator[] updated = rollingWindows.clone();
+            updated[pairOrdinal] = null;
+            rollingWindows = updated;
+            rollingWindowCount--;
+        }
+    }
+
+    /**
+     * Gets the VWAP of the rolling window that ends at the pair's latest trade.
+     *
+     * @param currencyPair: currency pair, e.g. "EUR/USD"
+     * @return The VWAP of the window, or 0.0 if it has no volume.
+     */
+    public double getRollingVWAP(String currencyPair) {
+        return rollingWindow(currencyPair).calculateVWAP();
+    }
+
+    /**
+     * Gets the VWAP of the rolling window that ends at the given time, which lets a window decay when trading
+     * stops. Times before the pair's latest trade are treated as the latest trade's time.
+     *
+     * @param currencyPair: currency pair, e.g. "EUR/USD"
+     * @param asOf:         end of the window
+     * @return The VWAP of the window, or 0.0 if it has no volume.
+     */
+    public double getRollingVWAP(String currencyPair, LocalTime asOf) {
+        return rollingWindow(currencyPair).calculateVWAP(asOf.toSecondOfDay());
+    }
+
+    private RollingVWAPCalculator rollingWindow(String currencyPair) {
+        int pairOrdinal = currencyPairs.idOf(currencyPair);
+        RollingVWAPCalculator rollingWindow = (pairOrdinal < 0) ? null : rollingWindows[pairOrdinal];
+        if (rollingWindow == null) {
+            throw new IllegalArgumentException("No rolling window for currency pair");
+        }
+        return rollingWindow;
+    }
+
+    private String formatBucketKey(int pairOrdinal, int slot) {
+        return currencyPairs.nameOf(pairOrdinal) + " " + vwapStore.policy().format(slot);
+    }
+
+    /**
+     * Validates the parameters of a trade.
+     *
+     * @param trade A trade represented as an array of strings.
+     */
+    void validateTradeParams(String[] trade) {
+        RejectReason reason = checkTrade(trade);
+        if (reason != null) {
+            throw new IllegalArgumentException(reason.message());
+        }
+    }
+
+    /**
+     * Validates a trade without throwing.
+     *
+     * @return null if the trade is valid, otherwise the first check it fails.
+     */
+    RejectReason checkTrade(String[] trade) {
+        return checkTrade(trade, stringParser.get());
+    }
+
+    /**
+     * Validates a trade without throwing, leaving its decoded fields in the parser when it is valid.
+     *
+     * @return null if the trade is valid, otherwise the first check it fails.
+     */
+    RejectReason checkTrade(String[] trade, TradeParser parser) {
+        RejectReason reason = parser.parse(trade);
+        if (reason == null && vwapStore.isClosed(parser.secondOfDay)) {
+            reason = RejectReason.CLOSED_BUCKET;
+        }
+        return reason;
+    }
+
+    /**
+     * Follows the session markers of a replayed journal. A fresh application takes over the journal's first session;
+     * after that, a later session rolls over to it, and the trades of a session before the current one are skipped,
+     * since their buckets have already been archived or dropped. Closing markers close the same buckets the writer
+     * closed, and trades for them are skipped.
+     */
+    private final class SessionReplay implements TradeSink, TradeJournal.MarkerSink {
+
+        private boolean fresh;
+        private boolean skipping;
+
+        SessionReplay(boolean fresh) {
+            this.fresh = fresh;
+        }
+
+        @Override
+        public void accept(int pairOrdinal, int secondOfDay, double price, long volume) {
+            if (!skipping) {
+                replayTrade(pairOrdinal, secondOfDay, price, volume);
+            }
+        }
+
+        @Override
+        public void session(LocalDate journaled) {
+            synchronized (lifecycleLock) {
+                if (fresh) {
+                    session = journaled;
+                    fresh = false;
+                } else if (journaled.isAfter(session)) {
+                    roll(journaled);
+                }
+                skipping = journaled.isBefore(session);
+            }
+        }
+
+        @Override
+        public void closeBefore(int secondOfDay) {
+            if (!skipping) {
+                closeSlots(vwapStore.policy().slotOf(secondOfDay));
+            }
         }
     }
 }
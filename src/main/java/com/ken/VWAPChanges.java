@@ -0,0 +1,15 @@
+package com.ken;
+
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * VWAP values that changed after a given version, as returned by
+ * {@link VWAPCalculatorApplication#getChangedVWAPSince(long)}. A key is in at most one of the two.
+ *
+ * @param version: version of this result; pass it to the next call to get only later changes
+ * @param vwaps:   changed VWAP values keyed like {@link VWAPCalculatorApplication#getAllVWAP()}
+ * @param removed: keys of buckets the caller had seen that were closed and dropped from the result since
+ */
+public record VWAPChanges(long version, Map<String, Double> vwaps, Set<String> removed) {
+}
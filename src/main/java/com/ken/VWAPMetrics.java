@@ -0,0 +1,145 @@
+package com.ken;
+
+import java.util.Map;
+
+/**
+ * MXBean that reads the metrics of an application. Attributes are served from one {@link MetricsSnapshot} taken at
+ * most once per refresh interval, so a console polling every attribute walks the buckets once, and reading is not
+ * on any trade path. The snapshot does not advance the rate interval of the application; the rates shown here are
+ * derived from the totals of consecutive refreshes instead.
+ */
+final class VWAPMetrics implements VWAPMetricsMXBean {
+
+    private static final long NANOS_PER_SECOND = 1_000_000_000L;
+    static final long DEFAULT_REFRESH_NANOS = NANOS_PER_SECOND;
+
+    private final VWAPCalculatorApplication application;
+    private final long refreshNanos;
+    private MetricsSnapshot snapshot;
+    private long refreshedAtNanos;
+    private double acceptedPerSecond;
+    private double rejectedPerSecond;
+
+    /**
+     * @param application:  application whose metrics are read
+     * @param refreshNanos: minimum time between two snapshots
+     */
+    VWAPMetrics(VWAPCalculatorApplication application, long refreshNanos) {
+        this.application = application;
+        this.refreshNanos = refreshNanos;
+    }
+
+    @Override
+    public boolean isEnabled() {
+        return application.isMetricsEnabled();
+    }
+
+    @Override
+    public void setEnabled(boolean enabled) {
+        application.setMetricsEnabled(enabled);
+    }
+
+    @Override
+    public long getAcceptedTrades() {
+        return snapshot().acceptedTrades();
+    }
+
+    @Override
+    public long getRejectedTrades() {
+        return snapshot().rejectedTrades();
+    }
+
+    @Override
+    public synchronized double getAcceptedTradesPerSecond() {
+        snapshot();
+        return acceptedPerSecond;
+    }
+
+    @Override
+    public synchronized double getRejectedTradesPerSecond() {
+        snapshot();
+        return rejectedPerSecond;
+    }
+
+    @Override
+    public Map<String, Long> getVolumeByPair() {
+        return snapshot().volumeByPair();
+    }
+
+    @Override
+    public long getProcessTradesCount() {
+        return snapshot().processTradesLatency().count();
+    }
+
+    @Override
+    public long getProcessTradesP50Nanos() {
+        return snapshot().processTradesLatency().p50Nanos();
+    }
+
+    @Override
+    public long getProcessTradesP99Nanos() {
+        return snapshot().processTradesLatency().p99Nanos();
+    }
+
+    @Override
+    public long getProcessTradesP999Nanos() {
+        return snapshot().processTradesLatency().p999Nanos();
+    }
+
+    @Override
+    public long getProcessTradesMaxNanos() {
+        return snapshot().processTradesLatency().maxNanos();
+    }
+
+    @Override
+    public long getGetAllVWAPCount() {
+        return snapshot().getAllVWAPLatency().count();
+    }
+
+    @Override
+    public long getGetAllVWAPP50Nanos() {
+        return snapshot().getAllVWAPLatency().p50Nanos();
+    }
+
+    @Override
+    public long getGetAllVWAPP99Nanos() {
+        return snapshot().getAllVWAPLatency().p99Nanos();
+    }
+
+    @Override
+    public long getGetAllVWAPP999Nanos() {
+        return snapshot().getAllVWAPLatency().p999Nanos();
+    }
+
+    @Override
+    public long getGetAllVWAPMaxNanos() {
+        return snapshot().getAllVWAPLatency().maxNanos();
+    }
+
+    @Override
+    public int getBucketCount() {
+        return snapshot().bucketCount();
+    }
+
+    @Override
+    public long getEstimatedMemoryBytes() {
+        return snapshot().estimatedMemoryBytes();
+    }
+
+    private synchronized MetricsSnapshot snapshot() {
+        long now = System.nanoTime();
+        if (snapshot != null && now - refreshedAtNanos < refreshNanos) {
+            return snapshot;
+        }
+        MetricsSnapshot next = application.metrics(false);
+        if (snapshot != null && now > refreshedAtNanos) {
+            double seconds = (double) (now - refreshedAtNanos) / NANOS_PER_SECOND;
+            // totals restart when metrics are switched off and on again
+            acceptedPerSecond = Math.max(0, next.acceptedTrades() - snapshot.acceptedTrades()) / seconds;
+            rejectedPerSecond = Math.max(0, next.rejectedTrades() - snapshot.rejectedTrades()) / seconds;
+        }
+        snapshot = next;
+        refreshedAtNanos = now;
+        return next;
+    }
+}
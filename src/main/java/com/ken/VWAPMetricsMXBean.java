@@ -0,0 +1,48 @@
+package com.ken;
+
+import java.util.Map;
+
+/**
+ * JMX view of the engine metrics of a {@link VWAPCalculatorApplication}. Latencies are flattened into one attribute
+ * per percentile so that generic JMX consoles can chart them.
+ */
+public interface VWAPMetricsMXBean {
+
+    boolean isEnabled();
+
+    void setEnabled(boolean enabled);
+
+    long getAcceptedTrades();
+
+    long getRejectedTrades();
+
+    double getAcceptedTradesPerSecond();
+
+    double getRejectedTradesPerSecond();
+
+    Map<String, Long> getVolumeByPair();
+
+    long getProcessTradesCount();
+
+    long getProcessTradesP50Nanos();
+
+    long getProcessTradesP99Nanos();
+
+    long getProcessTradesP999Nanos();
+
+    long getProcessTradesMaxNanos();
+
+    long getGetAllVWAPCount();
+
+    long getGetAllVWAPP50Nanos();
+
+    long getGetAllVWAPP99Nanos();
+
+    long getGetAllVWAPP999Nanos();
+
+    long getGetAllVWAPMaxNanos();
+
+    int getBucketCount();
+
+    long getEstimatedMemoryBytes();
+}
@@ -0,0 +1,281 @@
+package com.ken;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Flow;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * {@link Flow.Publisher} of per-bucket VWAP updates.
+ * <p>
+ * A scanner thread wakes up once per coalescing interval and compares every bucket's
+ * {@link VWAPCalculator#version()} with the version it last published, so ingest never waits for, or even knows
+ * about, subscribers. Each changed bucket is read once and offered to every subscription. A subscription holds at
+ * most one pending update per bucket and replaces an undelivered update with the newer one, so a slow subscriber
+ * gets the latest VWAP of each bucket instead of a growing backlog. Updates are only delivered against demand
+ * signalled with {@link Flow.Subscription#request(long)}, on a virtual thread per subscription, and a new subscriber
+ * first receives the last published state of every bucket.
+ */
+public final class VWAPPublisher implements Flow.Publisher<VWAPUpdate>, AutoCloseable {
+
+    private static final Logger LOGGER = Logger.getLogger(VWAPPublisher.class.getName());
+
+    private final VWAPStore store;
+    private final CurrencyPairRegistry currencyPairs;
+    private final VWAPCalculator[][] publishedCalculators;
+    private final long[][] publishedVersions;
+    private final VWAPUpdate[][] latest;
+    private final ConcurrentLinkedQueue<BucketSubscription> joining = new ConcurrentLinkedQueue<>();
+    private final List<BucketSubscription> subscriptions = new ArrayList<>();  // scanner thread only
+    private final ScheduledExecutorService scanner;
+    private volatile boolean closed;
+
+    VWAPPublisher(VWAPStore store, CurrencyPairRegistry currencyPairs, Duration coalescingInterval) {
+        this.store = store;
+        this.currencyPairs = currencyPairs;
+        this.publishedCalculators = new VWAPCalculator[store.pairCount()][];
+        this.publishedVersions = new long[store.pairCount()][];
+        this.latest = new VWAPUpdate[store.pairCount()][];
+        this.scanner = Executors.newSingleThreadScheduledExecutor(task -> {
+            Thread thread = new Thread(task, "vwap-publisher");
+            thread.setDaemon(true);
+            return thread;
+        });
+        long nanos = coalescingInterval.toNanos();
+        scanner.scheduleWithFixedDelay(this::scan, nanos, nanos, TimeUnit.NANOSECONDS);
+    }
+
+    @Override
+    public void subscribe(Flow.Subscriber<? super VWAPUpdate> subscriber) {
+        BucketSubscription subscription = new BucketSubscription(Objects.requireNonNull(subscriber));
+        if (closed) {
+            subscription.complete();
+        } else {
+            joining.add(subscription);
+            if (closed && joining.remove(subscription)) {
+                subscription.complete();
+            }
+        }
+        subscription.signal();
+    }
+
+    /**
+     * Publishes the changes since the last scan, then stops publishing. Each subscriber is completed once its
+     * pending updates have been delivered.
+     */
+    @Override
+    public synchronized void close() {
+        if (closed) {
+            return;
+        }
+        closed = true;
+        scanner.execute(() -> {
+            scan();
+            subscriptions.forEach(BucketSubscription::complete);
+            subscriptions.clear();
+        });
+        scanner.shutdown();
+        boolean interrupted = false;
+        while (!scanner.isTerminated()) {
+            try {
+                scanner.awaitTermination(1, TimeUnit.SECONDS);
+            } catch (InterruptedException e) {
+                interrupted = true;
+            }
+        }
+        if (interrupted) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private void scan() {
+        try {
+            admitJoining();
+            int slotsPerDay = store.slotsPerDay();
+            for (int pairOrdinal = 0; pairOrdinal < publishedVersions.length; pairOrdinal++) {
+                VWAPCalculator[] row = store.row(pairOrdinal);
+                if (row == null && publishedVersions[pairOrdinal] == null) {
+                    continue;
+                }
+                if (publishedVersions[pairOrdinal] == null) {
+                    publishedCalculators[pairOrdinal] = new VWAPCalculator[row.length];
+                    publishedVersions[pairOrdinal] = new long[row.length];
+                    latest[pairOrdinal] = new VWAPUpdate[row.length];
+                }
+                for (int slot = 0; slot < slotsPerDay; slot++) {
+                    VWAPCalculator calculator = (row == null) ? null : VWAPStore.get(row, slot);
+                    if (calculator == null) {
+                        // a closed bucket is no longer part of the state new subscribers start from
+                        publishedCalculators[pairOrdinal][slot] = null;
+                        latest[pairOrdinal][slot] = null;
+                        continue;
+                    }
+                    long version = calculator.version();
+                    if (calculator == publishedCalculators[pairOrdinal][slot]
+                            && version == publishedVersions[pairOrdinal][slot]) {
+                        continue;
+                    }
+                    publishedCalculators[pairOrdinal][slot] = calculator;
+                    publishedVersions[pairOrdinal][slot] = version;
+                    VWAPUpdate update = read(calculator, pairOrdinal, slot);
+                    latest[pairOrdinal][slot] = update;
+                    for (BucketSubscription subscription : subscriptions) {
+                        subscription.offer(pairOrdinal * slotsPerDay + slot, update);
+                    }
+                }
+            }
+            subscriptions.removeIf(BucketSubscription::isDone);
+        } catch (RuntimeException e) {
+            LOGGER.log(Level.SEVERE, "Failed to publish VWAP updates", e);
+        }
+    }
+
+    /**
+     * Moves new subscriptions into the published set, seeding each with the last published state of every bucket.
+     */
+    private void admitJoining() {
+        int slotsPerDay = store.slotsPerDay();
+        for (BucketSubscription subscription; (subscription = joining.poll()) != null; ) {
+            for (int pairOrdinal = 0; pairOrdinal < latest.length; pairOrdinal++) {
+                for (int slot = 0; latest[pairOrdinal] != null && slot < latest[pairOrdinal].length; slot++) {
+                    if (latest[pairOrdinal][slot] != null) {
+                        subscription.offer(pairOrdinal * slotsPerDay + slot, latest[pairOrdinal][slot]);
+                    }
+                }
+            }
+            subscriptions.add(subscription);
+        }
+    }
+
+    private VWAPUpdate read(VWAPCalculator calculator, int pairOrdinal, int slot) {
+        VWAPUpdate[] update = new VWAPUpdate[1];
+        calculator.readVWAP((vwap, volumeSum) -> update[0] = new VWAPUpdate(currencyPairs.nameOf(pairOrdinal),
+                store.policy().startOf(slot), vwap, volumeSum));
+        return update[0];
+    }
+
+    /**
+     * Conflating subscription. The scanner offers updates under the subscription's lock; a drain loop, run on a
+     * virtual thread whenever there is something to signal, delivers them outside it, so a subscriber that blocks
+     * in {@code onNext} only ever holds up itself.
+     */
+    private static final class BucketSubscription implements Flow.Subscription {
+        private final Flow.Subscriber<? super VWAPUpdate> subscriber;
+        private final Map<Integer, VWAPUpdate> pending = new LinkedHashMap<>();
+        private final AtomicLong requested = new AtomicLong();
+        private final AtomicInteger work = new AtomicInteger();
+        private volatile boolean completed;
+        private volatile boolean done;
+        private volatile IllegalArgumentException failure;
+        private boolean started;
+
+        BucketSubscription(Flow.Subscriber<? super VWAPUpdate> subscriber) {
+            this.subscriber = subscriber;
+        }
+
+        @Override
+        public void request(long n) {
+            if (n <= 0) {
+                failure = new IllegalArgumentException("Non-positive request: " + n);
+            } else {
+                requested.accumulateAndGet(n, (current, added) -> (current + added < 0) ? Long.MAX_VALUE : current + added);
+            }
+            signal();
+        }
+
+        @Override
+        public void cancel() {
+            done = true;
+            synchronized (this) {
+                pending.clear();
+            }
+        }
+
+        void offer(int bucket, VWAPUpdate update) {
+            if (done) {
+                return;
+            }
+            synchronized (this) {
+                pending.put(bucket, update);
+            }
+            if (requested.get() > 0) {
+                signal();
+            }
+        }
+
+        void complete() {
+            completed = true;
+            signal();
+        }
+
+        boolean isDone() {
+            return done;
+        }
+
+        void signal() {
+            if (work.getAndIncrement() == 0) {
+                Thread.ofVirtual().name("vwap-subscriber").start(this::drain);
+            }
+        }
+
+        private void drain() {
+            int missed = 1;
+            do {
+                try {
+                    deliver();
+                } catch (RuntimeException e) {
+                    cancel();
+                    LOGGER.log(Level.WARNING, "VWAP subscriber failed, cancelling its subscription", e);
+                }
+                missed = work.addAndGet(-missed);
+            } while (missed != 0);
+        }
+
+        private void deliver() {
+            if (!started) {
+                started = true;
+                subscriber.onSubscribe(this);
+            }
+            while (!done) {
+                if (failure != null) {
+                    done = true;
+                    subscriber.onError(failure);
+                    return;
+                }
+                VWAPUpdate update = null;
+                boolean empty;
+                synchronized (this) {
+                    if (requested.get() > 0 && !pending.isEmpty()) {
+                        Iterator<VWAPUpdate> updates = pending.values().iterator();
+                        update = updates.next();
+                        updates.remove();
+                        if (requested.get() != Long.MAX_VALUE) {
+                            requested.decrementAndGet();
+                        }
+                    }
+                    empty = pending.isEmpty();
+                }
+                if (update == null) {
+                    if (completed && empty) {
+                        done = true;
+                        subscriber.onComplete();
+                    }
+                    return;
+                }
+                subscriber.onNext(update);
+            }
+        }
+    }
+}
@@ -0,0 +1,231 @@
+package com.ken;
+
+import java.util.AbstractMap;
+import java.util.AbstractSet;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Incrementally maintained view of the VWAP of every bucket in a {@link VWAPStore}.
+ * <p>
+ * Each refresh compares every bucket's {@link VWAPCalculator#version()} with the version it last saw and only
+ * recomputes the buckets that moved. Keys are formatted once per bucket. The result is kept as one immutable map
+ * per pair behind a read-only view, so a change rebuilds only the maps of the pairs it touched; when nothing
+ * changed, the previous result is returned as is. Every refresh that finds a change bumps the cache version and
+ * stamps the changed buckets with it, which is what {@link #getChangedSince(long)} filters on, skipping pairs with
+ * no later change. A bucket whose calculator was removed by closing it drops out of the result and is reported as
+ * removed, and a replaced calculator is treated as changed whatever its version.
+ */
+final class VWAPResultCache {
+
+    /**
+     * Formats the result key of a bucket.
+     */
+    @FunctionalInterface
+    interface KeyFormatter {
+        String format(int pairOrdinal, int slot);
+    }
+
+    private final VWAPStore store;
+    private final KeyFormatter keyFormatter;
+    private final Row[] rows;
+    private final Map<String, Double>[] pairResults;
+    // append-only: a key always belongs to the same pair, so results built earlier can share it
+    private final Map<String, Integer> pairOfKey = new ConcurrentHashMap<>();
+    private long version;
+    private Map<String, Double> snapshot = Map.of();
+
+    @SuppressWarnings("unchecked")
+    VWAPResultCache(VWAPStore store, KeyFormatter keyFormatter) {
+        this.store = store;
+        this.keyFormatter = keyFormatter;
+        this.rows = new Row[store.pairCount()];
+        this.pairResults = (Map<String, Double>[]) new Map<?, ?>[store.pairCount()];
+    }
+
+    synchronized Map<String, Double> getAll() {
+        refresh();
+        return snapshot;
+    }
+
+    synchronized VWAPChanges getChangedSince(long sinceVersion) {
+        refresh();
+        Map<String, Double> changes = new HashMap<>();
+        Set<String> removed = new HashSet<>();
+        for (Row row : rows) {
+            if (row == null || row.lastChangedVersion <= sinceVersion) {
+                continue;
+            }
+            for (int slot = 0; slot < row.keys.length; slot++) {
+                if (row.changedInVersion[slot] <= sinceVersion) {
+                    continue;
+                }
+                if (row.calculators[slot] != null) {
+                    changes.put(row.keys[slot], row.values[slot]);
+                } else if (row.existedAt[slot] <= sinceVersion) {
+                    // a bucket both added and removed after the caller's version was never seen by it
+                    removed.add(row.keys[slot]);
+                }
+            }
+        }
+        return new VWAPChanges(version, Collections.unmodifiableMap(changes), Collections.unmodifiableSet(removed));
+    }
+
+    private void refresh() {
+        boolean changed = false;
+        for (int pairOrdinal = 0; pairOrdinal < rows.length; pairOrdinal++) {
+            VWAPCalculator[] calculators = store.row(pairOrdinal);
+            Row row = rows[pairOrdinal];
+            if (calculators == null && row == null) {
+                continue;
+            }
+            if (row == null) {
+                row = rows[pairOrdinal] = new Row(calculators.length);
+            }
+            boolean rowChanged = false;
+            for (int slot = 0; slot < row.keys.length; slot++) {
+                VWAPCalculator calculator = (calculators == null) ? null : VWAPStore.get(calculators, slot);
+                if (calculator == null && row.calculators[slot] == null) {
+                    continue;
+                }
+                long bucketVersion = (calculator == null) ? 0 : calculator.version();
+                if (calculator == row.calculators[slot] && bucketVersion == row.seenVersions[slot]) {
+                    continue;
+                }
+                if (!changed) {
+                    changed = true;
+                    version++;
+                }
+                rowChanged = true;
+                if (row.calculators[slot] == null) {
+                    row.existedAt[slot] = version;
+                }
+                row.calculators[slot] = calculator;
+                row.changedInVersion[slot] = version;
+                if (calculator == null) {
+                    continue;
+                }
+                if (row.keys[slot] == null) {
+                    row.keys[slot] = keyFormatter.format(pairOrdinal, slot);
+                    pairOfKey.put(row.keys[slot], pairOrdinal);
+                }
+                row.seenVersions[slot] = bucketVersion;
+                row.values[slot] = calculator.calculateVWAP();
+            }
+            if (rowChanged) {
+                row.lastChangedVersion = version;
+                pairResults[pairOrdinal] = row.results();
+            }
+        }
+        if (changed) {
+            snapshot = new Result(pairResults.clone(), pairOfKey);
+        }
+    }
+
+    private static final class Row {
+        final String[] keys;
+        final VWAPCalculator[] calculators;
+        final long[] seenVersions;
+        final double[] values;
+        final long[] changedInVersion;
+        final long[] existedAt;
+        long lastChangedVersion;
+
+        Row(int slots) {
+            keys = new String[slots];
+            calculators = new VWAPCalculator[slots];
+            seenVersions = new long[slots];
+            values = new double[slots];
+            changedInVersion = new long[slots];
+            existedAt = new long[slots];
+        }
+
+        Map<String, Double> results() {
+            Map<String, Double> results = new HashMap<>();
+            for (int slot = 0; slot < keys.length; slot++) {
+                if (calculators[slot] != null) {
+                    results.put(keys[slot], values[slot]);
+                }
+            }
+            return results.isEmpty() ? null : Collections.unmodifiableMap(results);
+        }
+    }
+
+    /**
+     * Read-only result over the per-pair maps of one refresh. Lookups go straight to the pair's map.
+     */
+    private static final class Result extends AbstractMap<String, Double> {
+        private final Map<String, Double>[] pairResults;
+        private final Map<String, Integer> pairOfKey;
+        private final int size;
+
+        Result(Map<String, Double>[] pairResults, Map<String, Integer> pairOfKey) {
+            this.pairResults = pairResults;
+            this.pairOfKey = pairOfKey;
+            int total = 0;
+            for (Map<String, Double> results : pairResults) {
+                total += (results == null) ? 0 : results.size();
+            }
+            this.size = total;
+        }
+
+        @Override
+        public Double get(Object key) {
+            Integer pairOrdinal = pairOfKey.get(key);
+            Map<String, Double> results = (pairOrdinal == null) ? null : pairResults[pairOrdinal];
+            return (results == null) ? null : results.get(key);
+        }
+
+        @Override
+        public boolean containsKey(Object key) {
+            return get(key) != null;
+        }
+
+        @Override
+        public int size() {
+            return size;
+        }
+
+        @Override
+        public Set<Entry<String, Double>> entrySet() {
+            return new AbstractSet<>() {
+                @Override
+                public Iterator<Entry<String, Double>> iterator() {
+                    return new Iterator<>() {
+                        private int pairOrdinal = -1;
+                        private Iterator<Entry<String, Double>> current = Collections.emptyIterator();
+
+                        @Override
+                        public boolean hasNext() {
+                            while (!current.hasNext() && ++pairOrdinal < pairResults.length) {
+                                if (pairResults[pairOrdinal] != null) {
+                                    current = pairResults[pairOrdinal].entrySet().iterator();
+                                }
+                            }
+                            return current.hasNext();
+                        }
+
+                        @Override
+                        public Entry<String, Double> next() {
+                            if (!hasNext()) {
+                                throw new NoSuchElementException();
+                            }
+                            return current.next();
+                        }
+                    };
+                }
+
+                @Override
+                public int size() {
+                    return size;
+                }
+            };
+        }
+    }
+}
@@ -0,0 +1,284 @@
+package com.ken;
+
+import java.io.IOException;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.time.DateTimeException;
+import java.time.LocalDate;
+import java.util.Map;
+import java.util.zip.CRC32;
+
+/**
+ * Binary checkpoint of the bucket sums, trade counts and bars of a {@link VWAPStore}.
+ * <p>
+ * Layout, big-endian:
+ * <pre>
+ * int    magic "VWAP"
+ * int    format version, 1
+ * byte   accumulation: 0 for double sums, 1 for exact sums
+ * long   time written, epoch milliseconds
+ * int    bucket width in seconds
+ * long   session date, epoch day
+ * int    number of closed slots at the start of the session
+ * int    number of currency pairs, then per pair: short length, UTF-8 name
+ * int    number of buckets, then per bucket: short pair index, int slot, price-volume sum, long volume sum,
+ *        long trade count, price sum, double high, double low, int open second, double open price,
+ *        int close second, double close price, time-weighted price sum, long time sum
+ * int    CRC32 of everything before it
+ * </pre>
+ * The price-volume, price and time-weighted price sums are doubles for double sums, and the high and low longs of
+ * 128-bit fixed-point sums for {@link Accumulation#EXACT} stores, as in a {@link PartialAggregate}, so a restored
+ * bucket has the same trade count, mean price, time-weighted price and bar as the original, and the session and its
+ * closed buckets are restored with them.
+ * Pairs are stored by name, so a snapshot stays loadable if the pair list is reordered. Writing reads each bucket
+ * consistently while ingest carries on, builds the file in memory and then writes it to a temporary file that is
+ * moved over the target, so a reader never sees a half-written snapshot. Encoding and writing are separate steps, so
+ * a caller can capture the store under a lock and do the file IO outside it. Loading checks the header and checksum
+ * and decodes every bucket before replacing the live ones, so a corrupt file is rejected whole.
+ */
+final class VWAPSnapshot {
+
+    static final int MAGIC = 0x56574150;
+    static final int FORMAT_VERSION = 1;
+    private static final int BAR_BYTES = 4 * Double.BYTES + 2 * Integer.BYTES;
+    private static final int ENTRY_BYTES = Short.BYTES + Integer.BYTES + 3 * Double.BYTES + 3 * Long.BYTES
+            + BAR_BYTES;
+    private static final int EXACT_ENTRY_BYTES = Short.BYTES + Integer.BYTES + 9 * Long.BYTES + BAR_BYTES;
+
+    private VWAPSnapshot() {
+    }
+
+    /**
+     * Encodes the sums, trade count and bar of every bucket with trades, with the session and its closed slots.
+     *
+     * @param store:         store to checkpoint
+     * @param currencyPairs: names of the currency pairs, indexed by ordinal
+     * @param session:       session the store's buckets belong to
+     * @return The snapshot, ready for {@link #write(ByteBuffer, Path)}.
+     */
+    static ByteBuffer encode(VWAPStore store, String[] currencyPairs, LocalDate session) {
+        boolean exact = store.accumulation() == Accumulation.EXACT;
+        int entryBytes = exact ? EXACT_ENTRY_BYTES : ENTRY_BYTES;
+        ByteBuffer[] entries = {ByteBuffer.allocate(entryBytes * 64)};
+        store.forEachBucketStats((pairOrdinal, slot, stats) -> {
+            ByteBuffer entry = ensureRemaining(entries, entryBytes).putShort((short) pairOrdinal).putInt(slot);
+            if (exact) {
+                entry.putLong(stats.priceVolumeHigh).putLong(stats.priceVolumeLow);
+            } else {
+                entry.putDouble(stats.priceVolumeSum);
+            }
+            entry.putLong(stats.volumeSum).putLong(stats.tradeCount);
+            if (exact) {
+                entry.putLong(stats.priceSumHigh).putLong(stats.priceSumLow);
+            } else {
+                entry.putDouble(stats.priceSum);
+            }
+            entry.putDouble(stats.high).putDouble(stats.low).putInt(stats.openSecond).putDouble(stats.openPrice)
+                    .putInt(stats.closeSecond).putDouble(stats.closePrice);
+            if (exact) {
+                entry.putLong(stats.priceTimeHigh).putLong(stats.priceTimeLow);
+            } else {
+                entry.putDouble(stats.priceTimeSum);
+            }
+            entry.putLong(stats.timeSum);
+        });
+        ByteBuffer body = entries[0].flip();
+
+        byte[][] names = new byte[currencyPairs.length][];
+        int headerSize = 5 * Integer.BYTES + 1 + 2 * Long.BYTES + Integer.BYTES;
+        for (int i = 0; i < names.length; i++) {
+            names[i] = currencyPairs[i].getBytes(StandardCharsets.UTF_8);
+            headerSize += Short.BYTES + names[i].length;
+        }
+        ByteBuffer snapshot = ByteBuffer.allocate(headerSize + body.remaining() + Integer.BYTES);
+        snapshot.putInt(MAGIC).putInt(FORMAT_VERSION).put((byte) (exact ? 1 : 0))
+                .putLong(System.currentTimeMillis()).putInt(store.policy().widthSeconds())
+                .putLong(session.toEpochDay()).putInt(store.closedSlots()).putInt(names.length);
+        for (byte[] name : names) {
+            snapshot.putShort((short) name.length).put(name);
+        }
+        snapshot.putInt(body.remaining() / entryBytes).put(body);
+        CRC32 crc = new CRC32();
+        crc.update(snapshot.array(), 0, snapshot.position());
+        return snapshot.putInt((int) crc.getValue()).flip();
+    }
+
+    /**
+     * Writes an encoded snapshot to a temporary file, forces it to disk and moves it over the target.
+     *
+     * @param snapshot: snapshot from {@link #encode(VWAPStore, String[], LocalDate)}
+     * @param file:     snapshot file; replaced atomically
+     */
+    static void write(ByteBuffer snapshot, Path file) throws IOException {
+        Path temporary = file.resolveSibling(file.getFileName() + ".tmp");
+        try (FileChannel channel = FileChannel.open(temporary, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                StandardOpenOption.TRUNCATE_EXISTING)) {
+            while (snapshot.hasRemaining()) {
+                channel.write(snapshot);
+            }
+            channel.force(true);
+        }
+        Files.move(temporary, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    private static ByteBuffer ensureRemaining(ByteBuffer[] entries, int entryBytes) {
+        if (entries[0].remaining() < entryBytes) {
+            entries[0] = ByteBuffer.allocate(entries[0].capacity() * 2).put(entries[0].flip());
+        }
+        return entries[0];
+    }
+
+    /**
+     * Replaces the live buckets of a store with the bucket sums, trade counts and bars of a snapshot, so reading the
+     * same snapshot again gives the same buckets. Buckets the store has already closed are skipped. Closing the
+     * slots the snapshot had closed is left to the caller, which archives what they hold.
+     *
+     * @param file:         snapshot file
+     * @param store:        store to restore into; its bucket width and accumulation must match the snapshot's
+     * @param pairOrdinals: index of every known currency pair, by name
+     * @param session:      session the snapshot must belong to, or null to accept any
+     * @return The snapshot's session and the number of slots it had closed.
+     * @throws IOException if the file cannot be read, is not a snapshot, is corrupt or does not fit the store
+     */
+    static Session read(Path file, VWAPStore store, Map<String, Integer> pairOrdinals, LocalDate session)
+            throws IOException {
+        ByteBuffer snapshot;
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            long size = channel.size();
+            if (size < 6 * Integer.BYTES + Long.BYTES || size > Integer.MAX_VALUE) {
+                throw new IOException("Invalid snapshot size: " + size);
+            }
+            snapshot = ByteBuffer.allocate((int) size);
+            while (snapshot.hasRemaining() && channel.read(snapshot) >= 0) {
+                // keep reading until the buffer is full
+            }
+            snapshot.flip();
+        }
+        if (snapshot.getInt() != MAGIC) {
+            throw new IOException("Not a VWAP snapshot: " + file);
+        }
+        int version = snapshot.getInt();
+        if (version != FORMAT_VERSION) {
+            throw new IOException("Unsupported snapshot version: " + version);
+        }
+        CRC32 crc = new CRC32();
+        crc.update(snapshot.array(), 0, snapshot.limit() - Integer.BYTES);
+        if ((int) crc.getValue() != snapshot.getInt(snapshot.limit() - Integer.BYTES)) {
+            throw new IOException("Snapshot checksum mismatch: " + file);
+        }
+        snapshot.limit(snapshot.limit() - Integer.BYTES);
+
+        try {
+            byte mode = snapshot.get();
+            if (mode != 0 && mode != 1) {
+                throw new IOException("Invalid snapshot accumulation: " + mode);
+            }
+            Accumulation accumulation = (mode == 1) ? Accumulation.EXACT : Accumulation.DOUBLE;
+            snapshot.getLong();
+            int widthSeconds = snapshot.getInt();
+            if (widthSeconds != store.policy().widthSeconds()) {
+                throw new IOException("Snapshot bucket width " + widthSeconds + "s does not match " + store.policy());
+            }
+            if (accumulation != store.accumulation()) {
+                throw new IOException("Snapshot accumulation " + accumulation + " does not match " + store.accumulation());
+            }
+            Session restored = new Session(LocalDate.ofEpochDay(snapshot.getLong()), snapshot.getInt());
+            if (restored.closedSlots() < 0 || restored.closedSlots() >= store.slotsPerDay()) {
+                throw new IOException("Invalid snapshot closed slots: " + restored.closedSlots());
+            }
+            if (session != null && !restored.date().equals(session)) {
+                throw new IOException("Snapshot session " + restored.date() + " does not match " + session);
+            }
+            boolean exact = accumulation == Accumulation.EXACT;
+            int entryBytes = exact ? EXACT_ENTRY_BYTES : ENTRY_BYTES;
+            int pairCount = snapshot.getInt();
+            if (pairCount < 0 || pairCount > snapshot.remaining() / Short.BYTES) {
+                throw new IOException("Invalid snapshot pair count: " + pairCount);
+            }
+            int[] ordinals = new int[pairCount];
+            for (int i = 0; i < ordinals.length; i++) {
+                byte[] name = new byte[Short.toUnsignedInt(snapshot.getShort())];
+                snapshot.get(name);
+                Integer ordinal = pairOrdinals.get(new String(name, StandardCharsets.UTF_8));
+                ordinals[i] = (ordinal == null) ? -1 : ordinal;
+            }
+            int count = snapshot.getInt();
+            if (count < 0 || snapshot.remaining() != (long) count * entryBytes) {
+                throw new IOException("Snapshot bucket count does not match its size");
+            }
+            int[] pairs = new int[count];
+            int[] slots = new int[count];
+            for (int i = 0; i < count; i++) {
+                int index = snapshot.getShort(snapshot.position() + i * entryBytes);
+                pairs[i] = (index >= 0 && index < ordinals.length) ? ordinals[index] : -1;
+                slots[i] = snapshot.getInt(snapshot.position() + i * entryBytes + Short.BYTES);
+                if (pairs[i] < 0) {
+                    throw new IOException("Snapshot contains an unknown currency pair");
+                }
+                if (slots[i] < 0 || slots[i] >= store.slotsPerDay()) {
+                    throw new IOException("Snapshot contains an invalid slot: " + slots[i]);
+                }
+            }
+            BucketStats[] entries = new BucketStats[count];
+            for (int i = 0; i < count; i++) {
+                snapshot.position(snapshot.position() + Short.BYTES + Integer.BYTES);
+                BucketStats stats = new BucketStats();
+                if (exact) {
+                    stats.priceVolumeHigh = snapshot.getLong();
+                    stats.priceVolumeLow = snapshot.getLong();
+                } else {
+                    stats.priceVolumeSum = snapshot.getDouble();
+                }
+                stats.volumeSum = snapshot.getLong();
+                stats.tradeCount = snapshot.getLong();
+                if (stats.tradeCount <= 0) {
+                    throw new IOException("Snapshot contains an invalid trade count: " + stats.tradeCount);
+                }
+                if (exact) {
+                    stats.priceSumHigh = snapshot.getLong();
+                    stats.priceSumLow = snapshot.getLong();
+                } else {
+                    stats.priceSum = snapshot.getDouble();
+                }
+                stats.high = snapshot.getDouble();
+                stats.low = snapshot.getDouble();
+                stats.openSecond = snapshot.getInt();
+                stats.openPrice = snapshot.getDouble();
+                stats.closeSecond = snapshot.getInt();
+                stats.closePrice = snapshot.getDouble();
+                if (exact) {
+                    stats.priceTimeHigh = snapshot.getLong();
+                    stats.priceTimeLow = snapshot.getLong();
+                } else {
+                    stats.priceTimeSum = snapshot.getDouble();
+                }
+                stats.timeSum = snapshot.getLong();
+                entries[i] = stats;
+            }
+            store.clear();
+            int closedSlots = store.closedSlots();
+            for (int i = 0; i < count; i++) {
+                if (slots[i] >= closedSlots) {
+                    store.addStats(pairs[i], slots[i], entries[i], true);
+                }
+            }
+            return restored;
+        } catch (BufferUnderflowException e) {
+            throw new IOException("Snapshot is truncated: " + file, e);
+        } catch (DateTimeException e) {
+            throw new IOException("Invalid snapshot session: " + file, e);
+        }
+    }
+
+    /**
+     * Session of a snapshot and the number of its slots that were closed.
+     */
+    record Session(LocalDate date, int closedSlots) {
+    }
+}
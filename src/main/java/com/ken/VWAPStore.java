@@ -0,0 +1,281 @@
+package com.ken;
+
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+
+/**
+ * Dense VWAP bucket store indexed by currency pair ordinal and time slot.
+ * <p>
+ * The set of pairs is closed and a {@link BucketPolicy} splits the day into a fixed number of slots, so every
+ * bucket has a fixed position and recording a trade is an index calculation rather than a map traversal. Each pair
+ * gets a row of {@link BucketPolicy#slotsPerDay()} entries on its first trade, and a bucket's calculator is
+ * installed on its first trade; untouched pairs and slots stay {@code null}, which is how queries tell which
+ * buckets have data. Finer buckets therefore cost one array per active pair, not per-trade map growth.
+ * <p>
+ * The sums live in per-bucket calculators rather than in primitive columns indexed by
+ * {@code pairOrdinal * slotsPerDay + slot}. Each bucket is a seqlock whose cells inflate under contention, which
+ * needs a sequence word and padding of its own, and closed buckets are handed on whole. Columns sized for every
+ * bucket up front would also cost the full pair count times the slots per day, some 1024 times 86400 buckets at
+ * one-second width, whether or not a pair trades. Memory is still bounded by the buckets that exist rather than by
+ * the number of trades, and a trade into an existing bucket neither allocates nor traverses anything.
+ * <p>
+ * Buckets can be closed: every slot below a watermark is closed, its calculator is removed from the store and
+ * trades for it are refused by the caller. Closing the whole day drops the rows as well, ready for the next session.
+ */
+final class VWAPStore implements TradeSink {
+
+    private static final VarHandle ROWS = MethodHandles.arrayElementVarHandle(VWAPCalculator[][].class);
+    private static final VarHandle BUCKETS = MethodHandles.arrayElementVarHandle(VWAPCalculator[].class);
+    private static final int ARRAY_HEADER_BYTES = 16;
+
+    private final BucketPolicy policy;
+    private final Accumulation accumulation;
+    private final int slotsPerDay;
+    private final VWAPCalculator[][] rows;
+    private volatile int closedSlots;
+
+    VWAPStore(int pairCount, BucketPolicy policy, Accumulation accumulation) {
+        this.policy = policy;
+        this.accumulation = accumulation;
+        this.slotsPerDay = policy.slotsPerDay();
+        this.rows = new VWAPCalculator[pairCount][];
+    }
+
+    int pairCount() {
+        return rows.length;
+    }
+
+    BucketPolicy policy() {
+        return policy;
+    }
+
+    Accumulation accumulation() {
+        return accumulation;
+    }
+
+    int slotsPerDay() {
+        return slotsPerDay;
+    }
+
+    /**
+     * Checks if a trade at the given time falls in a closed bucket.
+     */
+    boolean isClosed(int secondOfDay) {
+        return policy.slotOf(secondOfDay) < closedSlots;
+    }
+
+    int closedSlots() {
+        return closedSlots;
+    }
+
+    /**
+     * Closes every slot below the given one, removes their calculators and hands each to the consumer. Closing all
+     * slots of the day also drops the rows. The caller must refuse trades for closed slots; a trade already past
+     * that check when its slot closes is lost.
+     *
+     * @param endSlot:  first slot that stays open; no greater than {@link #slotsPerDay()}
+     * @param consumer: receives every removed calculator
+     */
+    void closeSlots(int endSlot, ClosedBucketConsumer consumer) {
+        if (endSlot > closedSlots) {
+            closedSlots = endSlot;
+        }
+        for (int pairOrdinal = 0; pairOrdinal < rows.length; pairOrdinal++) {
+            VWAPCalculator[] row = (endSlot == slotsPerDay)
+                    ? (VWAPCalculator[]) ROWS.getAndSet(rows, pairOrdinal, null)
+                    : row(pairOrdinal);
+            for (int slot = 0; row != null && slot < endSlot; slot++) {
+                VWAPCalculator calculator = (VWAPCalculator) BUCKETS.getAndSet(row, slot, null);
+                if (calculator != null) {
+                    consumer.accept(pairOrdinal, slot, calculator);
+                }
+            }
+        }
+    }
+
+    /**
+     * Drops every live bucket without closing it, for a snapshot that replaces them. A trade being added while the
+     * buckets are dropped may be lost.
+     */
+    void clear() {
+        for (int pairOrdinal = 0; pairOrdinal < rows.length; pairOrdinal++) {
+            ROWS.setRelease(rows, pairOrdinal, null);
+        }
+    }
+
+    /**
+     * Opens every slot again, for a new session.
+     */
+    void reopen() {
+        closedSlots = 0;
+    }
+
+    @Override
+    public void accept(int pairOrdinal, int secondOfDay, double price, long volume) {
+        addTrade(pairOrdinal, secondOfDay, price, volume);
+    }
+
+    /**
+     * Adds a trade to the bucket its time falls in.
+     *
+     * @param pairOrdinal: index of the currency pair
+     * @param secondOfDay: time of the trade in seconds since midnight
+     * @param price:       trade price
+     * @param volume:      trade volume
+     */
+    void addTrade(int pairOrdinal, int secondOfDay, double price, long volume) {
+        bucket(pairOrdinal, policy.slotOf(secondOfDay)).addTrade(secondOfDay, price, volume);
+    }
+
+    /**
+     * Adds the pre-aggregated sums and bar of several trades to a bucket.
+     *
+     * @param pairOrdinal: index of the currency pair
+     * @param slot:        time slot of the bucket
+     * @param stats:       sums, trade count and bar of the trades
+     * @param ordered:     whether the trades arrived after the ones already in the bucket
+     */
+    void addStats(int pairOrdinal, int slot, BucketStats stats, boolean ordered) {
+        bucket(pairOrdinal, slot).addStats(stats, ordered);
+    }
+
+    /**
+     * Gets the calculators of one pair, indexed by slot.
+     *
+     * @return The row, or null if the pair has no trades. Entries are null for slots without trades.
+     */
+    VWAPCalculator[] row(int pairOrdinal) {
+        return (VWAPCalculator[]) ROWS.getAcquire(rows, pairOrdinal);
+    }
+
+    /**
+     * Gets the calculator of a bucket.
+     *
+     * @return The calculator, or null if the bucket has no trades.
+     */
+    VWAPCalculator get(int pairOrdinal, int slot) {
+        VWAPCalculator[] row = row(pairOrdinal);
+        return (row == null) ? null : get(row, slot);
+    }
+
+    static VWAPCalculator get(VWAPCalculator[] row, int slot) {
+        return (VWAPCalculator) BUCKETS.getAcquire(row, slot);
+    }
+
+    /**
+     * Calls the consumer once for every bucket with trades, with a consistent view of the bucket's sums. Trades
+     * added meanwhile may or may not be included, bucket by bucket.
+     */
+    void forEachBucket(BucketConsumer consumer) {
+        for (int pairOrdinal = 0; pairOrdinal < rows.length; pairOrdinal++) {
+            VWAPCalculator[] row = row(pairOrdinal);
+            for (int slot = 0; row != null && slot < row.length; slot++) {
+                VWAPCalculator calculator = get(row, slot);
+                if (calculator != null) {
+                    int pair = pairOrdinal;
+                    int bucketSlot = slot;
+                    calculator.readSums((priceVolumeSum, volumeSum) ->
+                            consumer.accept(pair, bucketSlot, priceVolumeSum, volumeSum));
+                }
+            }
+        }
+    }
+
+    /**
+     * Calls the consumer once for every bucket with trades, with the bucket's sums, trade count and bar read as
+     * {@link VWAPCalculator#readBucket(BucketStats)} does. The stats object is reused for every bucket, so the
+     * consumer must copy what it keeps.
+     */
+    void forEachBucketStats(BucketStatsConsumer consumer) {
+        BucketStats stats = new BucketStats();
+        for (int pairOrdinal = 0; pairOrdinal < rows.length; pairOrdinal++) {
+            VWAPCalculator[] row = row(pairOrdinal);
+            for (int slot = 0; row != null && slot < row.length; slot++) {
+                VWAPCalculator calculator = get(row, slot);
+                if (calculator != null) {
+                    calculator.readBucket(stats);
+                    if (stats.tradeCount != 0) {  // skip a bucket whose first trade is still being added
+                        consumer.accept(pairOrdinal, slot, stats);
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * Counts the buckets that have trades.
+     */
+    int bucketCount() {
+        int count = 0;
+        for (int pairOrdinal = 0; pairOrdinal < rows.length; pairOrdinal++) {
+            VWAPCalculator[] row = row(pairOrdinal);
+            for (int slot = 0; row != null && slot < row.length; slot++) {
+                if (get(row, slot) != null) {
+                    count++;
+                }
+            }
+        }
+        return count;
+    }
+
+    /**
+     * Estimates the heap used by the rows and calculators, assuming compressed references.
+     */
+    long estimatedBytes() {
+        long bytes = ARRAY_HEADER_BYTES + 4L * rows.length;
+        for (int pairOrdinal = 0; pairOrdinal < rows.length; pairOrdinal++) {
+            VWAPCalculator[] row = row(pairOrdinal);
+            if (row == null) {
+                continue;
+            }
+            bytes += ARRAY_HEADER_BYTES + 4L * row.length;
+            for (int slot = 0; slot < row.length; slot++) {
+                VWAPCalculator calculator = get(row, slot);
+                if (calculator != null) {
+                    bytes += calculator.estimatedBytes();
+                }
+            }
+        }
+        return bytes;
+    }
+
+    private VWAPCalculator bucket(int pairOrdinal, int slot) {
+        VWAPCalculator[] row = row(pairOrdinal);
+        if (row == null) {
+            VWAPCalculator[] created = new VWAPCalculator[slotsPerDay];
+            VWAPCalculator[] existing = (VWAPCalculator[]) ROWS.compareAndExchange(rows, pairOrdinal, null, created);
+            row = (existing == null) ? created : existing;
+        }
+        VWAPCalculator calculator = get(row, slot);
+        if (calculator == null) {
+            VWAPCalculator created = new VWAPCalculator(accumulation);
+            VWAPCalculator existing = (VWAPCalculator) BUCKETS.compareAndExchange(row, slot, null, created);
+            calculator = (existing == null) ? created : existing;
+        }
+        return calculator;
+    }
+
+    /**
+     * Receives the sums of one bucket.
+     */
+    @FunctionalInterface
+    interface BucketConsumer {
+        void accept(int pairOrdinal, int slot, double priceVolumeSum, long volumeSum);
+    }
+
+    /**
+     * Receives a bucket removed by {@link #closeSlots(int, ClosedBucketConsumer)}.
+     */
+    @FunctionalInterface
+    interface ClosedBucketConsumer {
+        void accept(int pairOrdinal, int slot, VWAPCalculator calculator);
+    }
+
+    /**
+     * Receives the sums, trade count and bar of one bucket.
+     */
+    @FunctionalInterface
+    interface BucketStatsConsumer {
+        void accept(int pairOrdinal, int slot, BucketStats stats);
+    }
+}
@@ -0,0 +1,14 @@
+package com.ken;
+
+import java.time.LocalTime;
+
+/**
+ * Latest state of one VWAP bucket, as published by {@link VWAPPublisher}.
+ *
+ * @param currencyPair: currency pair of the bucket
+ * @param bucketStart:  start time of the bucket
+ * @param vwap:         VWAP of the bucket
+ * @param volume:       total volume traded in the bucket
+ */
+public record VWAPUpdate(String currencyPair, LocalTime bucketStart, double vwap, long volume) {
+}
@@ -0,0 +1,96 @@
+package com.ken;
+
+import jdk.incubator.vector.DoubleVector;
+import jdk.incubator.vector.FloatVector;
+import jdk.incubator.vector.IntVector;
+import jdk.incubator.vector.LongVector;
+import jdk.incubator.vector.ShortVector;
+import jdk.incubator.vector.VectorMask;
+import jdk.incubator.vector.VectorOperators;
+import jdk.incubator.vector.VectorSpecies;
+
+/**
+ * {@link ColumnKernel} on the incubating Vector API, which compiles to SIMD instructions of the platform's
+ * preferred width. Out-of-range lanes are collected in a mask over the whole range and tested once at the end, so
+ * the loops have no data-dependent branches. Only loaded when the {@code jdk.incubator.vector} module is present.
+ */
+final class VectorColumnKernel implements ColumnKernel {
+
+    private static final VectorSpecies<Integer> INTS = IntVector.SPECIES_PREFERRED;
+    private static final VectorSpecies<Short> SHORTS = ShortVector.SPECIES_PREFERRED;
+    private static final VectorSpecies<Double> DOUBLES = DoubleVector.SPECIES_PREFERRED;
+    private static final VectorSpecies<Long> LONGS = LongVector.SPECIES_PREFERRED;
+    private static final VectorSpecies<Float> FLOATS = FloatVector.SPECIES_PREFERRED;
+
+    @Override
+    public boolean allInRange(int[] values, int from, int to, int bound) {
+        VectorMask<Integer> invalid = INTS.maskAll(false);
+        int i = from;
+        for (int upper = from + INTS.loopBound(to - from); i < upper; i += INTS.length()) {
+            // negative values are huge when compared unsigned, so one compare checks both ends
+            invalid = invalid.or(IntVector.fromArray(INTS, values, i).compare(VectorOperators.UNSIGNED_GE, bound));
+        }
+        boolean valid = !invalid.anyTrue();
+        for (; i < to; i++) {
+            valid &= Integer.compareUnsigned(values[i], bound) < 0;
+        }
+        return valid;
+    }
+
+    @Override
+    public boolean allInRange(short[] values, int from, int to, int bound) {
+        VectorMask<Short> invalid = SHORTS.maskAll(false);
+        short limit = (short) bound;
+        int i = from;
+        for (int upper = from + SHORTS.loopBound(to - from); i < upper; i += SHORTS.length()) {
+            invalid = invalid.or(ShortVector.fromArray(SHORTS, values, i).compare(VectorOperators.UNSIGNED_GE, limit));
+        }
+        boolean valid = !invalid.anyTrue();
+        for (; i < to; i++) {
+            valid &= values[i] >= 0 && values[i] < bound;
+        }
+        return valid;
+    }
+
+    @Override
+    public boolean multiply(double[] prices, long[] volumes, int from, int to, double[] products) {
+        VectorMask<Double> invalidPrices = DOUBLES.maskAll(false);
+        VectorMask<Long> invalidVolumes = LONGS.maskAll(false);
+        int i = from;
+        for (int upper = from + DOUBLES.loopBound(to - from); i < upper; i += DOUBLES.length()) {
+            DoubleVector price = DoubleVector.fromArray(DOUBLES, prices, i);
+            LongVector volume = LongVector.fromArray(LONGS, volumes, i);
+            // NaN fails GT, so it is caught as well
+            invalidPrices = invalidPrices.or(price.compare(VectorOperators.GT, 0.0).not());
+            invalidVolumes = invalidVolumes.or(volume.compare(VectorOperators.LE, 0L));
+            price.mul(volume.convertShape(VectorOperators.L2D, DOUBLES, 0)).intoArray(products, i - from);
+        }
+        boolean valid = !invalidPrices.anyTrue() && !invalidVolumes.anyTrue();
+        for (; i < to; i++) {
+            valid &= prices[i] > 0.0 && volumes[i] > 0;
+            products[i - from] = prices[i] * volumes[i];
+        }
+        return valid;
+    }
+
+    /**
+     * Divides in float, as there is no SIMD integer division. A second {@code s = q * width + r} is taken as
+     * {@code (s + 0.5) / width = q + (r + 0.5) / width}, which is at least {@code 0.5 / width} away from both
+     * {@code q} and {@code q + 1}. Seconds of a day are exact in float and the product is off by a few parts in
+     * {@code 2^24} of {@code q <= 86400 / width}, far less than that margin, so truncating gives exactly {@code q}.
+     */
+    @Override
+    public void slots(int[] secondsOfDay, int from, int to, int widthSeconds, int[] slots) {
+        float reciprocal = 1.0f / widthSeconds;
+        int i = from;
+        for (int upper = from + INTS.loopBound(to - from); i < upper; i += INTS.length()) {
+            FloatVector seconds = (FloatVector) IntVector.fromArray(INTS, secondsOfDay, i)
+                    .convertShape(VectorOperators.I2F, FLOATS, 0);
+            ((IntVector) seconds.add(0.5f).mul(reciprocal).convertShape(VectorOperators.F2I, INTS, 0))
+                    .intoArray(slots, i - from);
+        }
+        for (; i < to; i++) {
+            slots[i - from] = secondsOfDay[i] / widthSeconds;
+        }
+    }
+}
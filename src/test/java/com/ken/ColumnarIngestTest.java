@@ -0,0 +1,153 @@
+package com.ken;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class ColumnarIngestTest {
+
+    private static final ColumnKernel SCALAR = new ScalarColumnKernel();
+    private static final CurrencyPairRegistry PAIRS = new CurrencyPairRegistry(
+            "EUR/USD", "USD/JPY", "GBP/USD", "USD/CHF", "AUD/USD", "USD/CAD", "NZD/USD", "EUR/GBP", "EUR/JPY",
+            "GBP/JPY", "AUD/JPY", "EUR/AUD", "CHF/JPY", "GBP/CHF", "USD/TRY", "USD/ZAR", "USD/SGD", "USD/MXN",
+            "USD/PLN", "EUR/TRY", "EUR/HUF");
+
+    @Test
+    public void test_kernels_agree() {
+        Random random = new Random(42);
+        int count = 1000;
+        int[] seconds = new int[count];
+        short[] pairs = new short[count];
+        double[] prices = new double[count];
+        long[] volumes = new long[count];
+        for (int i = 0; i < count; i++) {
+            seconds[i] = random.nextInt(BucketPolicy.SECONDS_PER_DAY);
+            pairs[i] = (short) random.nextInt(21);
+            prices[i] = 1 + random.nextDouble();
+            volumes[i] = 1 + random.nextInt(1_000_000);
+        }
+        // odd ranges leave a scalar tail after the vector loop
+        for (int[] range : new int[][]{{0, count}, {3, 997}, {5, 6}, {0, 0}}) {
+            assertKernelsAgree(seconds, pairs, prices, volumes, range[0], range[1]);
+        }
+        seconds[500] = -1;
+        pairs[501] = 21;
+        prices[502] = Double.NaN;
+        volumes[999] = 0;
+        assertKernelsAgree(seconds, pairs, prices, volumes, 0, count);
+        assertFalse(SCALAR.allInRange(seconds, 0, count, BucketPolicy.SECONDS_PER_DAY));
+        assertFalse(SCALAR.allInRange(pairs, 0, count, 21));
+        assertTrue(SCALAR.allInRange(pairs, 502, count, 21));
+        assertFalse(SCALAR.multiply(prices, volumes, 502, 503, new double[1]));
+        assertFalse(SCALAR.multiply(prices, volumes, 990, count, new double[10]));
+    }
+
+    @Test
+    public void test_columns_match_row_path() {
+        VWAPStore columnar = new VWAPStore(21, BucketPolicy.HOURLY, Accumulation.DOUBLE);
+        VWAPStore rows = new VWAPStore(21, BucketPolicy.HOURLY, Accumulation.DOUBLE);
+        Random random = new Random(7);
+        int count = 5000;
+        int[] seconds = new int[count];
+        short[] pairs = new short[count];
+        double[] prices = new double[count];
+        long[] volumes = new long[count];
+        for (int i = 0; i < count; i++) {
+            seconds[i] = random.nextInt(BucketPolicy.SECONDS_PER_DAY);
+            pairs[i] = (short) random.nextInt(21);
+            prices[i] = 1 + random.nextDouble();
+            volumes[i] = 1 + random.nextInt(1_000);
+        }
+        volumes[1234] = -5;
+        prices[4321] = 0.0;
+
+        ParallelIngest.Partial partial = ColumnarIngest.aggregate(columnar, PAIRS, ColumnarIngest.KERNEL, seconds, pairs,
+                prices, volumes, count, null);
+        partial.addTo(columnar);
+        ParallelIngest.Partial expected = new ParallelIngest.Partial(BucketPolicy.HOURLY, Accumulation.DOUBLE, null);
+        for (int i = 0; i < count; i++) {
+            if (ColumnarIngest.check(rows, PAIRS, seconds[i], pairs[i], prices[i], volumes[i]) == null) {
+                expected.addTrade(pairs[i], seconds[i], prices[i], volumes[i]);
+            }
+        }
+        expected.addTo(rows);
+
+        assertEquals(2, partial.rejectedCount);
+        assertEquals(1234, partial.rejectedIndexes[0]);
+        assertEquals(RejectReason.VOLUME, partial.rejectedReasons[0]);
+        assertEquals(4321, partial.rejectedIndexes[1]);
+        assertEquals(RejectReason.PRICE, partial.rejectedReasons[1]);
+        StringBuilder columnarSums = new StringBuilder();
+        StringBuilder rowSums = new StringBuilder();
+        columnar.forEachBucket((pair, slot, priceVolumeSum, volumeSum) ->
+                columnarSums.append(pair).append(' ').append(slot).append(' ').append(priceVolumeSum).append(' ').append(volumeSum).append('\n'));
+        rows.forEachBucket((pair, slot, priceVolumeSum, volumeSum) ->
+                rowSums.append(pair).append(' ').append(slot).append(' ').append(priceVolumeSum).append(' ').append(volumeSum).append('\n'));
+        assertEquals(rowSums.toString(), columnarSums.toString());
+        assertEquals(PartialAggregate.of(rows, PAIRS.names()), PartialAggregate.of(columnar, PAIRS.names()));
+    }
+
+    @Test
+    public void test_slots_for_every_bucket_width() {
+        int[] seconds = new int[BucketPolicy.SECONDS_PER_DAY];
+        for (int i = 0; i < seconds.length; i++) {
+            seconds[i] = i;
+        }
+        int[] expected = new int[seconds.length];
+        int[] actual = new int[seconds.length];
+        for (int width = 1; width <= BucketPolicy.SECONDS_PER_DAY; width++) {
+            if (BucketPolicy.SECONDS_PER_DAY % width == 0) {
+                SCALAR.slots(seconds, 0, seconds.length, width, expected);
+                ColumnarIngest.KERNEL.slots(seconds, 0, seconds.length, width, actual);
+                assertArrayEquals(expected, actual);
+            }
+        }
+    }
+
+    @Test
+    public void test_exact_columns_match_row_path() {
+        String[][] trades = {
+                {"9:31 AM", "EUR/USD", "1.10000001", "100"},
+                {"9:32 AM", "EUR/USD", "0.000000001", "200"},
+                {"10:15 AM", "USD/JPY", "151.123", "300"}
+        };
+        VWAPCalculatorApplication columnar = new VWAPCalculatorApplication(BucketPolicy.HOURLY, Accumulation.EXACT);
+        columnar.processTrades(new int[]{34260, 34320, 36900}, new short[]{0, 0, columnar.pairId("USD/JPY")},
+                new double[]{1.10000001, 0.000000001, 151.123}, new long[]{100, 200, 300}, trades.length);
+        VWAPCalculatorApplication rows = new VWAPCalculatorApplication(BucketPolicy.HOURLY, Accumulation.EXACT);
+        rows.processTrades(trades);
+
+        assertEquals(rows.getAllVWAP(), columnar.getAllVWAP());
+        assertEquals(1L, columnar.getRejectionStats().byReason().get(RejectReason.PRICE));
+    }
+
+    @Test
+    public void test_check_order() {
+        VWAPStore store = new VWAPStore(21, BucketPolicy.HOURLY, Accumulation.EXACT);
+        assertEquals(RejectReason.TIME, ColumnarIngest.check(store, PAIRS, BucketPolicy.SECONDS_PER_DAY, 21, 0.0, 0));
+        assertEquals(RejectReason.CURRENCY_PAIR, ColumnarIngest.check(store, PAIRS, 0, 21, 0.0, 0));
+        assertEquals(RejectReason.PRICE, ColumnarIngest.check(store, PAIRS, 0, 0, 1e-9, 0));
+        assertEquals(RejectReason.VOLUME, ColumnarIngest.check(store, PAIRS, 0, 0, 1.0, 0));
+        store.closeSlots(1, (pair, slot, calculator) -> {
+        });
+        assertEquals(RejectReason.CLOSED_BUCKET, ColumnarIngest.check(store, PAIRS, 0, 0, 1.0, 1));
+        assertNull(ColumnarIngest.check(store, PAIRS, 3600, 0, 1.0, 1));
+    }
+
+    private static void assertKernelsAgree(int[] seconds, short[] pairs, double[] prices, long[] volumes, int from, int to) {
+        ColumnKernel kernel = ColumnarIngest.KERNEL;
+        assertEquals(SCALAR.allInRange(seconds, from, to, BucketPolicy.SECONDS_PER_DAY),
+                kernel.allInRange(seconds, from, to, BucketPolicy.SECONDS_PER_DAY));
+        assertEquals(SCALAR.allInRange(pairs, from, to, 21), kernel.allInRange(pairs, from, to, 21));
+        double[] expected = new double[to - from];
+        double[] actual = new double[to - from];
+        assertEquals(SCALAR.multiply(prices, volumes, from, to, expected), kernel.multiply(prices, volumes, from, to, actual));
+        assertArrayEquals(expected, actual);
+    }
+}
@@ -0,0 +1,92 @@
+package com.ken;
+
+import org.junit.jupiter.api.Test;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.LinkedHashSet;
+import java.util.Random;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class CurrencyPairRegistryTest {
+
+    @Test
+    public void test_lookups_are_collision_free() {
+        Random random = new Random(42);
+        Set<String> codes = new LinkedHashSet<>();
+        while (codes.size() < CurrencyPairRegistry.MAX_PAIRS + 100) {
+            codes.add(code(random) + "/" + code(random));
+        }
+        String[] all = codes.toArray(new String[0]);
+        CurrencyPairRegistry registry = new CurrencyPairRegistry();
+        for (int i = 0; i < CurrencyPairRegistry.MAX_PAIRS; i++) {
+            assertEquals(i, registry.add(all[i]));
+            // every rebuild must still find every pair added before it
+            if (i % 97 == 0 || i == CurrencyPairRegistry.MAX_PAIRS - 1) {
+                for (int j = 0; j <= i; j++) {
+                    assertEquals(j, registry.idOf(all[j]));
+                    assertEquals(j, registry.idOf(bytes(all[j]), 0, CurrencyPairRegistry.PAIR_LENGTH));
+                }
+            }
+        }
+        for (int i = CurrencyPairRegistry.MAX_PAIRS; i < all.length; i++) {
+            assertEquals(-1, registry.idOf(all[i]));
+            assertEquals(-1, registry.idOf(bytes(all[i]), 0, CurrencyPairRegistry.PAIR_LENGTH));
+        }
+        IllegalStateException full = assertThrows(IllegalStateException.class,
+                () -> registry.add(all[CurrencyPairRegistry.MAX_PAIRS]));
+        assertEquals("Currency pair registry is full", full.getMessage());
+    }
+
+    @Test
+    public void test_retire_keeps_the_id() {
+        CurrencyPairRegistry registry = new CurrencyPairRegistry("EUR/USD", "USD/JPY", "GBP/USD");
+        assertTrue(registry.retire("USD/JPY"));
+        assertFalse(registry.retire("USD/JPY"));
+        assertEquals(-1, registry.idOf("USD/JPY"));
+        assertFalse(registry.isActive(1));
+        assertTrue(registry.hasRetired());
+        assertEquals("USD/JPY", registry.nameOf(1));
+        assertEquals(Set.of("EUR/USD", "GBP/USD"), registry.activePairs());
+        assertEquals(2, registry.idOf("GBP/USD"));
+
+        assertEquals(3, registry.add("NOK/SEK"));
+        assertEquals(1, registry.add("USD/JPY"));
+        assertEquals(1, registry.idOf("USD/JPY"));
+        assertFalse(registry.hasRetired());
+        assertEquals(4, registry.size());
+    }
+
+    @Test
+    public void test_rejects_malformed_codes() {
+        CurrencyPairRegistry registry = new CurrencyPairRegistry("EUR/USD");
+        for (String code : new String[]{"EURUSD", "EUR/USDX", "eur/usd", "EUR-USD", "EU1/USD", ""}) {
+            IllegalArgumentException invalid = assertThrows(IllegalArgumentException.class, () -> registry.add(code));
+            assertEquals(VWAPCalculatorApplication.INVALID_CURRENCY_PAIR, invalid.getMessage());
+        }
+        assertEquals(-1, registry.idOf("EUR/USDX"));
+        assertEquals(-1, registry.idOf((String) null));
+        // U+0145 would pack to the same byte as 'E' if the high bits were dropped
+        assertEquals(-1, registry.idOf("ŅUR/USD"));
+        ByteBuffer record = ByteBuffer.wrap("9:31 AM,EUR/USD,1.1000,100".getBytes(StandardCharsets.US_ASCII));
+        assertEquals(0, registry.idOf(record, 8, 15));
+        assertEquals(-1, registry.idOf(record, 8, 14));
+    }
+
+    private static String code(Random random) {
+        char[] letters = new char[3];
+        for (int i = 0; i < letters.length; i++) {
+            letters[i] = (char) ('A' + random.nextInt(26));
+        }
+        return new String(letters);
+    }
+
+    private static ByteBuffer bytes(String code) {
+        return ByteBuffer.wrap(code.getBytes(StandardCharsets.US_ASCII));
+    }
+}
@@ -0,0 +1,132 @@
+package com.ken;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.Timeout;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.PipedInputStream;
+import java.io.PipedOutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.LinkedBlockingQueue;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class FeedIngestionTest {
+
+    @Test
+    @Timeout(30)
+    public void test_many_feeds_aggregate_into_shared_store() throws InterruptedException {
+        VWAPCalculatorApplication application = new VWAPCalculatorApplication();
+        List<TradeFeed> feeds = new ArrayList<>();
+        for (int i = 0; i < 200; i++) {
+            if (i % 2 == 0) {
+                feeds.add(TradeFeed.of("iterator-" + i, List.of(
+                        new String[]{"9:31 AM", "EUR/USD", "1.1000", "100"},
+                        new String[]{"9:32 AM", "EUR/USD", "1.1002", "100"}).iterator()));
+            } else {
+                byte[] csv = "9:31 AM,EUR/USD,1.1000,100\r\n\n9:32 AM,EUR/USD,1.1002,100".getBytes(StandardCharsets.UTF_8);
+                feeds.add(TradeFeed.of("csv-" + i, new ByteArrayInputStream(csv)));
+            }
+        }
+
+        List<FeedResult> results;
+        try (FeedIngestion ingestion = application.ingestFeeds(feeds)) {
+            results = ingestion.awaitCompletion();
+        }
+        assertEquals(200, results.size());
+        for (FeedResult result : results) {
+            assertEquals(FeedResult.Status.COMPLETED, result.status());
+            assertEquals(2, result.records());
+        }
+        assertEquals(1.1001, application.getAllVWAP().get("EUR/USD 9:00 AM"), 0.0001);
+    }
+
+    @Test
+    @Timeout(30)
+    public void test_failing_feed_does_not_stop_others() throws InterruptedException {
+        VWAPCalculatorApplication application = new VWAPCalculatorApplication();
+        Iterator<String[]> failing = new Iterator<>() {
+            private int sent;
+
+            @Override
+            public boolean hasNext() {
+                if (sent == 2) {
+                    throw new IllegalStateException("connection reset");
+                }
+                return true;
+            }
+
+            @Override
+            public String[] next() {
+                sent++;
+                return new String[]{"9:31 AM", "EUR/USD", "not a price", "100"};
+            }
+        };
+        InputStream broken = new InputStream() {
+            @Override
+            public int read() throws IOException {
+                throw new IOException("socket closed");
+            }
+        };
+        List<FeedResult> results;
+        try (FeedIngestion ingestion = application.ingestFeeds(List.of(
+                TradeFeed.of("failing", failing),
+                TradeFeed.of("broken", broken),
+                TradeFeed.of("healthy", List.<String[]>of(new String[]{"9:31 AM", "GBP/USD", "1.2500", "100"}).iterator())))) {
+            results = ingestion.awaitCompletion();
+        }
+        assertEquals(FeedResult.Status.FAILED, results.get(0).status());
+        assertEquals(2, results.get(0).records());
+        assertEquals("connection reset", results.get(0).failure().getMessage());
+        assertEquals(FeedResult.Status.FAILED, results.get(1).status());
+        assertEquals(FeedResult.Status.COMPLETED, results.get(2).status());
+        assertEquals(2, application.getRejectionStats().byReason().get(RejectReason.PRICE));
+        assertEquals(1.2500, application.getAllVWAP().get("GBP/USD 9:00 AM"), 0.0001);
+    }
+
+    @Test
+    @Timeout(30)
+    public void test_close_cancels_blocked_feeds() throws Exception {
+        VWAPCalculatorApplication application = new VWAPCalculatorApplication();
+        LinkedBlockingQueue<String[]> queue = new LinkedBlockingQueue<>();
+        Iterator<String[]> blocking = new Iterator<>() {
+            @Override
+            public boolean hasNext() {
+                return true;
+            }
+
+            @Override
+            public String[] next() {
+                try {
+                    return queue.take();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    throw new IllegalStateException(e);
+                }
+            }
+        };
+        PipedOutputStream writer = new PipedOutputStream();
+        PipedInputStream reader = new PipedInputStream(writer);
+        queue.add(new String[]{"9:31 AM", "EUR/USD", "1.1000", "100"});
+        writer.write("9:31 AM,GBP/USD,1.2500,100\n".getBytes(StandardCharsets.UTF_8));
+        writer.flush();
+
+        FeedIngestion ingestion = application.ingestFeeds(List.of(
+                TradeFeed.of("queue", blocking), TradeFeed.of("pipe", reader)));
+        while (application.getAllVWAP().size() < 2) {
+            Thread.sleep(10);
+        }
+        ingestion.close();
+        List<FeedResult> results = ingestion.awaitCompletion();
+        assertEquals(FeedResult.Status.CANCELLED, results.get(0).status());
+        assertEquals(FeedResult.Status.CANCELLED, results.get(1).status());
+        assertTrue(results.get(0).records() >= 1);
+        assertEquals(1, results.get(1).records());
+    }
+}
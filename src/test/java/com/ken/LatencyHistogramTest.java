@@ -0,0 +1,38 @@
+package com.ken;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class LatencyHistogramTest {
+
+    @Test
+    public void test_empty_histogram() {
+        assertEquals(new LatencySnapshot(0, 0, 0, 0, 0), new LatencyHistogram().snapshot());
+    }
+
+    @Test
+    public void test_buckets_cover_every_value() {
+        for (long value : new long[]{0, 1, 31, 32, 33, 63, 64, 1000, 123_456_789, Long.MAX_VALUE}) {
+            int index = LatencyHistogram.indexOf(value);
+            assertTrue(LatencyHistogram.highestValueOf(index) >= value);
+            assertTrue(index == 0 || LatencyHistogram.highestValueOf(index - 1) < value);
+        }
+    }
+
+    @Test
+    public void test_percentiles_within_precision() {
+        LatencyHistogram histogram = new LatencyHistogram();
+        for (long nanos = 1; nanos <= 100_000; nanos++) {
+            histogram.record(nanos * 10);
+        }
+        LatencySnapshot snapshot = histogram.snapshot();
+        assertEquals(100_000, snapshot.count());
+        assertEquals(500_000, snapshot.p50Nanos(), 500_000 * 0.035);
+        assertEquals(990_000, snapshot.p99Nanos(), 990_000 * 0.035);
+        assertEquals(999_000, snapshot.p999Nanos(), 999_000 * 0.035);
+        assertEquals(1_000_000, snapshot.maxNanos(), 1_000_000 * 0.035);
+        assertTrue(snapshot.maxNanos() >= 1_000_000);
+    }
+}
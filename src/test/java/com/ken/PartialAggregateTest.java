@@ -0,0 +1,147 @@
+package com.ken;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class PartialAggregateTest {
+
+    private static final String[] PAIRS = {"EUR/USD", "USD/JPY", "NOK/SEK", "SEK/NOK"};
+
+    @Test
+    public void test_exact_merge_is_commutative_and_associative() {
+        String[][] trades = trades(new Random(7), 3000);
+        VWAPCalculatorApplication single = shard(BucketPolicy.FIVE_MINUTES, Accumulation.EXACT, false);
+        single.processTrades(trades);
+        PartialAggregate[] partials = new PartialAggregate[3];
+        for (int shard = 0; shard < partials.length; shard++) {
+            // shards add the extra pairs in different orders, so the same pair has different ids
+            VWAPCalculatorApplication application = shard(BucketPolicy.FIVE_MINUTES, Accumulation.EXACT, shard == 1);
+            application.processTrades(Arrays.copyOfRange(trades, shard * 1000, shard * 1000 + 1000));
+            partials[shard] = application.exportPartial();
+        }
+        PartialAggregate a = partials[0];
+        PartialAggregate b = partials[1];
+        PartialAggregate c = partials[2];
+
+        PartialAggregate expected = a.merge(b).merge(c);
+        assertEquals(expected, a.merge(b.merge(c)));
+        assertEquals(expected, c.merge(a).merge(b));
+        assertEquals(expected, b.merge(c).merge(a));
+        assertEquals(expected, expected.merge(PartialAggregate.empty(BucketPolicy.FIVE_MINUTES, Accumulation.EXACT)));
+        assertEquals(3000L, expected.tradeCount());
+        assertSingleNodeBars(single.exportPartial(), expected, true);
+        assertEquals(single.getAllVWAP(), a.merge(b).merge(c).getAllVWAP());
+    }
+
+    @Test
+    public void test_double_merge_matches_single_node() {
+        String[][] trades = trades(new Random(11), 2000);
+        VWAPCalculatorApplication single = shard(BucketPolicy.HOURLY, Accumulation.DOUBLE, false);
+        single.processTrades(trades);
+        VWAPCalculatorApplication first = shard(BucketPolicy.HOURLY, Accumulation.DOUBLE, false);
+        VWAPCalculatorApplication second = shard(BucketPolicy.HOURLY, Accumulation.DOUBLE, true);
+        for (int i = 0; i < trades.length; i++) {
+            (i % 2 == 0 ? first : second).processTrades(new String[][]{trades[i]});
+        }
+        PartialAggregate a = first.exportPartial();
+        PartialAggregate b = second.exportPartial();
+        assertEquals(a.merge(b), b.merge(a));
+
+        Map<String, Double> merged = a.merge(b).getAllVWAP();
+        assertEquals(single.getAllVWAP().keySet(), merged.keySet());
+        for (Map.Entry<String, Double> entry : single.getAllVWAP().entrySet()) {
+            assertEquals(entry.getValue(), merged.get(entry.getKey()), 1e-9);
+        }
+        assertEquals(single.exportPartial().getTradeCounts(), a.merge(b).getTradeCounts());
+    }
+
+    @Test
+    public void test_encoding_round_trips_and_rejects_corruption() throws IOException {
+        for (Accumulation accumulation : Accumulation.values()) {
+            VWAPCalculatorApplication application = shard(BucketPolicy.MINUTE, accumulation, true);
+            application.processTrades(trades(new Random(3), 500));
+            PartialAggregate partial = application.exportPartial();
+            byte[] encoded = partial.toBytes();
+            int entryBytes = (accumulation == Accumulation.EXACT) ? 118 : 94;
+            assertEquals(20 + 4 * 7 + partial.bucketCount() * entryBytes, encoded.length);
+            assertEquals(partial, PartialAggregate.fromBytes(encoded));
+
+            byte[] corrupt = encoded.clone();
+            corrupt[encoded.length / 2] ^= 1;
+            IOException checksum = assertThrows(IOException.class, () -> PartialAggregate.fromBytes(corrupt));
+            assertEquals("Partial aggregate checksum mismatch", checksum.getMessage());
+            assertThrows(IOException.class, () -> PartialAggregate.fromBytes(Arrays.copyOf(encoded, 20)));
+            assertThrows(IOException.class, () -> PartialAggregate.fromBytes(new byte[64]));
+        }
+        PartialAggregate empty = PartialAggregate.empty(BucketPolicy.HOURLY, Accumulation.DOUBLE);
+        assertEquals(empty, PartialAggregate.fromBytes(empty.toBytes()));
+    }
+
+    @Test
+    public void test_merge_rejects_other_bucket_policies() {
+        PartialAggregate hourly = PartialAggregate.empty(BucketPolicy.HOURLY, Accumulation.DOUBLE);
+        assertThrows(IllegalArgumentException.class,
+                () -> hourly.merge(PartialAggregate.empty(BucketPolicy.MINUTE, Accumulation.DOUBLE)));
+        assertThrows(IllegalArgumentException.class,
+                () -> hourly.merge(PartialAggregate.empty(BucketPolicy.HOURLY, Accumulation.EXACT)));
+    }
+
+    /**
+     * Asserts that merged partials have the buckets, sums and bars of one node that saw every trade. Where trades of
+     * different partials share a bucket's earliest or latest time, nothing orders them, so the merged open or close
+     * may be NaN where the single node has a price.
+     *
+     * @param mergedTies: whether the merged opens and closes are compared, or left alone because the trades arrived
+     *                    in another order
+     */
+    static void assertSingleNodeBars(PartialAggregate single, PartialAggregate merged, boolean mergedTies) {
+        Bars expected = single.getAllBars();
+        Bars actual = merged.getAllBars();
+        assertEquals(expected.size(), actual.size());
+        for (int i = 0; i < expected.size(); i++) {
+            assertEquals(expected.currencyPair(i), actual.currencyPair(i));
+            assertEquals(expected.bucketStart(i), actual.bucketStart(i));
+            assertEquals(expected.vwap(i), actual.vwap(i));
+            assertEquals(expected.meanPrice(i), actual.meanPrice(i));
+            assertEquals(expected.volume(i), actual.volume(i));
+            assertEquals(expected.tradeCount(i), actual.tradeCount(i));
+            assertEquals(expected.high(i), actual.high(i));
+            assertEquals(expected.low(i), actual.low(i));
+            if (mergedTies) {
+                assertTrue(Double.isNaN(actual.open(i)) || actual.open(i) == expected.open(i));
+                assertTrue(Double.isNaN(actual.close(i)) || actual.close(i) == expected.close(i));
+            }
+        }
+    }
+
+    static VWAPCalculatorApplication shard(BucketPolicy policy, Accumulation accumulation, boolean reversed) {
+        VWAPCalculatorApplication application = new VWAPCalculatorApplication(policy, accumulation);
+        application.addCurrencyPair(reversed ? "SEK/NOK" : "NOK/SEK");
+        application.addCurrencyPair(reversed ? "NOK/SEK" : "SEK/NOK");
+        return application;
+    }
+
+    static String[][] trades(Random random, int count) {
+        String[][] trades = new String[count][];
+        for (int i = 0; i < count; i++) {
+            int minute = 9 * 60 + random.nextInt(4 * 60);
+            trades[i] = new String[]{
+                    String.format(Locale.US, "%d:%02d %s", (minute / 60 - 1) % 12 + 1, minute % 60,
+                            minute < 12 * 60 ? "AM" : "PM"),
+                    PAIRS[random.nextInt(PAIRS.length)],
+                    String.format(Locale.US, "%.4f", 0.5 + random.nextDouble()),
+                    Integer.toString(1 + random.nextInt(10_000))
+            };
+        }
+        return trades;
+    }
+}
@@ -0,0 +1,129 @@
+package com.ken;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.Timeout;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class RollingVWAPCalculatorTest {
+
+    @Test
+    public void test_empty_window() {
+        assertEquals(0.0, new RollingVWAPCalculator(60, 1).calculateVWAP());
+    }
+
+    @Test
+    public void test_expired_slots_are_evicted() {
+        RollingVWAPCalculator calculator = new RollingVWAPCalculator(60, 10);
+        calculator.addTrade(0, 1.0, 100);
+        calculator.addTrade(30, 2.0, 100);
+        assertEquals(1.5, calculator.calculateVWAP(), 1e-9);
+        calculator.addTrade(65, 3.0, 200);
+        assertEquals(2.6666666, calculator.calculateVWAP(), 1e-6);
+        assertEquals(3.0, calculator.calculateVWAP(95), 1e-9);
+        assertEquals(0.0, calculator.calculateVWAP(10_000), 0.0);
+    }
+
+    @Test
+    public void test_trades_older_than_window_are_ignored() {
+        RollingVWAPCalculator calculator = new RollingVWAPCalculator(60, 1);
+        calculator.addTrade(1000, 2.0, 100);
+        calculator.addTrade(990, 1.0, 100);
+        calculator.addTrade(900, 10.0, 100);
+        assertEquals(1.5, calculator.calculateVWAP(), 1e-9);
+    }
+
+    @Test
+    public void test_window_continues_across_midnight() {
+        RollingVWAPCalculator calculator = new RollingVWAPCalculator(600, 60);
+        calculator.addTrade(BucketPolicy.SECONDS_PER_DAY - 120, 1.0, 100);
+        calculator.addTrade(120, 2.0, 100);
+        assertEquals(1.5, calculator.calculateVWAP(), 1e-9);
+        assertEquals(2.0, calculator.calculateVWAP(500), 1e-9);
+    }
+
+    @Test
+    public void test_late_trades_around_midnight() {
+        int day = BucketPolicy.SECONDS_PER_DAY;
+        RollingVWAPCalculator calculator = new RollingVWAPCalculator(600, 60);
+        calculator.addTrade(day - 120, 1.0, 100);
+        calculator.addTrade(60, 2.0, 100);
+        // late trades from before midnight, one still inside the window and one older than it
+        calculator.addTrade(day - 60, 3.0, 200);
+        calculator.addTrade(day - 3_600, 9.0, 100);
+        assertEquals(2.25, calculator.calculateVWAP(), 1e-9);
+        calculator.addTrade(30, 4.0, 100);
+        assertEquals(2.6, calculator.calculateVWAP(), 1e-9);
+        assertEquals(3.0, calculator.calculateVWAP(500), 1e-9);
+    }
+
+    @Test
+    public void test_max_lateness_decides_the_next_day() {
+        RollingVWAPCalculator calculator = new RollingVWAPCalculator(7_200, 60, 1_800);
+        calculator.addTrade(36_000, 1.0, 100);
+        // half an hour late is still today; an hour back is past the lateness, so it is tomorrow
+        calculator.addTrade(34_200, 2.0, 100);
+        assertEquals(1.5, calculator.calculateVWAP(), 1e-9);
+        calculator.addTrade(32_400, 3.0, 100);
+        assertEquals(3.0, calculator.calculateVWAP(), 1e-9);
+    }
+
+    /**
+     * Subtracting a large expired slot from the running total loses the low bits of the small ones still in the
+     * window; resumming the slots once the window has slid its whole length restores them.
+     */
+    @Test
+    public void test_rounding_residue_is_recomputed() {
+        RollingVWAPCalculator calculator = new RollingVWAPCalculator(60, 10);
+        calculator.addTrade(0, 1_000_000.0, 1_000_000);
+        calculator.addTrade(10, 1.1, 3);
+        calculator.addTrade(60, 2.0, 7);
+        assertEquals((1.1 * 3 + 2.0 * 7) / 10, calculator.calculateVWAP(), 0.0);
+    }
+
+    /**
+     * Every trade has the same price, so any consistent view of the window totals gives exactly that price.
+     */
+    @Test
+    @Timeout(30)
+    public void test_reads_are_consistent_while_writing() throws Exception {
+        RollingVWAPCalculator calculator = new RollingVWAPCalculator(60, 1);
+        int writers = 4;
+        ExecutorService executor = Executors.newFixedThreadPool(writers + 1);
+        AtomicBoolean writing = new AtomicBoolean(true);
+        CountDownLatch written = new CountDownLatch(writers);
+
+        for (int i = 0; i < writers; i++) {
+            long volume = 100L * (i + 1);
+            executor.execute(() -> {
+                for (int n = 0; n < 200_000; n++) {
+                    calculator.addTrade(n / 1_000, 1.5, volume);
+                }
+                written.countDown();
+            });
+        }
+        Future<Boolean> reader = executor.submit(() -> {
+            boolean consistent = true;
+            while (writing.get()) {
+                double vwap = calculator.calculateVWAP();
+                consistent &= (vwap == 0.0 || vwap == 1.5);
+            }
+            return consistent;
+        });
+
+        written.await();
+        writing.set(false);
+        executor.shutdown();
+        assertTrue(reader.get());
+        assertTrue(executor.awaitTermination(10, TimeUnit.SECONDS));
+        assertEquals(1.5, calculator.calculateVWAP());
+    }
+}
@@ -0,0 +1,83 @@
+package com.ken;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.Timeout;
+
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+class ShardCoordinatorTest {
+
+    @Test
+    @Timeout(30)
+    public void test_localhost_shards_give_the_single_node_view() throws IOException {
+        String[][] trades = PartialAggregateTest.trades(new Random(5), 4000);
+        VWAPCalculatorApplication single = PartialAggregateTest.shard(BucketPolicy.FIVE_MINUTES, Accumulation.EXACT,
+                false);
+        single.processTrades(trades);
+
+        List<ShardServer> servers = new ArrayList<>();
+        List<PartialSource> sources = new ArrayList<>();
+        try {
+            for (int shard = 0; shard < 4; shard++) {
+                VWAPCalculatorApplication application = PartialAggregateTest.shard(BucketPolicy.FIVE_MINUTES,
+                        Accumulation.EXACT, shard % 2 == 1);
+                for (int i = shard; i < trades.length; i += 4) {
+                    application.processTrades(new String[][]{trades[i]});
+                }
+                ShardServer server = application.servePartials(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0));
+                servers.add(server);
+                sources.add(PartialSource.remote(server.getAddress(), Duration.ofSeconds(5)));
+            }
+            ShardCoordinator coordinator = new ShardCoordinator(BucketPolicy.FIVE_MINUTES, Accumulation.EXACT, sources);
+            assertEquals(single.getAllVWAP(), coordinator.getAllVWAP());
+            PartialAggregateTest.assertSingleNodeBars(single.exportPartial(), coordinator.pull(), true);
+        } finally {
+            for (ShardServer server : servers) {
+                server.close();
+            }
+        }
+    }
+
+    @Test
+    public void test_failed_shard_keeps_its_last_partial() {
+        VWAPCalculatorApplication first = new VWAPCalculatorApplication();
+        VWAPCalculatorApplication second = new VWAPCalculatorApplication();
+        first.processTrades(new String[][]{{"9:30 AM", "EUR/USD", "1.1000", "100"}});
+        second.processTrades(new String[][]{{"9:40 AM", "EUR/USD", "1.2000", "300"}});
+        AtomicBoolean down = new AtomicBoolean();
+        PartialSource flaky = () -> {
+            if (down.get()) {
+                throw new IOException("shard down");
+            }
+            return second.exportPartial();
+        };
+        ShardCoordinator coordinator = new ShardCoordinator(BucketPolicy.HOURLY, Accumulation.DOUBLE,
+                List.of(PartialSource.of(first), flaky));
+        assertEquals(1.175, coordinator.getAllVWAP().get("EUR/USD 9:00 AM"), 1e-9);
+
+        down.set(true);
+        first.processTrades(new String[][]{{"10:05 AM", "EUR/USD", "1.3000", "100"}});
+        second.processTrades(new String[][]{{"9:50 AM", "EUR/USD", "2.0000", "1000"}});
+        Map<String, Double> vwaps = coordinator.getAllVWAP();
+        assertEquals(1.175, vwaps.get("EUR/USD 9:00 AM"), 1e-9);
+        assertEquals(1.3, vwaps.get("EUR/USD 10:00 AM"), 1e-9);
+        assertEquals(3L, coordinator.pull().tradeCount());
+
+        ShardCoordinator mismatched = new ShardCoordinator(BucketPolicy.MINUTE, Accumulation.DOUBLE,
+                List.of(PartialSource.of(first)));
+        assertEquals(Map.of(), mismatched.getAllVWAP());
+        assertThrows(IllegalArgumentException.class,
+                () -> new ShardCoordinator(BucketPolicy.HOURLY, Accumulation.DOUBLE, List.of()));
+    }
+}
@@ -0,0 +1,184 @@
+package com.ken;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.Timeout;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class TradeJournalTest {
+
+    private static final CurrencyPairRegistry PAIRS = new CurrencyPairRegistry("EUR/USD", "USD/JPY", "GBP/USD",
+            "USD/CHF");
+
+    @TempDir
+    Path tempDir;
+
+    @Test
+    public void test_replay_across_segments_and_reopen() throws IOException {
+        try (TradeJournal journal = new TradeJournal(tempDir, PAIRS, 4, null)) {
+            for (int i = 0; i < 7; i++) {
+                journal.append(i % 3, i, 1.0 + i, 100 + i);
+            }
+        }
+        try (TradeJournal journal = new TradeJournal(tempDir, PAIRS, 1024, null)) {
+            journal.append(2, 0, 9.5, 1);
+        }
+
+        List<String> replayed = new ArrayList<>();
+        long count = TradeJournal.replay(tempDir, PAIRS.ids(), (pairOrdinal, secondOfDay, price, volume) ->
+                replayed.add(pairOrdinal + "," + secondOfDay + "," + price + "," + volume));
+        assertEquals(8, count);
+        assertEquals(List.of("0,0,1.0,100", "1,1,2.0,101", "2,2,3.0,102", "0,3,4.0,103", "1,4,5.0,104",
+                "2,5,6.0,105", "0,6,7.0,106", "2,0,9.5,1"), replayed);
+        try (var files = Files.list(tempDir)) {
+            assertEquals(3, files.count());
+        }
+    }
+
+    @Test
+    public void test_session_markers_replayed_in_order() throws IOException {
+        LocalDate session = LocalDate.of(2026, 10, 16);
+        try (TradeJournal journal = new TradeJournal(tempDir, PAIRS, 4, null)) {
+            journal.appendSession(session);
+            journal.append(0, 34260, 1.1, 100);
+            journal.appendClose(36000);
+            journal.appendSession(session.plusDays(1));
+            journal.append(1, 34260, 150.0, 200);
+        }
+
+        List<String> replayed = new ArrayList<>();
+        long count = TradeJournal.replay(tempDir, PAIRS.ids(),
+                (pairOrdinal, secondOfDay, price, volume) -> replayed.add("trade " + pairOrdinal + "," + volume),
+                new TradeJournal.MarkerSink() {
+                    @Override
+                    public void session(LocalDate date) {
+                        replayed.add("session " + date);
+                    }
+
+                    @Override
+                    public void closeBefore(int secondOfDay) {
+                        replayed.add("close " + secondOfDay);
+                    }
+                });
+        assertEquals(2, count);
+        assertEquals(List.of("session 2026-10-16", "trade 0,100", "close 36000", "session 2026-10-17",
+                "trade 1,200"), replayed);
+        assertEquals(2, TradeJournal.replay(tempDir, PAIRS.ids(), (pairOrdinal, secondOfDay, price, volume) -> { }));
+    }
+
+    @Test
+    @Timeout(30)
+    public void test_concurrent_appends() throws Exception {
+        int threads = 4;
+        int tradesPerThread = 10_000;
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+        try (TradeJournal journal = new TradeJournal(tempDir, PAIRS, 1000, null)) {
+            List<Future<?>> futures = new ArrayList<>();
+            for (int t = 0; t < threads; t++) {
+                int pair = t;
+                futures.add(executor.submit(() -> {
+                    for (int i = 0; i < tradesPerThread; i++) {
+                        journal.append(pair, i % 86_400, 1.5, 1);
+                    }
+                }));
+            }
+            for (Future<?> future : futures) {
+                future.get();
+            }
+        } finally {
+            executor.shutdown();
+        }
+        AtomicLong volume = new AtomicLong();
+        long count = TradeJournal.replay(tempDir, PAIRS.ids(), (pairOrdinal, secondOfDay, price, tradeVolume) -> volume.addAndGet(tradeVolume));
+        assertEquals((long) threads * tradesPerThread, count);
+        assertEquals((long) threads * tradesPerThread, volume.get());
+    }
+
+    /**
+     * The next segment is prepared once appends reach the middle of the current one. An unused prepared segment is
+     * removed on close, and one left behind by a crash is stepped over on reopen.
+     */
+    @Test
+    @Timeout(30)
+    public void test_next_segment_prepared_in_background() throws Exception {
+        Path next = tempDir.resolve("trades-0000000000000001.journal");
+        Path leftOver = tempDir.resolve("left-over");
+        try (TradeJournal journal = new TradeJournal(tempDir, PAIRS, 5, null)) {
+            for (int i = 0; i < 3; i++) {
+                journal.append(0, i, 1.0, 1);
+            }
+            while (!Files.exists(next)) {
+                Thread.sleep(1);
+            }
+            Files.copy(next, leftOver);
+        }
+        assertFalse(Files.exists(next));
+
+        Files.move(leftOver, next);
+        try (TradeJournal journal = new TradeJournal(tempDir, PAIRS, 5, null)) {
+            for (int i = 3; i < 6; i++) {
+                journal.append(0, i, 1.0, 1);
+            }
+        }
+        List<Integer> seconds = new ArrayList<>();
+        TradeJournal.replay(tempDir, PAIRS.ids(), (pairOrdinal, secondOfDay, price, volume) -> seconds.add(secondOfDay));
+        assertEquals(List.of(0, 1, 2, 3, 4, 5), seconds);
+        try (var files = Files.list(tempDir)) {
+            assertEquals(2, files.count());
+        }
+    }
+
+    /**
+     * Segments name their pairs, so a reader with other ids replays the same trades and one missing a pair replays
+     * nothing. A writer whose ids disagree with the last segment starts a new one.
+     */
+    @Test
+    public void test_pairs_replayed_by_name() throws IOException {
+        CurrencyPairRegistry writer = new CurrencyPairRegistry("EUR/USD");
+        try (TradeJournal journal = new TradeJournal(tempDir, writer, 8, null)) {
+            journal.append(0, 1, 1.5, 10);
+            journal.definePair(writer.add("NOK/SEK"));
+            journal.append(1, 2, 2.5, 20);
+        }
+        try (TradeJournal journal = new TradeJournal(tempDir, new CurrencyPairRegistry("NOK/SEK"), 8, null)) {
+            journal.append(0, 3, 3.5, 30);
+        }
+
+        CurrencyPairRegistry reader = new CurrencyPairRegistry("NOK/SEK", "USD/JPY", "EUR/USD");
+        List<String> replayed = new ArrayList<>();
+        TradeJournal.replay(tempDir, reader.ids(), (pairOrdinal, secondOfDay, price, volume) ->
+                replayed.add(reader.nameOf(pairOrdinal) + "," + secondOfDay));
+        assertEquals(List.of("EUR/USD,1", "NOK/SEK,2", "NOK/SEK,3"), replayed);
+        try (var files = Files.list(tempDir)) {
+            assertEquals(2, files.count());
+        }
+
+        List<String> partial = new ArrayList<>();
+        IOException unknown = assertThrows(IOException.class, () -> TradeJournal.replay(tempDir,
+                new CurrencyPairRegistry("EUR/USD").ids(), (p, s, pr, v) -> partial.add(p + "," + s)));
+        assertTrue(unknown.getMessage().startsWith("Journal contains an unknown currency pair"));
+        assertEquals(List.of(), partial);
+    }
+
+    @Test
+    public void test_invalid_segment() throws IOException {
+        Files.write(tempDir.resolve("trades-0000000000000000.journal"), new byte[48]);
+        IOException exception = assertThrows(IOException.class, () -> TradeJournal.replay(tempDir, PAIRS.ids(), (p, s, pr, v) -> { }));
+        assertTrue(exception.getMessage().startsWith("Not a trade journal segment"));
+    }
+}
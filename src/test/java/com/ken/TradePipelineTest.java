@@ -0,0 +1,204 @@
+package com.ken;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.Timeout;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.LocalTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertInstanceOf;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class TradePipelineTest {
+
+    @Test
+    @Timeout(10)
+    public void test_published_trades_are_aggregated() {
+        VWAPCalculatorApplication application = new VWAPCalculatorApplication();
+        try (TradePipeline pipeline = application.startPipeline(4, 2, BackpressurePolicy.BLOCK)) {
+            assertTrue(pipeline.publish(new String[]{"9:31 AM", "EUR/USD", "1.1000", "100"}));
+            assertTrue(pipeline.publish(new String[]{"9:32 AM", "EUR/USD", "1.1001", "200"}));
+            assertTrue(pipeline.publish(new String[]{"9:33 AM", "EUR/USD", "1.1002", "300"}));
+            assertTrue(pipeline.publish(new String[]{"10:15 AM", "GBP/USD", "1.2500", "100"}));
+            assertFalse(pipeline.publish(new String[]{"9:34 AM", "ABC/XYZ", "1.1003", "400"}));
+            pipeline.flush();
+
+            Map<String, Double> results = application.getAllVWAP();
+            assertEquals(2, results.size());
+            assertEquals(1.10013333, results.get("EUR/USD 9:00 AM"), 0.0001);
+            assertEquals(1.2500, results.get("GBP/USD 10:00 AM"), 0.0001);
+        }
+    }
+
+    @Test
+    @Timeout(30)
+    public void test_concurrent_producers_block_when_full() throws Exception {
+        VWAPCalculatorApplication application = new VWAPCalculatorApplication();
+        int producers = 4;
+        int tradesPerProducer = 20_000;
+        ExecutorService executor = Executors.newFixedThreadPool(producers);
+        try (TradePipeline pipeline = application.startPipeline(64, 16, BackpressurePolicy.BLOCK)) {
+            List<Future<?>> futures = new ArrayList<>();
+            for (int p = 0; p < producers; p++) {
+                futures.add(executor.submit(() -> {
+                    for (int i = 1; i < tradesPerProducer; i++) {
+                        pipeline.publish(new String[]{"9:31 AM", "EUR/USD", "1.0000", "1"});
+                    }
+                    pipeline.publish(new String[]{"9:59 AM", "EUR/USD", "2.0000", String.valueOf(tradesPerProducer)});
+                }));
+            }
+            for (Future<?> future : futures) {
+                future.get();
+            }
+            pipeline.flush();
+            assertEquals(0, pipeline.droppedCount());
+        } finally {
+            executor.shutdown();
+            executor.awaitTermination(10, TimeUnit.SECONDS);
+        }
+        double volume = producers * (tradesPerProducer - 1.0) + producers * tradesPerProducer;
+        double priceVolume = producers * (tradesPerProducer - 1.0) + producers * 2.0 * tradesPerProducer;
+        assertEquals(priceVolume / volume, application.getAllVWAP().get("EUR/USD 9:00 AM"), 1e-9);
+    }
+
+    @Test
+    @Timeout(10)
+    public void test_drop_policy_and_closed_pipeline() {
+        VWAPCalculatorApplication application = new VWAPCalculatorApplication();
+        TradePipeline pipeline = application.startPipeline(3, 1, BackpressurePolicy.DROP);
+        assertEquals(4, pipeline.capacity());
+        long published = 0;
+        for (int i = 0; i < 10_000; i++) {
+            if (pipeline.publish(new String[]{"9:31 AM", "EUR/USD", "1.1000", "100"})) {
+                published++;
+            }
+        }
+        pipeline.close();
+        assertEquals(10_000, published + pipeline.droppedCount());
+        assertEquals(1.1000, application.getAllVWAP().get("EUR/USD 9:00 AM"), 0.0001);
+
+        IllegalStateException exception = assertThrows(IllegalStateException.class,
+                () -> pipeline.publish(new String[]{"9:31 AM", "EUR/USD", "1.1000", "100"}));
+        assertEquals("Pipeline is closed", exception.getMessage());
+    }
+
+    @Test
+    @Timeout(10)
+    public void test_publish_decoded_trades() {
+        VWAPCalculatorApplication application = new VWAPCalculatorApplication();
+        short euro = application.pairId("EUR/USD");
+        try (TradePipeline pipeline = application.startPipeline(4, 2, BackpressurePolicy.BLOCK)) {
+            assertTrue(pipeline.publish(34260, euro, 1.1000, 100));
+            assertTrue(pipeline.publish(34320, euro, 1.1003, 300));
+            assertFalse(pipeline.publish(34380, euro, -1.0, 100));
+            assertFalse(pipeline.publish(34380, (short) 999, 1.1000, 100));
+            pipeline.flush();
+        }
+        assertEquals(1.100225, application.getAllVWAP().get("EUR/USD 9:00 AM"), 1e-9);
+        assertEquals(1L, application.getRejectionStats().byReason().get(RejectReason.PRICE));
+        assertEquals(1L, application.getRejectionStats().byReason().get(RejectReason.CURRENCY_PAIR));
+    }
+
+    /**
+     * A journal that cannot create its next segment fails the consumer; producers then fail instead of waiting
+     * forever on a full ring.
+     */
+    @Test
+    @Timeout(10)
+    public void test_consumer_failure_fails_producers(@TempDir Path tempDir) throws IOException {
+        VWAPCalculatorApplication application = new VWAPCalculatorApplication();
+        Path journal = tempDir.resolve("journal");
+        application.enableJournal(journal, null, 2);
+        short euro = application.pairId("EUR/USD");
+        TradePipeline pipeline = application.startPipeline(2, 1, BackpressurePolicy.BLOCK);
+        assertTrue(pipeline.publish(34260, euro, 1.1000, 100));
+        pipeline.flush();
+        try (Stream<Path> files = Files.list(journal)) {
+            for (Path file : files.toList()) {
+                Files.delete(file);
+            }
+        }
+        Files.delete(journal);
+        Files.createFile(journal);
+
+        IllegalStateException failed = assertThrows(IllegalStateException.class, () -> {
+            for (int i = 0; i < 10; i++) {
+                pipeline.publish(34320, euro, 1.1000, 100);
+            }
+            pipeline.flush();
+        });
+        assertEquals("Pipeline failed", failed.getMessage());
+        assertInstanceOf(UncheckedIOException.class, pipeline.failure());
+        assertThrows(IllegalStateException.class, () -> pipeline.publish(34320, euro, 1.1000, 100));
+        pipeline.close();
+        application.disableJournal();
+    }
+
+    /**
+     * Producers keep publishing while the pipeline closes; every trade whose publish returned true must be applied,
+     * and every later publish must fail.
+     */
+    @Test
+    @Timeout(30)
+    public void test_close_applies_every_accepted_trade() throws Exception {
+        for (int round = 0; round < 20; round++) {
+            VWAPCalculatorApplication application = new VWAPCalculatorApplication();
+            int producers = 4;
+            ExecutorService executor = Executors.newFixedThreadPool(producers);
+            TradePipeline pipeline = application.startPipeline(64, 16, BackpressurePolicy.BLOCK);
+            List<Future<Long>> futures = new ArrayList<>();
+            for (int p = 0; p < producers; p++) {
+                futures.add(executor.submit(() -> {
+                    long accepted = 0;
+                    try {
+                        while (true) {
+                            if (pipeline.publish(new String[]{"9:31 AM", "EUR/USD", "1.1000", "100"})) {
+                                accepted++;
+                            }
+                        }
+                    } catch (IllegalStateException e) {
+                        return accepted;
+                    }
+                }));
+            }
+            Thread.sleep(5);
+            pipeline.close();
+            long accepted = 0;
+            for (Future<Long> future : futures) {
+                accepted += future.get();
+            }
+            executor.shutdown();
+            assertTrue(executor.awaitTermination(10, TimeUnit.SECONDS));
+
+            Bars bars = application.getAllBars();
+            long applied = (bars.size() == 0) ? 0 : bars.tradeCount(bars.indexOf("EUR/USD", LocalTime.of(9, 0)));
+            assertEquals(accepted, applied);
+        }
+    }
+
+    @Test
+    public void test_invalid_pipeline_settings() {
+        VWAPCalculatorApplication application = new VWAPCalculatorApplication();
+        IllegalArgumentException capacity = assertThrows(IllegalArgumentException.class,
+                () -> application.startPipeline(0, 1, BackpressurePolicy.BLOCK));
+        assertEquals("Invalid pipeline capacity", capacity.getMessage());
+        IllegalArgumentException batchSize = assertThrows(IllegalArgumentException.class,
+                () -> application.startPipeline(16, 0, BackpressurePolicy.BLOCK));
+        assertEquals("Invalid batch size", batchSize.getMessage());
+    }
+}
@@ -0,0 +1,148 @@
+package com.ken;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.Timeout;
+
+import java.io.BufferedReader;
+import java.io.DataInputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+class TradeServerTest {
+
+    private static final InetSocketAddress LOOPBACK = new InetSocketAddress(InetAddress.getLoopbackAddress(), 0);
+
+    @Test
+    @Timeout(30)
+    public void test_text_trades_and_queries() throws IOException {
+        VWAPCalculatorApplication application = new VWAPCalculatorApplication();
+        try (TradeServer server = application.serveTrades(LOOPBACK);
+             Socket socket = new Socket(server.getAddress().getAddress(), server.getAddress().getPort())) {
+            OutputStream out = socket.getOutputStream();
+            BufferedReader in = new BufferedReader(new InputStreamReader(socket.getInputStream(),
+                    StandardCharsets.US_ASCII));
+            // the first record is split across writes, and the invalid one is skipped
+            out.write("9:30 AM,EUR/U".getBytes(StandardCharsets.US_ASCII));
+            out.flush();
+            out.write(("SD,1.1000,100\r\n9:45 AM,EUR/USD,1.2000,300\n9:50 AM,EUR/USD,-1,100\n\n"
+                    + "?EUR/USD,9:59 AM\n?EUR/USD,10:00 AM\n?XXX/YYY,9:00 AM\n?EUR/USD,9:00\n?EUR/USD\n")
+                    .getBytes(StandardCharsets.US_ASCII));
+            out.flush();
+            assertEquals("EUR/USD 9:00 AM,1.175,400", in.readLine());
+            assertEquals("EUR/USD 10:00 AM,0.0,0", in.readLine());
+            assertEquals("!" + VWAPCalculatorApplication.INVALID_CURRENCY_PAIR, in.readLine());
+            assertEquals("!" + VWAPCalculatorApplication.INVALID_TRADE_TIME, in.readLine());
+            assertEquals("!" + VWAPCalculatorApplication.INVALID_TRADE_STREAM_FORMAT, in.readLine());
+            assertEquals(1L, application.getRejectionStats().byReason().get(RejectReason.PRICE));
+
+            // a last line without a terminator is processed once the client stops sending
+            out.write("10:05 AM,USD/JPY,110.00,200".getBytes(StandardCharsets.US_ASCII));
+            socket.shutdownOutput();
+            assertEquals(null, in.readLine());
+        }
+        assertEquals(110.00, application.getAllVWAP().get("USD/JPY 10:00 AM"), 0.0001);
+    }
+
+    @Test
+    @Timeout(30)
+    public void test_binary_trades_and_queries() throws IOException {
+        VWAPCalculatorApplication application = new VWAPCalculatorApplication(BucketPolicy.HOURLY, Accumulation.EXACT);
+        try (TradeServer server = application.serveTrades(LOOPBACK);
+             Socket socket = new Socket(server.getAddress().getAddress(), server.getAddress().getPort())) {
+            ByteBuffer messages = ByteBuffer.allocate(4 + 5 * TradeServer.MESSAGE_BYTES);
+            messages.put(TradeServer.BINARY_PREAMBLE);
+            message(messages, TradeServer.TRADE, "EUR/USD", 34200, 1.1000, 100);
+            message(messages, TradeServer.TRADE, "EUR/USD", 35100, 1.2000, 300);
+            message(messages, TradeServer.TRADE, "EUR/USD", 35100, 1.2000, 0);
+            message(messages, TradeServer.QUERY, "EUR/USD", 35999, 0.0, 0);
+            message(messages, TradeServer.QUERY, "XXX/YYY", 35999, 0.0, 0);
+            socket.getOutputStream().write(messages.array());
+
+            DataInputStream in = new DataInputStream(socket.getInputStream());
+            byte[] reply = new byte[TradeServer.MESSAGE_BYTES];
+            in.readFully(reply);
+            ByteBuffer answer = ByteBuffer.wrap(reply);
+            assertEquals(TradeServer.REPLY, answer.get());
+            assertEquals("EUR/USD", new String(reply, 1, 7, StandardCharsets.US_ASCII));
+            assertEquals(32400, answer.getInt(8));
+            assertEquals(1.175, answer.getDouble(12));
+            assertEquals(400L, answer.getLong(20));
+            in.readFully(reply);
+            assertEquals(-1, ByteBuffer.wrap(reply).getInt(8));
+        }
+        assertEquals(1L, application.getRejectionStats().byReason().get(RejectReason.VOLUME));
+    }
+
+    /**
+     * Trades sent over many connections in small, unaligned writes give the same sums as processing them in one
+     * batch. Exact sums do not depend on the order the server interleaves the connections in, though the opens and
+     * closes of trades sharing a time do.
+     */
+    @Test
+    @Timeout(60)
+    public void test_many_connections_match_batch() throws Exception {
+        String[][] trades = PartialAggregateTest.trades(new Random(13), 8000);
+        VWAPCalculatorApplication expected = new VWAPCalculatorApplication(BucketPolicy.HOURLY, Accumulation.EXACT);
+        expected.addCurrencyPair("NOK/SEK");
+        expected.addCurrencyPair("SEK/NOK");
+        expected.processTrades(trades);
+        VWAPCalculatorApplication application = new VWAPCalculatorApplication(BucketPolicy.HOURLY, Accumulation.EXACT);
+        application.addCurrencyPair("NOK/SEK");
+        application.addCurrencyPair("SEK/NOK");
+
+        int connections = 8;
+        ExecutorService executor = Executors.newFixedThreadPool(connections);
+        try (TradeServer server = application.serveTrades(LOOPBACK)) {
+            List<Future<String>> replies = new ArrayList<>();
+            for (int connection = 0; connection < connections; connection++) {
+                int first = connection;
+                replies.add(executor.submit(() -> {
+                    StringBuilder text = new StringBuilder();
+                    for (int i = first; i < trades.length; i += connections) {
+                        text.append(String.join(",", trades[i])).append('\n');
+                    }
+                    text.append("?EUR/USD,9:00 AM\n");
+                    byte[] bytes = text.toString().getBytes(StandardCharsets.US_ASCII);
+                    try (Socket socket = new Socket(server.getAddress().getAddress(), server.getAddress().getPort())) {
+                        OutputStream out = socket.getOutputStream();
+                        Random random = new Random(first);
+                        for (int offset = 0; offset < bytes.length; ) {
+                            int length = Math.min(bytes.length - offset, 1 + random.nextInt(500));
+                            out.write(bytes, offset, length);
+                            out.flush();
+                            offset += length;
+                        }
+                        return new BufferedReader(new InputStreamReader(socket.getInputStream(),
+                                StandardCharsets.US_ASCII)).readLine();
+                    }
+                }));
+            }
+            for (Future<String> reply : replies) {
+                assertEquals("EUR/USD 9:00 AM,", reply.get().substring(0, 16));
+            }
+        } finally {
+            executor.shutdown();
+        }
+        PartialAggregateTest.assertSingleNodeBars(expected.exportPartial(), application.exportPartial(), false);
+    }
+
+    private static void message(ByteBuffer buffer, byte type, String pair, int secondOfDay, double price,
+                                long volume) {
+        buffer.put(type).put(pair.getBytes(StandardCharsets.US_ASCII)).putInt(secondOfDay).putDouble(price)
+                .putLong(volume);
+    }
+}
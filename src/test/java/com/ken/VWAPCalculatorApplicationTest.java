@@ -3,11 +3,35 @@ package com.ken;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.Timeout;
+import org.junit.jupiter.api.io.TempDir;
 
+import javax.management.ObjectName;
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.lang.management.ManagementFactory;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.time.LocalDate;
+import java.time.LocalTime;
+import java.time.format.DateTimeParseException;
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
+import java.util.Set;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
+import java.util.concurrent.Flow;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
 import java.util.logging.Handler;
 import java.util.logging.Level;
 import java.util.logging.LogRecord;
@@ -15,6 +39,9 @@ import java.util.logging.Logger;
 import java.util.logging.SimpleFormatter;
 
 import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
 import static org.junit.jupiter.api.Assertions.assertTrue;
 
 class VWAPCalculatorApplicationTest {
@@ -22,6 +49,9 @@ class VWAPCalculatorApplicationTest {
     private VWAPCalculatorApplication vwapCalculatorApplication;
     private TestLogHandler logHandler;
 
+    @TempDir
+    Path tempDir;
+
     @BeforeEach
     public void setUp() {
         vwapCalculatorApplication = new VWAPCalculatorApplication();
@@ -352,6 +382,7 @@ class VWAPCalculatorApplicationTest {
         executor.execute(task3);
 
         executor.shutdown();
+        assertTrue(executor.awaitTermination(5, TimeUnit.SECONDS));
 
         Map<String, Double> expectedResults = new HashMap<>();
         expectedResults.put("EUR/USD 9:00 AM", 1.10016);
@@ -386,6 +417,7 @@ class VWAPCalculatorApplicationTest {
         }
 
         executor.shutdown();
+        assertTrue(executor.awaitTermination(5, TimeUnit.SECONDS));
         Map<String, Double> actualResults = vwapCalculatorApplication.getAllVWAP();
         Map<String, Double> expectedResults = new HashMap<>();
         expectedResults.put("EUR/USD 9:00 AM", 1.1002);
@@ -393,6 +425,1015 @@ class VWAPCalculatorApplicationTest {
         expectedResults.forEach((key, value) -> assertEquals(value, actualResults.get(key), 0.0001));
     }
 
+    /**
+     * Test Case 20: happy path - CSV trades from a byte buffer
+     */
+    @Test
+    public void test_byte_buffer_trades() {
+        String csv = "9:31 AM,EUR/USD,1.1000,100\r\n"
+                + "9:31 AM,EUR/USD,1.1001,200\n"
+                + "\n"
+                + "10:31 AM,EUR/USD,1.1005,300\n"
+                + "12:05 PM,USD/JPY,110.00,500";
+
+        Map<String, Double> expectedResults = new HashMap<>();
+        expectedResults.put("EUR/USD 9:00 AM", 1.10006667);
+        expectedResults.put("EUR/USD 10:00 AM", 1.1005);
+        expectedResults.put("USD/JPY 12:00 PM", 110.00);
+
+        ByteBuffer buffer = ByteBuffer.wrap(csv.getBytes(StandardCharsets.UTF_8));
+        vwapCalculatorApplication.processTrades(buffer);
+        Map<String, Double> actualResults = vwapCalculatorApplication.getAllVWAP();
+        assertEquals(0, buffer.remaining());
+        assertEquals(expectedResults.size(), actualResults.size());
+        expectedResults.forEach((key, value) -> assertEquals(value, actualResults.get(key), 0.0001));
+    }
+
+    /**
+     * Test Case 21: edge case - invalid CSV trades from a byte buffer
+     */
+    @Test
+    public void test_byte_buffer_invalid_trades() {
+        String csv = "9:31 AM,EUR/USD,1.1001,100,abc\n"
+                + "abc,EUR/USD,1.1001,100\n"
+                + "9:31 AM,abc,1.1001,100\n"
+                + "9:31 AM,EUR/USD,0,100\n"
+                + "9:31 AM,EUR/USD,110.002,abc\n"
+                + "13:31 PM,EUR/USD,1.1001,100\n";
+
+        vwapCalculatorApplication.processTrades(ByteBuffer.wrap(csv.getBytes(StandardCharsets.UTF_8)));
+        assertTrue(vwapCalculatorApplication.getAllVWAP().isEmpty());
+        assertTrue(logHandler.isLogMessagePresent(Level.WARNING, "Skipping invalid trade: 9:31 AM, EUR/USD, 1.1001, 100, abc - Invalid trade stream format"));
+        assertTrue(logHandler.isLogMessagePresent(Level.WARNING, "Skipping invalid trade: abc, EUR/USD, 1.1001, 100 - Invalid trade time format"));
+        assertTrue(logHandler.isLogMessagePresent(Level.WARNING, "Skipping invalid trade: 9:31 AM, abc, 1.1001, 100 - Invalid currency pair"));
+        assertTrue(logHandler.isLogMessagePresent(Level.WARNING, "Skipping invalid trade: 9:31 AM, EUR/USD, 0, 100 - Invalid trade price"));
+        assertTrue(logHandler.isLogMessagePresent(Level.WARNING, "Skipping invalid trade: 9:31 AM, EUR/USD, 110.002, abc - Invalid trade volume"));
+        assertTrue(logHandler.isLogMessagePresent(Level.WARNING, "Skipping invalid trade: 13:31 PM, EUR/USD, 1.1001, 100 - Invalid trade time format"));
+    }
+
+    /**
+     * Test Case 22: edge case - byte buffer prices and volumes spelled in unusual but valid ways
+     */
+    @Test
+    public void test_byte_buffer_matches_string_parsing() {
+        String[][] trades = {
+                {"12:15 AM", "EUR/USD", "1e0", "+100"},
+                {"09:31 AM", "EUR/USD", " 1.25 ", "200"},
+                {"9:31 AM", "EUR/USD", "999999.9999", "9223372036854775807"}
+        };
+        StringBuilder csv = new StringBuilder();
+        for (String[] trade : trades) {
+            csv.append(String.join(",", trade)).append('\n');
+        }
+
+        VWAPCalculatorApplication stringApplication = new VWAPCalculatorApplication();
+        stringApplication.processTrades(trades);
+        vwapCalculatorApplication.processTrades(ByteBuffer.wrap(csv.toString().getBytes(StandardCharsets.UTF_8)));
+        assertEquals(stringApplication.getAllVWAP(), vwapCalculatorApplication.getAllVWAP());
+    }
+
+    /**
+     * Test Case 23: happy path - trade file read through several memory mappings
+     */
+    @Test
+    public void test_trade_file_across_mappings() throws IOException {
+        String[][] trades = {
+                {"9:31 AM", "EUR/USD", "1.1000", "100"},
+                {"9:32 AM", "EUR/USD", "1.1001", "200"},
+                {"9:33 AM", "USD/JPY", "110.00", "500"},
+                {"abc", "EUR/USD", "1.1001", "100"},
+                {"10:34 AM", "EUR/USD", "1.1002", "300"},
+                {"10:35 AM", "USD/JPY", "110.01", "600"}
+        };
+        StringBuilder csv = new StringBuilder();
+        for (String[] trade : trades) {
+            csv.append(String.join(",", trade)).append('\n');
+        }
+        csv.setLength(csv.length() - 1);
+        Path file = Files.writeString(tempDir.resolve("trades.csv"), csv);
+
+        VWAPCalculatorApplication stringApplication = new VWAPCalculatorApplication();
+        stringApplication.processTrades(trades);
+        vwapCalculatorApplication.processTradeFile(file, 64);
+        assertEquals(stringApplication.getAllVWAP(), vwapCalculatorApplication.getAllVWAP());
+        assertTrue(logHandler.isLogMessagePresent(Level.WARNING, "Skipping invalid trade: abc, EUR/USD, 1.1001, 100 - Invalid trade time format"));
+    }
+
+    /**
+     * Test Case 24: edge case - trade record longer than a memory mapping
+     */
+    @Test
+    public void test_trade_file_record_longer_than_mapping() throws IOException {
+        Path file = Files.writeString(tempDir.resolve("trades.csv"), "9:31 AM,EUR/USD,1.1000,100\n9:31 AM,EUR/USD,1.1000,100\n");
+
+        assertThrows(IOException.class, () -> vwapCalculatorApplication.processTradeFile(file, 16));
+    }
+
+    /**
+     * Test Case 25: happy path - batch split across parallel workers
+     */
+    @Test
+    public void test_parallel_batch_matches_sequential() {
+        String[][] trades = new String[1000][];
+        for (int i = 0; i < trades.length; i++) {
+            String pair = (i % 3 == 0) ? "USD/JPY" : "EUR/USD";
+            trades[i] = new String[]{(1 + i % 12) + ":31 " + (i % 2 == 0 ? "AM" : "PM"), pair, "1.10" + (i % 10), Integer.toString(100 + i)};
+        }
+        trades[17] = new String[]{"9:31 AM", "EUR/USD", "abc", "100"};
+        trades[923] = new String[]{"9:31 AM", "EUR/USD", "1.1001", "0"};
+
+        VWAPCalculatorApplication sequentialApplication = new VWAPCalculatorApplication();
+        sequentialApplication.setParallelThreshold(Integer.MAX_VALUE);
+        sequentialApplication.processTrades(trades);
+        vwapCalculatorApplication.setParallelThreshold(1);
+        vwapCalculatorApplication.processTrades(trades);
+
+        Map<String, Double> expectedResults = sequentialApplication.getAllVWAP();
+        Map<String, Double> actualResults = vwapCalculatorApplication.getAllVWAP();
+        assertEquals(expectedResults.size(), actualResults.size());
+        expectedResults.forEach((key, value) -> assertEquals(value, actualResults.get(key), 0.0000001));
+        assertTrue(logHandler.isLogMessagePresent(Level.WARNING, "Skipping invalid trade: 9:31 AM, EUR/USD, abc, 100 - Invalid trade price"));
+        assertTrue(logHandler.isLogMessagePresent(Level.WARNING, "Skipping invalid trade: 9:31 AM, EUR/USD, 1.1001, 0 - Invalid trade volume"));
+    }
+
+    /**
+     * Test Case 26: happy path - polling for changed VWAP values
+     */
+    @Test
+    public void test_changed_vwap_since_version() {
+        vwapCalculatorApplication.processTrades(new String[][]{
+                {"9:31 AM", "EUR/USD", "1.1000", "100"},
+                {"10:31 AM", "USD/JPY", "110.00", "500"}
+        });
+        VWAPChanges initial = vwapCalculatorApplication.getChangedVWAPSince(0);
+        assertEquals(2, initial.vwaps().size());
+
+        Map<String, Double> unchanged = vwapCalculatorApplication.getAllVWAP();
+        assertSame(unchanged, vwapCalculatorApplication.getAllVWAP());
+        assertTrue(vwapCalculatorApplication.getChangedVWAPSince(initial.version()).vwaps().isEmpty());
+
+        vwapCalculatorApplication.processTrades(new String[][]{
+                {"9:45 AM", "EUR/USD", "1.1002", "100"}
+        });
+        VWAPChanges delta = vwapCalculatorApplication.getChangedVWAPSince(initial.version());
+        assertEquals(1, delta.vwaps().size());
+        assertEquals(1.1001, delta.vwaps().get("EUR/USD 9:00 AM"), 0.0001);
+        assertEquals(1.1001, vwapCalculatorApplication.getAllVWAP().get("EUR/USD 9:00 AM"), 0.0001);
+        assertEquals(110.00, vwapCalculatorApplication.getAllVWAP().get("USD/JPY 10:00 AM"), 0.0001);
+    }
+
+    /**
+     * Test Case 27: happy path - five minute and one second buckets; only sub-minute buckets accept seconds
+     */
+    @Test
+    public void test_configurable_bucket_policy() {
+        String[][] trades = {
+                {"9:31 AM", "EUR/USD", "1.1000", "100"},
+                {"9:34:59 AM", "EUR/USD", "1.1002", "100"},
+                {"9:35 AM", "EUR/USD", "1.1004", "100"},
+                {"9:35:00 AM", "EUR/USD", "1.1006", "100"}
+        };
+
+        VWAPCalculatorApplication fiveMinuteApplication = new VWAPCalculatorApplication(BucketPolicy.FIVE_MINUTES);
+        fiveMinuteApplication.processTrades(trades);
+        Map<String, Double> fiveMinuteResults = fiveMinuteApplication.getAllVWAP();
+        assertEquals(2, fiveMinuteResults.size());
+        assertEquals(1.1000, fiveMinuteResults.get("EUR/USD 9:30 AM"), 0.0001);
+        assertEquals(1.1004, fiveMinuteResults.get("EUR/USD 9:35 AM"), 0.0001);
+        assertEquals(2L, fiveMinuteApplication.getRejectionStats().byReason().get(RejectReason.TIME));
+
+        VWAPCalculatorApplication secondApplication = new VWAPCalculatorApplication(BucketPolicy.SECOND);
+        secondApplication.processTrades(trades);
+        Map<String, Double> secondResults = secondApplication.getAllVWAP();
+        assertEquals(3, secondResults.size());
+        assertEquals(1.1000, secondResults.get("EUR/USD 9:31:00 AM"), 0.0001);
+        assertEquals(1.1002, secondResults.get("EUR/USD 9:34:59 AM"), 0.0001);
+        assertEquals(1.1005, secondResults.get("EUR/USD 9:35:00 AM"), 0.0001);
+    }
+
+    /**
+     * Test Case 28: edge case - bucket width that does not divide a day
+     */
+    @Test
+    public void test_invalid_bucket_policy() {
+        IllegalArgumentException exception = assertThrows(IllegalArgumentException.class, () -> BucketPolicy.ofSeconds(7));
+        assertEquals("Invalid bucket width", exception.getMessage());
+    }
+
+    /**
+     * Test Case 29: happy path - rolling-window VWAP slides with the trades
+     */
+    @Test
+    public void test_rolling_window_vwap() {
+        vwapCalculatorApplication.setRollingWindow("EUR/USD", Duration.ofMinutes(15));
+        vwapCalculatorApplication.processTrades(new String[][]{
+                {"9:00 AM", "EUR/USD", "1.1000", "100"},
+                {"9:10 AM", "EUR/USD", "1.1010", "100"},
+                {"9:10 AM", "GBP/USD", "1.2500", "100"}
+        });
+        assertEquals(1.1005, vwapCalculatorApplication.getRollingVWAP("EUR/USD"), 0.0001);
+
+        vwapCalculatorApplication.processTrades(new String[][]{{"9:20 AM", "EUR/USD", "1.1020", "300"}});
+        assertEquals(1.10175, vwapCalculatorApplication.getRollingVWAP("EUR/USD"), 0.00001);
+        assertEquals(1.1020, vwapCalculatorApplication.getRollingVWAP("EUR/USD", LocalTime.of(9, 30)), 0.0001);
+        assertEquals(0.0, vwapCalculatorApplication.getRollingVWAP("EUR/USD", LocalTime.of(10, 0)), 0.0);
+        assertEquals(1.1014, vwapCalculatorApplication.getAllVWAP().get("EUR/USD 9:00 AM"), 0.0001);
+    }
+
+    /**
+     * Test Case 30: edge case - rolling window queries and settings that are not valid
+     */
+    @Test
+    public void test_invalid_rolling_window() {
+        IllegalArgumentException unknownPair = assertThrows(IllegalArgumentException.class,
+                () -> vwapCalculatorApplication.setRollingWindow("ABC/XYZ", Duration.ofMinutes(15)));
+        assertEquals("Invalid currency pair", unknownPair.getMessage());
+
+        IllegalArgumentException badResolution = assertThrows(IllegalArgumentException.class,
+                () -> vwapCalculatorApplication.setRollingWindow("EUR/USD", Duration.ofMinutes(15), Duration.ofMinutes(7)));
+        assertEquals("Invalid rolling window", badResolution.getMessage());
+
+        IllegalArgumentException notTracked = assertThrows(IllegalArgumentException.class,
+                () -> vwapCalculatorApplication.getRollingVWAP("EUR/USD"));
+        assertEquals("No rolling window for currency pair", notTracked.getMessage());
+    }
+
+    /**
+     * Test Case 31: edge case - rejected trades are counted per reason and per currency pair
+     */
+    @Test
+    public void test_rejection_counters() {
+        String[][] trades = {
+                {"9:31 AM", "EUR/USD", "1.1001", "100", "abc"},
+                {"9:61 AM", "EUR/USD", "1.1001", "100"},
+                {"9:31 AM", "ABC/XYZ", "1.1001", "100"},
+                {"9:31 AM", "EUR/USD", "0", "100"},
+                {"9:31 AM", "GBP/USD", "1.2500", "-1"},
+                {"9:31 AM", "GBP/USD", "1.2500", "100"}
+        };
+        vwapCalculatorApplication.processTrades(trades);
+        vwapCalculatorApplication.processTrades(ByteBuffer.wrap("9:31 AM,GBP/USD,abc,100\n".getBytes(StandardCharsets.UTF_8)));
+
+        RejectionStats stats = vwapCalculatorApplication.getRejectionStats();
+        assertEquals(6, stats.total());
+        assertEquals(1L, stats.byReason().get(RejectReason.STREAM_FORMAT));
+        assertEquals(1L, stats.byReason().get(RejectReason.TIME));
+        assertEquals(1L, stats.byReason().get(RejectReason.CURRENCY_PAIR));
+        assertEquals(2L, stats.byReason().get(RejectReason.PRICE));
+        assertEquals(1L, stats.byReason().get(RejectReason.VOLUME));
+        assertEquals(Map.of("EUR/USD", 3L, "GBP/USD", 2L), stats.byPair());
+        assertTrue(logHandler.isLogMessagePresent(Level.WARNING, "Skipping invalid trade: 9:31 AM, GBP/USD, abc, 100 - Invalid trade price"));
+    }
+
+    /**
+     * Test Case 32: edge case - invalid trade warnings are rate limited but still counted
+     */
+    @Test
+    public void test_rejection_log_limit() throws InterruptedException {
+        String[][] trades = new String[1000][];
+        for (int i = 0; i < trades.length; i++) {
+            trades[i] = new String[]{"9:31 AM", "EUR/USD", "1.1001", "-" + i};
+        }
+        vwapCalculatorApplication.setRejectionLogLimit(2);
+        vwapCalculatorApplication.processTrades(trades);
+        assertTrue(logHandler.countLogMessages("Skipping invalid trade") < trades.length);
+        assertEquals(trades.length, vwapCalculatorApplication.getRejectionStats().total());
+
+        Thread.sleep(1100);
+        vwapCalculatorApplication.processTrades(new String[][]{trades[0]});
+        assertTrue(logHandler.isLogMessagePresent(Level.WARNING, "Suppressed"));
+
+        vwapCalculatorApplication.setRejectionLogLimit(Integer.MAX_VALUE);
+        int before = logHandler.countLogMessages("Skipping invalid trade");
+        vwapCalculatorApplication.processTrades(trades);
+        assertEquals(before + trades.length, logHandler.countLogMessages("Skipping invalid trade"));
+
+        IllegalArgumentException exception = assertThrows(IllegalArgumentException.class,
+                () -> vwapCalculatorApplication.setRejectionLogLimit(-1));
+        assertEquals("Invalid rejection log limit", exception.getMessage());
+    }
+
+    /**
+     * Test Case 33: happy path - engine metrics through the snapshot API and JMX
+     */
+    @Test
+    public void test_engine_metrics() throws Exception {
+        String[][] trades = {
+                {"9:31 AM", "EUR/USD", "1.1000", "100"},
+                {"10:31 AM", "EUR/USD", "1.1001", "200"},
+                {"9:31 AM", "GBP/USD", "1.2500", "50"},
+                {"9:31 AM", "GBP/USD", "1.2500", "-50"}
+        };
+        vwapCalculatorApplication.processTrades(trades);
+        MetricsSnapshot disabled = vwapCalculatorApplication.getMetrics();
+        assertFalse(disabled.enabled());
+        assertEquals(0, disabled.acceptedTrades());
+        assertEquals(1, disabled.rejectedTrades());
+        assertEquals(3, disabled.bucketCount());
+        assertTrue(disabled.estimatedMemoryBytes() > 0);
+
+        vwapCalculatorApplication.setMetricsEnabled(true);
+        vwapCalculatorApplication.processTrades(trades);
+        vwapCalculatorApplication.getAllVWAP();
+        MetricsSnapshot enabled = vwapCalculatorApplication.getMetrics();
+        assertTrue(enabled.enabled());
+        assertEquals(3, enabled.acceptedTrades());
+        assertEquals(2, enabled.rejectedTrades());
+        assertEquals(Map.of("EUR/USD", 300L, "GBP/USD", 50L), enabled.volumeByPair());
+        assertEquals(1, enabled.processTradesLatency().count());
+        assertEquals(1, enabled.getAllVWAPLatency().count());
+
+        ObjectName name = vwapCalculatorApplication.registerMetricsMBean("test_engine_metrics");
+        try {
+            assertEquals(3L, ManagementFactory.getPlatformMBeanServer().getAttribute(name, "AcceptedTrades"));
+            assertEquals(3, ManagementFactory.getPlatformMBeanServer().getAttribute(name, "BucketCount"));
+        } finally {
+            ManagementFactory.getPlatformMBeanServer().unregisterMBean(name);
+        }
+
+        vwapCalculatorApplication.setMetricsEnabled(false);
+        assertEquals(0, vwapCalculatorApplication.getMetrics().acceptedTrades());
+    }
+
+    /**
+     * Test Case 34: happy path - state restored from a snapshot matches the original
+     */
+    @Test
+    public void test_snapshot_round_trip() throws IOException {
+        vwapCalculatorApplication.processTrades(new String[][]{
+                {"9:31 AM", "EUR/USD", "1.1000", "100"},
+                {"9:32 AM", "EUR/USD", "1.1001", "200"},
+                {"10:15 AM", "EUR/USD", "1.1005", "300"},
+                {"11:59 PM", "USD/JPY", "145.25", "1000"}
+        });
+        Path file = tempDir.resolve("vwap.snapshot");
+        vwapCalculatorApplication.writeSnapshot(file);
+        assertEquals(37 + 21 * (2 + "EUR/USD".length()) + 4 + 3 * 94 + 4, Files.size(file));
+
+        VWAPCalculatorApplication restored = new VWAPCalculatorApplication();
+        restored.loadSnapshot(file);
+        assertEquals(vwapCalculatorApplication.getAllVWAP(), restored.getAllVWAP());
+        assertEquals(vwapCalculatorApplication.exportPartial(), restored.exportPartial());
+        Bars bars = restored.getAllBars();
+        int euro = bars.indexOf("EUR/USD", LocalTime.of(9, 0));
+        assertEquals(2L, bars.tradeCount(euro));
+        assertEquals(1.1000, bars.open(euro));
+        assertEquals(1.1001, bars.close(euro));
+
+        restored.processTrades(new String[][]{{"9:45 AM", "EUR/USD", "1.1002", "300"}});
+        assertEquals(1.10013333 * 0.5 + 1.1002 * 0.5, restored.getAllVWAP().get("EUR/USD 9:00 AM"), 0.0001);
+    }
+
+    /**
+     * Test Case 35: edge case - corrupt or mismatched snapshots are rejected without changing state
+     */
+    @Test
+    public void test_corrupt_snapshot() throws IOException {
+        vwapCalculatorApplication.processTrades(new String[][]{{"9:31 AM", "EUR/USD", "1.1000", "100"}});
+        Path file = tempDir.resolve("vwap.snapshot");
+        vwapCalculatorApplication.writeSnapshot(file);
+
+        byte[] bytes = Files.readAllBytes(file);
+        bytes[bytes.length - 10] ^= 1;
+        Path corrupt = Files.write(tempDir.resolve("corrupt.snapshot"), bytes);
+        VWAPCalculatorApplication restored = new VWAPCalculatorApplication();
+        IOException checksum = assertThrows(IOException.class, () -> restored.loadSnapshot(corrupt));
+        assertTrue(checksum.getMessage().startsWith("Snapshot checksum mismatch"));
+        assertTrue(restored.getAllVWAP().isEmpty());
+
+        IOException width = assertThrows(IOException.class,
+                () -> new VWAPCalculatorApplication(BucketPolicy.MINUTE).loadSnapshot(file));
+        assertEquals("Snapshot bucket width 3600s does not match BucketPolicy[60s]", width.getMessage());
+
+        Path text = Files.writeString(tempDir.resolve("trades.csv"), "9:31 AM,EUR/USD,1.1000,100\n9:32 AM,EUR/USD,1.1000,100\n");
+        IOException notSnapshot = assertThrows(IOException.class, () -> restored.loadSnapshot(text));
+        assertTrue(notSnapshot.getMessage().startsWith("Not a VWAP snapshot"));
+    }
+
+    /**
+     * Test Case 36: happy path - periodic checkpoints while trades keep arriving
+     */
+    @Test
+    @Timeout(10)
+    public void test_periodic_checkpoint() throws Exception {
+        Path file = tempDir.resolve("vwap.snapshot");
+        vwapCalculatorApplication.processTrades(new String[][]{{"9:31 AM", "EUR/USD", "1.1000", "100"}});
+        vwapCalculatorApplication.startCheckpointing(file, Duration.ofMillis(20));
+        try {
+            vwapCalculatorApplication.processTrades(new String[][]{{"9:32 AM", "EUR/USD", "1.1000", "100"}});
+            while (!Files.exists(file)) {
+                Thread.sleep(10);
+            }
+        } finally {
+            vwapCalculatorApplication.stopCheckpointing();
+        }
+        VWAPCalculatorApplication restored = new VWAPCalculatorApplication();
+        restored.loadSnapshot(file);
+        assertEquals(1.1000, restored.getAllVWAP().get("EUR/USD 9:00 AM"), 0.0001);
+
+        IllegalArgumentException exception = assertThrows(IllegalArgumentException.class,
+                () -> vwapCalculatorApplication.startCheckpointing(file, Duration.ZERO));
+        assertEquals("Invalid checkpoint interval", exception.getMessage());
+    }
+
+    /**
+     * Test Case 37: happy path - replaying the trade journal rebuilds the same state
+     */
+    @Test
+    public void test_journal_replay() throws IOException {
+        Path journal = tempDir.resolve("journal");
+        vwapCalculatorApplication.enableJournal(journal, Duration.ofMillis(10));
+        vwapCalculatorApplication.processTrades(new String[][]{
+                {"9:31 AM", "EUR/USD", "1.1000", "100"},
+                {"9:32 AM", "EUR/USD", "1.1001", "-200"},
+                {"10:15 AM", "GBP/USD", "1.2500", "300"}
+        });
+        vwapCalculatorApplication.processTrades(ByteBuffer.wrap("12:00 AM,USD/JPY,145.25,10\n".getBytes(StandardCharsets.UTF_8)));
+        vwapCalculatorApplication.disableJournal();
+
+        VWAPCalculatorApplication replayed = new VWAPCalculatorApplication();
+        assertEquals(3, replayed.replayJournal(journal));
+        assertEquals(vwapCalculatorApplication.getAllVWAP(), replayed.getAllVWAP());
+
+        VWAPCalculatorApplication backtest = new VWAPCalculatorApplication(BucketPolicy.MINUTE);
+        backtest.enableJournal(journal, null);
+        assertEquals(3, backtest.replayJournal(journal));
+        backtest.disableJournal();
+        assertEquals(3, new VWAPCalculatorApplication().replayJournal(journal));
+        assertEquals(1.1000, backtest.getAllVWAP().get("EUR/USD 9:31 AM"), 0.0001);
+    }
+
+    /**
+     * Test Case 38: happy path - exact accumulation gives the same VWAPs on every ingest path
+     */
+    @Test
+    public void test_exact_accumulation() throws IOException {
+        String[][] trades = new String[40_000][];
+        StringBuilder csv = new StringBuilder();
+        for (int i = 0; i < trades.length; i++) {
+            String price = (i % 2 == 0) ? "0.0001" : "999999.9999";
+            trades[i] = new String[]{"9:31 AM", "EUR/USD", price, String.valueOf(1 + i % 7)};
+            csv.append("9:31 AM,EUR/USD,").append(price).append(',').append(1 + i % 7).append('\n');
+        }
+        VWAPCalculatorApplication sequential = new VWAPCalculatorApplication(BucketPolicy.HOURLY, Accumulation.EXACT);
+        sequential.processTrades(trades);
+        VWAPCalculatorApplication parallel = new VWAPCalculatorApplication(BucketPolicy.HOURLY, Accumulation.EXACT);
+        parallel.setParallelThreshold(1000);
+        parallel.processTrades(trades);
+        VWAPCalculatorApplication buffered = new VWAPCalculatorApplication(BucketPolicy.HOURLY, Accumulation.EXACT);
+        buffered.processTrades(ByteBuffer.wrap(csv.toString().getBytes(StandardCharsets.UTF_8)));
+
+        assertEquals(sequential.getAllVWAP(), parallel.getAllVWAP());
+        assertEquals(sequential.getAllVWAP(), buffered.getAllVWAP());
+
+        Path file = tempDir.resolve("exact.snapshot");
+        sequential.writeSnapshot(file);
+        VWAPCalculatorApplication restored = new VWAPCalculatorApplication(BucketPolicy.HOURLY, Accumulation.EXACT);
+        restored.loadSnapshot(file);
+        assertEquals(sequential.getAllVWAP(), restored.getAllVWAP());
+        IOException mismatch = assertThrows(IOException.class, () -> vwapCalculatorApplication.loadSnapshot(file));
+        assertEquals("Snapshot accumulation EXACT does not match DOUBLE", mismatch.getMessage());
+
+        sequential.processTrades(new String[][]{
+                {"9:31 AM", "EUR/USD", "0.000000001", "100"},
+                {"9:31 AM", "EUR/USD", "100000000000", "100"}
+        });
+        sequential.processTrades(ByteBuffer.wrap("9:31 AM,EUR/USD,0.000000001,100\n".getBytes(StandardCharsets.UTF_8)));
+        assertEquals(3, sequential.getRejectionStats().byReason().get(RejectReason.PRICE));
+        assertEquals(restored.getAllVWAP(), sequential.getAllVWAP());
+    }
+
+    /**
+     * Test Case 39: happy path - VWAP updates are pushed to a subscriber instead of polled
+     */
+    @Test
+    @Timeout(10)
+    public void test_publish_updates() throws InterruptedException {
+        IllegalArgumentException exception = assertThrows(IllegalArgumentException.class,
+                () -> vwapCalculatorApplication.publishUpdates(Duration.ZERO));
+        assertEquals("Invalid coalescing interval", exception.getMessage());
+
+        LinkedBlockingQueue<VWAPUpdate> updates = new LinkedBlockingQueue<>();
+        try (VWAPPublisher publisher = vwapCalculatorApplication.publishUpdates(Duration.ofMillis(5))) {
+            publisher.subscribe(new Flow.Subscriber<>() {
+                @Override
+                public void onSubscribe(Flow.Subscription subscription) {
+                    subscription.request(Long.MAX_VALUE);
+                }
+
+                @Override
+                public void onNext(VWAPUpdate item) {
+                    updates.add(item);
+                }
+
+                @Override
+                public void onError(Throwable throwable) {
+                }
+
+                @Override
+                public void onComplete() {
+                }
+            });
+            vwapCalculatorApplication.processTrades(new String[][]{{"9:31 AM", "EUR/USD", "1.1000", "100"}});
+            VWAPUpdate update = updates.poll(5, TimeUnit.SECONDS);
+            assertEquals("EUR/USD", update.currencyPair());
+            assertEquals(1.1000, update.vwap(), 0.0001);
+        }
+    }
+
+    /**
+     * Test Case 40: happy path - closed buckets leave the live set, reach the handler and the archive, and refuse
+     * late trades
+     */
+    @Test
+    public void test_close_buckets() {
+        List<ClosedBucket> closed = new ArrayList<>();
+        vwapCalculatorApplication.setClosedBucketHandler(closed::add);
+        vwapCalculatorApplication.processTrades(new String[][]{
+                {"9:31 AM", "EUR/USD", "1.1000", "100"},
+                {"9:32 AM", "EUR/USD", "1.1002", "100"},
+                {"10:15 AM", "GBP/USD", "1.2500", "300"}
+        });
+        Map<String, Double> before = vwapCalculatorApplication.getAllVWAP();
+        LocalDate session = vwapCalculatorApplication.getSession();
+
+        vwapCalculatorApplication.closeBucketsBefore(LocalTime.of(10, 30));
+        assertEquals(1, closed.size());
+        assertEquals(session, closed.get(0).session());
+        assertEquals("EUR/USD", closed.get(0).currencyPair());
+        assertEquals(LocalTime.of(9, 0), closed.get(0).bucketStart());
+        assertEquals(1.1001, closed.get(0).vwap(), 0.0001);
+        assertEquals(200, closed.get(0).volume());
+        assertEquals(Map.of("GBP/USD 10:00 AM", 1.25), vwapCalculatorApplication.getAllVWAP());
+        assertEquals(Map.of("EUR/USD 9:00 AM", before.get("EUR/USD 9:00 AM")),
+                vwapCalculatorApplication.getArchivedVWAP(session));
+        assertEquals(1, vwapCalculatorApplication.getMetrics().bucketCount());
+
+        vwapCalculatorApplication.processTrades(new String[][]{
+                {"9:45 AM", "EUR/USD", "1.2000", "100"},
+                {"10:45 AM", "GBP/USD", "1.2500", "300"}
+        });
+        vwapCalculatorApplication.processTrades(ByteBuffer.wrap("9:50 AM,EUR/USD,1.2000,100\n".getBytes(StandardCharsets.UTF_8)));
+        assertEquals(2L, vwapCalculatorApplication.getRejectionStats().byReason().get(RejectReason.CLOSED_BUCKET));
+        assertTrue(logHandler.isLogMessagePresent(Level.WARNING, "Skipping invalid trade: 9:45 AM, EUR/USD, 1.2000, 100 - Trade bucket already closed"));
+        assertEquals(2, vwapCalculatorApplication.getAllVWAP().size() + closed.size());
+    }
+
+    /**
+     * Test Case 41: happy path - rolling the session archives the day and keeps a bounded number of sessions
+     */
+    @Test
+    public void test_roll_session() {
+        LocalDate first = vwapCalculatorApplication.getSession();
+        LocalDate second = first.plusDays(1);
+        LocalDate third = first.plusDays(2);
+        vwapCalculatorApplication.processTrades(new String[][]{{"9:31 AM", "EUR/USD", "1.1000", "100"}});
+        VWAPChanges changes = vwapCalculatorApplication.getChangedVWAPSince(0);
+
+        vwapCalculatorApplication.rollSession(second);
+        assertEquals(second, vwapCalculatorApplication.getSession());
+        assertTrue(vwapCalculatorApplication.getAllVWAP().isEmpty());
+        VWAPChanges rolled = vwapCalculatorApplication.getChangedVWAPSince(changes.version());
+        assertTrue(rolled.vwaps().isEmpty());
+        assertEquals(Set.of("EUR/USD 9:00 AM"), rolled.removed());
+        assertTrue(vwapCalculatorApplication.getChangedVWAPSince(0).removed().isEmpty());
+
+        vwapCalculatorApplication.processTrades(new String[][]{{"9:31 AM", "EUR/USD", "1.2000", "100"}});
+        assertEquals(1.2000, vwapCalculatorApplication.getAllVWAP().get("EUR/USD 9:00 AM"), 0.0001);
+        assertEquals(1.2000, vwapCalculatorApplication.getChangedVWAPSince(changes.version()).vwaps().get("EUR/USD 9:00 AM"), 0.0001);
+        assertEquals(1.1000, vwapCalculatorApplication.getArchivedVWAP(first).get("EUR/USD 9:00 AM"), 0.0001);
+
+        vwapCalculatorApplication.rollSession(third);
+        assertTrue(vwapCalculatorApplication.getArchivedVWAP(first).isEmpty());
+        assertEquals(1.2000, vwapCalculatorApplication.getArchivedVWAP(second).get("EUR/USD 9:00 AM"), 0.0001);
+        vwapCalculatorApplication.setArchiveRetention(0);
+        assertTrue(vwapCalculatorApplication.getArchivedVWAP(second).isEmpty());
+
+        IllegalArgumentException session = assertThrows(IllegalArgumentException.class,
+                () -> vwapCalculatorApplication.rollSession(second));
+        assertEquals("Invalid session", session.getMessage());
+        IllegalArgumentException retention = assertThrows(IllegalArgumentException.class,
+                () -> vwapCalculatorApplication.setArchiveRetention(-1));
+        assertEquals("Invalid archive retention", retention.getMessage());
+    }
+
+    /**
+     * Test Case 42: happy path - columnar trades give the same VWAPs as string trades and reject the same trades
+     */
+    @Test
+    public void test_process_columnar_trades() {
+        String[][] trades = {
+                {"9:31 AM", "EUR/USD", "1.1000", "100"},
+                {"9:32 AM", "EUR/USD", "1.1001", "200"},
+                {"10:15 AM", "GBP/USD", "1.3000", "300"},
+                {"10:16 AM", "GBP/USD", "1.3002", "-300"}
+        };
+        int[] seconds = new int[trades.length];
+        short[] pairIds = new short[trades.length];
+        double[] prices = new double[trades.length];
+        long[] volumes = new long[trades.length];
+        for (int i = 0; i < trades.length; i++) {
+            seconds[i] = LocalTime.parse(trades[i][0], BucketPolicy.HOURLY.tradeTimeFormatter()).toSecondOfDay();
+            pairIds[i] = vwapCalculatorApplication.pairId(trades[i][1]);
+            prices[i] = Double.parseDouble(trades[i][2]);
+            volumes[i] = Long.parseLong(trades[i][3]);
+        }
+        vwapCalculatorApplication.setRollingWindow("EUR/USD", Duration.ofMinutes(15));
+        vwapCalculatorApplication.processTrades(seconds, pairIds, prices, volumes, trades.length);
+
+        VWAPCalculatorApplication expected = new VWAPCalculatorApplication();
+        expected.processTrades(trades);
+        assertEquals(expected.getAllVWAP(), vwapCalculatorApplication.getAllVWAP());
+        assertEquals(1.10006667, vwapCalculatorApplication.getRollingVWAP("EUR/USD"), 0.0001);
+        assertEquals(1L, vwapCalculatorApplication.getRejectionStats().byReason().get(RejectReason.VOLUME));
+        assertTrue(logHandler.isLogMessagePresent(Level.WARNING, "Skipping invalid trade: 10:16 AM, GBP/USD, 1.3002, -300 - Invalid trade volume"));
+
+        IllegalArgumentException count = assertThrows(IllegalArgumentException.class,
+                () -> vwapCalculatorApplication.processTrades(seconds, pairIds, prices, volumes, trades.length + 1));
+        assertEquals("Invalid trade count", count.getMessage());
+        IllegalArgumentException pair = assertThrows(IllegalArgumentException.class,
+                () -> vwapCalculatorApplication.pairId("EUR/XYZ"));
+        assertEquals(VWAPCalculatorApplication.INVALID_CURRENCY_PAIR, pair.getMessage());
+    }
+
+    /**
+     * Test Case 43: happy path - currency pairs added and retired at runtime
+     */
+    @Test
+    public void test_add_and_retire_currency_pairs() {
+        short id = vwapCalculatorApplication.addCurrencyPair("NOK/SEK");
+        assertEquals(21, id);
+        assertTrue(vwapCalculatorApplication.getCurrencyPairs().contains("NOK/SEK"));
+        vwapCalculatorApplication.processTrades(new String[][]{{"9:31 AM", "NOK/SEK", "0.9800", "100"}});
+        vwapCalculatorApplication.processTrades(ByteBuffer.wrap("9:32 AM,NOK/SEK,0.9900,100\n".getBytes(StandardCharsets.UTF_8)));
+        vwapCalculatorApplication.processTrades(new int[]{9 * 3600 + 33 * 60}, new short[]{id}, new double[]{1.0000},
+                new long[]{100}, 1);
+        assertEquals(0.9900, vwapCalculatorApplication.getAllVWAP().get("NOK/SEK 9:00 AM"), 0.0001);
+
+        vwapCalculatorApplication.retireCurrencyPair("NOK/SEK");
+        assertFalse(vwapCalculatorApplication.getCurrencyPairs().contains("NOK/SEK"));
+        vwapCalculatorApplication.processTrades(new String[][]{{"9:34 AM", "NOK/SEK", "2.0000", "100"}});
+        vwapCalculatorApplication.processTrades(new int[]{9 * 3600 + 35 * 60}, new short[]{id}, new double[]{2.0000},
+                new long[]{100}, 1);
+        assertEquals(2L, vwapCalculatorApplication.getRejectionStats().byReason().get(RejectReason.CURRENCY_PAIR));
+        assertEquals(0.9900, vwapCalculatorApplication.getAllVWAP().get("NOK/SEK 9:00 AM"), 0.0001);
+
+        assertEquals(id, vwapCalculatorApplication.addCurrencyPair("NOK/SEK"));
+        IllegalArgumentException invalid = assertThrows(IllegalArgumentException.class,
+                () -> vwapCalculatorApplication.addCurrencyPair("nok/sek"));
+        assertEquals(VWAPCalculatorApplication.INVALID_CURRENCY_PAIR, invalid.getMessage());
+    }
+
+    /**
+     * Test Case 44: happy path - bucket sums exported as a partial aggregate and imported into another shard
+     */
+    @Test
+    public void test_export_and_import_partial() {
+        vwapCalculatorApplication.processTrades(new String[][]{
+                {"9:30 AM", "EUR/USD", "1.1000", "100"},
+                {"9:45 AM", "EUR/USD", "1.2000", "300"},
+                {"10:15 AM", "USD/JPY", "110.00", "200"}
+        });
+        PartialAggregate partial = vwapCalculatorApplication.exportPartial();
+        assertEquals(2, partial.bucketCount());
+        assertEquals(Map.of("EUR/USD 9:00 AM", 2L, "USD/JPY 10:00 AM", 1L), partial.getTradeCounts());
+
+        VWAPCalculatorApplication other = new VWAPCalculatorApplication();
+        other.processTrades(new String[][]{{"9:50 AM", "EUR/USD", "1.3000", "100"}});
+        other.importPartial(partial);
+        assertEquals(1.2, other.getAllVWAP().get("EUR/USD 9:00 AM"), 0.0001);
+        assertEquals(110.00, other.getAllVWAP().get("USD/JPY 10:00 AM"), 0.0001);
+        assertEquals(4L, other.exportPartial().tradeCount());
+
+        VWAPCalculatorApplication minutes = new VWAPCalculatorApplication(BucketPolicy.MINUTE);
+        assertThrows(IllegalArgumentException.class, () -> minutes.importPartial(partial));
+        vwapCalculatorApplication.addCurrencyPair("NOK/SEK");
+        vwapCalculatorApplication.processTrades(new String[][]{{"9:31 AM", "NOK/SEK", "0.9800", "100"}});
+        IllegalArgumentException unknown = assertThrows(IllegalArgumentException.class,
+                () -> other.importPartial(vwapCalculatorApplication.exportPartial()));
+        assertEquals(VWAPCalculatorApplication.INVALID_CURRENCY_PAIR + ": NOK/SEK", unknown.getMessage());
+        assertEquals(1.2, other.getAllVWAP().get("EUR/USD 9:00 AM"), 0.0001);
+    }
+
+    /**
+     * Test Case 45: happy path - open, high, low, close, VWAP, mean price and TWAP of every bucket, also across shards
+     */
+    @Test
+    public void test_get_all_bars() {
+        vwapCalculatorApplication.processTrades(new String[][]{
+                {"9:45 AM", "EUR/USD", "1.2000", "300"},
+                {"9:30 AM", "EUR/USD", "1.1000", "100"},
+                {"9:50 AM", "EUR/USD", "1.1500", "100"},
+                {"9:31 AM", "EUR/USD", "1.2500", "100"},
+                {"10:15 AM", "USD/JPY", "110.00", "200"},
+                {"9:20 AM", "AUD/USD", "0.6500", "100"}
+        });
+        Bars bars = vwapCalculatorApplication.getAllBars();
+        assertEquals(3, bars.size());
+        assertEquals("AUD/USD", bars.currencyPair(0));
+        int euro = bars.indexOf("EUR/USD", LocalTime.of(9, 59));
+        assertEquals(1, euro);
+        assertEquals(LocalTime.of(9, 0), bars.bucketStart(euro));
+        assertEquals(1.1000, bars.open(euro));
+        assertEquals(1.2500, bars.high(euro));
+        assertEquals(1.1000, bars.low(euro));
+        assertEquals(1.1500, bars.close(euro));
+        assertEquals(710.0 / 600, bars.vwap(euro), 1e-12);
+        assertEquals(1.175, bars.meanPrice(euro), 1e-12);
+        // 9:30 arrives before the open and holds until 9:45, 9:45 holds until 9:50 and the close until 10:00;
+        // 9:31 arrives inside that span and gets no weight
+        assertEquals((1.1000 * 900 + 1.2000 * 300 + 1.1500 * 600) / 1800, bars.twap(euro), 1e-12);
+        assertEquals(600L, bars.volume(euro));
+        assertEquals(4L, bars.tradeCount(euro));
+        assertEquals(-1, bars.indexOf("EUR/USD", LocalTime.of(10, 0)));
+        assertEquals(-1, bars.indexOf("GBP/USD", LocalTime.of(9, 0)));
+
+        VWAPCalculatorApplication other = new VWAPCalculatorApplication();
+        other.processTrades(new String[][]{{"9:05 AM", "EUR/USD", "1.3000", "100"}});
+        Bars merged = other.exportPartial().merge(vwapCalculatorApplication.exportPartial()).getAllBars();
+        int mergedEuro = merged.indexOf("EUR/USD", LocalTime.of(9, 0));
+        assertEquals(1.3000, merged.open(mergedEuro));
+        assertEquals(1.3000, merged.high(mergedEuro));
+        assertEquals(1.1500, merged.close(mergedEuro));
+        assertEquals(5L, merged.tradeCount(mergedEuro));
+
+        VWAPCalculatorApplication tied = new VWAPCalculatorApplication();
+        tied.processTrades(new String[][]{{"9:50 AM", "EUR/USD", "1.1600", "100"}});
+        Bars tiedBars = tied.exportPartial().merge(vwapCalculatorApplication.exportPartial()).getAllBars();
+        int tiedEuro = tiedBars.indexOf("EUR/USD", LocalTime.of(9, 0));
+        assertEquals(1.1000, tiedBars.open(tiedEuro));
+        assertEquals(Double.NaN, tiedBars.close(tiedEuro));
+    }
+
+    /**
+     * Test Case 46: happy path - trades sent to the TCP trade server and VWAP queried over the same connection
+     */
+    @Test
+    @Timeout(30)
+    public void test_serve_trades() throws IOException {
+        try (TradeServer server = vwapCalculatorApplication.serveTrades(
+                new InetSocketAddress(InetAddress.getLoopbackAddress(), 0));
+             Socket socket = new Socket(server.getAddress().getAddress(), server.getAddress().getPort())) {
+            socket.getOutputStream().write("9:30 AM,EUR/USD,1.1000,100\n9:45 AM,EUR/USD,1.2000,300\n?EUR/USD,9:00 AM\n"
+                    .getBytes(StandardCharsets.US_ASCII));
+            BufferedReader reader = new BufferedReader(new InputStreamReader(socket.getInputStream(),
+                    StandardCharsets.US_ASCII));
+            assertEquals("EUR/USD 9:00 AM,1.175,400", reader.readLine());
+        }
+        assertEquals(1.175, vwapCalculatorApplication.getAllVWAP().get("EUR/USD 9:00 AM"), 0.0001);
+    }
+
+    /**
+     * Test Case 47: edge case - String trades are validated by the CSV scanner with the same outcome as parsing
+     * each field with java.time, Double.parseDouble and Long.parseLong
+     */
+    @Test
+    public void test_string_trades_match_reference_parsing() {
+        String[] times = {"9:31 AM", "09:31 AM", "12:15 AM", "9:31:05 PM", "13:31 PM", "9:61 AM", "9:31", "abc", "",
+                " 9:31 AM", "9:31 am"};
+        String[] pairs = {"EUR/USD", "eur/usd", "EUR/USDX", "", "ABC/XYZ"};
+        String[] prices = {"1.1001", "1e0", " 1.25 ", "0", "-1", "abc", "", "1,5", "1.2.3", "Infinity", "NaN",
+                "0x1p3", "1.5d", "\u0661"};
+        String[] volumes = {"100", "+100", "-100", "0", "abc", "", "9223372036854775807", "9223372036854775808",
+                "1 00", "\u0663", "1.0"};
+        VWAPCalculatorApplication secondApplication = new VWAPCalculatorApplication(BucketPolicy.SECOND);
+        for (String time : times) {
+            for (String pair : pairs) {
+                for (String price : prices) {
+                    for (String volume : volumes) {
+                        String[] trade = {time, pair, price, volume};
+                        assertEquals(referenceCheck(trade, BucketPolicy.HOURLY),
+                                vwapCalculatorApplication.checkTrade(trade), String.join("|", trade));
+                        assertEquals(referenceCheck(trade, BucketPolicy.SECOND), secondApplication.checkTrade(trade),
+                                String.join("|", trade));
+                    }
+                }
+            }
+        }
+        assertEquals(RejectReason.STREAM_FORMAT, vwapCalculatorApplication.checkTrade(new String[]{"9:31 AM"}));
+    }
+
+    private RejectReason referenceCheck(String[] trade, BucketPolicy policy) {
+        try {
+            LocalTime.parse(trade[0], policy.tradeTimeFormatter());
+        } catch (DateTimeParseException e) {
+            return RejectReason.TIME;
+        }
+        if (!vwapCalculatorApplication.getCurrencyPairs().contains(trade[1])) {
+            return RejectReason.CURRENCY_PAIR;
+        }
+        try {
+            double price = Double.parseDouble(trade[2]);
+            if (!(price > 0.0) || !Accumulation.DOUBLE.accepts(price)) {
+                return RejectReason.PRICE;
+            }
+        } catch (NumberFormatException e) {
+            return RejectReason.PRICE;
+        }
+        try {
+            if (Long.parseLong(trade[3]) <= 0) {
+                return RejectReason.VOLUME;
+            }
+        } catch (NumberFormatException e) {
+            return RejectReason.VOLUME;
+        }
+        return null;
+    }
+
+    /**
+     * Test Case 48: happy path - the metrics MBean serves every attribute from one snapshot per refresh interval
+     */
+    @Test
+    public void test_metrics_mbean_caches_snapshot() {
+        String[][] trades = {{"9:31 AM", "EUR/USD", "1.1000", "100"}, {"10:31 AM", "EUR/USD", "1.1001", "200"}};
+        vwapCalculatorApplication.setMetricsEnabled(true);
+        vwapCalculatorApplication.processTrades(trades);
+        VWAPMetrics cached = new VWAPMetrics(vwapCalculatorApplication, Long.MAX_VALUE);
+        VWAPMetrics fresh = new VWAPMetrics(vwapCalculatorApplication, 0);
+        assertEquals(2, cached.getAcceptedTrades());
+        assertEquals(2, cached.getBucketCount());
+
+        vwapCalculatorApplication.processTrades(new String[][]{{"11:31 AM", "GBP/USD", "1.2500", "50"}});
+        assertEquals(2, cached.getAcceptedTrades());
+        assertEquals(2, cached.getBucketCount());
+        assertEquals(Map.of("EUR/USD", 300L), cached.getVolumeByPair());
+        assertEquals(3, fresh.getAcceptedTrades());
+        assertEquals(3, fresh.getBucketCount());
+        assertEquals(Map.of("EUR/USD", 300L, "GBP/USD", 50L), fresh.getVolumeByPair());
+    }
+
+    /**
+     * Test Case 49: edge case - journaled trades are replayed by pair name, and a journal with a pair the
+     * application does not know is refused
+     */
+    @Test
+    public void test_journal_replay_by_pair_name() throws IOException {
+        Path journal = tempDir.resolve("journal");
+        vwapCalculatorApplication.enableJournal(journal, null);
+        vwapCalculatorApplication.addCurrencyPair("NOK/SEK");
+        vwapCalculatorApplication.processTrades(new String[][]{
+                {"9:31 AM", "NOK/SEK", "1.0250", "100"},
+                {"9:45 AM", "EUR/USD", "1.1000", "200"}
+        });
+        vwapCalculatorApplication.disableJournal();
+
+        VWAPCalculatorApplication fresh = new VWAPCalculatorApplication();
+        IOException unknown = assertThrows(IOException.class, () -> fresh.replayJournal(journal));
+        assertTrue(unknown.getMessage().startsWith("Journal contains an unknown currency pair"));
+        assertEquals(Map.of(), fresh.getAllVWAP());
+
+        VWAPCalculatorApplication reordered = new VWAPCalculatorApplication();
+        reordered.retireCurrencyPair("EUR/USD");
+        reordered.addCurrencyPair("SEK/NOK");
+        reordered.addCurrencyPair("NOK/SEK");
+        assertEquals(2, reordered.replayJournal(journal));
+        assertEquals(vwapCalculatorApplication.getAllVWAP(), reordered.getAllVWAP());
+    }
+
+    /**
+     * Test Case 50: happy path - a journal spanning a bucket close and a session roll is replayed into the same
+     * sessions, archive and closed buckets
+     */
+    @Test
+    public void test_journal_replay_follows_sessions() throws IOException {
+        Path journal = tempDir.resolve("journal");
+        LocalDate first = vwapCalculatorApplication.getSession();
+        vwapCalculatorApplication.enableJournal(journal, null);
+        vwapCalculatorApplication.processTrades(new String[][]{
+                {"9:31 AM", "EUR/USD", "1.1000", "100"},
+                {"10:15 AM", "EUR/USD", "1.2000", "100"}
+        });
+        vwapCalculatorApplication.closeBucketsBefore(LocalTime.of(10, 0));
+        vwapCalculatorApplication.processTrades(new String[][]{{"10:30 AM", "EUR/USD", "1.3000", "100"}});
+        vwapCalculatorApplication.rollSession(first.plusDays(1));
+        vwapCalculatorApplication.processTrades(new String[][]{{"9:05 AM", "EUR/USD", "1.4000", "100"}});
+        vwapCalculatorApplication.disableJournal();
+
+        VWAPCalculatorApplication fresh = new VWAPCalculatorApplication();
+        assertEquals(4, fresh.replayJournal(journal));
+        assertEquals(first.plusDays(1), fresh.getSession());
+        assertEquals(Map.of("EUR/USD 9:00 AM", 1.4000), fresh.getAllVWAP());
+        assertEquals(vwapCalculatorApplication.getArchivedVWAP(first), fresh.getArchivedVWAP(first));
+        assertEquals(1.25, fresh.getArchivedVWAP(first).get("EUR/USD 10:00 AM"), 1e-12);
+
+        VWAPCalculatorApplication later = new VWAPCalculatorApplication();
+        later.rollSession(first.plusDays(2));
+        later.processTrades(new String[][]{{"9:10 AM", "EUR/USD", "1.5000", "100"}});
+        later.replayJournal(journal);
+        assertEquals(first.plusDays(2), later.getSession());
+        assertEquals(Map.of("EUR/USD 9:00 AM", 1.5000), later.getAllVWAP());
+        assertTrue(later.getArchivedVWAP(first.plusDays(1)).isEmpty());
+    }
+
+    /**
+     * Test Case 51: edge case - a snapshot restores its session and closed buckets, and is refused by an
+     * application of another session
+     */
+    @Test
+    public void test_snapshot_restores_session() throws IOException {
+        LocalDate next = vwapCalculatorApplication.getSession().plusDays(1);
+        vwapCalculatorApplication.rollSession(next);
+        vwapCalculatorApplication.processTrades(new String[][]{
+                {"9:31 AM", "EUR/USD", "1.1000", "100"},
+                {"10:15 AM", "EUR/USD", "1.2000", "100"}
+        });
+        vwapCalculatorApplication.closeBucketsBefore(LocalTime.of(10, 0));
+        Path file = tempDir.resolve("vwap.snapshot");
+        vwapCalculatorApplication.writeSnapshot(file);
+
+        VWAPCalculatorApplication restored = new VWAPCalculatorApplication();
+        restored.loadSnapshot(file);
+        assertEquals(next, restored.getSession());
+        assertEquals(vwapCalculatorApplication.getAllVWAP(), restored.getAllVWAP());
+        assertThrows(IllegalArgumentException.class,
+                () -> restored.validateTradeParams(new String[]{"9:45 AM", "EUR/USD", "1.1000", "100"}));
+
+        VWAPCalculatorApplication busy = new VWAPCalculatorApplication();
+        busy.processTrades(new String[][]{{"9:31 AM", "EUR/USD", "1.1000", "100"}});
+        IOException mismatch = assertThrows(IOException.class, () -> busy.loadSnapshot(file));
+        assertEquals("Snapshot session " + next + " does not match " + busy.getSession(), mismatch.getMessage());
+        assertEquals(Map.of("EUR/USD 9:00 AM", 1.1000), busy.getAllVWAP());
+    }
+
+    /**
+     * Test Case 52: happy path - trades within the same minute open and close the bar in arrival order, whether
+     * ingested one batch at a time or in parallel
+     */
+    @Test
+    public void test_same_minute_trades_open_and_close_in_arrival_order() {
+        String[][] trades = new String[1000][];
+        for (int i = 0; i < trades.length; i++) {
+            trades[i] = new String[]{"9:30 AM", "EUR/USD", String.format("1.%04d", 1000 + i), "100"};
+        }
+        vwapCalculatorApplication.processTrades(Arrays.copyOfRange(trades, 0, 500));
+        vwapCalculatorApplication.processTrades(Arrays.copyOfRange(trades, 500, 1000));
+        VWAPCalculatorApplication parallel = new VWAPCalculatorApplication();
+        parallel.setParallelThreshold(1);
+        parallel.processTrades(trades);
+
+        for (Bars bars : List.of(vwapCalculatorApplication.getAllBars(), parallel.getAllBars())) {
+            assertEquals(1, bars.size());
+            assertEquals(1.1000, bars.open(0));
+            assertEquals(1.1999, bars.close(0));
+            assertEquals(1000L, bars.tradeCount(0));
+        }
+    }
+
+    /**
+     * Test Case 53: happy path - parallel ingest hands trades to the rolling windows in batch order, so they see
+     * the same trades as sequential ingest
+     */
+    @Test
+    public void test_parallel_rolling_window_matches_sequential() {
+        String[][] trades = new String[1000][];
+        for (int i = 0; i < trades.length; i++) {
+            int minute = 9 * 60 + i / 20;
+            trades[i] = new String[]{String.format("%d:%02d AM", minute / 60, minute % 60), "EUR/USD",
+                    String.format("1.%04d", 1000 + i), (i % 97 == 0) ? "-100" : "100"};
+        }
+        VWAPCalculatorApplication parallel = new VWAPCalculatorApplication();
+        parallel.setParallelThreshold(1);
+        for (VWAPCalculatorApplication application : List.of(vwapCalculatorApplication, parallel)) {
+            application.setRollingWindow("EUR/USD", Duration.ofMinutes(15));
+            application.processTrades(trades);
+        }
+
+        assertEquals(vwapCalculatorApplication.getRollingVWAP("EUR/USD"), parallel.getRollingVWAP("EUR/USD"));
+        assertEquals(vwapCalculatorApplication.getRollingVWAP("EUR/USD", LocalTime.of(9, 55)),
+                parallel.getRollingVWAP("EUR/USD", LocalTime.of(9, 55)));
+        assertEquals(vwapCalculatorApplication.getAllVWAP().get("EUR/USD 9:00 AM"),
+                parallel.getAllVWAP().get("EUR/USD 9:00 AM"), 1e-12);
+    }
+
+    /**
+     * Test Case 54: edge case - loading a snapshot replaces the live buckets, so restoring it twice, or into an
+     * application of the same session that already has trades, gives the same state as restoring it once
+     */
+    @Test
+    public void test_snapshot_restores_idempotently() throws IOException {
+        vwapCalculatorApplication.processTrades(new String[][]{
+                {"9:31 AM", "EUR/USD", "1.1000", "100"},
+                {"10:15 AM", "GBP/USD", "1.2500", "200"}
+        });
+        Path file = tempDir.resolve("vwap.snapshot");
+        vwapCalculatorApplication.writeSnapshot(file);
+
+        VWAPCalculatorApplication restored = new VWAPCalculatorApplication();
+        restored.loadSnapshot(file);
+        restored.loadSnapshot(file);
+        assertEquals(vwapCalculatorApplication.getAllVWAP(), restored.getAllVWAP());
+        assertEquals(vwapCalculatorApplication.exportPartial(), restored.exportPartial());
+
+        VWAPCalculatorApplication busy = new VWAPCalculatorApplication();
+        busy.processTrades(new String[][]{
+                {"9:45 AM", "EUR/USD", "1.3000", "500"},
+                {"11:15 AM", "USD/JPY", "145.25", "1000"}
+        });
+        busy.loadSnapshot(file);
+        assertEquals(vwapCalculatorApplication.getAllVWAP(), busy.getAllVWAP());
+        assertEquals(vwapCalculatorApplication.exportPartial(), busy.exportPartial());
+    }
+
     private static class TestLogHandler extends Handler {
 
         private final StringBuilder logMessages = new StringBuilder();
@@ -415,5 +1456,13 @@ class VWAPCalculatorApplicationTest {
         public boolean isLogMessagePresent(Level level, String message) {
             return logMessages.toString().contains(level.getName()) && logMessages.toString().contains(message);
         }
+
+        public int countLogMessages(String message) {
+            int count = 0;
+            for (int i = logMessages.indexOf(message); i >= 0; i = logMessages.indexOf(message, i + 1)) {
+                count++;
+            }
+            return count;
+        }
     }
-}
\ No newline at end of file
+}
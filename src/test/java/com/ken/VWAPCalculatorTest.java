@@ -0,0 +1,255 @@
+package com.ken;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.Timeout;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class VWAPCalculatorTest {
+
+    @Test
+    public void test_empty_calculator() {
+        assertEquals(0.0, new VWAPCalculator().calculateVWAP());
+    }
+
+    @Test
+    public void test_weighted_average() {
+        VWAPCalculator calculator = new VWAPCalculator();
+        calculator.addTrade(1.1000, 100);
+        calculator.addTrade(1.1001, 200);
+        calculator.addTrade(1.1002, 300);
+        assertEquals(1.10013333, calculator.calculateVWAP(), 0.0001);
+    }
+
+    /**
+     * Every trade has the same price, so any consistent view of the sums gives exactly that price. A reader that
+     * saw a price-volume sum without its matching volume would get a different value.
+     */
+    @Test
+    @Timeout(30)
+    public void test_reads_are_consistent_while_writing() throws Exception {
+        VWAPCalculator calculator = new VWAPCalculator();
+        int writers = 4;
+        ExecutorService executor = Executors.newFixedThreadPool(writers + 1);
+        AtomicBoolean writing = new AtomicBoolean(true);
+        CountDownLatch written = new CountDownLatch(writers);
+
+        for (int i = 0; i < writers; i++) {
+            long volume = 100L * (i + 1);
+            executor.execute(() -> {
+                for (int n = 0; n < 200_000; n++) {
+                    calculator.addTrade(1.5, volume);
+                }
+                written.countDown();
+            });
+        }
+        Future<Boolean> reader = executor.submit(() -> {
+            boolean consistent = true;
+            while (writing.get()) {
+                double vwap = calculator.calculateVWAP();
+                consistent &= (vwap == 0.0 || vwap == 1.5);
+            }
+            return consistent;
+        });
+
+        written.await();
+        writing.set(false);
+        executor.shutdown();
+        assertTrue(reader.get());
+        assertTrue(executor.awaitTermination(10, TimeUnit.SECONDS));
+        assertEquals(1.5, calculator.calculateVWAP());
+    }
+
+    @Test
+    public void test_bar_statistics() {
+        VWAPCalculator calculator = new VWAPCalculator();
+        calculator.addTrade(34300, 1.1002, 300);
+        calculator.addTrade(34200, 1.1001, 200);
+        calculator.addTrade(34500, 1.0990, 100);
+        calculator.addTrade(34200, 1.1000, 100);
+        calculator.addTrade(34500, 1.1010, 100);
+        BucketStats stats = new BucketStats();
+        calculator.readBucket(stats);
+        assertEquals(5L, stats.tradeCount);
+        assertEquals(800L, stats.volumeSum);
+        assertEquals(1.1001, stats.openPrice);      // first of the earliest trades to arrive
+        assertEquals(34200, stats.openSecond);
+        assertEquals(1.1010, stats.closePrice);     // last of the latest trades to arrive
+        assertEquals(34500, stats.closeSecond);
+        assertEquals(Double.NaN, BucketStats.openPrice(34200, 1.1000, 34200, 1.1001, false));  // merges disagree
+        assertEquals(1.1001, BucketStats.openPrice(34200, 1.1001, 34200, 1.1001, false));
+        assertEquals(Double.NaN, BucketStats.closePrice(34500, 1.0990, 34500, 1.1010, false));
+        assertEquals(1.1010, stats.high);
+        assertEquals(1.0990, stats.low);
+        assertEquals((1.1002 + 1.1001 + 1.0990 + 1.1000 + 1.1010) / 5, stats.meanPrice(false), 1e-12);
+
+        VWAPCalculator ties = new VWAPCalculator();
+        ties.addTrade(34200, 1.1001, 100);
+        ties.addTrade(34200, 1.1001, 200);
+        ties.addTrade(34100, 1.1003, 100);
+        ties.addTrade(34300, 1.1002, 100);
+        ties.addTrade(34300, 1.1004, 100);
+        ties.addTrade(34400, 1.1005, 100);
+        ties.readBucket(stats);
+        assertEquals(1.1003, stats.openPrice);      // an earlier trade settles the tie
+        assertEquals(34100, stats.openSecond);
+        assertEquals(1.1005, stats.closePrice);
+        assertEquals(34400, stats.closeSecond);
+        ties.addTrade(34100, 1.1003, 100);
+        ties.readBucket(stats);
+        assertEquals(1.1003, stats.openPrice);      // the earlier arrival keeps the open
+
+        VWAPCalculator exact = new VWAPCalculator(Accumulation.EXACT);
+        exact.addTrade(34200, 1.1, 100);
+        exact.addTrade(34300, 1.2, 100);
+        exact.readBucket(stats);
+        assertEquals(1.15, stats.meanPrice(true));
+        assertEquals(Double.NaN, new BucketStats().meanPrice(true));
+    }
+
+    @Test
+    public void test_time_weighted_price() {
+        for (Accumulation accumulation : Accumulation.values()) {
+            boolean exact = accumulation == Accumulation.EXACT;
+            VWAPCalculator calculator = new VWAPCalculator(accumulation);
+            calculator.addTrade(34200, 1.10, 100);
+            calculator.addTrade(34260, 1.20, 500);
+            calculator.addTrade(34260, 1.30, 100);  // the later arrival holds from 34260
+            calculator.addTrade(34500, 1.00, 100);
+            BucketStats stats = new BucketStats();
+            calculator.readBucket(stats);
+            assertEquals((1.10 * 60 + 1.30 * 240 + 1.00 * 1500) / 1800, stats.twap(exact, 36000), 1e-12);
+
+            calculator.addTrade(34100, 1.40, 100);  // late, but before the open: holds until 34200
+            calculator.addTrade(34300, 5.00, 100);  // late, inside the span: no weight
+            calculator.readBucket(stats);
+            assertEquals((1.40 * 100 + 1.10 * 60 + 1.30 * 240 + 1.00 * 1500) / 1900, stats.twap(exact, 36000),
+                    1e-12);
+        }
+        VWAPCalculator single = new VWAPCalculator();
+        single.addTrade(35999, 1.25, 100);
+        BucketStats stats = new BucketStats();
+        single.readBucket(stats);
+        assertEquals(1.25, stats.twap(false, 36000));
+        assertEquals(Double.NaN, new BucketStats().twap(false, 36000));
+    }
+
+    /**
+     * The exact sums, the high and low and the times of the open and close do not depend on which thread or cell a
+     * trade lands in. The open and close prices of tied trades follow arrival order, which concurrent writers decide.
+     */
+    @Test
+    @Timeout(30)
+    public void test_bar_is_independent_of_concurrent_order() throws Exception {
+        VWAPCalculator sequential = new VWAPCalculator(Accumulation.EXACT);
+        VWAPCalculator concurrent = new VWAPCalculator(Accumulation.EXACT);
+        int writers = 4;
+        int tradesPerWriter = 50_000;
+        for (int writer = 0; writer < writers; writer++) {
+            for (int i = 0; i < tradesPerWriter; i++) {
+                sequential.addTrade(34200 + i % 60, 1 + (writer * 7 + i) % 1000 / 1000.0, 1 + i % 10);
+            }
+        }
+        ExecutorService executor = Executors.newFixedThreadPool(writers);
+        CountDownLatch start = new CountDownLatch(1);
+        for (int writer = 0; writer < writers; writer++) {
+            int id = writer;
+            executor.submit(() -> {
+                start.await();
+                for (int i = tradesPerWriter - 1; i >= 0; i--) {
+                    concurrent.addTrade(34200 + i % 60, 1 + (id * 7 + i) % 1000 / 1000.0, 1 + i % 10);
+                }
+                return null;
+            });
+        }
+        start.countDown();
+        executor.shutdown();
+        assertTrue(executor.awaitTermination(20, TimeUnit.SECONDS));
+        BucketStats expected = new BucketStats();
+        BucketStats actual = new BucketStats();
+        sequential.readBucket(expected);
+        concurrent.readBucket(actual);
+        assertEquals(expected.tradeCount, actual.tradeCount);
+        assertEquals(expected.priceSumLow, actual.priceSumLow);
+        assertEquals(expected.openSecond, actual.openSecond);
+        assertEquals(expected.closeSecond, actual.closeSecond);
+        assertEquals(expected.high, actual.high);
+        assertEquals(expected.low, actual.low);
+    }
+
+    @Test
+    public void test_exact_sums_do_not_drift() {
+        VWAPCalculator exact = new VWAPCalculator(Accumulation.EXACT);
+        VWAPCalculator inexact = new VWAPCalculator();
+        exact.addTrade(999999.9999, 1);
+        inexact.addTrade(999999.9999, 1);
+        for (int i = 0; i < 1_000_000; i++) {
+            exact.addTrade(0.0001, 1);
+            inexact.addTrade(0.0001, 1);
+        }
+        assertEquals(100009999990000.0 / 100000100000000.0, exact.calculateVWAP());
+        assertTrue(inexact.calculateVWAP() != exact.calculateVWAP());
+    }
+
+    @Test
+    public void test_exact_sums_beyond_64_bits() {
+        VWAPCalculator calculator = new VWAPCalculator(Accumulation.EXACT);
+        calculator.addTrade(999999.9999, Long.MAX_VALUE / 2);
+        calculator.addTrade(999999.9999, Long.MAX_VALUE / 2);
+        assertEquals(999999.9999, calculator.calculateVWAP());
+        BucketStats stats = new BucketStats();
+        stats.priceVolumeLow = 1;
+        calculator.addStats(stats, true);
+        long[] sums = new long[3];
+        calculator.readExactSums((high, low, volume) -> {
+            sums[0] = high;
+            sums[1] = low;
+            sums[2] = volume;
+            return 0.0;
+        });
+        long units = 99999999990000L;
+        long volume = Long.MAX_VALUE / 2 * 2;
+        assertEquals(Math.multiplyHigh(units, volume), sums[0]);
+        assertEquals(units * volume + 1, sums[1]);
+        assertEquals(volume, sums[2]);
+    }
+
+    /**
+     * Integer sums are associative, so an exact calculator written from many threads ends up bit-identical to one
+     * written in order, whichever cells the trades landed in.
+     */
+    @Test
+    @Timeout(30)
+    public void test_exact_sums_are_independent_of_interleaving() throws Exception {
+        double[] prices = {1.1000, 1.1001, 0.0001, 999999.9999, 145.25, 1.23456789};
+        VWAPCalculator sequential = new VWAPCalculator(Accumulation.EXACT);
+        for (int n = 0; n < 100_000; n++) {
+            for (int i = 0; i < 4; i++) {
+                sequential.addTrade(prices[(n + i) % prices.length], 100L * (i + 1));
+            }
+        }
+
+        VWAPCalculator concurrent = new VWAPCalculator(Accumulation.EXACT);
+        ExecutorService executor = Executors.newFixedThreadPool(4);
+        for (int i = 0; i < 4; i++) {
+            int writer = i;
+            executor.execute(() -> {
+                for (int n = 99_999; n >= 0; n--) {
+                    concurrent.addTrade(prices[(n + writer) % prices.length], 100L * (writer + 1));
+                }
+            });
+        }
+        executor.shutdown();
+        assertTrue(executor.awaitTermination(20, TimeUnit.SECONDS));
+        assertEquals(Double.doubleToRawLongBits(sequential.calculateVWAP()),
+                Double.doubleToRawLongBits(concurrent.calculateVWAP()));
+    }
+}
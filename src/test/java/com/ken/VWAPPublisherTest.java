@@ -0,0 +1,148 @@
+package com.ken;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.Timeout;
+
+import java.time.Duration;
+import java.time.LocalTime;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Flow;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class VWAPPublisherTest {
+
+    @Test
+    @Timeout(10)
+    public void test_changed_buckets_are_pushed() throws InterruptedException {
+        VWAPCalculatorApplication application = new VWAPCalculatorApplication();
+        try (VWAPPublisher publisher = application.publishUpdates(Duration.ofMillis(5))) {
+            RecordingSubscriber subscriber = new RecordingSubscriber(Long.MAX_VALUE);
+            publisher.subscribe(subscriber);
+            application.processTrades(new String[][]{{"9:31 AM", "EUR/USD", "1.1000", "100"}});
+            VWAPUpdate first = subscriber.next();
+            assertEquals("EUR/USD", first.currencyPair());
+            assertEquals(LocalTime.of(9, 0), first.bucketStart());
+            assertEquals(1.1000, first.vwap(), 0.000001);
+            assertEquals(100, first.volume());
+
+            application.processTrades(new String[][]{{"9:32 AM", "EUR/USD", "1.1002", "100"}});
+            VWAPUpdate second = subscriber.next();
+            assertEquals(1.1001, second.vwap(), 0.000001);
+            assertEquals(200, second.volume());
+
+            application.processTrades(new String[][]{{"10:15 AM", "GBP/USD", "1.2500", "300"}});
+            assertEquals(new VWAPUpdate("GBP/USD", LocalTime.of(10, 0), 1.25, 300), subscriber.next());
+            assertNull(subscriber.updates.poll(50, TimeUnit.MILLISECONDS));
+        }
+    }
+
+    /**
+     * A subscriber without demand holds at most one pending update per bucket, and it is always the newest.
+     */
+    @Test
+    @Timeout(10)
+    public void test_slow_subscriber_gets_latest_value() throws InterruptedException {
+        VWAPCalculatorApplication application = new VWAPCalculatorApplication();
+        VWAPPublisher publisher = application.publishUpdates(Duration.ofMillis(1));
+        RecordingSubscriber subscriber = new RecordingSubscriber(0);
+        publisher.subscribe(subscriber);
+        for (int i = 0; i < 50; i++) {
+            application.processTrades(new String[][]{{"9:31 AM", "EUR/USD", "1.1000", "100"}});
+            Thread.sleep(1);
+        }
+        application.processTrades(new String[][]{{"9:59 AM", "EUR/USD", "1.1051", "5000"}});
+        publisher.close();
+
+        assertNull(subscriber.updates.poll(20, TimeUnit.MILLISECONDS));
+        subscriber.subscription.request(10);
+        VWAPUpdate update = subscriber.next();
+        assertEquals(10000, update.volume());
+        assertEquals(1.10255, update.vwap(), 0.000001);
+        assertTrue(subscriber.completed.await(5, TimeUnit.SECONDS));
+        assertTrue(subscriber.updates.isEmpty());
+    }
+
+    @Test
+    @Timeout(10)
+    public void test_late_subscriber_gets_current_state_on_demand() throws InterruptedException {
+        VWAPCalculatorApplication application = new VWAPCalculatorApplication();
+        VWAPPublisher publisher = application.publishUpdates(Duration.ofMillis(5));
+        application.processTrades(new String[][]{
+                {"9:31 AM", "EUR/USD", "1.1000", "100"},
+                {"10:15 AM", "GBP/USD", "1.2500", "300"}
+        });
+        Thread.sleep(50);
+        RecordingSubscriber subscriber = new RecordingSubscriber(1);
+        publisher.subscribe(subscriber);
+        assertEquals("EUR/USD", subscriber.next().currencyPair());
+        assertNull(subscriber.updates.poll(50, TimeUnit.MILLISECONDS));
+        subscriber.subscription.request(1);
+        assertEquals("GBP/USD", subscriber.next().currencyPair());
+
+        publisher.close();
+        assertTrue(subscriber.completed.await(5, TimeUnit.SECONDS));
+        RecordingSubscriber afterClose = new RecordingSubscriber(1);
+        publisher.subscribe(afterClose);
+        assertTrue(afterClose.completed.await(5, TimeUnit.SECONDS));
+    }
+
+    @Test
+    @Timeout(10)
+    public void test_invalid_demand_signals_error() throws InterruptedException {
+        try (VWAPPublisher publisher = new VWAPCalculatorApplication().publishUpdates(Duration.ofMillis(5))) {
+            RecordingSubscriber subscriber = new RecordingSubscriber(0);
+            publisher.subscribe(subscriber);
+            assertTrue(subscriber.subscribed.await(5, TimeUnit.SECONDS));
+            subscriber.subscription.request(0);
+            assertTrue(subscriber.completed.await(5, TimeUnit.SECONDS));
+            assertTrue(subscriber.error instanceof IllegalArgumentException);
+        }
+    }
+
+    private static final class RecordingSubscriber implements Flow.Subscriber<VWAPUpdate> {
+        final LinkedBlockingQueue<VWAPUpdate> updates = new LinkedBlockingQueue<>();
+        final CountDownLatch subscribed = new CountDownLatch(1);
+        final CountDownLatch completed = new CountDownLatch(1);
+        private final long initialDemand;
+        volatile Flow.Subscription subscription;
+        volatile Throwable error;
+
+        RecordingSubscriber(long initialDemand) {
+            this.initialDemand = initialDemand;
+        }
+
+        VWAPUpdate next() throws InterruptedException {
+            return updates.poll(5, TimeUnit.SECONDS);
+        }
+
+        @Override
+        public void onSubscribe(Flow.Subscription subscription) {
+            this.subscription = subscription;
+            subscribed.countDown();
+            if (initialDemand > 0) {
+                subscription.request(initialDemand);
+            }
+        }
+
+        @Override
+        public void onNext(VWAPUpdate item) {
+            updates.add(item);
+        }
+
+        @Override
+        public void onError(Throwable throwable) {
+            error = throwable;
+            completed.countDown();
+        }
+
+        @Override
+        public void onComplete() {
+            completed.countDown();
+        }
+    }
+}